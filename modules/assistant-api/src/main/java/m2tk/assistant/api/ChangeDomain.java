@@ -0,0 +1,42 @@
+/*
+ *  Copyright (c) M2TK Project. All rights reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package m2tk.assistant.api;
+
+/**
+ * 数据域
+ * <p>
+ * 数据库按数据域记录写操作的变化计数（见 {@link M2TKDatabase#getChangeCount(ChangeDomain)}），
+ * 界面据此判断所展示的数据是否发生变化。
+ */
+public enum ChangeDomain
+{
+    /** 数据源、基本流统计 */
+    STREAM,
+    /** PSI节目、条件接收流 */
+    PROGRAM,
+    /** SI业务信息（网络、业务、时间等） */
+    SI,
+    /** EPG事件 */
+    EPG,
+    /** TR 101 290 错误事件 */
+    TR290,
+    /** PCR统计 */
+    PCR,
+    /** 包密度统计 */
+    DENSITY,
+    /** 私有段、捕获的传输包和PES包 */
+    DATAGRAM
+}
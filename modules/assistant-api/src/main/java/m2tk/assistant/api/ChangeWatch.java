@@ -0,0 +1,64 @@
+/*
+ *  Copyright (c) M2TK Project. All rights reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package m2tk.assistant.api;
+
+/**
+ * 数据变化监视器
+ * <p>
+ * 记录上一次查询时所关注数据域的变化计数，界面刷新前先检查计数是否变化，没有变化时跳过查询。
+ * 监视器不是线程安全的，应在同一个线程（通常是事件分发线程）中使用。
+ */
+public final class ChangeWatch
+{
+    private final ChangeDomain[] domains;
+    private final long[] counts;
+    private boolean dirty;
+
+    public ChangeWatch(ChangeDomain... domains)
+    {
+        this.domains = domains.clone();
+        this.counts = new long[domains.length];
+        this.dirty = true;
+    }
+
+    /**
+     * 检查关注的数据是否发生了变化，有变化时记下当前的变化计数。
+     * @return 自上一次检查（或重置）以来数据是否发生了变化
+     */
+    public boolean check(M2TKDatabase database)
+    {
+        boolean changed = dirty;
+        for (int i = 0; i < domains.length; i++)
+        {
+            long count = database.getChangeCount(domains[i]);
+            if (count != counts[i])
+            {
+                counts[i] = count;
+                changed = true;
+            }
+        }
+        dirty = false;
+        return changed;
+    }
+
+    /**
+     * 重置监视器，下一次检查总是视为有变化（如切换数据源、查询失败后）。
+     */
+    public void reset()
+    {
+        dirty = true;
+    }
+}
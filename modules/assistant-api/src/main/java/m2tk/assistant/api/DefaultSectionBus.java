@@ -0,0 +1,430 @@
+/*
+ *  Copyright (c) M2TK Project. All rights reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package m2tk.assistant.api;
+
+import lombok.extern.slf4j.Slf4j;
+import m2tk.encoding.Encoding;
+import m2tk.mpeg2.decoder.ExtendedSectionDecoder;
+import m2tk.multiplex.DemuxStatus;
+import m2tk.multiplex.TSDemux;
+import m2tk.multiplex.TSDemuxEvent;
+import m2tk.multiplex.TSDemuxPayload;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * 默认的分段总线实现
+ * <p>
+ * 分段的发布和索引维护都在解复用线程上进行；订阅和取消订阅可以在任意线程上调用，
+ * 订阅表采用写时复制，发布时不加锁。
+ */
+@Slf4j
+final class DefaultSectionBus implements SectionBus
+{
+    private static final int PID_COUNT = 8192;
+    private static final Subscription[] NO_SUBSCRIPTIONS = new Subscription[0];
+
+    /**
+     * 订阅记录
+     * <p>
+     * 订阅之前已被记录的分段，第一次重复出现时要按新分段补发给订阅者。已补发的分段记录在
+     * {@code caughtUp} 中（开放寻址，键为子表序号和分段号，0 表示空位），之后的重复不再补发。
+     * 补发记录只在解复用线程上读写。
+     */
+    private static final class Subscription
+    {
+        private final Consumer<SectionEvent> listener;
+        private final long since;
+        private long[] caughtUp;
+        private int caughtUpCount;
+
+        Subscription(Consumer<SectionEvent> listener, long since)
+        {
+            this.listener = listener;
+            this.since = since;
+        }
+
+        Consumer<SectionEvent> listener()
+        {
+            return listener;
+        }
+
+        /**
+         * @return 分段在订阅之前已被记录、且尚未补发给订阅者时返回 true，并记为已补发
+         */
+        boolean catchUp(int table, int secnum, long recordedSequence)
+        {
+            if (since < recordedSequence)
+                return false;
+
+            if (caughtUp == null)
+                caughtUp = new long[16];
+            else if (caughtUpCount * 2 >= caughtUp.length)
+                grow();
+
+            long key = ((long) table << 8 | secnum) + 1;
+            int mask = caughtUp.length - 1;
+            int h = Long.hashCode(key * 0x9E3779B97F4A7C15L) & mask;
+            while (caughtUp[h] != 0)
+            {
+                if (caughtUp[h] == key)
+                    return false;
+                h = (h + 1) & mask;
+            }
+            caughtUp[h] = key;
+            caughtUpCount++;
+            return true;
+        }
+
+        private void grow()
+        {
+            long[] old = caughtUp;
+            caughtUp = new long[old.length * 2];
+            int mask = caughtUp.length - 1;
+            for (long key : old)
+            {
+                if (key == 0)
+                    continue;
+                int h = Long.hashCode(key * 0x9E3779B97F4A7C15L) & mask;
+                while (caughtUp[h] != 0)
+                    h = (h + 1) & mask;
+                caughtUp[h] = key;
+            }
+        }
+    }
+
+    private final TSDemux demux;
+    private final ExtendedSectionDecoder decoder;
+    private final AtomicReferenceArray<Subscription[]> subscriptions;
+    private final TSDemux.Channel[] channels;
+    private final AtomicLong sequence;
+    private final SectionIndex index;
+
+    DefaultSectionBus(TSDemux demux)
+    {
+        this.demux = demux;
+        this.decoder = new ExtendedSectionDecoder();
+        this.subscriptions = new AtomicReferenceArray<>(PID_COUNT);
+        this.channels = new TSDemux.Channel[PID_COUNT];
+        this.sequence = new AtomicLong();
+        this.index = new SectionIndex();
+
+        demux.registerEventListener(this::processDemuxStatus);
+    }
+
+    @Override
+    public void subscribe(int pid, Consumer<SectionEvent> listener)
+    {
+        TSDemux.Channel channel = null;
+        synchronized (this)
+        {
+            Subscription[] current = subscriptions.get(pid);
+            Subscription[] updated = (current == null) ? NO_SUBSCRIPTIONS : current;
+            int i = indexOf(updated, listener);
+            updated = (i < 0) ? Arrays.copyOf(updated, updated.length + 1) : updated.clone();
+            updated[(i < 0) ? updated.length - 1 : i] = new Subscription(listener, sequence.incrementAndGet());
+            subscriptions.set(pid, updated);
+
+            if (channels[pid] == null)
+            {
+                channel = demux.registerSectionChannel(pid, this::publish);
+                channels[pid] = channel;
+            }
+        }
+        if (channel != null)
+            log.debug("[PID {}] 分段总线开始接收分段", pid);
+    }
+
+    @Override
+    public void unsubscribe(int pid, Consumer<SectionEvent> listener)
+    {
+        synchronized (this)
+        {
+            Subscription[] current = subscriptions.get(pid);
+            int i = (current == null) ? -1 : indexOf(current, listener);
+            if (i < 0)
+                return;
+
+            Subscription[] updated = new Subscription[current.length - 1];
+            System.arraycopy(current, 0, updated, 0, i);
+            System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+            subscriptions.set(pid, updated);
+
+            if (updated.length == 0 && channels[pid] != null)
+            {
+                demux.closeChannel(channels[pid]);
+                channels[pid] = null;
+            }
+        }
+    }
+
+    private static int indexOf(Subscription[] subscriptions, Consumer<SectionEvent> listener)
+    {
+        for (int i = 0; i < subscriptions.length; i++)
+        {
+            if (subscriptions[i].listener() == listener)
+                return i;
+        }
+        return -1;
+    }
+
+    private void processDemuxStatus(TSDemuxEvent event)
+    {
+        if (event instanceof DemuxStatus status && status.isRunning())
+            index.clear();
+    }
+
+    private void publish(TSDemuxPayload payload)
+    {
+        int pid = payload.getStreamPID();
+        Subscription[] targets = subscriptions.get(pid);
+        if (targets == null || targets.length == 0 || payload.getType() != TSDemuxPayload.Type.SECTION)
+            return;
+
+        Encoding encoding = payload.getEncoding();
+        if (!decoder.isAttachable(encoding))
+        {
+            // 短格式分段（如TDT/TOT）没有版本号，每次都作为新分段发布。
+            if (encoding.size() < 3)
+                return;
+            SectionEvent event = new SectionEvent(SectionEvent.Kind.NEW, payload,
+                                                  encoding.readUINT8(0),
+                                                  -1, -1, 0, 0, -1, -1);
+            for (Subscription target : targets)
+                deliver(target, event);
+            return;
+        }
+
+        decoder.attach(encoding);
+        int tableId = decoder.getTableID();
+        int tableIdExtension = decoder.getTableIDExtension();
+        int version = decoder.getVersionNumber();
+        int secnum = decoder.getSectionNumber();
+        int lastnum = decoder.getLastSectionNumber();
+        long checksum = decoder.getChecksum();
+
+        if (!decoder.isChecksumCorrect())
+        {
+            SectionEvent event = new SectionEvent(SectionEvent.Kind.CORRUPTED, payload,
+                                                  tableId, tableIdExtension, version, secnum, lastnum,
+                                                  checksum, -1);
+            for (Subscription target : targets)
+                deliver(target, event);
+            return;
+        }
+
+        long position = payload.getFinishPacketCounter();
+        int table = index.lookup(pid, tableId, tableIdExtension, extraKeyOf(tableId, encoding));
+        SectionEvent.Kind kind = index.classify(table, version, secnum, lastnum, checksum);
+        long previousPosition = index.position(table, secnum);
+        long recordedSequence = index.sequence(table, secnum);
+        if (kind == SectionEvent.Kind.REPEATED)
+            index.touch(table, secnum, position);
+        else
+            index.record(table, secnum, checksum, position, sequence.incrementAndGet());
+
+        SectionEvent event = new SectionEvent(kind, payload,
+                                              tableId, tableIdExtension, version, secnum, lastnum,
+                                              checksum,
+                                              (kind == SectionEvent.Kind.REPEATED) ? previousPosition : -1);
+        for (Subscription target : targets)
+        {
+            // 订阅晚于该分段被记录时，订阅者还没有收到过它，只补发一次。
+            boolean unseen = kind == SectionEvent.Kind.REPEATED && target.catchUp(table, secnum, recordedSequence);
+            deliver(target, unseen ? event.withKind(SectionEvent.Kind.NEW) : event);
+        }
+    }
+
+    private void deliver(Subscription target, SectionEvent event)
+    {
+        try
+        {
+            target.listener().accept(event);
+        } catch (Exception ex)
+        {
+            log.error("[PID {}] 处理分段时异常：{}", event.pid(), ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * 表扩展号不足以区分的表：SDT按原始网络号区分，EIT按传输流号和原始网络号区分。
+     */
+    private static long extraKeyOf(int tableId, Encoding encoding)
+    {
+        if ((tableId == 0x42 || tableId == 0x46) && encoding.size() >= 10)
+            return encoding.readUINT16(8);
+        if (tableId >= 0x4E && tableId <= 0x6F && encoding.size() >= 12)
+            return ((long) encoding.readUINT16(8) << 16) | encoding.readUINT16(10);
+        return 0;
+    }
+
+    /**
+     * 分段索引
+     * <p>
+     * 以开放寻址哈希表按 (PID, 表号, 表扩展号, 附加键) 定位子表，每个子表记录当前版本号、最后分段号，
+     * 以及每个分段的校验码、最近出现位置和记录序号，全部以基本类型数组保存。
+     */
+    private static final class SectionIndex
+    {
+        private static final int SECTION_FIELDS = 3;
+        private static final int CHECKSUM = 0;
+        private static final int POSITION = 1;
+        private static final int SEQUENCE = 2;
+
+        private long[] primaryKeys;     // PID(13) | 表号(8) | 表扩展号(16)，-1 表示空位
+        private long[] extraKeys;
+        private int[] slots;            // 哈希位置到子表序号
+        private int[] versions;
+        private int[] lastSections;
+        private long[][] sections;
+        private int tableCount;
+
+        SectionIndex()
+        {
+            clear();
+        }
+
+        void clear()
+        {
+            primaryKeys = new long[256];
+            extraKeys = new long[256];
+            slots = new int[256];
+            Arrays.fill(primaryKeys, -1);
+            versions = new int[64];
+            lastSections = new int[64];
+            sections = new long[64][];
+            tableCount = 0;
+        }
+
+        int lookup(int pid, int tableId, int tableIdExtension, long extraKey)
+        {
+            long primaryKey = ((long) pid << 24) | ((long) tableId << 16) | tableIdExtension;
+            int mask = primaryKeys.length - 1;
+            int h = hash(primaryKey, extraKey) & mask;
+            while (primaryKeys[h] != -1)
+            {
+                if (primaryKeys[h] == primaryKey && extraKeys[h] == extraKey)
+                    return slots[h];
+                h = (h + 1) & mask;
+            }
+
+            int table = tableCount++;
+            if (table == versions.length)
+            {
+                versions = Arrays.copyOf(versions, table * 2);
+                lastSections = Arrays.copyOf(lastSections, table * 2);
+                sections = Arrays.copyOf(sections, table * 2);
+            }
+            versions[table] = -1;
+            lastSections[table] = -1;
+            sections[table] = null;
+
+            primaryKeys[h] = primaryKey;
+            extraKeys[h] = extraKey;
+            slots[h] = table;
+            if (tableCount * 2 > primaryKeys.length)
+                rehash();
+            return table;
+        }
+
+        SectionEvent.Kind classify(int table, int version, int secnum, int lastnum, long checksum)
+        {
+            if (versions[table] == -1)
+            {
+                reset(table, version, Math.max(secnum, lastnum));
+                return SectionEvent.Kind.NEW;
+            }
+            if (versions[table] != version || lastSections[table] != Math.max(secnum, lastnum))
+            {
+                reset(table, version, Math.max(secnum, lastnum));
+                return SectionEvent.Kind.CHANGED;
+            }
+
+            long recorded = sections[table][secnum * SECTION_FIELDS + CHECKSUM];
+            if (recorded == -1)
+                return SectionEvent.Kind.NEW;
+            return (recorded == checksum) ? SectionEvent.Kind.REPEATED : SectionEvent.Kind.CHANGED;
+        }
+
+        long position(int table, int secnum)
+        {
+            return sections[table][secnum * SECTION_FIELDS + POSITION];
+        }
+
+        long sequence(int table, int secnum)
+        {
+            return sections[table][secnum * SECTION_FIELDS + SEQUENCE];
+        }
+
+        void touch(int table, int secnum, long position)
+        {
+            sections[table][secnum * SECTION_FIELDS + POSITION] = position;
+        }
+
+        void record(int table, int secnum, long checksum, long position, long sequence)
+        {
+            long[] records = sections[table];
+            records[secnum * SECTION_FIELDS + CHECKSUM] = checksum;
+            records[secnum * SECTION_FIELDS + POSITION] = position;
+            records[secnum * SECTION_FIELDS + SEQUENCE] = sequence;
+        }
+
+        private void reset(int table, int version, int lastnum)
+        {
+            versions[table] = version;
+            lastSections[table] = lastnum;
+            long[] records = new long[(lastnum + 1) * SECTION_FIELDS];
+            Arrays.fill(records, -1);
+            sections[table] = records;
+        }
+
+        private void rehash()
+        {
+            long[] oldPrimaryKeys = primaryKeys;
+            long[] oldExtraKeys = extraKeys;
+            int[] oldSlots = slots;
+
+            primaryKeys = new long[oldPrimaryKeys.length * 2];
+            extraKeys = new long[primaryKeys.length];
+            slots = new int[primaryKeys.length];
+            Arrays.fill(primaryKeys, -1);
+
+            int mask = primaryKeys.length - 1;
+            for (int i = 0; i < oldPrimaryKeys.length; i++)
+            {
+                if (oldPrimaryKeys[i] == -1)
+                    continue;
+                int h = hash(oldPrimaryKeys[i], oldExtraKeys[i]) & mask;
+                while (primaryKeys[h] != -1)
+                    h = (h + 1) & mask;
+                primaryKeys[h] = oldPrimaryKeys[i];
+                extraKeys[h] = oldExtraKeys[i];
+                slots[h] = oldSlots[i];
+            }
+        }
+
+        private static int hash(long primaryKey, long extraKey)
+        {
+            long h = primaryKey * 0x9E3779B97F4A7C15L + extraKey;
+            h ^= (h >>> 32);
+            h *= 0xBF58476D1CE4E5B9L;
+            return (int) (h ^ (h >>> 29));
+        }
+    }
+}
@@ -114,8 +114,9 @@ public interface M2TKDatabase
 
     List<SIService> getOtherTransportStreamServices();
 
-    SIEvent addSIEvent(int eventId, int transportStreamId, int originalNetworkId, int serviceId);
-
+    /**
+     * 写入EPG事件。同一业务的时间表事件按事件号更新，当前/后续事件按槽位更新，已存在时覆盖原有内容。
+     */
     void updateSIEvent(SIEvent event);
 
     List<SIEvent> listRegularSIEvents(int transportStreamId, int originalNetworkId, int serviceId,
@@ -132,6 +133,12 @@ public interface M2TKDatabase
 
     void addTR290Event(TR290Event event);
 
+    /**
+     * 记录一次TR290错误。错误只做计数和抽样保存，描述在查询时才按 {@code format} 和参数生成，
+     * 因此 {@code format} 应为常量字符串，参数只支持整数（多余的参数被忽略）。
+     */
+    void addTR290Error(String type, int stream, long position, String format, long arg1, long arg2, long arg3);
+
     void clearTR290Events();
 
     List<TR290Event> listTR290Events(String type, int count);
@@ -162,6 +169,23 @@ public interface M2TKDatabase
 
     Map<String, List<PrivateSection>> getPrivateSectionGroups(String... tags);
 
+    Map<String, List<PrivateSection>> getPrivateSectionGroupsAfter(long id);
+
+    Map<String, Integer> countPrivateSectionGroups();
+
+    /**
+     * 保存按过滤条件得到的私有段（标签为 {@code UserPrivate}）。每个PID只保留最近的若干个分段
+     * （首选项 {@code filtering.section.limit-per-stream}），超出时自动淘汰最早的分段。
+     */
+    void addFilteredSection(int pid, long position, byte[] encoding);
+
+    /**
+     * @return 编号大于 {@code id} 的过滤私有段，按编号排列。编号与 {@link #getPrivateSectionGroupsAfter(long)} 的行号无关。
+     */
+    List<PrivateSection> getFilteredSectionsAfter(long id);
+
+    int countFilteredSections();
+
     void addTransportPacket(int pid, long position, byte[] encoding);
 
     void removeTransportPackets(int pid, int count);
@@ -188,14 +212,28 @@ public interface M2TKDatabase
 
     List<FilteringHook> listFilteringHooks(String sourceUri);
 
-    int addStreamDensity(int pid, long position, int count, byte[] density);
-
-    void updateStreamDensity(int densityRef, int count, byte[] density, double avgDensity, long maxDensity, long minDensity);
+    /**
+     * 追加流密度数据（相邻包的间隔）。
+     * @param position 第一个间隔结束时的包位置，后续间隔的位置依次累加
+     * @param intervals 包间隔，只读取前 {@code count} 个，调用后可以复用
+     */
+    void addStreamDensities(int pid, long position, int[] intervals, int count);
 
     List<StreamDensityStats> listStreamDensityStats();
 
     List<StreamDensityBulk> getRecentStreamDensityBulks(int pid, int limit);
 
+    /**
+     * 获取位置范围内的流密度概要，按范围大小自动选择聚合粒度，返回的区间数不超过 {@code maxPoints}。
+     */
+    List<StreamDensityBucket> getStreamDensityOverview(int pid, long fromPosition, long toPosition, int maxPoints);
+
+    /**
+     * 获取数据域的变化计数。每次写操作都会改变对应数据域的计数，计数不变说明数据没有变化。
+     * 变化计数只用于比较是否相等，不同数据源的计数互不重复。
+     */
+    long getChangeCount(ChangeDomain domain);
+
     int update(String sql) throws SQLException;
 
     <T> List<T> query(String sql, Class<T> clazz) throws SQLException;
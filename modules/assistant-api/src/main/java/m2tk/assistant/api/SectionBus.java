@@ -0,0 +1,84 @@
+/*
+ *  Copyright (c) M2TK Project. All rights reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package m2tk.assistant.api;
+
+import m2tk.multiplex.TSDemux;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+/**
+ * 分段总线
+ * <p>
+ * 同一个会话的所有分析器共享一个分段总线。每个PID只在解复用器上注册一个分段通道，
+ * 每个分段只做一次表头解析和CRC校验，并按表号、表扩展号、版本号和分段号归类后发布给订阅者。
+ * 订阅者据此跳过重复分段，不必各自维护版本缓存。
+ * <p>
+ * 分段类别是针对订阅者的：订阅（或重新订阅）之后第一次收到的分段总是 {@link SectionEvent.Kind#NEW}，
+ * 即使其他订阅者已经收到过。
+ */
+public interface SectionBus
+{
+    /**
+     * 订阅指定PID上的分段。同一个监听器重复订阅时，视为重新订阅，此后收到的分段重新从 NEW 开始。
+     * @param pid 分段所在的PID
+     * @param listener 分段监听器
+     */
+    void subscribe(int pid, Consumer<SectionEvent> listener);
+
+    /**
+     * 取消订阅，PID上没有订阅者时关闭对应的分段通道。
+     */
+    void unsubscribe(int pid, Consumer<SectionEvent> listener);
+
+    /**
+     * 生成经指定分发器投递消息的总线视图，用于把分段消息转交到分析器自己的线程上处理。
+     * @param dispatcher 把监听器包装为投递器的函数
+     * @return 总线视图
+     */
+    default SectionBus withDispatcher(UnaryOperator<Consumer<SectionEvent>> dispatcher)
+    {
+        SectionBus target = this;
+        return new SectionBus()
+        {
+            private final Map<Consumer<SectionEvent>, Consumer<SectionEvent>> wrappers = new IdentityHashMap<>();
+
+            @Override
+            public synchronized void subscribe(int pid, Consumer<SectionEvent> listener)
+            {
+                target.subscribe(pid, wrappers.computeIfAbsent(listener, dispatcher));
+            }
+
+            @Override
+            public synchronized void unsubscribe(int pid, Consumer<SectionEvent> listener)
+            {
+                Consumer<SectionEvent> wrapper = wrappers.get(listener);
+                if (wrapper != null)
+                    target.unsubscribe(pid, wrapper);
+            }
+        };
+    }
+
+    /**
+     * 在解复用器上创建分段总线
+     */
+    static SectionBus create(TSDemux demux)
+    {
+        return new DefaultSectionBus(demux);
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ *  Copyright (c) M2TK Project. All rights reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package m2tk.assistant.api;
+
+import m2tk.multiplex.TSDemuxPayload;
+
+/**
+ * 分段总线发布的分段消息
+ * <p>
+ * 表头字段由分段总线解析，订阅者不必重新解码即可判断是否需要处理。
+ * 短格式分段（如TDT）没有表扩展号、版本号和校验码，对应字段为 -1。
+ *
+ * @param kind 分段类别
+ * @param payload 分段数据
+ * @param tableId 表号
+ * @param tableIdExtension 表扩展号
+ * @param versionNumber 版本号
+ * @param sectionNumber 分段号
+ * @param lastSectionNumber 最后分段号
+ * @param checksum CRC32校验码
+ * @param previousPosition 同一分段上一次出现的位置（包计数），只对重复分段（包括订阅后补发为 NEW 的重复分段）有效，其他为 -1
+ */
+public record SectionEvent(Kind kind,
+                           TSDemuxPayload payload,
+                           int tableId,
+                           int tableIdExtension,
+                           int versionNumber,
+                           int sectionNumber,
+                           int lastSectionNumber,
+                           long checksum,
+                           long previousPosition)
+{
+    public enum Kind
+    {
+        /** 订阅者尚未收到过的分段（首次出现，或同版本的新分段，或短格式分段） */
+        NEW,
+        /** 版本号、分段数或内容发生变化的分段 */
+        CHANGED,
+        /** 与订阅者已收到的分段完全相同 */
+        REPEATED,
+        /** CRC32校验错误的分段，不计入分段索引 */
+        CORRUPTED
+    }
+
+    public int pid()
+    {
+        return payload.getStreamPID();
+    }
+
+    public long position()
+    {
+        return payload.getFinishPacketCounter();
+    }
+
+    /**
+     * @return 是否为需要处理的新内容（新分段或变化的分段）
+     */
+    public boolean isUpdate()
+    {
+        return kind == Kind.NEW || kind == Kind.CHANGED;
+    }
+
+    SectionEvent withKind(Kind newKind)
+    {
+        return (newKind == kind)
+               ? this
+               : new SectionEvent(newKind, payload, tableId, tableIdExtension, versionNumber,
+                                  sectionNumber, lastSectionNumber, checksum, previousPosition);
+    }
+
+    /**
+     * @return 分段数据替换为 {@code newPayload} 的消息（如复制分段数据后交给其他线程处理）
+     */
+    public SectionEvent withPayload(TSDemuxPayload newPayload)
+    {
+        return new SectionEvent(kind, newPayload, tableId, tableIdExtension, versionNumber,
+                                sectionNumber, lastSectionNumber, checksum, previousPosition);
+    }
+}
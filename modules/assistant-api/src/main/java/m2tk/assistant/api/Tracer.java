@@ -22,4 +22,13 @@ import org.pf4j.ExtensionPoint;
 public interface Tracer extends ExtensionPoint
 {
     void configure(StreamSource source, TSDemux demux, M2TKDatabase database);
+
+    /**
+     * 使用会话共享的分段总线配置分析器。需要接收PSI/SI分段的分析器应覆盖此方法，通过分段总线订阅分段；
+     * 默认忽略分段总线，按原方式配置。
+     */
+    default void configure(StreamSource source, TSDemux demux, SectionBus bus, M2TKDatabase database)
+    {
+        configure(source, demux, database);
+    }
 }
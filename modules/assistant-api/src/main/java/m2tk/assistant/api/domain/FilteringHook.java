@@ -17,6 +17,14 @@ package m2tk.assistant.api.domain;
 
 import lombok.Data;
 
+/**
+ * 过滤条件
+ * <p>
+ * 私有段过滤器除了PID和table_id（-1 表示不限），还可以指定最多16字节的匹配值、掩码和模式，
+ * 依次对应分段的 table_id 和 section_length 之后的字节（table_id_extension、version_number、section_number ……）。
+ * 掩码为1的位参与比较；模式为1的位要求与匹配值相同，模式为0的位中至少要有一位与匹配值不同。
+ * 未指定模式时全部按正向匹配处理。
+ */
 @Data
 public class FilteringHook
 {
@@ -26,4 +34,8 @@ public class FilteringHook
     private String subjectType;
     private int subjectPid;
     private int subjectTableId;
+
+    private byte[] filterMatch;
+    private byte[] filterMask;
+    private byte[] filterMode;
 }
@@ -32,4 +32,8 @@ public class PCRStats
     private long repetitionErrors;
     private long discontinuityErrors;
     private long accuracyErrors;
+
+    // 精度与间隔的分布直方图（各 11 个区间），统计全部PCR检测结果。
+    private long[] accuracyHistogram;
+    private long[] intervalHistogram;
 }
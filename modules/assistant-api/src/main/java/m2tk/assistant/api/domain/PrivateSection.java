@@ -20,6 +20,7 @@ import lombok.Data;
 @Data
 public class PrivateSection
 {
+    private long id;
     private String tag;
     private int pid;
     private long position;
@@ -13,11 +13,22 @@
  *  See the License for the specific language governing permissions and
  *  limitations under the License.
  */
-package m2tk.assistant.app.kernel.mapper;
+package m2tk.assistant.api.domain;
 
-import com.baomidou.mybatisplus.core.mapper.BaseMapper;
-import m2tk.assistant.app.kernel.entity.DensityStatViewEntity;
+import lombok.Data;
 
-public interface DensityStatViewEntityMapper extends BaseMapper<DensityStatViewEntity>
+/**
+ * 流密度概要：一段连续包间隔的最小值、最大值和平均值。
+ * 起止位置为区间内第一个和最后一个间隔结束时的包位置。
+ */
+@Data
+public class StreamDensityBucket
 {
+    private int pid;
+    private long startPosition;
+    private long endPosition;
+    private long count;
+    private long minDensity;
+    private long maxDensity;
+    private double avgDensity;
 }
@@ -16,7 +16,6 @@
 package m2tk.assistant.api.domain;
 
 import lombok.Data;
-import m2tk.util.BigEndian;
 
 @Data
 public class StreamDensityBulk
@@ -24,17 +23,9 @@ public class StreamDensityBulk
     private int id;
     private int pid;
     private int bulkSize;
-    private byte[] bulkEncoding;
+    private int[] densities;
     private long startPosition;
     private long maxDensity;
     private long minDensity;
     private double avgDensity;
-
-    public final int[] getDensities()
-    {
-        int[] array = new int[bulkSize];
-        for (int i = 0; i < array.length; i ++)
-            array[i] = (int) BigEndian.getUINT32(bulkEncoding, i * 4);
-        return array;
-    }
 }
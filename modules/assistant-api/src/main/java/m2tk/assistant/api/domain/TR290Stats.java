@@ -16,17 +16,20 @@
 package m2tk.assistant.api.domain;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 public class TR290Stats
 {
     private final Map<String, Long> errorCounts;
     private final Map<String, TR290Event> errorLastEvents;
+    private final Map<String, List<TR290StreamStats>> errorStreamStats;
 
     public TR290Stats()
     {
         errorCounts = new HashMap<>();
         errorLastEvents = new HashMap<>();
+        errorStreamStats = new HashMap<>();
     }
 
     public void setStat(String errorType, long count, TR290Event lastEvent)
@@ -35,6 +38,11 @@ public class TR290Stats
         errorLastEvents.put(errorType, lastEvent);
     }
 
+    public void setStreamStats(String errorType, List<TR290StreamStats> streamStats)
+    {
+        errorStreamStats.put(errorType, streamStats);
+    }
+
     public long getErrorCount(String errorType)
     {
         return errorCounts.getOrDefault(errorType, 0L);
@@ -44,4 +52,9 @@ public class TR290Stats
     {
         return errorLastEvents.get(errorType);
     }
-}
\ No newline at end of file
+
+    public List<TR290StreamStats> getErrorStreamStats(String errorType)
+    {
+        return errorStreamStats.getOrDefault(errorType, List.of());
+    }
+}
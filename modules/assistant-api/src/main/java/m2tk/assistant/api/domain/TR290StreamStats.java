@@ -13,11 +13,21 @@
  *  See the License for the specific language governing permissions and
  *  limitations under the License.
  */
-package m2tk.assistant.app.kernel.mapper;
+package m2tk.assistant.api.domain;
 
-import com.baomidou.mybatisplus.core.mapper.BaseMapper;
-import m2tk.assistant.app.kernel.entity.PCRCheckEntity;
+import lombok.Data;
 
-public interface PCRCheckEntityMapper extends BaseMapper<PCRCheckEntity>
+import java.time.OffsetDateTime;
+
+/**
+ * 单个PID上某类TR290错误的汇总
+ */
+@Data
+public class TR290StreamStats
 {
+    private int stream;
+    private long count;
+    private long firstPosition;
+    private long lastPosition;
+    private OffsetDateTime lastTimestamp;
 }
@@ -15,6 +15,19 @@
  */
 package m2tk.assistant.api.event;
 
-public record RefreshInfoViewEvent()
+/**
+ * 界面刷新消息
+ * <p>
+ * 主界面按固定的帧周期发送刷新消息，同一帧内的多次数据变化合并为一次刷新。
+ * 视图收到消息后先检查所展示数据域的变化计数（见 {@link m2tk.assistant.api.ChangeWatch}），没有变化时不必重新查询；
+ * 强制刷新（手动刷新、切换数据源）时总是重新查询。
+ *
+ * @param forced 是否强制刷新
+ */
+public record RefreshInfoViewEvent(boolean forced)
 {
+    public RefreshInfoViewEvent()
+    {
+        this(false);
+    }
 }
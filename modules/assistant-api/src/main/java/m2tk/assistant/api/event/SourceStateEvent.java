@@ -15,9 +15,15 @@
  */
 package m2tk.assistant.api.event;
 
-public record SourceStateEvent(int state)
+public record SourceStateEvent(int state, int sourceRef)
 {
     public static final int UNDEFINED = 0;
     public static final int ATTACHED = 1;
     public static final int DETACHED = 2;
+    public static final int SWITCHED = 3;
+
+    public SourceStateEvent(int state)
+    {
+        this(state, -1);
+    }
 }
@@ -20,12 +20,27 @@ import m2tk.encoding.Encoding;
 
 import java.util.*;
 
+/**
+ * 描述符解码器
+ * <p>
+ * 注册模板时将模板编译为解码计划（{@link SyntaxPlan}），按标签登记在256项的查找表中，扩展描述符（Tag: 0x7F）
+ * 另按扩展标签登记在256项的扩展查找表中。{@link #interpret} 保留了逐个解释字段定义的解码方式，结果与 {@link #decode} 相同。
+ */
 public class DescriptorDecoder
 {
-    private static final Map<String, DescriptorTemplate> TEMPLATE_MAP = new HashMap<>();
+    private static final int EXTENSION_TAG = 0x7F;
+
     private static final DescriptorTemplate DEFAULT_DESCRIPTOR_TEMPLATE;
+    private static final Entry[] DEFAULT_ENTRIES = new Entry[256];
     private static final SyntaxDecoder SYNTAX_DECODER = new SyntaxDecoder();
 
+    private static volatile Entry[] tagEntries = new Entry[256];
+    private static volatile Entry[] extensionEntries = new Entry[256];
+
+    private record Entry(DescriptorTemplate template, SyntaxPlan plan, String displayName)
+    {
+    }
+
     static
     {
         DescriptorTemplate template = new DescriptorTemplate();
@@ -38,17 +53,41 @@ public class DescriptorDecoder
                                              DataFieldDefinition.bytes("descriptor_payload", "descriptor_length", null, FieldPresentation.of("负载数据"))));
 
         DEFAULT_DESCRIPTOR_TEMPLATE = template;
+
+        SyntaxPlan plan = TemplateCompiler.compile(template.getDescriptorSyntax());
+        for (int tag = 0; tag < DEFAULT_ENTRIES.length; tag++)
+            DEFAULT_ENTRIES[tag] = new Entry(template, plan, String.format("私有描述符（Tag: 0x%02X）", tag));
     }
 
     public static void registerTemplate(DescriptorTemplate template)
     {
         Objects.requireNonNull(template);
-        synchronized (TEMPLATE_MAP)
+
+        int tag = template.getTag();
+        int index = (tag == EXTENSION_TAG) ? template.getTagExtension() : tag;
+        if (index < 0 || index > 0xFF)
+            return;
+
+        SyntaxPlan plan = TemplateCompiler.compile(template.getDescriptorSyntax());
+        String displayName = (template.getDisplayName() == null || template.getDisplayName().getText() == null)
+                             ? String.format("私有描述符（Tag: 0x%02X）", tag)
+                             : template.getDisplayName().getText();
+        Entry entry = new Entry(template, plan, displayName);
+
+        synchronized (DescriptorDecoder.class)
         {
-            String key = (template.getTag() == 0x7F)
-                         ? String.format("%02x.%02x", template.getTag(), template.getTagExtension())
-                         : String.format("%02x", template.getTag());
-            TEMPLATE_MAP.put(key, template);
+            // 写时复制，解码线程不加锁读取查找表。
+            if (tag == EXTENSION_TAG)
+            {
+                Entry[] updated = extensionEntries.clone();
+                updated[index] = entry;
+                extensionEntries = updated;
+            } else
+            {
+                Entry[] updated = tagEntries.clone();
+                updated[index] = entry;
+                tagEntries = updated;
+            }
         }
     }
 
@@ -60,9 +99,27 @@ public class DescriptorDecoder
         if (position + length + 2 > Math.min(limit, encoding.size()))
             throw new IndexOutOfBoundsException("字段超出可解码范围");
 
-        int tagExt = encoding.readUINT8(position + 2);
-        String key = (tag == 0x7F) ? String.format("%02x.%02x", tag, tagExt) : String.format("%02x", tag);
-        DescriptorTemplate template = TEMPLATE_MAP.getOrDefault(key, DEFAULT_DESCRIPTOR_TEMPLATE);
+        Entry entry = lookup(encoding, position, tag);
+        SyntaxField descriptor = SyntaxField.descriptor(entry.template().getName(), entry.displayName(), position);
+
+        int decodedBits = entry.plan().decode(encoding, position, limit, descriptor);
+
+        descriptor.setBitLength(decodedBits / 8 * 8);
+        return descriptor;
+    }
+
+    /**
+     * 逐个解释字段定义进行解码（不使用解码计划）。
+     */
+    public SyntaxField interpret(Encoding encoding, int position, int limit)
+    {
+        int tag = encoding.readUINT8(position);
+        int length = encoding.readUINT8(position + 1);
+
+        if (position + length + 2 > Math.min(limit, encoding.size()))
+            throw new IndexOutOfBoundsException("字段超出可解码范围");
+
+        DescriptorTemplate template = lookup(encoding, position, tag).template();
 
         String displayName = String.format("私有描述符（Tag: 0x%02X）", tag);
         SyntaxField descriptor = SyntaxField.descriptor(template.getName(),
@@ -84,4 +141,13 @@ public class DescriptorDecoder
         descriptor.setBitLength((position - start) * 8);
         return descriptor;
     }
+
+    private static Entry lookup(Encoding encoding, int position, int tag)
+    {
+        // 只有扩展描述符才读取扩展标签（长度为零的扩展描述符没有扩展标签）。
+        Entry entry = (tag != EXTENSION_TAG)
+                      ? tagEntries[tag]
+                      : (encoding.readUINT8(position + 1) > 0) ? extensionEntries[encoding.readUINT8(position + 2)] : null;
+        return (entry != null) ? entry : DEFAULT_ENTRIES[tag];
+    }
 }
@@ -0,0 +1,116 @@
+/*
+ *  Copyright (c) M2TK Project. All rights reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package m2tk.assistant.api.template;
+
+import m2tk.assistant.api.template.RichTreeNodeSyntaxPresenter.NodeContext;
+
+import javax.swing.tree.DefaultMutableTreeNode;
+import javax.swing.tree.MutableTreeNode;
+import java.util.function.Function;
+
+/**
+ * 延迟展开的语法树节点
+ * <p>
+ * 节点创建时只保存数据编码和标签，展开（或被选中）时才解码并生成子节点；折叠后可以卸载子节点，
+ * 释放语法树，再次展开时重新解码。节点的用户对象是 {@link NodeContext}，加载后其中的语法对象为根字段。
+ * <p>
+ * 加载和卸载都会改变子节点，调用者负责通知树模型。
+ */
+public class LazySyntaxTreeNode extends DefaultMutableTreeNode
+{
+    private final byte[] encoding;
+    private final Function<byte[], SyntaxField> decoder;
+    private final RichTreeNodeSyntaxPresenter presenter;
+    private boolean loaded;
+
+    public LazySyntaxTreeNode(String label,
+                              byte[] encoding,
+                              Function<byte[], SyntaxField> decoder,
+                              RichTreeNodeSyntaxPresenter presenter)
+    {
+        this.encoding = encoding;
+        this.decoder = decoder;
+        this.presenter = presenter;
+
+        NodeContext context = new NodeContext();
+        context.setLabel(label);
+        setUserObject(context);
+    }
+
+    public NodeContext getContext()
+    {
+        return (NodeContext) getUserObject();
+    }
+
+    public byte[] getEncoding()
+    {
+        return encoding;
+    }
+
+    public boolean isLoaded()
+    {
+        return loaded;
+    }
+
+    /**
+     * 解码并生成子节点，已加载时不做任何处理。
+     * @return 是否新生成了子节点
+     */
+    public boolean load()
+    {
+        if (loaded)
+            return false;
+
+        SyntaxField syntax = decoder.apply(encoding);
+        getContext().setSyntax(syntax);
+        loaded = true;
+
+        DefaultMutableTreeNode rendered = (syntax == null) ? null : (DefaultMutableTreeNode) presenter.render(syntax);
+        if (rendered == null || rendered.isLeaf())
+            return false;
+
+        MutableTreeNode[] children = new MutableTreeNode[rendered.getChildCount()];
+        for (int i = 0; i < children.length; i++)
+            children[i] = (MutableTreeNode) rendered.getChildAt(i);
+        rendered.removeAllChildren();
+        for (MutableTreeNode child : children)
+            add(child);
+        return true;
+    }
+
+    /**
+     * 卸载子节点和语法树，只保留数据编码和标签。
+     * @return 是否移除了子节点
+     */
+    public boolean unload()
+    {
+        if (!loaded)
+            return false;
+
+        boolean hadChildren = !super.isLeaf();
+        removeAllChildren();
+        getContext().setSyntax(null);
+        loaded = false;
+        return hadChildren;
+    }
+
+    @Override
+    public boolean isLeaf()
+    {
+        // 未加载时显示展开图标，加载后按实际子节点判断。
+        return loaded && super.isLeaf();
+    }
+}
@@ -52,7 +52,10 @@ public class PlainTreeNodeSyntaxPresenter
         return root;
     }
 
-    private String renderLabel(SyntaxField field)
+    /**
+     * 生成单个字段的标签（不含子字段）
+     */
+    public String renderLabel(SyntaxField field)
     {
         return switch (field.getType())
         {
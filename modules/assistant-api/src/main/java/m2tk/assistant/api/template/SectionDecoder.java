@@ -20,12 +20,25 @@ import m2tk.encoding.Encoding;
 
 import java.util.*;
 
+/**
+ * 分段解码器
+ * <p>
+ * 注册模板时将模板编译为解码计划（{@link SyntaxPlan}），并按表号登记在256项的查找表中；
+ * 解码时按表号直接取出解码计划执行。{@link #interpret} 保留了逐个解释字段定义的解码方式，结果应与 {@link #decode} 相同，
+ * 两者的一致性由 assistant-bench 中的 TemplateConsistencyCheck 按全部内置模板检查。
+ */
 public class SectionDecoder
 {
-    private static final Map<String, TableTemplate> TEMPLATE_MAP = new HashMap<>();
     private static final TableTemplate DEFAULT_TABLE_TEMPLATE;
+    private static final SyntaxPlan DEFAULT_TABLE_PLAN;
+    private static final String[] DEFAULT_DISPLAY_NAMES = new String[256];
     private static final SyntaxDecoder SYNTAX_DECODER = new SyntaxDecoder();
 
+    private static volatile Entry[] entries = new Entry[256];
+
+    private record Entry(TableTemplate template, SyntaxPlan plan, String displayName)
+    {
+    }
 
     static
     {
@@ -41,18 +54,32 @@ public class SectionDecoder
         template.setUniqueKey(UniqueKey.of("table_id"));
 
         DEFAULT_TABLE_TEMPLATE = template;
+        DEFAULT_TABLE_PLAN = TemplateCompiler.compile(template.getTableSyntax());
+        for (int i = 0; i < DEFAULT_DISPLAY_NAMES.length; i++)
+            DEFAULT_DISPLAY_NAMES[i] = String.format("私有数据段（TableID: 0x%02X）", i);
     }
 
     public static void registerTemplate(TableTemplate template)
     {
         Objects.requireNonNull(template);
-        synchronized (TEMPLATE_MAP)
+
+        SyntaxPlan plan = TemplateCompiler.compile(template.getTableSyntax());
+        synchronized (SectionDecoder.class)
         {
+            // 写时复制，解码线程不加锁读取查找表。
+            Entry[] updated = entries.clone();
             for (TableId tableId : template.getTableIds())
             {
-                String key = String.format("%02x", tableId.getId());
-                TEMPLATE_MAP.put(key, template);
+                int id = tableId.getId();
+                if (id < 0 || id >= updated.length)
+                    continue;
+
+                String displayName = (tableId.getDisplayName() == null || tableId.getDisplayName().getText() == null)
+                                     ? DEFAULT_DISPLAY_NAMES[id]
+                                     : tableId.getDisplayName().getText();
+                updated[id] = new Entry(template, plan, displayName);
             }
+            entries = updated;
         }
     }
 
@@ -64,8 +91,31 @@ public class SectionDecoder
         if (position + sectionLength + 3 > Math.min(limit, encoding.size()))
             throw new IndexOutOfBoundsException("字段超出可解码范围");
 
-        String key = String.format("%02x", tableId);
-        TableTemplate template = TEMPLATE_MAP.getOrDefault(key, DEFAULT_TABLE_TEMPLATE);
+        Entry entry = entries[tableId];
+        SyntaxField section = (entry == null)
+                              ? SyntaxField.section(DEFAULT_TABLE_TEMPLATE.getName(), DEFAULT_DISPLAY_NAMES[tableId], DEFAULT_TABLE_TEMPLATE.getGroup(), position)
+                              : SyntaxField.section(entry.template().getName(), entry.displayName(), entry.template().getGroup(), position);
+
+        SyntaxPlan plan = (entry == null) ? DEFAULT_TABLE_PLAN : entry.plan();
+        int decodedBits = plan.decode(encoding, position, limit, section);
+
+        section.setBitLength(decodedBits / 8 * 8);
+        return section;
+    }
+
+    /**
+     * 逐个解释字段定义进行解码（不使用解码计划）。
+     */
+    public SyntaxField interpret(Encoding encoding, int position, int limit)
+    {
+        int tableId = encoding.readUINT8(position);
+        int sectionLength = encoding.readUINT16(position + 1) & 0x0FFF;
+
+        if (position + sectionLength + 3 > Math.min(limit, encoding.size()))
+            throw new IndexOutOfBoundsException("字段超出可解码范围");
+
+        Entry entry = entries[tableId];
+        TableTemplate template = (entry == null) ? DEFAULT_TABLE_TEMPLATE : entry.template();
 
         String displayName = String.format("私有数据段（TableID: 0x%02X）", tableId);
         List<TableId> tableIds = template.getTableIds();
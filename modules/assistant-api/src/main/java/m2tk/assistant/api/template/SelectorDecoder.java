@@ -20,30 +20,65 @@ import m2tk.assistant.api.template.definition.SelectorTemplate;
 import m2tk.assistant.api.template.definition.SyntaxFieldDefinition;
 import m2tk.encoding.Encoding;
 
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * 选择器解码器
+ * <p>
+ * 注册模板时将模板编译为解码计划（{@link SyntaxPlan}）。{@link #interpret} 保留了逐个解释字段定义的解码方式，
+ * 结果与 {@link #decode} 相同。
+ */
 public class SelectorDecoder
 {
-    private static final Map<String, SelectorTemplate> TEMPLATE_MAP = new HashMap<>();
+    private static final Map<String, Entry> TEMPLATE_MAP = new ConcurrentHashMap<>();
     private static final SyntaxDecoder SYNTAX_DECODER = new SyntaxDecoder();
 
+    private record Entry(SelectorTemplate template, SyntaxPlan plan, String displayName)
+    {
+    }
+
     public static void registerTemplate(SelectorTemplate template)
     {
         Objects.requireNonNull(template);
-        synchronized (TEMPLATE_MAP)
-        {
-            TEMPLATE_MAP.put(template.getName(), template);
-        }
+
+        SyntaxPlan plan = TemplateCompiler.compile(template.getSelectorSyntax());
+        String displayName = Optional.ofNullable(template.getDisplayName())
+                                     .map(Label::getText)
+                                     .orElse(template.getName());
+        TEMPLATE_MAP.put(template.getName(), new Entry(template, plan, displayName));
     }
 
     public SyntaxField decode(String name, Encoding encoding, int position, int limit, SyntaxField parent)
     {
-        SelectorTemplate template = TEMPLATE_MAP.get(name);
-        if (template == null)
+        Entry entry = TEMPLATE_MAP.get(name);
+        if (entry == null)
+            throw new IllegalArgumentException("无效的选择器名称");
+
+        if (position > Math.min(limit, encoding.size()))
+            throw new IndexOutOfBoundsException("字段超出可解码范围");
+
+        SyntaxField selector = SyntaxField.selector(entry.template().getName(), entry.displayName(), position);
+        if (parent != null)
+            parent.appendChild(selector);
+
+        int decodedBits = entry.plan().decode(encoding, position, limit, selector);
+
+        selector.setBitLength(decodedBits / 8 * 8);
+        return selector;
+    }
+
+    /**
+     * 逐个解释字段定义进行解码（不使用解码计划）。
+     */
+    public SyntaxField interpret(String name, Encoding encoding, int position, int limit, SyntaxField parent)
+    {
+        Entry entry = TEMPLATE_MAP.get(name);
+        if (entry == null)
             throw new IllegalArgumentException("无效的选择器名称");
+        SelectorTemplate template = entry.template();
 
         if (position > Math.min(limit, encoding.size()))
             throw new IndexOutOfBoundsException("字段超出可解码范围");
@@ -131,7 +131,7 @@ public class SyntaxDecoder
                     throw new IndexOutOfBoundsException("Descriptor字段超出可解码范围");
                 }
 
-                SyntaxField field = DESCRIPTOR_DECODER.decode(encoding, position, position + len + 2);
+                SyntaxField field = DESCRIPTOR_DECODER.interpret(encoding, position, position + len + 2);
                 if (parent != null)
                     parent.appendChild(field);
 
@@ -181,7 +181,7 @@ public class SyntaxDecoder
                     throw new IndexOutOfBoundsException("selector字段超出可解码范围");
                 }
 
-                SyntaxField field = SELECTOR_DECODER.decode(selector.getName(), encoding, position, position + bytes, parent);
+                SyntaxField field = SELECTOR_DECODER.interpret(selector.getName(), encoding, position, position + bytes, parent);
 //                if (parent != null)
 //                    parent.appendChild(field);
 
@@ -139,6 +139,24 @@ public class SyntaxField
                                labelFormat, labelColor, bold);
     }
 
+    /**
+     * 供解码计划使用的可见字段构造方法，颜色参数已在模板编译时校验，这里不再重复校验。
+     */
+    static SyntaxField compiled(Type type, String name, Object rawValue, String mappedValue,
+                                String prefixText, String prefixColor,
+                                String labelFormat, String labelColor, boolean bold,
+                                int position, int bitOffset)
+    {
+        Objects.requireNonNull(type);
+        Objects.requireNonNull(name);
+        Objects.requireNonNull(rawValue);
+
+        return new SyntaxField(type, name, null, rawValue, mappedValue, true,
+                               position, bitOffset,
+                               prefixText, prefixColor,
+                               labelFormat, labelColor, bold);
+    }
+
     private SyntaxField(Type type,
                         String name,
                         String group,
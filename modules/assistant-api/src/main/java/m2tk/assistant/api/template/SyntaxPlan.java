@@ -0,0 +1,821 @@
+/*
+ *  Copyright (c) M2TK Project. All rights reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package m2tk.assistant.api.template;
+
+import lombok.extern.slf4j.Slf4j;
+import m2tk.assistant.api.template.definition.ValueMapping;
+import m2tk.dvb.DVB;
+import m2tk.encoding.Encoding;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * 模板解码计划
+ * <p>
+ * 由 {@link TemplateCompiler} 从模板的字段定义编译而来。字段类型、长度、掩码、展示参数和值映射表都在编译时确定；
+ * 长度和条件引用在编译时解析为变量槽位，解码时按槽位取值，只有引用模板外部的字段（如选择器引用上层字段）时才回退到
+ * 语法树查找。生成的语法树与 {@link SyntaxDecoder} 解释执行的结果相同。
+ * <p>
+ * 解码计划是不可变的，可以在多个线程中同时使用。
+ */
+@Slf4j
+final class SyntaxPlan
+{
+    private static final SelectorDecoder SELECTOR_DECODER = new SelectorDecoder();
+    private static final DescriptorDecoder DESCRIPTOR_DECODER = new DescriptorDecoder();
+
+    private final Step[] steps;
+    private final int slotCount;
+    private final int scopeCount;
+
+    SyntaxPlan(Step[] steps, int slotCount, int scopeCount)
+    {
+        this.steps = steps;
+        this.slotCount = slotCount;
+        this.scopeCount = scopeCount;
+    }
+
+    /**
+     * 按计划解码，解码后的字段添加到根节点上。
+     * @return 解码的位长度
+     */
+    int decode(Encoding encoding, int position, int limit, SyntaxField root)
+    {
+        Frame frame = new Frame(slotCount, scopeCount);
+        frame.enter(0);
+        return run(steps, frame, encoding, position, 0, limit, root);
+    }
+
+    static int run(Step[] steps, Frame frame,
+                   Encoding encoding, int position, int bitOffset, int limit,
+                   SyntaxField parent)
+    {
+        int totalBits = 0;
+        for (Step step : steps)
+        {
+            checkArguments(encoding, position, bitOffset, limit);
+
+            int decodedBits = step.decode(frame, encoding, position, bitOffset, limit, parent);
+
+            totalBits += decodedBits;
+            position = position + (bitOffset + decodedBits) / 8;
+            bitOffset = (bitOffset + decodedBits) % 8;
+        }
+        return totalBits;
+    }
+
+    private static void checkArguments(Encoding encoding, int position, int bitOffset, int limit)
+    {
+        if (encoding == null || encoding.size() == 0)
+            throw new IllegalArgumentException("输入编码为空");
+        if (position < 0 || position > encoding.size())
+            throw new IllegalArgumentException("无效的起始位置：" + position);
+        if (limit < position || limit > encoding.size())
+            throw new IllegalArgumentException("无效的限制位置：" + limit);
+        if (bitOffset < 0 || bitOffset > 7)
+            throw new IllegalArgumentException("无效的位偏移量：" + bitOffset);
+    }
+
+    /**
+     * 单次解码的变量表：每个槽位保存一个数值字段的最新值，以及写入时所在作用域实例的编号。
+     * 循环体每开始一次就是一个新的作用域实例，之前写入的槽位随之失效，与语法树查找的可见范围一致。
+     */
+    static final class Frame
+    {
+        private final long[] values;
+        private final int[] valueGenerations;
+        private final int[] scopeGenerations;
+        private int generation;
+        private long value;
+
+        Frame(int slotCount, int scopeCount)
+        {
+            values = new long[slotCount];
+            valueGenerations = new int[slotCount];
+            scopeGenerations = new int[scopeCount];
+        }
+
+        void enter(int scope)
+        {
+            scopeGenerations[scope] = ++generation;
+        }
+
+        void set(int slot, int scope, long value)
+        {
+            values[slot] = value;
+            valueGenerations[slot] = scopeGenerations[scope];
+        }
+
+        /**
+         * 查找引用字段的值，找到时可通过 {@link #value()} 读取。
+         */
+        boolean resolve(Ref ref, SyntaxField parent)
+        {
+            for (int i = 0; i < ref.slots.length; i++)
+            {
+                int slot = ref.slots[i];
+                int generation = valueGenerations[slot];
+                if (generation != 0 && generation == scopeGenerations[ref.scopes[i]])
+                {
+                    value = values[slot];
+                    return true;
+                }
+            }
+
+            // 模板内没有可用的字段（或引用了非数值字段），按语法树查找，与解释执行相同。
+            SyntaxField node = findPrerequisiteField(parent, ref.name);
+            if (node == null)
+                return false;
+            value = node.getValueAsLong();
+            return true;
+        }
+
+        long value()
+        {
+            return value;
+        }
+
+        private static SyntaxField findPrerequisiteField(SyntaxField parent, String field)
+        {
+            if (parent == null)
+                return null;
+
+            SyntaxField node = parent.findLastChild(field);
+            return (node != null) ? node : parent.findUpstream(field);
+        }
+    }
+
+    /**
+     * 编译后的字段引用：按由内向外的顺序列出可能提供该字段的槽位。
+     */
+    static final class Ref
+    {
+        final String name;
+        final int[] slots;
+        final int[] scopes;
+
+        Ref(String name, int[] slots, int[] scopes)
+        {
+            this.name = name;
+            this.slots = slots;
+            this.scopes = scopes;
+        }
+    }
+
+    /**
+     * 编译后的字段长度：直接长度、引用长度或隐含长度（到边界为止）。
+     */
+    record Length(int value, boolean indirect, boolean implicit, Ref ref, int correction)
+    {
+        /**
+         * @param available 隐含长度时的可用长度
+         */
+        int resolve(Frame frame, String kind, String name, int available, SyntaxField parent)
+        {
+            if (!indirect)
+                return value;
+
+            if (!implicit && parent == null)
+            {
+                log.error("[{}] 无法确定{}字段长度", name, kind);
+                throw new IllegalArgumentException("无法确定" + kind + "字段长度");
+            }
+
+            int length;
+            if (implicit)
+            {
+                length = available;
+            } else
+            {
+                if (!frame.resolve(ref, parent))
+                {
+                    log.error("[{}] 找不到{}引用的长度字段", name, kind);
+                    throw new IllegalArgumentException("无法确定" + kind + "字段长度");
+                }
+                length = Math.toIntExact(frame.value());
+            }
+
+            // 当使用引用长度时，有时候需要做额外的调整（删除前导或后续内容）
+            return length + correction;
+        }
+    }
+
+    /**
+     * 编译后的展示参数。颜色参数在编译时校验，创建字段时不再重复校验。
+     */
+    record Style(String prefixText, String prefixColor, String labelFormat, String labelColor, boolean bold)
+    {
+    }
+
+    /**
+     * 编译后的值映射：位长度不超过8的字段预先计算全部取值的映射结果，按数值下标查表；
+     * 其他字段按定义顺序逐个匹配。
+     */
+    static final class Mapping
+    {
+        private final ValueMapping[] mappings;
+        private final String[] table;
+
+        Mapping(ValueMapping[] mappings, String[] table)
+        {
+            this.mappings = mappings;
+            this.table = table;
+        }
+
+        String map(long value)
+        {
+            if (table != null && value >= 0 && value < table.length)
+                return table[(int) value];
+
+            for (ValueMapping mapping : mappings)
+            {
+                String text = mapping.map(value);
+                if (text != null)
+                    return text;
+            }
+            return ValueMapping.raw(value);
+        }
+    }
+
+    interface Step
+    {
+        /**
+         * @return 字段编码所占的位长度
+         */
+        int decode(Frame frame, Encoding encoding, int position, int bitOffset, int limit, SyntaxField parent);
+    }
+
+    /**
+     * 编译时就能确定会失败的字段（如定义不完整），解码到该字段时抛出与解释执行相同的异常。
+     */
+    record FailStep(RuntimeException cause) implements Step
+    {
+        @Override
+        public int decode(Frame frame, Encoding encoding, int position, int bitOffset, int limit, SyntaxField parent)
+        {
+            throw cause;
+        }
+    }
+
+    abstract static class DataStep implements Step
+    {
+        final SyntaxField.Type type;
+        final String name;
+        final Style style;
+        final int slot;
+        final int scope;
+
+        DataStep(SyntaxField.Type type, String name, Style style, int slot, int scope)
+        {
+            this.type = type;
+            this.name = name;
+            this.style = style;
+            this.slot = slot;
+            this.scope = scope;
+        }
+
+        SyntaxField append(SyntaxField parent, Object value, String mappedValue, int position, int bitOffset, int bitLength)
+        {
+            SyntaxField field = (style == null)
+                                ? SyntaxField.invisible(type, name, value, position, bitOffset)
+                                : SyntaxField.compiled(type, name, value, mappedValue,
+                                                       style.prefixText(), style.prefixColor(),
+                                                       style.labelFormat(), style.labelColor(), style.bold(),
+                                                       position, bitOffset);
+            field.setBitLength(bitLength);
+
+            if (parent != null)
+                parent.appendChild(field);
+            return field;
+        }
+
+        void bind(Frame frame, long value)
+        {
+            if (slot >= 0)
+                frame.set(slot, scope, value);
+        }
+    }
+
+    /**
+     * bslbf字段：起始位偏移在编译时可以确定时，预先计算读取的字节数和掩码。
+     */
+    static final class BitsStep extends DataStep
+    {
+        private final int bitLength;
+        private final Mapping mapping;
+        private final int staticOffset;
+        private final int staticBytes;
+        private final int staticTailZeros;
+        private final long staticMask;
+
+        BitsStep(String name, Style style, int slot, int scope, int bitLength, Mapping mapping, int staticOffset)
+        {
+            super(SyntaxField.Type.BITS, name, style, slot, scope);
+            this.bitLength = bitLength;
+            this.mapping = mapping;
+            this.staticOffset = staticOffset;
+
+            int bits = Math.max(0, staticOffset) + bitLength;
+            staticBytes = bits / 8 + ((bits % 8 > 0) ? 1 : 0);
+            staticTailZeros = staticBytes * 8 - bits;
+            staticMask = (staticBytes > 1) ? (0xFFFFFFFFFFFFFFFFL >>> (72 - bits)) << staticTailZeros : 0;
+        }
+
+        @Override
+        public int decode(Frame frame, Encoding encoding, int position, int bitOffset, int limit, SyntaxField parent)
+        {
+            int bits = bitOffset + bitLength;
+            int bytes;
+            int tailZeros;
+            long mask;
+            if (bitOffset == staticOffset)
+            {
+                bytes = staticBytes;
+                tailZeros = staticTailZeros;
+                mask = staticMask;
+            } else
+            {
+                bytes = bits / 8 + ((bits % 8 > 0) ? 1 : 0);
+                tailZeros = bytes * 8 - bits;
+                mask = (bytes > 1) ? (0xFFFFFFFFFFFFFFFFL >>> (72 - bits)) << tailZeros : 0;
+            }
+
+            if (position + bytes > limit)
+            {
+                log.error("[{}] bslbf字段超限：start={}, limit={}, field_size={}", name, position, limit, bytes);
+                throw new IndexOutOfBoundsException("bslbf字段超出可解码范围");
+            }
+
+            long byte1 = encoding.readBits(position, 0xFF >>> bitOffset);
+            long value = byte1 >>> tailZeros;
+            if (bytes > 1)
+                value = (byte1 << (bits - 8)) | encoding.readBits(position + 1, mask);
+
+            append(parent, value, (mapping == null) ? null : mapping.map(value), position, bitOffset, bitLength);
+            bind(frame, value);
+            return bitLength;
+        }
+    }
+
+    static final class NumberStep extends DataStep
+    {
+        private final int bitLength;
+        private final long mask;
+        private final Mapping mapping;
+
+        NumberStep(String name, Style style, int slot, int scope, int bitLength, Mapping mapping)
+        {
+            super(SyntaxField.Type.NUMBER, name, style, slot, scope);
+            this.bitLength = bitLength;
+            this.mask = 0xFFFFFFFFFFFFFFFFL >>> (64 - bitLength);
+            this.mapping = mapping;
+        }
+
+        @Override
+        public int decode(Frame frame, Encoding encoding, int position, int bitOffset, int limit, SyntaxField parent)
+        {
+            int bits = bitOffset + bitLength;
+            if (bits % 8 != 0)
+            {
+                log.error("[{}] uimsbf字段没有向右对齐：start={}, bits={}, unaligned={}", name, bitOffset, bitLength, bits % 8);
+                throw new IllegalStateException("uimsbf字段没有向右对齐");
+            }
+
+            int bytes = bits / 8;
+            if (position + bytes > limit)
+            {
+                log.error("[{}] uimsbf字段超限：start={}, limit={}, field_size={}", name, position, limit, bytes);
+                throw new IndexOutOfBoundsException("uimsbf字段超出可解码范围");
+            }
+
+            long value = encoding.readBits(position, mask);
+
+            append(parent, value, (mapping == null) ? null : mapping.map(value), position, bitOffset, bitLength);
+            bind(frame, value);
+            return bitLength;
+        }
+    }
+
+    static final class ChecksumStep extends DataStep
+    {
+        private final int bitLength;
+        private final long mask;
+
+        ChecksumStep(String name, Style style, int slot, int scope, int bitLength)
+        {
+            super(SyntaxField.Type.CHECKSUM, name, style, slot, scope);
+            this.bitLength = bitLength;
+            this.mask = 0xFFFFFFFFFFFFFFFFL >>> (64 - bitLength);
+        }
+
+        @Override
+        public int decode(Frame frame, Encoding encoding, int position, int bitOffset, int limit, SyntaxField parent)
+        {
+            if (bitOffset != 0)
+            {
+                log.error("[{}] checksum字段没有向左对齐", name);
+                throw new IllegalStateException("checksum字段没有向左对齐");
+            }
+
+            int bytes = bitLength / 8;
+            if (position + bytes > limit)
+            {
+                log.error("[{}] checksum字段超限：start={}, limit={}, field_size={}", name, position, limit, bytes);
+                throw new IndexOutOfBoundsException("checksum字段超出可解码范围");
+            }
+
+            long value = encoding.readBits(position, mask);
+            String mapping = (style == null) ? null : toHex(value, bytes * 2);
+
+            append(parent, value, mapping, position, bitOffset, bitLength);
+            bind(frame, value);
+            return bitLength;
+        }
+
+        private static String toHex(long value, int digits)
+        {
+            String hex = Long.toHexString(value);
+            return (hex.length() >= digits) ? hex : "0".repeat(digits - hex.length()) + hex;
+        }
+    }
+
+    static final class NibblesStep extends DataStep
+    {
+        private final Length length;
+
+        NibblesStep(String name, Style style, Length length)
+        {
+            super(SyntaxField.Type.NIBBLES, name, style, -1, 0);
+            this.length = length;
+        }
+
+        @Override
+        public int decode(Frame frame, Encoding encoding, int position, int bitOffset, int limit, SyntaxField parent)
+        {
+            if (bitOffset != 0 && bitOffset != 4)
+            {
+                log.error("[{}] nibbles字段未对齐：bitOffset={}", name, bitOffset);
+                throw new IllegalStateException("错误的nibbles字段起始位置（未对齐）");
+            }
+
+            int nibbleCount = length.resolve(frame, "nibbles", name, limit - position - bitOffset / 4, parent);
+            int bitLength = nibbleCount * 4;
+
+            nibbleCount = nibbleCount + bitOffset / 4;
+            int bytes = nibbleCount / 2 + nibbleCount % 2;
+            if (position + bytes > limit)
+            {
+                log.error("[{}] nibbles字段超限：start={}, limit={}, field_size={}", name, position, limit, bytes);
+                throw new IndexOutOfBoundsException("nibbles字段超出可解码范围");
+            }
+
+            int[] nibbles = encoding.readNibbles(position, nibbleCount);
+            int[] value = Arrays.copyOfRange(nibbles,
+                                             (bitOffset == 0) ? 0 : 1,
+                                             (bitOffset == 0) ? nibbles.length : nibbles.length - 1);
+
+            append(parent, value, null, position, bitOffset, bitLength);
+            return bitLength;
+        }
+    }
+
+    static final class OctetsStep extends DataStep
+    {
+        private final Length length;
+
+        OctetsStep(String name, Style style, Length length)
+        {
+            super(SyntaxField.Type.OCTETS, name, style, -1, 0);
+            this.length = length;
+        }
+
+        @Override
+        public int decode(Frame frame, Encoding encoding, int position, int bitOffset, int limit, SyntaxField parent)
+        {
+            if (bitOffset != 0)
+            {
+                log.error("[{}] octets字段未对齐：bitOffset={}", name, bitOffset);
+                throw new IllegalStateException("错误的octets字段起始位置（未对齐）");
+            }
+
+            int bytes = length.resolve(frame, "octets", name, limit - position, parent);
+            if (position + bytes > limit)
+            {
+                log.error("[{}] octets字段超限：start={}, limit={}, field_size={}", name, position, limit, bytes);
+                throw new IndexOutOfBoundsException("octets字段超出可解码范围");
+            }
+
+            int[] value = encoding.readOctets(position, bytes);
+
+            append(parent, value, null, position, bitOffset, bytes * 8);
+            return bytes * 8;
+        }
+    }
+
+    static final class TextStep extends DataStep
+    {
+        private final Length length;
+        private final boolean dvbText;
+        private final Charset charset;
+
+        TextStep(String name, Style style, Length length, boolean dvbText, Charset charset)
+        {
+            super(SyntaxField.Type.TEXT, name, style, -1, 0);
+            this.length = length;
+            this.dvbText = dvbText;
+            this.charset = charset;
+        }
+
+        @Override
+        public int decode(Frame frame, Encoding encoding, int position, int bitOffset, int limit, SyntaxField parent)
+        {
+            if (bitOffset != 0)
+            {
+                log.error("[{}] text字段未对齐：bitOffset={}", name, bitOffset);
+                throw new IllegalStateException("错误的text字段起始位置（未对齐）");
+            }
+
+            int bytes = length.resolve(frame, "text", name, limit - position, parent);
+            if (position + bytes > limit)
+            {
+                log.error("[{}] text字段超限：start={}, limit={}, field_size={}", name, position, limit, bytes);
+                throw new IndexOutOfBoundsException("text字段超出可解码范围");
+            }
+
+            byte[] data = encoding.getRange(position, position + bytes);
+            String value = dvbText ? DVB.decodeString(data) : new String(data, charset);
+
+            append(parent, value, null, position, bitOffset, bytes * 8);
+            return bytes * 8;
+        }
+    }
+
+    /**
+     * 条件字段：比较操作和常量在编译时确定，满足条件的分支与当前字段处于同一层级。
+     */
+    static final class ConditionStep implements Step
+    {
+        enum Operation
+        {
+            EQUALS, NOT_EQUAL, LARGER_THAN, SMALLER_THAN, EQUALS_ANY, NOT_EQUAL_ALL,
+            /** 未知的比较类型，总是不满足条件 */
+            NONE,
+            /** 无效的比较操作，解码时报错 */
+            INVALID
+        }
+
+        private final Ref ref;
+        private final Operation operation;
+        private final String operationName;
+        private final long value;
+        private final long[] values;
+        private final Step[] thenPart;
+        private final Step[] elsePart;
+
+        ConditionStep(Ref ref, Operation operation, String operationName, long value, long[] values,
+                      Step[] thenPart, Step[] elsePart)
+        {
+            this.ref = ref;
+            this.operation = operation;
+            this.operationName = operationName;
+            this.value = value;
+            this.values = values;
+            this.thenPart = thenPart;
+            this.elsePart = elsePart;
+        }
+
+        @Override
+        public int decode(Frame frame, Encoding encoding, int position, int bitOffset, int limit, SyntaxField parent)
+        {
+            if (!frame.resolve(ref, parent))
+            {
+                log.error("无法获取条件引用字段：{}", ref.name);
+                throw new IllegalStateException("无法获取条件引用字段：" + ref.name);
+            }
+
+            long fieldValue = frame.value();
+            boolean matches = switch (operation)
+            {
+                case EQUALS -> fieldValue == value;
+                case NOT_EQUAL -> fieldValue != value;
+                case LARGER_THAN -> fieldValue > value;
+                case SMALLER_THAN -> fieldValue < value;
+                case EQUALS_ANY -> contains(values, fieldValue);
+                case NOT_EQUAL_ALL -> !contains(values, fieldValue);
+                case NONE -> false;
+                case INVALID -> throw new IllegalArgumentException("无效的比较操作：" + operationName);
+            };
+
+            Step[] body = matches ? thenPart : elsePart;
+            return (body == null) ? 0 : run(body, frame, encoding, position, bitOffset, limit, parent);
+        }
+
+        private static boolean contains(long[] values, long value)
+        {
+            for (long v : values)
+            {
+                if (v == value)
+                    return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * 循环字段：循环体是一个独立的作用域，每个循环体开始时进入新的作用域实例。
+     */
+    static final class LoopStep implements Step
+    {
+        private final String name;
+        private final boolean countMode;
+        private final boolean implicit;
+        private final Ref ref;
+        private final int correction;
+        private final String headerText;
+        private final String emptyText;
+        private final String fixedEntryText;
+        private final String indexEntryText;
+        private final boolean descriptorLoop;
+        private final Step[] body;
+        private final int bodyScope;
+
+        LoopStep(String name, boolean countMode, boolean implicit, Ref ref, int correction,
+                 String headerText, String emptyText, String fixedEntryText, String indexEntryText,
+                 boolean descriptorLoop, Step[] body, int bodyScope)
+        {
+            this.name = name;
+            this.countMode = countMode;
+            this.implicit = implicit;
+            this.ref = ref;
+            this.correction = correction;
+            this.headerText = headerText;
+            this.emptyText = emptyText;
+            this.fixedEntryText = fixedEntryText;
+            this.indexEntryText = indexEntryText;
+            this.descriptorLoop = descriptorLoop;
+            this.body = body;
+            this.bodyScope = bodyScope;
+        }
+
+        @Override
+        public int decode(Frame frame, Encoding encoding, int position, int bitOffset, int limit, SyntaxField parent)
+        {
+            if (bitOffset != 0)
+            {
+                log.error("[{}] Loop字段未对齐：bitOffset={}", name, bitOffset);
+                throw new IllegalStateException("错误的Loop字段起始位置（未对齐）");
+            }
+
+            SyntaxField loopRoot;
+            if (headerText == null)
+                loopRoot = parent;
+            else
+            {
+                loopRoot = SyntaxField.loopHeader(name, headerText, position, bitOffset);
+                parent.appendChild(loopRoot);
+            }
+
+            int count = 0;
+            int finish = 0;
+            if (countMode)
+            {
+                if (!frame.resolve(ref, parent))
+                {
+                    log.error("[{}] 无法获取循环次数", name);
+                    throw new IllegalStateException("无法获取循环次数");
+                }
+                count = Math.toIntExact(frame.value());
+            } else
+            {
+                int byteLength = limit - position;
+                if (!implicit)
+                {
+                    if (!frame.resolve(ref, parent))
+                    {
+                        log.error("[{}] 无法获取循环长度", name);
+                        throw new IllegalStateException("无法获取循环长度");
+                    }
+                    byteLength = Math.toIntExact(frame.value());
+                }
+                byteLength += correction;
+                count = byteLength;
+                finish = position + byteLength;
+            }
+
+            if (count == 0)
+            {
+                if (parent != loopRoot)
+                    parent.removeChild(loopRoot);
+                parent.appendChild(SyntaxField.loopEntryHeader("loop_entry", emptyText, position, bitOffset));
+                return 0;
+            }
+
+            int totalBits = 0;
+            int i = 0;
+            while (countMode ? i < count : position < finish)
+            {
+                int decodedBits;
+                if (descriptorLoop)
+                {
+                    checkArguments(encoding, position, bitOffset, limit);
+                    decodedBits = DescriptorStep.INSTANCE.decode(frame, encoding, position, bitOffset, limit, loopRoot);
+                } else
+                {
+                    SyntaxField entryRoot;
+                    if (fixedEntryText != null)
+                        entryRoot = SyntaxField.loopEntryHeader("loop_entry[" + i + ']', fixedEntryText, position, bitOffset);
+                    else if (indexEntryText != null)
+                        entryRoot = SyntaxField.loopEntryHeader("loop_entry[" + i + ']', indexEntryText + (i + 1), position, bitOffset);
+                    else
+                        entryRoot = SyntaxField.loopEntryHeader("loop_entry[" + i + ']', "循环体" + (i + 1), position, bitOffset);
+                    loopRoot.appendChild(entryRoot);
+
+                    frame.enter(bodyScope);
+                    decodedBits = run(body, frame, encoding, position, bitOffset, limit, entryRoot);
+                    entryRoot.setBitLength(decodedBits);
+                }
+
+                i++;
+                totalBits += decodedBits;
+                position = position + (bitOffset + decodedBits) / 8;
+                bitOffset = (bitOffset + decodedBits) % 8;
+            }
+
+            loopRoot.setBitLength(totalBits);
+            return totalBits;
+        }
+    }
+
+    static final class DescriptorStep implements Step
+    {
+        static final DescriptorStep INSTANCE = new DescriptorStep();
+
+        @Override
+        public int decode(Frame frame, Encoding encoding, int position, int bitOffset, int limit, SyntaxField parent)
+        {
+            if (bitOffset != 0)
+            {
+                log.error("Descriptor字段未对齐：bitOffset={}", bitOffset);
+                throw new IllegalStateException("错误的Descriptor字段起始位置（未对齐）");
+            }
+
+            int len = encoding.readUINT8(position + 1);
+            if (len + 2 > limit)
+            {
+                log.error("Descriptor字段超限：start={}, limit={}, field_size={}", position, limit, len + 2);
+                throw new IndexOutOfBoundsException("Descriptor字段超出可解码范围");
+            }
+
+            SyntaxField field = DESCRIPTOR_DECODER.decode(encoding, position, position + len + 2);
+            if (parent != null)
+                parent.appendChild(field);
+
+            return (len + 2) * 8;
+        }
+    }
+
+    static final class SelectorStep implements Step
+    {
+        private final String name;
+        private final Length length;
+
+        SelectorStep(String name, Length length)
+        {
+            this.name = name;
+            this.length = length;
+        }
+
+        @Override
+        public int decode(Frame frame, Encoding encoding, int position, int bitOffset, int limit, SyntaxField parent)
+        {
+            if (bitOffset != 0)
+            {
+                log.error("Selector字段未对齐：bitOffset={}", bitOffset);
+                throw new IllegalStateException("错误的Selector字段起始位置（未对齐）");
+            }
+
+            int bytes = length.resolve(frame, "selector", name, limit - position, parent);
+            if (position + bytes > limit)
+            {
+                log.error("[{}] selector字段超限：start={}, limit={}, field_size={}", name, position, limit, bytes);
+                throw new IndexOutOfBoundsException("selector字段超出可解码范围");
+            }
+
+            return SELECTOR_DECODER.decode(name, encoding, position, position + bytes, parent).getBitLength();
+        }
+    }
+}
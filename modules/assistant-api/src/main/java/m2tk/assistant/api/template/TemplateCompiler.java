@@ -0,0 +1,451 @@
+/*
+ *  Copyright (c) M2TK Project. All rights reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package m2tk.assistant.api.template;
+
+import m2tk.assistant.api.template.SyntaxPlan.*;
+import m2tk.assistant.api.template.definition.*;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * 模板编译器
+ * <p>
+ * 把模板的字段定义编译为 {@link SyntaxPlan}，编译分两遍进行：
+ * <ol>
+ *     <li>建立作用域：模板本身是根作用域，每个（非描述符）循环体是一个子作用域，条件分支与所在位置同属一个作用域。
+ *     作用域内每个数值字段（bslbf、uimsbf、checksum）分配一个变量槽位，同名字段共用一个槽位。</li>
+ *     <li>生成解码步骤：长度和条件引用解析为由内向外的槽位列表，同时预先计算字段长度、掩码、起始位偏移、
+ *     展示参数和值映射表。</li>
+ * </ol>
+ * 如果引用链上存在同名的非数值字段（如文本、循环、选择器），按语法树查找的结果可能不是数值字段，
+ * 此时该引用不使用槽位，解码时仍按语法树查找。
+ * <p>
+ * 定义错误（如无效的编码格式、字段长度或颜色参数）不会使编译失败，而是在解码到该字段时抛出与解释执行相同的异常。
+ */
+final class TemplateCompiler
+{
+    private static final String[] STRING_TYPES = {"dvb_text", "utf16", "utf8", "ascii", "gb2312", "gbk", "gb18030"};
+    private static final int UNKNOWN_OFFSET = -1;
+
+    private final Map<LoopFieldDefinition, Scope> loopScopes = new IdentityHashMap<>();
+    private int slotCount;
+    private int scopeCount;
+
+    private TemplateCompiler()
+    {
+    }
+
+    static SyntaxPlan compile(List<SyntaxFieldDefinition> definitions)
+    {
+        TemplateCompiler compiler = new TemplateCompiler();
+
+        List<SyntaxFieldDefinition> fields = (definitions == null) ? Collections.emptyList() : definitions;
+        Scope root = compiler.newScope(null);
+        compiler.collect(fields, root);
+
+        int[] offset = {0};
+        Step[] steps = compiler.compile(fields, root, offset);
+        return new SyntaxPlan(steps, compiler.slotCount, compiler.scopeCount);
+    }
+
+    private static final class Scope
+    {
+        final int id;
+        final Scope parent;
+        final Map<String, Integer> slots = new HashMap<>();
+        final Set<String> others = new HashSet<>();
+
+        Scope(int id, Scope parent)
+        {
+            this.id = id;
+            this.parent = parent;
+        }
+    }
+
+    private Scope newScope(Scope parent)
+    {
+        return new Scope(scopeCount++, parent);
+    }
+
+    private void collect(List<SyntaxFieldDefinition> definitions, Scope scope)
+    {
+        if (definitions == null)
+            return;
+
+        for (SyntaxFieldDefinition definition : definitions)
+        {
+            switch (definition)
+            {
+                case DataFieldDefinition field ->
+                {
+                    if (field.getName() == null)
+                        continue;
+                    if (isNumeric(field))
+                        scope.slots.computeIfAbsent(field.getName(), name -> slotCount++);
+                    else
+                        scope.others.add(field.getName());
+                }
+                case ConditionalFieldDefinition field ->
+                {
+                    collect(field.getThenPart(), scope);
+                    collect(field.getElsePart(), scope);
+                }
+                case LoopFieldDefinition field ->
+                {
+                    if (field.getName() != null)
+                        scope.others.add(field.getName());
+                    if (!isDescriptorLoop(field) && field.getBody() != null)
+                    {
+                        Scope body = newScope(scope);
+                        loopScopes.put(field, body);
+                        collect(field.getBody(), body);
+                    }
+                }
+                case SelectorFieldDefinition field ->
+                {
+                    if (field.getName() != null)
+                        scope.others.add(field.getName());
+                }
+                case null, default ->
+                {
+                }
+            }
+        }
+    }
+
+    private Step[] compile(List<SyntaxFieldDefinition> definitions, Scope scope, int[] offset)
+    {
+        if (definitions == null)
+            return null;
+
+        Step[] steps = new Step[definitions.size()];
+        for (int i = 0; i < steps.length; i++)
+        {
+            try
+            {
+                steps[i] = compile(definitions.get(i), scope, offset);
+            } catch (RuntimeException ex)
+            {
+                steps[i] = new FailStep(ex);
+                offset[0] = UNKNOWN_OFFSET;
+            }
+        }
+        return steps;
+    }
+
+    private Step compile(SyntaxFieldDefinition definition, Scope scope, int[] offset)
+    {
+        return switch (definition)
+        {
+            case null -> throw new IllegalArgumentException("无效的字段定义");
+            case DataFieldDefinition field -> compileData(field, scope, offset);
+            case ConditionalFieldDefinition field -> compileCondition(field, scope, offset);
+            case LoopFieldDefinition field -> compileLoop(field, scope, offset);
+            case DescriptorFieldDefinition ignored ->
+            {
+                offset[0] = 0;
+                yield DescriptorStep.INSTANCE;
+            }
+            case SelectorFieldDefinition field ->
+            {
+                Length length = new Length(field.getLengthValue(),
+                                           field.isIndirectLength(),
+                                           field.isImplicitLength(),
+                                           ref(field.getLengthField(), scope),
+                                           field.getLengthCorrectionValue());
+                // 选择器的位长度按字节计算
+                offset[0] = 0;
+                yield new SelectorStep(field.getName(), length);
+            }
+            default -> throw new IllegalArgumentException("无效的定义类型：type=" + definition.type());
+        };
+    }
+
+    private Step compileData(DataFieldDefinition field, Scope scope, int[] offset)
+    {
+        String encoding = Objects.requireNonNull(field.getEncoding(), "无效的字段格式");
+        String name = field.getName();
+        Style style = style(field.getPresentation());
+        int slot = isNumeric(field) ? scope.slots.get(name) : -1;
+
+        switch (encoding)
+        {
+            case "bslbf" ->
+            {
+                int bitLength = Integer.parseUnsignedInt(field.getLength());
+                if (bitLength > 64)
+                    throw new IllegalArgumentException("bslbf字段长度超过可解析范围");
+
+                int staticOffset = offset[0];
+                offset[0] = (staticOffset == UNKNOWN_OFFSET) ? UNKNOWN_OFFSET : (staticOffset + bitLength) % 8;
+                return new BitsStep(name, style, slot, scope.id, bitLength, mapping(field, bitLength), staticOffset);
+            }
+            case "uimsbf" ->
+            {
+                int bitLength = Integer.parseUnsignedInt(field.getLength());
+                if (bitLength > 64)
+                    throw new IllegalArgumentException("uimsbf字段长度超过可解析范围");
+
+                // uimsbf字段向右对齐，解码成功后总是结束在字节边界上。
+                offset[0] = 0;
+                return new NumberStep(name, style, slot, scope.id, bitLength, mapping(field, bitLength));
+            }
+            case "checksum" ->
+            {
+                int bitLength = field.getLengthValue();
+                if (bitLength != 8 && bitLength != 16 && bitLength != 32 && bitLength != 64)
+                    throw new IllegalArgumentException("checksum字段长度无效");
+
+                offset[0] = 0;
+                return new ChecksumStep(name, style, slot, scope.id, bitLength);
+            }
+            case "nibbles" ->
+            {
+                Length length = length(field, scope);
+                offset[0] = (offset[0] == UNKNOWN_OFFSET || length.indirect())
+                            ? UNKNOWN_OFFSET
+                            : (offset[0] + length.value() * 4) % 8;
+                return new NibblesStep(name, style, length);
+            }
+            case "octets" ->
+            {
+                Length length = length(field, scope);
+                offset[0] = 0;
+                return new OctetsStep(name, style, length);
+            }
+            case "text" ->
+            {
+                String stringType = field.getStringType();
+                if (!Arrays.asList(STRING_TYPES).contains(stringType))
+                    throw new IllegalArgumentException("无效的字符编码类型");
+
+                Length length = length(field, scope);
+                offset[0] = 0;
+                return new TextStep(name, style, length, "dvb_text".equals(stringType), charset(stringType));
+            }
+            default -> throw new IllegalArgumentException("无效的字段格式");
+        }
+    }
+
+    private Step compileCondition(ConditionalFieldDefinition field, Scope scope, int[] offset)
+    {
+        Condition condition = Objects.requireNonNull(field.getCondition());
+
+        ConditionStep.Operation operation = ConditionStep.Operation.NONE;
+        if ("CompareWithConst".equals(condition.getType()))
+        {
+            operation = switch (String.valueOf(condition.getOperation()))
+            {
+                case "equals" -> ConditionStep.Operation.EQUALS;
+                case "not_equal" -> ConditionStep.Operation.NOT_EQUAL;
+                case "larger_than" -> ConditionStep.Operation.LARGER_THAN;
+                case "smaller_than" -> ConditionStep.Operation.SMALLER_THAN;
+                default -> ConditionStep.Operation.INVALID;
+            };
+        }
+        if ("CompareWithConstMulti".equals(condition.getType()))
+        {
+            operation = switch (String.valueOf(condition.getOperation()))
+            {
+                case "equals_any" -> ConditionStep.Operation.EQUALS_ANY;
+                case "not_equal_all" -> ConditionStep.Operation.NOT_EQUAL_ALL;
+                default -> ConditionStep.Operation.INVALID;
+            };
+        }
+
+        int[] thenOffset = {offset[0]};
+        int[] elseOffset = {offset[0]};
+        Step[] thenPart = compile(field.getThenPart(), scope, thenOffset);
+        Step[] elsePart = compile(field.getElsePart(), scope, elseOffset);
+        offset[0] = (thenOffset[0] == elseOffset[0]) ? thenOffset[0] : UNKNOWN_OFFSET;
+
+        return new ConditionStep(ref(condition.getField(), scope),
+                                 operation, condition.getOperation(),
+                                 condition.getValue(), condition.getValues(),
+                                 thenPart, elsePart);
+    }
+
+    private Step compileLoop(LoopFieldDefinition field, Scope scope, int[] offset)
+    {
+        String name = field.getName();
+        boolean countMode = "count".equals(field.getLengthType());
+
+        String headerText;
+        String emptyText;
+        String fixedEntryText = null;
+        String indexEntryText = null;
+        LoopPresentation presentation = field.getPresentation();
+        if (presentation == null)
+        {
+            // 默认循环展示方式
+            headerText = name;
+            emptyText = "空循环";
+        } else
+        {
+            headerText = presentation.isNoLoopHeader() ? null : presentation.getLoopHeader().getText();
+            emptyText = (presentation.getLoopEmpty() == null) ? null : presentation.getLoopEmpty().getText();
+
+            LoopEntryPresentation entryPresentation = presentation.getLoopEntryPresentation();
+            if (entryPresentation != null && entryPresentation.getFixed() != null)
+                fixedEntryText = entryPresentation.getFixed().getText();
+            if (entryPresentation != null && entryPresentation.getPrefix() != null)
+                indexEntryText = String.valueOf(entryPresentation.getPrefix().getText());
+        }
+
+        boolean descriptorLoop = isDescriptorLoop(field);
+        Scope bodyScope = loopScopes.get(field);
+        Step[] body = null;
+        if (!descriptorLoop)
+        {
+            if (bodyScope == null || field.getBody().isEmpty())
+                throw new IllegalArgumentException("循环体为空：" + name);
+
+            // 循环体总是从字节边界开始
+            int[] bodyOffset = {0};
+            body = compile(field.getBody(), bodyScope, bodyOffset);
+            offset[0] = bodyOffset[0];
+        } else
+        {
+            offset[0] = 0;
+        }
+
+        boolean implicit = !countMode && field.isImplicitLength();
+        return new LoopStep(name, countMode, implicit,
+                            implicit ? null : ref(field.getLengthField(), scope),
+                            countMode ? 0 : field.getLengthCorrectionValue(),
+                            headerText, emptyText, fixedEntryText, indexEntryText,
+                            descriptorLoop, body, (bodyScope == null) ? 0 : bodyScope.id);
+    }
+
+    private Length length(DataFieldDefinition field, Scope scope)
+    {
+        boolean indirect = field.isIndirectLength();
+        boolean implicit = field.isImplicitLength();
+        return new Length(field.getLengthValue(),
+                          indirect,
+                          implicit,
+                          (indirect && !implicit) ? ref(field.getLengthField(), scope) : null,
+                          indirect ? field.getLengthCorrectionValue() : 0);
+    }
+
+    private Ref ref(String name, Scope scope)
+    {
+        if (name == null)
+            return new Ref(null, new int[0], new int[0]);
+
+        List<int[]> candidates = new ArrayList<>();
+        for (Scope s = scope; s != null; s = s.parent)
+        {
+            if (s.others.contains(name))
+                return new Ref(name, new int[0], new int[0]);
+
+            Integer slot = s.slots.get(name);
+            if (slot != null)
+                candidates.add(new int[]{slot, s.id});
+        }
+
+        int[] slots = new int[candidates.size()];
+        int[] scopes = new int[candidates.size()];
+        for (int i = 0; i < slots.length; i++)
+        {
+            slots[i] = candidates.get(i)[0];
+            scopes[i] = candidates.get(i)[1];
+        }
+        return new Ref(name, slots, scopes);
+    }
+
+    private static Style style(FieldPresentation presentation)
+    {
+        if (presentation == null)
+            return null;
+
+        String prefixColor = presentation.hasPrefix() ? presentation.getPrefix().getColor() : null;
+        String labelColor = presentation.hasFormat() ? presentation.getFormat().getColor() : null;
+        if (prefixColor != null && !prefixColor.matches("[0-9a-fA-F]{6}"))
+            throw new IllegalArgumentException("无效的颜色参数：" + prefixColor);
+        if (labelColor != null && !labelColor.matches("[0-9a-fA-F]{6}"))
+            throw new IllegalArgumentException("无效的颜色参数：" + labelColor);
+
+        return new Style(presentation.hasPrefix() ? presentation.getPrefix().getText() : null,
+                         prefixColor,
+                         presentation.hasFormat() ? presentation.getFormat().getText() : null,
+                         labelColor,
+                         presentation.hasFormat() && presentation.getFormat().isBold());
+    }
+
+    private static Mapping mapping(DataFieldDefinition field, int bitLength)
+    {
+        FieldPresentation presentation = field.getPresentation();
+        if (presentation == null || !presentation.hasValueMappings())
+            return null;
+
+        ValueMapping[] mappings = presentation.getValueMappings().toArray(new ValueMapping[0]);
+        String[] table = null;
+        if (bitLength <= 8)
+        {
+            try
+            {
+                table = new String[1 << bitLength];
+                for (int value = 0; value < table.length; value++)
+                    table[value] = map(mappings, value);
+            } catch (RuntimeException ex)
+            {
+                // 映射函数不接受某些取值时放弃查表，解码时按原方式逐个匹配（并抛出相同的异常）。
+                table = null;
+            }
+        }
+        return new Mapping(mappings, table);
+    }
+
+    private static String map(ValueMapping[] mappings, long value)
+    {
+        for (ValueMapping mapping : mappings)
+        {
+            String text = mapping.map(value);
+            if (text != null)
+                return text;
+        }
+        return ValueMapping.raw(value);
+    }
+
+    private static Charset charset(String stringType)
+    {
+        return switch (stringType)
+        {
+            case "utf16" -> StandardCharsets.UTF_16;
+            case "utf8" -> StandardCharsets.UTF_8;
+            case "ascii" -> StandardCharsets.US_ASCII;
+            case "gb2312" -> Charset.forName("GB2312");
+            case "gbk" -> Charset.forName("GBK");
+            case "gb18030" -> Charset.forName("GB18030");
+            default -> null;
+        };
+    }
+
+    private static boolean isNumeric(DataFieldDefinition field)
+    {
+        String encoding = field.getEncoding();
+        return "bslbf".equals(encoding) || "uimsbf".equals(encoding) || "checksum".equals(encoding);
+    }
+
+    private static boolean isDescriptorLoop(LoopFieldDefinition field)
+    {
+        List<SyntaxFieldDefinition> body = field.getBody();
+        return body != null && !body.isEmpty() && body.getFirst() instanceof DescriptorFieldDefinition;
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ *  Copyright (c) M2TK Project. All rights reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package m2tk.assistant.api;
+
+import m2tk.encoding.Encoding;
+import m2tk.multiplex.TSDemux;
+import m2tk.multiplex.TSDemuxPayload;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Answers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class DefaultSectionBusTest
+{
+    private static final int PMT_PID = 0x0100;
+
+    private final List<Consumer<TSDemuxPayload>> channels = new ArrayList<>();
+    private SectionBus bus;
+    private long position;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp()
+    {
+        // 只截获分段通道的回调，其他方法按默认值返回。
+        TSDemux demux = mock(TSDemux.class, invocation -> {
+            if (invocation.getMethod().getName().equals("registerSectionChannel"))
+            {
+                channels.add((Consumer<TSDemuxPayload>) invocation.getArgument(1));
+                return mock(invocation.getMethod().getReturnType());
+            }
+            return Answers.RETURNS_DEFAULTS.answer(invocation);
+        });
+        bus = SectionBus.create(demux);
+    }
+
+    @Test
+    void lateSubscriberReceivesRecordedSectionAsNewOnlyOnce()
+    {
+        List<SectionEvent> early = new ArrayList<>();
+        List<SectionEvent> late = new ArrayList<>();
+        byte[] section = pmtSection(1, 0);
+
+        bus.subscribe(PMT_PID, early::add);
+        feed(section);
+        bus.subscribe(PMT_PID, late::add);
+        feed(section);
+        feed(section);
+        feed(section);
+
+        assertEquals(List.of(SectionEvent.Kind.NEW, SectionEvent.Kind.REPEATED,
+                             SectionEvent.Kind.REPEATED, SectionEvent.Kind.REPEATED),
+                     kinds(early));
+        assertEquals(List.of(SectionEvent.Kind.NEW, SectionEvent.Kind.REPEATED, SectionEvent.Kind.REPEATED),
+                     kinds(late));
+        assertEquals(early.get(1).previousPosition(), late.get(0).previousPosition());
+    }
+
+    @Test
+    void resubscribedListenerReceivesEachSectionAsNewOnlyOnce()
+    {
+        List<SectionEvent> events = new ArrayList<>();
+        Consumer<SectionEvent> listener = events::add;
+        byte[] first = pmtSection(1, 0);
+        byte[] second = pmtSection(2, 0);
+
+        bus.subscribe(PMT_PID, listener);
+        feed(first);
+        feed(second);
+        events.clear();
+
+        // 模拟PAT更新后重新订阅PMT，随后PMT持续重复。
+        bus.subscribe(PMT_PID, listener);
+        for (int i = 0; i < 5; i++)
+        {
+            feed(first);
+            feed(second);
+        }
+
+        assertEquals(2, kinds(events).stream().filter(kind -> kind == SectionEvent.Kind.NEW).count());
+        assertEquals(8, kinds(events).stream().filter(kind -> kind == SectionEvent.Kind.REPEATED).count());
+        assertEquals(SectionEvent.Kind.NEW, events.get(0).kind());
+        assertEquals(SectionEvent.Kind.NEW, events.get(1).kind());
+
+        events.clear();
+        bus.subscribe(PMT_PID, listener);
+        feed(first);
+        feed(first);
+        assertEquals(List.of(SectionEvent.Kind.NEW, SectionEvent.Kind.REPEATED), kinds(events));
+    }
+
+    @Test
+    void changedSectionIsNotCaughtUpAgain()
+    {
+        List<SectionEvent> events = new ArrayList<>();
+        bus.subscribe(PMT_PID, e -> {});
+        feed(pmtSection(1, 0));
+        bus.subscribe(PMT_PID, events::add);
+        feed(pmtSection(1, 1));
+        feed(pmtSection(1, 1));
+
+        assertEquals(List.of(SectionEvent.Kind.CHANGED, SectionEvent.Kind.REPEATED), kinds(events));
+    }
+
+    private void feed(byte[] section)
+    {
+        position += 10;
+        TSDemuxPayload payload = mock(TSDemuxPayload.class);
+        when(payload.getType()).thenReturn(TSDemuxPayload.Type.SECTION);
+        when(payload.getStreamPID()).thenReturn(PMT_PID);
+        when(payload.getStartPacketCounter()).thenReturn(position - 1);
+        when(payload.getFinishPacketCounter()).thenReturn(position);
+        when(payload.getEncoding()).thenReturn(Encoding.wrap(section));
+        channels.getLast().accept(payload);
+    }
+
+    private static List<SectionEvent.Kind> kinds(List<SectionEvent> events)
+    {
+        return events.stream().map(SectionEvent::kind).toList();
+    }
+
+    /**
+     * 构造只含PCR_PID、没有描述符和基本流的PMT分段
+     */
+    private static byte[] pmtSection(int programNumber, int version)
+    {
+        byte[] section = new byte[16];
+        int sectionLength = section.length - 3;
+        section[0] = 0x02;
+        section[1] = (byte) (0xB0 | (sectionLength >> 8));
+        section[2] = (byte) sectionLength;
+        section[3] = (byte) (programNumber >> 8);
+        section[4] = (byte) programNumber;
+        section[5] = (byte) (0xC1 | (version << 1));
+        section[6] = 0;
+        section[7] = 0;
+        section[8] = (byte) 0xE1;
+        section[9] = 0x00;
+        section[10] = (byte) 0xF0;
+        section[11] = 0x00;
+
+        int crc = crc32(section, section.length - 4);
+        section[12] = (byte) (crc >>> 24);
+        section[13] = (byte) (crc >>> 16);
+        section[14] = (byte) (crc >>> 8);
+        section[15] = (byte) crc;
+        return section;
+    }
+
+    private static int crc32(byte[] data, int length)
+    {
+        int crc = 0xFFFFFFFF;
+        for (int i = 0; i < length; i++)
+        {
+            crc ^= (data[i] & 0xFF) << 24;
+            for (int bit = 0; bit < 8; bit++)
+                crc = (crc < 0) ? (crc << 1) ^ 0x04C11DB7 : crc << 1;
+        }
+        return crc;
+    }
+}
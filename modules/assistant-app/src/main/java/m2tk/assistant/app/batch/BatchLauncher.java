@@ -0,0 +1,259 @@
+/*
+ *  Copyright (c) M2TK Project. All rights reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package m2tk.assistant.app.batch;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 无界面批量分析入口
+ * <p>
+ * 用法：
+ * <pre>
+ *   java -cp m2tk-assistant-app.jar m2tk.assistant.app.batch.BatchLauncher &lt;目录或文件&gt;
+ *        [-o 报告目录] [-j 并行数] [-t 单文件超时分钟数] [-m on|off]
+ * </pre>
+ * {@code -m on} 表示使用内存映射方式读取文件，可分别以 on/off 运行同一批文件比较读取吞吐量。
+ * 每个文件由一个独立的子进程（一个分析内核）完成分析，默认并行数为处理器核数。
+ * 报告目录下为每个文件生成 JSON 报告和日志，并汇总生成 summary.csv 与 summary.json。
+ */
+public final class BatchLauncher
+{
+    private static final String WORKER_FLAG = "--worker";
+    private static final String[] FILE_EXTENSIONS = {".ts", ".m2ts", ".mpeg"};
+
+    private BatchLauncher()
+    {
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        System.setProperty("java.awt.headless", "true");
+
+        if (args.length == 5 && WORKER_FLAG.equals(args[0]))
+        {
+            int code = BatchWorker.run(new File(args[1]),
+                                       new File(args[2]),
+                                       Long.parseLong(args[3]),
+                                       Boolean.parseBoolean(args[4]));
+            System.exit(code);
+        }
+
+        if (args.length == 0)
+        {
+            printUsage();
+            System.exit(1);
+        }
+
+        File input = new File(args[0]);
+        File outputDir = null;
+        int jobs = Runtime.getRuntime().availableProcessors();
+        long timeoutMinutes = 24 * 60;
+        boolean memoryMapped = false;
+        for (int i = 1; i + 1 < args.length; i += 2)
+        {
+            switch (args[i])
+            {
+                case "-o" -> outputDir = new File(args[i + 1]);
+                case "-j" -> jobs = Math.max(1, Integer.parseInt(args[i + 1]));
+                case "-t" -> timeoutMinutes = Math.max(1, Long.parseLong(args[i + 1]));
+                case "-m" -> memoryMapped = "on".equalsIgnoreCase(args[i + 1]);
+                default ->
+                {
+                    printUsage();
+                    System.exit(1);
+                }
+            }
+        }
+
+        List<File> files = listStreamFiles(input);
+        if (files.isEmpty())
+        {
+            System.err.println("没有找到码流文件：" + input);
+            System.exit(1);
+        }
+
+        if (outputDir == null)
+            outputDir = new File(input.isDirectory() ? input : input.getAbsoluteFile().getParentFile(), "m2tk-report");
+        if (!outputDir.isDirectory() && !outputDir.mkdirs())
+        {
+            System.err.println("无法创建报告目录：" + outputDir);
+            System.exit(1);
+        }
+
+        int failures = runAll(files, outputDir, jobs, timeoutMinutes, memoryMapped);
+        System.exit(failures == 0 ? 0 : 1);
+    }
+
+    private static void printUsage()
+    {
+        System.err.println("用法：BatchLauncher <目录或文件> [-o 报告目录] [-j 并行数] [-t 单文件超时分钟数] [-m on|off]");
+    }
+
+    private static List<File> listStreamFiles(File input)
+    {
+        if (input.isFile())
+            return List.of(input);
+
+        File[] files = input.listFiles(f -> f.isFile() && isStreamFile(f.getName()));
+        if (files == null)
+            return List.of();
+
+        Arrays.sort(files, Comparator.comparing(File::getName));
+        return List.of(files);
+    }
+
+    private static boolean isStreamFile(String name)
+    {
+        String lower = name.toLowerCase(Locale.ROOT);
+        for (String ext : FILE_EXTENSIONS)
+        {
+            if (lower.endsWith(ext))
+                return true;
+        }
+        return false;
+    }
+
+    private static int runAll(List<File> files, File outputDir, int jobs, long timeoutMinutes, boolean memoryMapped)
+        throws Exception
+    {
+        System.out.printf("批量分析 %d 个文件，并行数 %d，%s读取，报告目录 %s%n",
+                          files.size(), jobs, memoryMapped ? "内存映射" : "常规", outputDir);
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(jobs, files.size()));
+        Map<File, Future<Integer>> results = new LinkedHashMap<>();
+        for (File file : files)
+            results.put(file, executor.submit(() -> runWorker(file, outputDir, timeoutMinutes, memoryMapped)));
+        executor.shutdown();
+
+        ObjectMapper mapper = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        List<BatchReport> reports = new ArrayList<>();
+        int failures = 0;
+        for (Map.Entry<File, Future<Integer>> entry : results.entrySet())
+        {
+            File file = entry.getKey();
+            int code = entry.getValue().get();
+            File reportFile = reportFileOf(file, outputDir);
+            if ((code == 0 || code == 3) && reportFile.isFile())
+            {
+                BatchReport report = mapper.readValue(reportFile, BatchReport.class);
+                reports.add(report);
+                System.out.printf("%-60s %,15d 包 %,10d 毫秒 %,12d 包/秒%s%n",
+                                  file.getName(),
+                                  report.getPacketCount(),
+                                  report.getElapsedMillis(),
+                                  report.getPacketsPerSecond(),
+                                  report.isCompleted() ? "" : "（超时）");
+            }
+            if (code != 0)
+            {
+                failures++;
+                System.out.printf("%-60s 分析失败（退出码 %d），详见 %s%n", file.getName(), code, logFileOf(file, outputDir));
+            }
+        }
+
+        mapper.writerWithDefaultPrettyPrinter().writeValue(new File(outputDir, "summary.json"), reports);
+        writeSummaryCsv(new File(outputDir, "summary.csv"), reports);
+        return failures;
+    }
+
+    private static int runWorker(File file, File outputDir, long timeoutMinutes, boolean memoryMapped)
+        throws IOException, InterruptedException
+    {
+        String java = ProcessHandle.current().info().command().orElse("java");
+        ProcessBuilder builder = new ProcessBuilder(java,
+                                                    "-Djava.awt.headless=true",
+                                                    "-cp", System.getProperty("java.class.path"),
+                                                    BatchLauncher.class.getName(),
+                                                    WORKER_FLAG,
+                                                    file.getAbsolutePath(),
+                                                    reportFileOf(file, outputDir).getAbsolutePath(),
+                                                    String.valueOf(timeoutMinutes),
+                                                    String.valueOf(memoryMapped));
+        builder.redirectErrorStream(true);
+        builder.redirectOutput(logFileOf(file, outputDir));
+
+        Process process = builder.start();
+        if (!process.waitFor(timeoutMinutes + 5, TimeUnit.MINUTES))
+        {
+            process.destroyForcibly();
+            return -1;
+        }
+        return process.exitValue();
+    }
+
+    private static File reportFileOf(File file, File outputDir)
+    {
+        return new File(outputDir, file.getName() + ".json");
+    }
+
+    private static File logFileOf(File file, File outputDir)
+    {
+        return new File(outputDir, file.getName() + ".log");
+    }
+
+    private static void writeSummaryCsv(File csvFile, List<BatchReport> reports) throws IOException
+    {
+        String[] errorTypes = BatchWorker.tr290ErrorTypes();
+        try (PrintWriter out = new PrintWriter(csvFile, StandardCharsets.UTF_8))
+        {
+            // 写入 BOM，方便用 Excel 直接打开中文表头。
+            out.print('\uFEFF');
+
+            StringJoiner header = new StringJoiner(",");
+            header.add("file").add("completed").add("memory_mapped").add("file_size").add("elapsed_ms")
+                  .add("packets").add("packets_per_sec").add("bitrate")
+                  .add("streams").add("programs").add("pcr_pids");
+            for (String type : errorTypes)
+                header.add(type);
+            out.println(header);
+
+            for (BatchReport report : reports)
+            {
+                StringJoiner row = new StringJoiner(",");
+                row.add('"' + report.getFile().replace("\"", "\"\"") + '"')
+                   .add(String.valueOf(report.isCompleted()))
+                   .add(String.valueOf(report.isMemoryMapped()))
+                   .add(String.valueOf(report.getFileSize()))
+                   .add(String.valueOf(report.getElapsedMillis()))
+                   .add(String.valueOf(report.getPacketCount()))
+                   .add(String.valueOf(report.getPacketsPerSecond()))
+                   .add(String.valueOf(report.getSource() == null ? 0 : report.getSource().getBitrate()))
+                   .add(String.valueOf(sizeOf(report.getStreams())))
+                   .add(String.valueOf(sizeOf(report.getPrograms())))
+                   .add(String.valueOf(sizeOf(report.getPcrStats())));
+                for (String type : errorTypes)
+                    row.add(String.valueOf(report.getTr290Counts().getOrDefault(type, 0L)));
+                out.println(row);
+            }
+        }
+    }
+
+    private static int sizeOf(Collection<?> collection)
+    {
+        return (collection == null) ? 0 : collection.size();
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ *  Copyright (c) M2TK Project. All rights reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package m2tk.assistant.app.batch;
+
+import lombok.Data;
+import m2tk.assistant.api.domain.ElementaryStream;
+import m2tk.assistant.api.domain.MPEGProgram;
+import m2tk.assistant.api.domain.PCRStats;
+import m2tk.assistant.api.domain.StreamSource;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 单个码流文件的批量分析报告
+ */
+@Data
+public class BatchReport
+{
+    private String file;
+    private long fileSize;
+    private long elapsedMillis;
+    private long packetCount;
+    private long packetsPerSecond;
+    private boolean completed;
+    private boolean memoryMapped;
+    private StreamSource source;
+    private List<ElementaryStream> streams;
+    private List<MPEGProgram> programs;
+    private Map<String, Long> tr290Counts;
+    private List<PCRStats> pcrStats;
+}
@@ -0,0 +1,174 @@
+/*
+ *  Copyright (c) M2TK Project. All rights reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package m2tk.assistant.app.batch;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import m2tk.assistant.api.M2TKDatabase;
+import m2tk.assistant.api.Tracer;
+import m2tk.assistant.api.domain.ElementaryStream;
+import m2tk.assistant.api.domain.StreamSource;
+import m2tk.assistant.api.domain.TR290Stats;
+import m2tk.assistant.api.presets.TR290ErrorTypes;
+import m2tk.assistant.app.kernel.KernelEntry;
+import m2tk.assistant.app.kernel.service.SourceScope;
+import m2tk.assistant.app.kernel.service.StreamAnalyzer;
+import org.noear.solon.Solon;
+import org.noear.solon.core.AppContext;
+import org.pf4j.DefaultPluginManager;
+import org.pf4j.PluginManager;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 无界面单文件分析
+ * <p>
+ * 启动不含界面的内核，使用与界面相同的分析器扩展（含插件）分析一个码流文件，结束后输出 JSON 报告。
+ * 每个文件由独立的子进程分析，进程之间互不影响，并行分析由 {@link BatchLauncher} 调度。
+ */
+@Slf4j
+public final class BatchWorker
+{
+    private static final String[] TR290_ERROR_TYPES = {
+        TR290ErrorTypes.TS_SYNC_LOSS,
+        TR290ErrorTypes.SYNC_BYTE_ERROR,
+        TR290ErrorTypes.PAT_ERROR_2,
+        TR290ErrorTypes.CONTINUITY_COUNT_ERROR,
+        TR290ErrorTypes.PMT_ERROR_2,
+        TR290ErrorTypes.PID_ERROR,
+        TR290ErrorTypes.TRANSPORT_ERROR,
+        TR290ErrorTypes.CRC_ERROR,
+        TR290ErrorTypes.PCR_REPETITION_ERROR,
+        TR290ErrorTypes.PCR_DISCONTINUITY_INDICATOR_ERROR,
+        TR290ErrorTypes.PCR_ACCURACY_ERROR,
+        TR290ErrorTypes.CAT_ERROR,
+        TR290ErrorTypes.NIT_ACTUAL_ERROR,
+        TR290ErrorTypes.NIT_OTHER_ERROR,
+        TR290ErrorTypes.SI_REPETITION_ERROR,
+        TR290ErrorTypes.UNREFERENCED_PID,
+        TR290ErrorTypes.SDT_ACTUAL_ERROR,
+        TR290ErrorTypes.SDT_OTHER_ERROR,
+        TR290ErrorTypes.EIT_ACTUAL_ERROR,
+        TR290ErrorTypes.EIT_OTHER_ERROR,
+        TR290ErrorTypes.RST_ERROR,
+        TR290ErrorTypes.TDT_ERROR
+    };
+
+    private BatchWorker()
+    {
+    }
+
+    static String[] tr290ErrorTypes()
+    {
+        return TR290_ERROR_TYPES.clone();
+    }
+
+    /**
+     * 分析单个文件并输出报告
+     * @param file 码流文件
+     * @param reportFile 报告文件（JSON）
+     * @param timeoutMinutes 最长分析时间（分钟）
+     * @param memoryMapped 是否以内存映射方式读取文件
+     * @return 进程退出码，0 表示成功
+     */
+    static int run(File file, File reportFile, long timeoutMinutes, boolean memoryMapped) throws Exception
+    {
+        Solon.start(KernelEntry.class, new String[0]);
+        AppContext context = Solon.context();
+        StreamAnalyzer analyzer = context.getBean(StreamAnalyzer.class);
+        M2TKDatabase database = SourceScope.bind(context.getBean(M2TKDatabase.class), analyzer::getCurrentSourceId);
+        database.setPreference("input.file.memory-mapped", String.valueOf(memoryMapped));
+        // 批量分析只输出报告，不保存会话存档。
+        database.setPreference("archive.auto-save", "false");
+
+        List<Tracer> tracers = loadTracers();
+        log.info("加载分析器 {} 个", tracers.size());
+
+        CountDownLatch stopped = new CountDownLatch(1);
+        long t0 = System.nanoTime();
+        boolean started = analyzer.start(file.toURI().toString(), tracers, status -> {
+            if (!status.isRunning())
+                stopped.countDown();
+        });
+        if (!started)
+        {
+            log.error("无法启动分析器：{}", file);
+            return 2;
+        }
+
+        boolean completed = stopped.await(timeoutMinutes, TimeUnit.MINUTES);
+        if (!completed)
+        {
+            log.warn("分析超时，强制停止：{}", file);
+            analyzer.stop();
+            stopped.await(10, TimeUnit.SECONDS);
+        }
+        // 解复用器停止后，分析器还要等待流水线和回写队列处理完毕。
+        while (analyzer.isRunning())
+            TimeUnit.MILLISECONDS.sleep(10);
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - t0);
+
+        BatchReport report = collectReport(database, file, elapsedMillis);
+        report.setCompleted(completed);
+        report.setMemoryMapped(memoryMapped);
+        new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(reportFile, report);
+        log.info("分析完成：{}，{} 包/秒", file, report.getPacketsPerSecond());
+
+        analyzer.shutdown();
+        return completed ? 0 : 3;
+    }
+
+    private static List<Tracer> loadTracers()
+    {
+        // 只实例化 Tracer 扩展，无界面模式下不加载任何视图。
+        PluginManager pluginManager = new DefaultPluginManager();
+        pluginManager.loadPlugins();
+        pluginManager.startPlugins();
+        return pluginManager.getExtensions(Tracer.class);
+    }
+
+    private static BatchReport collectReport(M2TKDatabase database, File file, long elapsedMillis)
+    {
+        StreamSource source = database.getCurrentStreamSource();
+        List<ElementaryStream> streams = database.listElementaryStreams(true);
+        long packetCount = streams.stream()
+                                  .mapToLong(ElementaryStream::getPacketCount)
+                                  .sum();
+
+        TR290Stats tr290Stats = database.getTR290Stats();
+        Map<String, Long> tr290Counts = new LinkedHashMap<>();
+        for (String type : TR290_ERROR_TYPES)
+            tr290Counts.put(type, tr290Stats.getErrorCount(type));
+
+        BatchReport report = new BatchReport();
+        report.setFile(file.getAbsolutePath());
+        report.setFileSize(file.length());
+        report.setElapsedMillis(elapsedMillis);
+        report.setPacketCount(packetCount);
+        report.setPacketsPerSecond(packetCount * 1000 / Math.max(1, elapsedMillis));
+        report.setSource(source);
+        report.setStreams(streams);
+        report.setPrograms(database.listMPEGPrograms());
+        report.setTr290Counts(tr290Counts);
+        report.setPcrStats(database.listPCRStats());
+        return report;
+    }
+}
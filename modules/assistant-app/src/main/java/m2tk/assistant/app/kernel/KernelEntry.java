@@ -19,14 +19,19 @@ import cn.hutool.core.lang.generator.SnowflakeGenerator;
 import com.baomidou.mybatisplus.annotation.DbType;
 import com.baomidou.mybatisplus.core.MybatisConfiguration;
 import com.baomidou.mybatisplus.solon.plugins.MybatisPlusInterceptor;
+import com.baomidou.mybatisplus.solon.plugins.handler.TenantLineHandler;
 import com.baomidou.mybatisplus.solon.plugins.inner.OptimisticLockerInnerInterceptor;
 import com.baomidou.mybatisplus.solon.plugins.inner.PaginationInnerInterceptor;
+import com.baomidou.mybatisplus.solon.plugins.inner.TenantLineInnerInterceptor;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.module.SimpleModule;
 import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
 import com.google.common.eventbus.EventBus;
 import com.zaxxer.hikari.HikariDataSource;
 import lombok.extern.slf4j.Slf4j;
+import m2tk.assistant.app.kernel.service.SourceScope;
+import net.sf.jsqlparser.expression.Expression;
+import net.sf.jsqlparser.expression.LongValue;
 import org.apache.ibatis.solon.annotation.Db;
 import org.noear.solon.annotation.Bean;
 import org.noear.solon.annotation.Configuration;
@@ -34,12 +39,18 @@ import org.noear.solon.annotation.Inject;
 import org.noear.solon.annotation.SolonMain;
 
 import javax.sql.DataSource;
+import java.util.Set;
 
 @Slf4j
 @SolonMain
 @Configuration
 public class KernelEntry
 {
+    // 不区分数据源的表
+    private static final Set<String> UNSCOPED_TABLES = Set.of("t_preference",
+                                                              "t_stream_source",
+                                                              "t_filtering_hook");
+
     @Bean
     public SnowflakeGenerator snowflakeGenerator()
     {
@@ -67,6 +78,7 @@ public class KernelEntry
     public void mybatisPlusConfig(@Db("m2tk") MybatisConfiguration mybatisConfig)
     {
         MybatisPlusInterceptor interceptor = new MybatisPlusInterceptor();
+        interceptor.addInnerInterceptor(new TenantLineInnerInterceptor(new SourceScopeHandler()));
         interceptor.addInnerInterceptor(new PaginationInnerInterceptor(DbType.H2));
         interceptor.addInnerInterceptor(new OptimisticLockerInnerInterceptor());
         mybatisConfig.addInterceptor(interceptor);
@@ -77,4 +89,29 @@ public class KernelEntry
     {
         return new EventBus();
     }
+
+    /**
+     * 按当前线程的数据源作用域为分析数据表附加 source_ref 条件
+     */
+    private static class SourceScopeHandler implements TenantLineHandler
+    {
+        @Override
+        public Expression getTenantId()
+        {
+            return new LongValue(SourceScope.current());
+        }
+
+        @Override
+        public String getTenantIdColumn()
+        {
+            return SourceScope.COLUMN;
+        }
+
+        @Override
+        public boolean ignoreTable(String tableName)
+        {
+            return !SourceScope.isDefined() ||
+                   UNSCOPED_TABLES.contains(tableName.replace("`", "").toLowerCase());
+        }
+    }
 }
@@ -36,4 +36,10 @@ public class FilteringHookEntity
     private Integer subjectPid;
     @TableField("subject_table_id")
     private Integer subjectTableId;
+    @TableField("filter_match")
+    private byte[] filterMatch;
+    @TableField("filter_mask")
+    private byte[] filterMask;
+    @TableField("filter_mode")
+    private byte[] filterMode;
 }
@@ -0,0 +1,195 @@
+/*
+ *  Copyright (c) M2TK Project. All rights reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package m2tk.assistant.app.kernel.io;
+
+import lombok.extern.slf4j.Slf4j;
+import m2tk.io.RxChannel;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 基于内存映射的本地文件输入通道
+ * <p>
+ * 按大窗口（默认 64MB）映射文件，窗口大小取包长（188/204）的整数倍，保证包不会跨越窗口。
+ * 读取时直接从映射区域复制到解复用器的缓冲区，省去文件流的内核缓冲与堆缓冲两次复制。
+ * 读取长度同样按包长对齐，使每次交给解复用器的数据都是完整的包。
+ * <p>
+ * 也可以只读取文件中的一段（分段并行分析），此时窗口从分段起点开始映射，读到分段终点即结束。
+ */
+@Slf4j
+public class MappedFileRxChannel implements RxChannel
+{
+    private static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+    private static final int SYNC_BYTE = 0x47;
+    private static final int SYNC_CHECK_COUNT = 5;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final long fileSize;
+    private final long endPosition;
+    private final int frameSize;
+    private final long windowSize;
+    private MappedByteBuffer window;
+    private long windowStart;
+    private volatile boolean closed;
+
+    private MappedFileRxChannel(Path path, FileChannel channel, int frameSize, int windowSize,
+                                long startPosition, long endPosition) throws IOException
+    {
+        this.path = path;
+        this.channel = channel;
+        this.fileSize = channel.size();
+        this.endPosition = Math.min(endPosition, fileSize);
+        this.frameSize = frameSize;
+        this.windowSize = Math.max(1, windowSize / frameSize) * (long) frameSize;
+        this.windowStart = startPosition;
+        this.window = null;
+    }
+
+    public static MappedFileRxChannel open(Path path) throws IOException
+    {
+        return open(path, DEFAULT_WINDOW_SIZE);
+    }
+
+    public static MappedFileRxChannel open(Path path, int windowSize) throws IOException
+    {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try
+        {
+            int frameSize = detectFrameSize(channel);
+            log.debug("以内存映射方式打开文件 {}，包长 {}", path, frameSize);
+            return new MappedFileRxChannel(path, channel, frameSize, windowSize, 0, Long.MAX_VALUE);
+        } catch (IOException | RuntimeException ex)
+        {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * 打开文件中的一段
+     * @param path 文件路径
+     * @param frameSize 包长
+     * @param startPosition 分段起点（字节偏移，应位于包边界）
+     * @param endPosition 分段终点（字节偏移，不含）
+     */
+    public static MappedFileRxChannel open(Path path, int frameSize, long startPosition, long endPosition) throws IOException
+    {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try
+        {
+            return new MappedFileRxChannel(path, channel, frameSize, DEFAULT_WINDOW_SIZE, startPosition, endPosition);
+        } catch (IOException | RuntimeException ex)
+        {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    public int getFrameSize()
+    {
+        return frameSize;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException
+    {
+        if (closed)
+            throw new IOException("通道已关闭");
+
+        if (window == null || !window.hasRemaining())
+        {
+            long next = (window == null) ? windowStart : windowStart + window.capacity();
+            if (next >= endPosition)
+                return -1;
+            mapWindow(next);
+        }
+
+        int n = Math.min(length, window.remaining());
+        if (n >= frameSize)
+            n -= n % frameSize;
+        window.get(buffer, offset, n);
+        return n;
+    }
+
+    @Override
+    public Object query(String property)
+    {
+        return switch (property)
+        {
+            case "source name" -> path.getFileName().toString();
+            case "frame size" -> frameSize;
+            case "file size" -> fileSize;
+            default -> null;
+        };
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        closed = true;
+        window = null;
+        channel.close();
+    }
+
+    private void mapWindow(long position) throws IOException
+    {
+        long size = Math.min(windowSize, endPosition - position);
+        window = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+        windowStart = position;
+    }
+
+    /**
+     * 根据连续同步字节判断包长。文件开头允许有不足一个包长的残包，
+     * 从前 204 字节内逐个偏移查找；仍无法判断时记录告警并按 188 字节处理。
+     */
+    public static int detectFrameSize(FileChannel channel) throws IOException
+    {
+        long probeSize = Math.min(channel.size(), 204L * (SYNC_CHECK_COUNT + 1) * 2);
+        if (probeSize <= 0)
+            return 188;
+
+        MappedByteBuffer probe = channel.map(FileChannel.MapMode.READ_ONLY, 0, probeSize);
+        for (int offset = 0; offset < 204 && offset < probe.limit(); offset++)
+        {
+            if ((probe.get(offset) & 0xFF) != SYNC_BYTE)
+                continue;
+
+            for (int frameSize : new int[]{188, 204})
+            {
+                boolean matched = true;
+                for (int i = 1; i < SYNC_CHECK_COUNT && matched; i++)
+                {
+                    int index = offset + i * frameSize;
+                    matched = index < probe.limit() && (probe.get(index) & 0xFF) == SYNC_BYTE;
+                }
+                if (matched)
+                {
+                    if (offset > 0)
+                        log.warn("文件开头有 {} 字节不完整数据，按 {} 字节包长处理", offset, frameSize);
+                    return frameSize;
+                }
+            }
+        }
+
+        log.warn("前 {} 字节内未找到连续 {} 个同步字节，无法判断包长，按 188 字节处理", probeSize, SYNC_CHECK_COUNT);
+        return 188;
+    }
+}
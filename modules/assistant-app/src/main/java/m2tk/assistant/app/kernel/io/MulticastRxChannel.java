@@ -0,0 +1,484 @@
+/*
+ *  Copyright (c) M2TK Project. All rights reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package m2tk.assistant.app.kernel.io;
+
+import cn.hutool.core.util.StrUtil;
+import lombok.extern.slf4j.Slf4j;
+import m2tk.io.RxChannel;
+
+import java.io.IOException;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.MembershipKey;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 组播（UDP/RTP）输入通道
+ * <p>
+ * 由独立的接收线程读取套接字，数据报写入预分配的环形缓冲区，解复用线程每次读取时把缓冲区中
+ * 已有的数据报整批复制出来。分析速度跟不上时只会在环形缓冲区溢出（可统计），不会再反压到内核
+ * 接收缓冲区造成无法察觉的丢包。
+ * <p>
+ * 数据报带 RTP 头时（版本 2 且载荷以同步字节开始）在接收线程上剥离，并根据序号和时间戳统计
+ * 丢包、乱序和到达抖动（RFC 3550）。RTP 序号缺口反映的是进入本机之前或内核中的丢包，
+ * 与环形缓冲区溢出（分析过慢）分开统计。
+ * <p>
+ * 地址格式：{@code udp://组播地址:端口[?nif=网口名称或地址]}。
+ */
+@Slf4j
+public class MulticastRxChannel implements RxChannel
+{
+    public static final int DEFAULT_RECEIVE_BUFFER_SIZE = 16 * 1024 * 1024;
+    public static final int DEFAULT_RING_SLOTS = 8192;
+    public static final int DEFAULT_DATAGRAM_SIZE = 2048;
+
+    private static final int SYNC_BYTE = 0x47;
+    private static final int RTP_HEADER_SIZE = 12;
+    private static final int RTP_CLOCK_RATE = 90000;
+    private static final long IDLE_READ_TIMEOUT_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final String sourceName;
+    private final NetworkInterface nif;
+    private final DatagramChannel channel;
+    private final MembershipKey membership;
+    private final int receiveBufferSize;
+
+    // 环形缓冲区：单生产者（接收线程）单消费者（解复用线程）。
+    private final int slotCount;
+    private final int slotSize;
+    private final byte[] ring;
+    private final ByteBuffer[] slots;
+    private final int[] payloadOffsets;
+    private final int[] payloadLengths;
+    private final AtomicLong head;
+    private final AtomicLong tail;
+    private final ByteBuffer discard;
+    private volatile Thread waiter;
+
+    private final Thread receiver;
+    private volatile boolean closed;
+
+    // 统计项只由接收线程写入。
+    private volatile long receivedDatagrams;
+    private volatile long receivedBytes;
+    private volatile long overruns;
+    private volatile long truncated;
+    private volatile int peakFill;
+    private volatile boolean rtp;
+    private volatile long rtpLost;
+    private volatile long rtpReordered;
+    private volatile double rtpJitter;
+    private int lastSequence = -1;
+    private long lastTransit;
+    private boolean transitValid;
+    private final long openNanos;
+
+    private MulticastRxChannel(String sourceName, NetworkInterface nif,
+                               DatagramChannel channel, MembershipKey membership,
+                               int ringSlots, int datagramSize) throws IOException
+    {
+        this.sourceName = sourceName;
+        this.nif = nif;
+        this.channel = channel;
+        this.membership = membership;
+        this.receiveBufferSize = channel.getOption(StandardSocketOptions.SO_RCVBUF);
+        this.openNanos = System.nanoTime();
+
+        this.slotCount = ringSlots;
+        this.slotSize = datagramSize;
+        this.ring = new byte[ringSlots * datagramSize];
+        this.slots = new ByteBuffer[ringSlots];
+        for (int i = 0; i < ringSlots; i++)
+            slots[i] = ByteBuffer.wrap(ring, i * datagramSize, datagramSize).slice();
+        this.payloadOffsets = new int[ringSlots];
+        this.payloadLengths = new int[ringSlots];
+        this.head = new AtomicLong();
+        this.tail = new AtomicLong();
+        this.discard = ByteBuffer.allocate(datagramSize);
+
+        this.receiver = new Thread(this::receiveLoop, "multicast-receiver-" + sourceName);
+        this.receiver.setDaemon(true);
+        this.receiver.setPriority(Thread.MAX_PRIORITY);
+    }
+
+    public static MulticastRxChannel open(String uri) throws IOException
+    {
+        return open(uri, DEFAULT_RECEIVE_BUFFER_SIZE, DEFAULT_RING_SLOTS, DEFAULT_DATAGRAM_SIZE);
+    }
+
+    /**
+     * 打开组播输入通道
+     * @param uri 组播地址
+     * @param receiveBufferSize 套接字接收缓冲区大小（SO_RCVBUF），实际大小受操作系统限制
+     * @param ringSlots 环形缓冲区可容纳的数据报数量
+     * @param datagramSize 单个数据报的最大长度，超长部分被截断并计数
+     */
+    public static MulticastRxChannel open(String uri, int receiveBufferSize, int ringSlots, int datagramSize) throws IOException
+    {
+        URI address = URI.create(uri);
+        InetAddress group = InetAddress.getByName(address.getHost());
+        if (!group.isMulticastAddress() || address.getPort() <= 0)
+            throw new IllegalArgumentException("无效的组播地址：" + uri);
+        if (ringSlots <= 0 || datagramSize < 188)
+            throw new IllegalArgumentException("无效的缓冲区参数");
+
+        NetworkInterface nif = selectNetworkInterface(address.getQuery(), group);
+        StandardProtocolFamily family = (group instanceof Inet6Address)
+                                        ? StandardProtocolFamily.INET6
+                                        : StandardProtocolFamily.INET;
+        DatagramChannel channel = DatagramChannel.open(family);
+        try
+        {
+            channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            channel.setOption(StandardSocketOptions.SO_RCVBUF, receiveBufferSize);
+            channel.bind(new InetSocketAddress(address.getPort()));
+            MembershipKey membership = channel.join(group, nif);
+
+            MulticastRxChannel rx = new MulticastRxChannel(group.getHostAddress() + ":" + address.getPort(), nif,
+                                                           channel, membership, ringSlots, datagramSize);
+            if (rx.receiveBufferSize < receiveBufferSize)
+                log.warn("接收缓冲区大小受系统限制：请求 {}，实际 {}", receiveBufferSize, rx.receiveBufferSize);
+            log.debug("加入组播组 {}（网口：{}，接收缓冲区：{}）", rx.sourceName, nif.getName(), rx.receiveBufferSize);
+            rx.receiver.start();
+            return rx;
+        } catch (IOException | RuntimeException ex)
+        {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException
+    {
+        long h = head.get();
+        long t = tail.get();
+        long deadline = System.nanoTime() + IDLE_READ_TIMEOUT_NANOS;
+        while (h == t)
+        {
+            if (closed)
+                return -1;
+
+            // 先登记等待线程再复查，接收线程发布数据后会检查登记并唤醒。
+            waiter = Thread.currentThread();
+            t = tail.get();
+            if (h == t)
+                LockSupport.parkNanos(this, IDLE_READ_TIMEOUT_NANOS);
+            waiter = null;
+            t = tail.get();
+
+            // 长时间没有数据时返回 0，让解复用线程有机会检查停止请求。
+            if (h == t && System.nanoTime() - deadline >= 0)
+                return closed ? -1 : 0;
+        }
+
+        // 整批复制缓冲区中已有的数据报，直到目标缓冲区放不下下一个。
+        int n = 0;
+        while (h < t)
+        {
+            int index = (int) (h % slotCount);
+            int size = payloadLengths[index];
+            if (n + size > length)
+            {
+                if (n > 0)
+                    break;
+                // 目标缓冲区连一个数据报都放不下：复制能放下的部分，剩余部分留到下次读取。
+                System.arraycopy(ring, index * slotSize + payloadOffsets[index], buffer, offset, length);
+                payloadOffsets[index] += length;
+                payloadLengths[index] -= length;
+                return length;
+            }
+            System.arraycopy(ring, index * slotSize + payloadOffsets[index], buffer, offset + n, size);
+            n += size;
+            h += 1;
+        }
+        head.lazySet(h);
+        return n;
+    }
+
+    @Override
+    public Object query(String property)
+    {
+        return switch (property)
+        {
+            case "source name" -> sourceName;
+            case "nif" -> nif.getName();
+            case "receive buffer size" -> receiveBufferSize;
+            case "rtp" -> rtp;
+            default -> null;
+        };
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        if (closed)
+            return;
+        closed = true;
+
+        membership.drop();
+        channel.close();
+        Thread w = waiter;
+        if (w != null)
+            LockSupport.unpark(w);
+    }
+
+    public long getReceivedDatagrams()
+    {
+        return receivedDatagrams;
+    }
+
+    public long getReceivedBytes()
+    {
+        return receivedBytes;
+    }
+
+    /**
+     * @return 因环形缓冲区已满而丢弃的数据报数量（分析速度不足）
+     */
+    public long getOverruns()
+    {
+        return overruns;
+    }
+
+    /**
+     * @return 被截断的数据报数量（长度达到单个数据报上限的都按截断计）
+     */
+    public long getTruncatedDatagrams()
+    {
+        return truncated;
+    }
+
+    /**
+     * @return 环形缓冲区占用（%）
+     */
+    public int getBufferFill()
+    {
+        long used = tail.get() - head.get();
+        return (int) (used * 100 / slotCount);
+    }
+
+    /**
+     * @return 自上次调用以来环形缓冲区的最大占用（%）
+     */
+    public int pollPeakFill()
+    {
+        int peak = Math.max(peakFill, getBufferFill());
+        peakFill = 0;
+        return peak;
+    }
+
+    public boolean isRtp()
+    {
+        return rtp;
+    }
+
+    /**
+     * @return 根据 RTP 序号缺口推算的丢包数（输入侧丢包）
+     */
+    public long getRtpLost()
+    {
+        return rtpLost;
+    }
+
+    public long getRtpReordered()
+    {
+        return rtpReordered;
+    }
+
+    /**
+     * @return RTP 到达抖动（微秒）
+     */
+    public double getRtpJitterMicros()
+    {
+        return rtpJitter * 1000000 / RTP_CLOCK_RATE;
+    }
+
+    private void receiveLoop()
+    {
+        try
+        {
+            while (!closed)
+            {
+                long t = tail.get();
+                long used = t - head.get();
+                if (used >= slotCount)
+                {
+                    // 缓冲区已满：照常从套接字取走数据报并丢弃，保证内核缓冲区不会积压。
+                    discard.clear();
+                    channel.receive(discard);
+                    overruns += 1;
+                    continue;
+                }
+
+                int index = (int) (t % slotCount);
+                ByteBuffer slot = slots[index];
+                slot.clear();
+                channel.receive(slot);
+                int size = slot.position();
+                if (size == 0)
+                    continue;
+
+                receivedDatagrams += 1;
+                receivedBytes += size;
+                if (size == slotSize)
+                    truncated += 1;
+
+                int base = index * slotSize;
+                int payload = stripRtpHeader(base, size);
+                payloadOffsets[index] = payload;
+                payloadLengths[index] = size - payload - paddingSize(base, size, payload);
+
+                tail.lazySet(t + 1);
+                int fill = (int) ((used + 1) * 100 / slotCount);
+                if (fill > peakFill)
+                    peakFill = fill;
+
+                Thread w = waiter;
+                if (w != null)
+                    LockSupport.unpark(w);
+            }
+        } catch (ClosedChannelException ex)
+        {
+            // 通道关闭，正常退出。
+        } catch (IOException ex)
+        {
+            if (!closed)
+                log.error("接收组播数据时异常：{}", ex.getMessage());
+        } finally
+        {
+            closed = true;
+            Thread w = waiter;
+            if (w != null)
+                LockSupport.unpark(w);
+        }
+    }
+
+    /**
+     * 识别并剥离 RTP 头，同时更新序号与抖动统计。
+     * @return 载荷在数据报内的偏移，不是 RTP 数据报时返回 0
+     */
+    private int stripRtpHeader(int base, int size)
+    {
+        int b0 = ring[base] & 0xFF;
+        if (b0 == SYNC_BYTE || (b0 & 0xC0) != 0x80 || size < RTP_HEADER_SIZE)
+            return 0;
+
+        int headerSize = RTP_HEADER_SIZE + (b0 & 0x0F) * 4;
+        if ((b0 & 0x10) != 0 && headerSize + 4 <= size)
+        {
+            int extensionLength = ((ring[base + headerSize + 2] & 0xFF) << 8) | (ring[base + headerSize + 3] & 0xFF);
+            headerSize += 4 + extensionLength * 4;
+        }
+        if (headerSize >= size || (ring[base + headerSize] & 0xFF) != SYNC_BYTE)
+            return 0;
+
+        rtp = true;
+        int sequence = ((ring[base + 2] & 0xFF) << 8) | (ring[base + 3] & 0xFF);
+        long timestamp = ((ring[base + 4] & 0xFFL) << 24) | ((ring[base + 5] & 0xFFL) << 16) |
+                         ((ring[base + 6] & 0xFFL) << 8) | (ring[base + 7] & 0xFFL);
+        updateSequence(sequence);
+        updateJitter(timestamp);
+        return headerSize;
+    }
+
+    private int paddingSize(int base, int size, int payload)
+    {
+        if (payload == 0 || (ring[base] & 0x20) == 0)
+            return 0;
+        int padding = ring[base + size - 1] & 0xFF;
+        return (padding < size - payload) ? padding : 0;
+    }
+
+    private void updateSequence(int sequence)
+    {
+        if (lastSequence >= 0)
+        {
+            int gap = (sequence - lastSequence - 1) & 0xFFFF;
+            if (gap == 0xFFFF || gap >= 0x8000)
+            {
+                // 重复或迟到的数据报，不推进期望序号。
+                rtpReordered += 1;
+                return;
+            }
+            if (gap > 0)
+                rtpLost += gap;
+        }
+        lastSequence = sequence;
+    }
+
+    private void updateJitter(long timestamp)
+    {
+        // 到达时间从通道打开时起算，按整秒和余数分别换算成 RTP 时钟，避免乘法溢出。
+        long elapsed = System.nanoTime() - openNanos;
+        long arrival = elapsed / 1000000000L * RTP_CLOCK_RATE + elapsed % 1000000000L * RTP_CLOCK_RATE / 1000000000L;
+        long transit = arrival - timestamp;
+        if (transitValid)
+        {
+            // RFC 3550 A.8：J = J + (|D| - J) / 16，时间戳按 32 位回绕。
+            long d = (int) (transit - lastTransit);
+            rtpJitter += (Math.abs(d) - rtpJitter) / 16;
+        }
+        lastTransit = transit;
+        transitValid = true;
+    }
+
+    /**
+     * 按地址参数选择加入组播的网口，未指定时选择第一个支持组播的非回环网口。
+     */
+    private static NetworkInterface selectNetworkInterface(String query, InetAddress group) throws IOException
+    {
+        String name = null;
+        if (StrUtil.isNotEmpty(query))
+        {
+            for (String param : query.split("&"))
+            {
+                if (param.startsWith("nif="))
+                    name = param.substring(4);
+            }
+        }
+
+        if (StrUtil.isNotEmpty(name))
+        {
+            NetworkInterface nif = NetworkInterface.getByName(name);
+            if (nif == null)
+                nif = NetworkInterface.getByInetAddress(InetAddress.getByName(name));
+            if (nif == null)
+                throw new IllegalArgumentException("找不到网口：" + name);
+            return nif;
+        }
+
+        for (NetworkInterface nif : Collections.list(NetworkInterface.getNetworkInterfaces()))
+        {
+            if (nif.isUp() && nif.supportsMulticast() && !nif.isLoopback() && !nif.isVirtual())
+            {
+                boolean matched = nif.inetAddresses()
+                                     .anyMatch(addr -> (addr instanceof Inet6Address) == (group instanceof Inet6Address));
+                if (matched)
+                    return nif;
+            }
+        }
+        NetworkInterface loopback = NetworkInterface.getByInetAddress(InetAddress.getLoopbackAddress());
+        if (loopback == null)
+            throw new IOException("没有可用于接收组播的网口");
+        return loopback;
+    }
+}
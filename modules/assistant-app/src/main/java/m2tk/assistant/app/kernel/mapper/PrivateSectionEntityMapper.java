@@ -18,8 +18,12 @@ package m2tk.assistant.app.kernel.mapper;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import m2tk.assistant.app.kernel.entity.PrivateSectionEntity;
 import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
 import org.apache.ibatis.annotations.Update;
 
+import java.util.List;
+import java.util.Map;
+
 public interface PrivateSectionEntityMapper extends BaseMapper<PrivateSectionEntity>
 {
     @Update("""
@@ -45,4 +49,10 @@ public interface PrivateSectionEntityMapper extends BaseMapper<PrivateSectionEnt
              )
             """)
     void deleteRecentN(@Param("tag") String tag, @Param("pid") int pid, @Param("count") int count);
+
+    @Select("""
+            SELECT `tag`, COUNT(`id`) AS `count` FROM `t_private_section`
+            GROUP BY `tag`
+            """)
+    List<Map<String, Object>> countByTag();
 }
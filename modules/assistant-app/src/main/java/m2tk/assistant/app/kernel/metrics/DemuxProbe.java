@@ -0,0 +1,112 @@
+/*
+ *  Copyright (c) M2TK Project. All rights reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package m2tk.assistant.app.kernel.metrics;
+
+import m2tk.multiplex.TSDemux;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * 解复用器探针：把分析器注册的回调包装为计时回调，注销时换回对应的包装对象。
+ */
+final class DemuxProbe implements InvocationHandler
+{
+    private final TSDemux demux;
+    private final SessionMetrics metrics;
+    private final String owner;
+    private final boolean countSections;
+    private final Map<Consumer<?>, Consumer<Object>> wrappers;
+
+    private DemuxProbe(TSDemux demux, SessionMetrics metrics, String owner, boolean countSections)
+    {
+        this.demux = demux;
+        this.metrics = metrics;
+        this.owner = owner;
+        this.countSections = countSections;
+        this.wrappers = new IdentityHashMap<>();
+    }
+
+    /**
+     * @param countSections 是否把分段通道的回调计入会话的分段数（只用于分段总线，避免重复计数）
+     */
+    static TSDemux create(TSDemux demux, SessionMetrics metrics, String owner, boolean countSections)
+    {
+        return (TSDemux) Proxy.newProxyInstance(TSDemux.class.getClassLoader(),
+                                                new Class<?>[]{TSDemux.class},
+                                                new DemuxProbe(demux, metrics, owner, countSections));
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+    {
+        if (method.getDeclaringClass() == Object.class)
+        {
+            return switch (method.getName())
+            {
+                case "equals" -> proxy == args[0];
+                case "hashCode" -> System.identityHashCode(proxy);
+                default -> "DemuxProbe@" + Integer.toHexString(System.identityHashCode(proxy));
+            };
+        }
+
+        String name = method.getName();
+        Object[] actualArgs = args;
+        if (args != null && (name.startsWith("register") || name.startsWith("unregister") || name.startsWith("close")))
+        {
+            actualArgs = args.clone();
+            for (int i = 0; i < actualArgs.length; i++)
+            {
+                if (actualArgs[i] instanceof Consumer<?> consumer)
+                    actualArgs[i] = name.startsWith("register") ? wrap(name, consumer) : lookup(consumer);
+            }
+        }
+
+        try
+        {
+            return method.invoke(demux, actualArgs);
+        } catch (InvocationTargetException ex)
+        {
+            throw ex.getCause();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private synchronized Consumer<Object> wrap(String method, Consumer<?> consumer)
+    {
+        return wrappers.computeIfAbsent(consumer, c -> {
+            Consumer<Object> timed = metrics.timed(owner, (Consumer<Object>) c);
+            if (!countSections || !method.equals("registerSectionChannel"))
+                return timed;
+            return message -> {
+                metrics.countSection();
+                timed.accept(message);
+            };
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private synchronized Consumer<Object> lookup(Consumer<?> consumer)
+    {
+        Consumer<Object> wrapper = wrappers.remove(consumer);
+        return (wrapper != null) ? wrapper : (Consumer<Object>) consumer;
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ *  Copyright (c) M2TK Project. All rights reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package m2tk.assistant.app.kernel.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 耗时直方图（纳秒）
+ * <p>
+ * 按 HDR 直方图的方式分桶：每个2的幂次区间再均分为 {@value #SUB_BUCKETS} 个子桶，
+ * 相对误差不超过 1/{@value #SUB_BUCKETS}，记录时只做一次数组下标计算和原子累加，不分配对象。
+ * 超出范围的值计入最后一个桶（约 18 分钟）。
+ */
+public final class LatencyHistogram
+{
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 40;
+    private static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long nanos)
+    {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(indexOf(value));
+        count.incrementAndGet();
+        total.addAndGet(value);
+        if (value > max.get())
+            max.accumulateAndGet(value, Math::max);
+    }
+
+    public long getCount()
+    {
+        return count.get();
+    }
+
+    public long getTotalNanos()
+    {
+        return total.get();
+    }
+
+    public Snapshot snapshot()
+    {
+        long[] buckets = new long[BUCKETS];
+        long n = 0;
+        for (int i = 0; i < BUCKETS; i++)
+        {
+            buckets[i] = counts.get(i);
+            n += buckets[i];
+        }
+        return new Snapshot(n, total.get(), max.get(), buckets);
+    }
+
+    private static int indexOf(long value)
+    {
+        if (value < SUB_BUCKETS)
+            return (int) value;
+
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT)
+            return BUCKETS - 1;
+        int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    private static long upperBoundOf(int index)
+    {
+        if (index < SUB_BUCKETS)
+            return index;
+
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        int sub = index % SUB_BUCKETS;
+        long unit = 1L << (exponent - SUB_BUCKET_BITS);
+        return (1L << exponent) + (sub + 1) * unit - 1;
+    }
+
+    /**
+     * 直方图快照，各分位值取所在桶的上界。
+     */
+    public static final class Snapshot
+    {
+        private final long count;
+        private final long totalNanos;
+        private final long maxNanos;
+        private final long[] buckets;
+
+        private Snapshot(long count, long totalNanos, long maxNanos, long[] buckets)
+        {
+            this.count = count;
+            this.totalNanos = totalNanos;
+            this.maxNanos = maxNanos;
+            this.buckets = buckets;
+        }
+
+        public long getCount()
+        {
+            return count;
+        }
+
+        public long getTotalNanos()
+        {
+            return totalNanos;
+        }
+
+        public long getMaxNanos()
+        {
+            return maxNanos;
+        }
+
+        public long getMeanNanos()
+        {
+            return (count == 0) ? 0 : totalNanos / count;
+        }
+
+        /**
+         * @param percentile 百分位（0~100）
+         */
+        public long getPercentileNanos(double percentile)
+        {
+            if (count == 0)
+                return 0;
+
+            long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i++)
+            {
+                seen += buckets[i];
+                if (seen >= rank)
+                    return Math.min(upperBoundOf(i), maxNanos);
+            }
+            return maxNanos;
+        }
+    }
+}
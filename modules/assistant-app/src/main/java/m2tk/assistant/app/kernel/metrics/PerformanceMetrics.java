@@ -0,0 +1,201 @@
+/*
+ *  Copyright (c) M2TK Project. All rights reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package m2tk.assistant.app.kernel.metrics;
+
+import lombok.extern.slf4j.Slf4j;
+import org.noear.solon.annotation.Component;
+import org.noear.solon.annotation.Init;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 性能统计
+ * <p>
+ * 管理各分析会话的 {@link SessionMetrics}，每秒采样一次（计算速率、内存分配速率和垃圾回收耗时），
+ * 并把全部统计项注册为 JMX MBean（域名 {@value #DOMAIN}），可以用 JConsole/VisualVM 查看。
+ */
+@Slf4j
+@Component
+public class PerformanceMetrics implements RuntimeMetricsMXBean
+{
+    public static final String DOMAIN = "m2tk.assistant";
+    private static final long SAMPLE_INTERVAL_MILLIS = 1000;
+
+    private final Map<Integer, SessionMetrics> sessions = new ConcurrentHashMap<>();
+    private final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    private ScheduledExecutorService sampler;
+
+    private long lastSampleNanos;
+    private long lastAllocatedBytes;
+    private long lastGcTime;
+    private long lastGcCount;
+    private volatile double allocationRate;
+    private volatile double gcTimeRate;
+    private volatile double gcCountRate;
+
+    @Init
+    public void start()
+    {
+        register(this, DOMAIN + ":type=Runtime");
+
+        lastSampleNanos = System.nanoTime();
+        lastAllocatedBytes = allocatedBytes();
+        lastGcTime = gcTime();
+        lastGcCount = gcCount();
+        sampler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "performance-sampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sampler.scheduleAtFixedRate(this::sample, SAMPLE_INTERVAL_MILLIS, SAMPLE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 为新的分析会话创建统计对象
+     * @param sourceId 数据源编号
+     * @param sourceName 数据源名称
+     * @param enabled 是否启用计时探针（未启用时只保留速率和队列统计）
+     */
+    public SessionMetrics createSession(int sourceId, String sourceName, boolean enabled)
+    {
+        String prefix = DOMAIN + ":type=Timer,session=" + sourceId;
+        SessionMetrics metrics = new SessionMetrics(sourceId, sourceName, enabled,
+                                                    timer -> register(timer, prefix +
+                                                                             ",category=" + ObjectName.quote(timer.getCategory()) +
+                                                                             ",name=" + ObjectName.quote(timer.getName())));
+        sessions.put(sourceId, metrics);
+        register(metrics, DOMAIN + ":type=Session,session=" + sourceId);
+        return metrics;
+    }
+
+    public SessionMetrics getSession(int sourceId)
+    {
+        return sessions.get(sourceId);
+    }
+
+    /**
+     * 移除会话的统计对象及其全部 MBean
+     */
+    public void removeSession(int sourceId)
+    {
+        if (sessions.remove(sourceId) == null)
+            return;
+
+        try
+        {
+            for (ObjectName name : server.queryNames(new ObjectName(DOMAIN + ":session=" + sourceId + ",*"), null))
+                server.unregisterMBean(name);
+        } catch (Exception ex)
+        {
+            log.warn("注销会话 {} 的性能统计时异常：{}", sourceId, ex.getMessage());
+        }
+    }
+
+    @Override
+    public double getAllocationRate()
+    {
+        return allocationRate;
+    }
+
+    @Override
+    public double getGcTimeRate()
+    {
+        return gcTimeRate;
+    }
+
+    @Override
+    public double getGcCountRate()
+    {
+        return gcCountRate;
+    }
+
+    @Override
+    public long getHeapUsed()
+    {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private void sample()
+    {
+        try
+        {
+            long now = System.nanoTime();
+            long elapsed = Math.max(1, now - lastSampleNanos);
+            long allocated = allocatedBytes();
+            long time = gcTime();
+            long count = gcCount();
+
+            allocationRate = (allocated - lastAllocatedBytes) / 1048576.0 * 1e9 / elapsed;
+            gcTimeRate = (time - lastGcTime) * 1e9 / elapsed;
+            gcCountRate = (count - lastGcCount) * 1e9 / elapsed;
+            lastSampleNanos = now;
+            lastAllocatedBytes = allocated;
+            lastGcTime = time;
+            lastGcCount = count;
+
+            long timestamp = System.currentTimeMillis();
+            for (SessionMetrics metrics : sessions.values())
+                metrics.sample(timestamp, elapsed, allocationRate, gcTimeRate);
+        } catch (Exception ex)
+        {
+            log.warn("性能采样异常：{}", ex.getMessage());
+        }
+    }
+
+    private void register(Object bean, String name)
+    {
+        try
+        {
+            server.registerMBean(bean, new ObjectName(name));
+        } catch (Exception ex)
+        {
+            log.warn("无法注册MBean {}：{}", name, ex.getMessage());
+        }
+    }
+
+    private static long allocatedBytes()
+    {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean extended && extended.isThreadAllocatedMemoryEnabled())
+            return extended.getTotalThreadAllocatedBytes();
+        return 0;
+    }
+
+    private static long gcTime()
+    {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+            total += Math.max(0, gc.getCollectionTime());
+        return total;
+    }
+
+    private static long gcCount()
+    {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+            total += Math.max(0, gc.getCollectionCount());
+        return total;
+    }
+}
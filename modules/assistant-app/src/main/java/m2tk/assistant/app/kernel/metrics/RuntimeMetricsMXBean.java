@@ -13,11 +13,18 @@
  *  See the License for the specific language governing permissions and
  *  limitations under the License.
  */
-package m2tk.assistant.app.kernel.mapper;
+package m2tk.assistant.app.kernel.metrics;
 
-import com.baomidou.mybatisplus.core.mapper.BaseMapper;
-import m2tk.assistant.app.kernel.entity.DensityBulkEntity;
-
-public interface DensityBulkEntityMapper extends BaseMapper<DensityBulkEntity>
+/**
+ * 运行时（内存分配与垃圾回收）统计（JMX）
+ */
+public interface RuntimeMetricsMXBean
 {
+    double getAllocationRate();
+
+    double getGcTimeRate();
+
+    double getGcCountRate();
+
+    long getHeapUsed();
 }
@@ -0,0 +1,401 @@
+/*
+ *  Copyright (c) M2TK Project. All rights reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package m2tk.assistant.app.kernel.metrics;
+
+import m2tk.assistant.api.M2TKDatabase;
+import m2tk.assistant.api.SectionBus;
+import m2tk.assistant.app.kernel.io.MulticastRxChannel;
+import m2tk.multiplex.TSDemux;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * 分析会话的性能统计
+ * <p>
+ * 包括各分析器及其回调的耗时、数据库各方法的调用耗时、传输包和分段的处理速率、队列占用、组播输入的丢包与缓冲占用，
+ * 以及每个采样周期的历史记录（供界面绘制曲线）。未启用时各探针方法直接返回原对象，不产生任何开销。
+ */
+public final class SessionMetrics implements SessionMetricsMXBean
+{
+    public static final int HISTORY_SIZE = 300;
+
+    private final int sourceId;
+    private final String sourceName;
+    private final boolean enabled;
+    private final Consumer<TimerStats> registrar;
+    private final Map<String, TimerStats> timers;
+    private final LongAdder packets;
+    private final LongAdder sections;
+    private volatile IntSupplier queueFill;
+    private volatile IntSupplier writeQueueDepth;
+    private volatile LongSupplier droppedMessages;
+    private volatile MulticastRxChannel input;
+
+    private final Sample[] history;
+    private int historyHead;
+    private int historySize;
+    private long lastPackets;
+    private long lastSections;
+    private volatile double packetRate;
+    private volatile double sectionRate;
+
+    /**
+     * 采样记录
+     * @param time 采样时间（毫秒）
+     * @param packetRate 传输包速率（包/秒）
+     * @param sectionRate 分段速率（段/秒）
+     * @param queueFill 流水线队列占用（%）
+     * @param inputFill 组播输入缓冲区在采样周期内的最大占用（%）
+     * @param allocationRate 内存分配速率（MB/秒）
+     * @param gcTimeRate 垃圾回收耗时（毫秒/秒）
+     */
+    public record Sample(long time, double packetRate, double sectionRate, int queueFill, int inputFill,
+                         double allocationRate, double gcTimeRate)
+    {
+    }
+
+    SessionMetrics(int sourceId, String sourceName, boolean enabled, Consumer<TimerStats> registrar)
+    {
+        this.sourceId = sourceId;
+        this.sourceName = sourceName;
+        this.enabled = enabled;
+        this.registrar = registrar;
+        this.timers = new ConcurrentHashMap<>();
+        this.packets = new LongAdder();
+        this.sections = new LongAdder();
+        this.queueFill = () -> 0;
+        this.writeQueueDepth = () -> 0;
+        this.droppedMessages = () -> 0;
+        this.history = new Sample[HISTORY_SIZE];
+    }
+
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    /**
+     * 生成分析器使用的解复用器探针，分析器注册的回调都按分析器和消息类型计时。
+     * @param demux 解复用器（或其代理）
+     * @param owner 分析器名称
+     */
+    public TSDemux instrument(TSDemux demux, String owner)
+    {
+        return enabled ? DemuxProbe.create(demux, this, owner, false) : demux;
+    }
+
+    /**
+     * 生成分段总线使用的解复用器探针，除计时外，还统计分段数。
+     */
+    public TSDemux instrumentSectionBus(TSDemux demux)
+    {
+        return enabled ? DemuxProbe.create(demux, this, "SectionBus", true) : demux;
+    }
+
+    /**
+     * 生成分析器使用的分段总线视图，订阅的监听器按分析器计时。
+     */
+    public SectionBus instrument(SectionBus bus, String owner)
+    {
+        return enabled ? bus.withDispatcher(listener -> timed(owner, listener)) : bus;
+    }
+
+    /**
+     * 生成按方法计时的数据库代理
+     */
+    public M2TKDatabase instrument(M2TKDatabase database)
+    {
+        if (!enabled)
+            return database;
+
+        Map<Method, TimerStats> methodTimers = new ConcurrentHashMap<>();
+        InvocationHandler handler = (proxy, method, args) -> {
+            if (method.getDeclaringClass() == Object.class)
+            {
+                return switch (method.getName())
+                {
+                    case "equals" -> proxy == args[0];
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    default -> "SessionMetrics$Database@" + Integer.toHexString(System.identityHashCode(proxy));
+                };
+            }
+
+            TimerStats timer = methodTimers.computeIfAbsent(method,
+                                                            m -> timer("M2TKDatabase." + m.getName(), TimerStats.DATABASE));
+            long t0 = System.nanoTime();
+            try
+            {
+                return method.invoke(database, args);
+            } catch (InvocationTargetException ex)
+            {
+                throw ex.getCause();
+            } finally
+            {
+                timer.record(System.nanoTime() - t0);
+            }
+        };
+        return (M2TKDatabase) Proxy.newProxyInstance(M2TKDatabase.class.getClassLoader(),
+                                                     new Class<?>[]{M2TKDatabase.class},
+                                                     handler);
+    }
+
+    /**
+     * 把回调包装为计时回调：耗时同时计入分析器和“分析器.消息类型”两个统计项。
+     */
+    public <T> Consumer<T> timed(String owner, Consumer<T> target)
+    {
+        return new TimedConsumer<>(owner, target, timer(owner, TimerStats.TRACER));
+    }
+
+    public void countPacket()
+    {
+        packets.increment();
+    }
+
+    public void countSection()
+    {
+        sections.increment();
+    }
+
+    public void bindQueueFill(IntSupplier supplier)
+    {
+        queueFill = supplier;
+    }
+
+    public void bindWriteQueueDepth(IntSupplier supplier)
+    {
+        writeQueueDepth = supplier;
+    }
+
+    public void bindDroppedMessages(LongSupplier supplier)
+    {
+        droppedMessages = supplier;
+    }
+
+    public void bindInput(MulticastRxChannel channel)
+    {
+        input = channel;
+    }
+
+    public boolean hasInputStats()
+    {
+        return input != null;
+    }
+
+    /**
+     * @return 全部计时统计，按最近一个周期的耗时占比降序排列
+     */
+    public List<TimerStats> listTimers()
+    {
+        List<TimerStats> list = new ArrayList<>(timers.values());
+        list.sort(Comparator.comparingDouble(TimerStats::getLoad).reversed()
+                            .thenComparing(Comparator.comparingDouble(TimerStats::getTotalMillis).reversed()));
+        return list;
+    }
+
+    /**
+     * @return 采样历史（按时间升序）
+     */
+    public synchronized List<Sample> listHistory()
+    {
+        List<Sample> list = new ArrayList<>(historySize);
+        for (int i = 0; i < historySize; i++)
+            list.add(history[(historyHead + i) % HISTORY_SIZE]);
+        return list;
+    }
+
+    @Override
+    public int getSourceId()
+    {
+        return sourceId;
+    }
+
+    @Override
+    public String getSourceName()
+    {
+        return sourceName;
+    }
+
+    @Override
+    public long getPacketCount()
+    {
+        return packets.sum();
+    }
+
+    @Override
+    public long getSectionCount()
+    {
+        return sections.sum();
+    }
+
+    @Override
+    public double getPacketRate()
+    {
+        return packetRate;
+    }
+
+    @Override
+    public double getSectionRate()
+    {
+        return sectionRate;
+    }
+
+    @Override
+    public int getQueueFill()
+    {
+        return queueFill.getAsInt();
+    }
+
+    @Override
+    public int getWriteQueueDepth()
+    {
+        return writeQueueDepth.getAsInt();
+    }
+
+    @Override
+    public long getDroppedMessages()
+    {
+        return droppedMessages.getAsLong();
+    }
+
+    @Override
+    public int getInputBufferFill()
+    {
+        MulticastRxChannel channel = input;
+        return (channel == null) ? 0 : channel.getBufferFill();
+    }
+
+    @Override
+    public long getInputLost()
+    {
+        MulticastRxChannel channel = input;
+        return (channel == null) ? 0 : channel.getRtpLost();
+    }
+
+    @Override
+    public long getInputOverruns()
+    {
+        MulticastRxChannel channel = input;
+        return (channel == null) ? 0 : channel.getOverruns();
+    }
+
+    @Override
+    public double getInputJitterMicros()
+    {
+        MulticastRxChannel channel = input;
+        return (channel == null) ? 0 : channel.getRtpJitterMicros();
+    }
+
+    synchronized void sample(long time, long elapsedNanos, double allocationRate, double gcTimeRate)
+    {
+        long packetCount = packets.sum();
+        long sectionCount = sections.sum();
+        packetRate = (packetCount - lastPackets) * 1e9 / elapsedNanos;
+        sectionRate = (sectionCount - lastSections) * 1e9 / elapsedNanos;
+        lastPackets = packetCount;
+        lastSections = sectionCount;
+
+        for (TimerStats timer : timers.values())
+            timer.sample(elapsedNanos);
+
+        MulticastRxChannel channel = input;
+        int inputFill = (channel == null) ? 0 : channel.pollPeakFill();
+        Sample sample = new Sample(time, packetRate, sectionRate, getQueueFill(), inputFill, allocationRate, gcTimeRate);
+        if (historySize < HISTORY_SIZE)
+        {
+            history[(historyHead + historySize) % HISTORY_SIZE] = sample;
+            historySize += 1;
+        } else
+        {
+            history[historyHead] = sample;
+            historyHead = (historyHead + 1) % HISTORY_SIZE;
+        }
+    }
+
+    private TimerStats timer(String name, String category)
+    {
+        TimerStats timer = timers.get(name);
+        if (timer != null)
+            return timer;
+
+        TimerStats created = new TimerStats(name, category);
+        timer = timers.putIfAbsent(name, created);
+        if (timer != null)
+            return timer;
+        registrar.accept(created);
+        return created;
+    }
+
+    private final class TimedConsumer<T> implements Consumer<T>
+    {
+        private final String owner;
+        private final Consumer<T> target;
+        private final TimerStats ownerTimer;
+        // 同一个回调收到的消息类型通常不变，缓存最近一次的类型及其统计项。
+        private volatile Binding binding;
+
+        private record Binding(Class<?> type, TimerStats timer)
+        {
+        }
+
+        TimedConsumer(String owner, Consumer<T> target, TimerStats ownerTimer)
+        {
+            this.owner = owner;
+            this.target = target;
+            this.ownerTimer = ownerTimer;
+        }
+
+        @Override
+        public void accept(T message)
+        {
+            long t0 = System.nanoTime();
+            try
+            {
+                target.accept(message);
+            } finally
+            {
+                long elapsed = System.nanoTime() - t0;
+                ownerTimer.record(elapsed);
+                timerOf(message).record(elapsed);
+            }
+        }
+
+        private TimerStats timerOf(T message)
+        {
+            Class<?> type = (message == null) ? Void.class : message.getClass();
+            Binding current = binding;
+            if (current == null || current.type() != type)
+            {
+                String typeName = type.getSimpleName().isEmpty() ? type.getName() : type.getSimpleName();
+                current = new Binding(type, timer(owner + "." + typeName, TimerStats.CALLBACK));
+                binding = current;
+            }
+            return current.timer();
+        }
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ *  Copyright (c) M2TK Project. All rights reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package m2tk.assistant.app.kernel.metrics;
+
+/**
+ * 分析会话的吞吐统计（JMX）
+ */
+public interface SessionMetricsMXBean
+{
+    int getSourceId();
+
+    String getSourceName();
+
+    long getPacketCount();
+
+    long getSectionCount();
+
+    double getPacketRate();
+
+    double getSectionRate();
+
+    int getQueueFill();
+
+    int getWriteQueueDepth();
+
+    long getDroppedMessages();
+
+    int getInputBufferFill();
+
+    long getInputLost();
+
+    long getInputOverruns();
+
+    double getInputJitterMicros();
+}
@@ -0,0 +1,133 @@
+/*
+ *  Copyright (c) M2TK Project. All rights reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package m2tk.assistant.app.kernel.metrics;
+
+/**
+ * 命名的计时统计：一个耗时直方图，以及按采样周期计算的调用频率。
+ */
+public final class TimerStats implements TimerStatsMXBean
+{
+    public static final String TRACER = "分析器";
+    public static final String CALLBACK = "回调";
+    public static final String DATABASE = "数据库";
+
+    private final String name;
+    private final String category;
+    private final LatencyHistogram histogram;
+    private long lastCount;
+    private long lastTotal;
+    private volatile double rate;
+    private volatile double load;
+
+    TimerStats(String name, String category)
+    {
+        this.name = name;
+        this.category = category;
+        this.histogram = new LatencyHistogram();
+    }
+
+    public void record(long nanos)
+    {
+        histogram.record(nanos);
+    }
+
+    public LatencyHistogram.Snapshot snapshot()
+    {
+        return histogram.snapshot();
+    }
+
+    @Override
+    public String getName()
+    {
+        return name;
+    }
+
+    @Override
+    public String getCategory()
+    {
+        return category;
+    }
+
+    @Override
+    public long getCount()
+    {
+        return histogram.getCount();
+    }
+
+    /**
+     * @return 最近一个采样周期内的调用频率（次/秒）
+     */
+    @Override
+    public double getRate()
+    {
+        return rate;
+    }
+
+    /**
+     * @return 最近一个采样周期内的耗时占比（耗时/周期时长，多线程调用时可能大于1）
+     */
+    public double getLoad()
+    {
+        return load;
+    }
+
+    @Override
+    public double getTotalMillis()
+    {
+        return histogram.getTotalNanos() / 1e6;
+    }
+
+    @Override
+    public double getMeanMicros()
+    {
+        long count = histogram.getCount();
+        return (count == 0) ? 0 : histogram.getTotalNanos() / 1e3 / count;
+    }
+
+    @Override
+    public double getP50Micros()
+    {
+        return histogram.snapshot().getPercentileNanos(50) / 1e3;
+    }
+
+    @Override
+    public double getP99Micros()
+    {
+        return histogram.snapshot().getPercentileNanos(99) / 1e3;
+    }
+
+    @Override
+    public double getP999Micros()
+    {
+        return histogram.snapshot().getPercentileNanos(99.9) / 1e3;
+    }
+
+    @Override
+    public double getMaxMicros()
+    {
+        return histogram.snapshot().getMaxNanos() / 1e3;
+    }
+
+    synchronized void sample(long elapsedNanos)
+    {
+        long count = histogram.getCount();
+        long total = histogram.getTotalNanos();
+        rate = (count - lastCount) * 1e9 / elapsedNanos;
+        load = (double) (total - lastTotal) / elapsedNanos;
+        lastCount = count;
+        lastTotal = total;
+    }
+}
@@ -13,11 +13,30 @@
  *  See the License for the specific language governing permissions and
  *  limitations under the License.
  */
-package m2tk.assistant.app.kernel.mapper;
+package m2tk.assistant.app.kernel.metrics;
 
-import com.baomidou.mybatisplus.core.mapper.BaseMapper;
-import m2tk.assistant.app.kernel.entity.PCREntity;
-
-public interface PCREntityMapper extends BaseMapper<PCREntity>
+/**
+ * 计时统计（JMX）
+ */
+public interface TimerStatsMXBean
 {
+    String getName();
+
+    String getCategory();
+
+    long getCount();
+
+    double getRate();
+
+    double getTotalMillis();
+
+    double getMeanMicros();
+
+    double getP50Micros();
+
+    double getP99Micros();
+
+    double getP999Micros();
+
+    double getMaxMicros();
 }
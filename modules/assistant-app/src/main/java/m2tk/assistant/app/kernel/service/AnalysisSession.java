@@ -0,0 +1,232 @@
+/*
+ *  Copyright (c) M2TK Project. All rights reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package m2tk.assistant.app.kernel.service;
+
+import lombok.extern.slf4j.Slf4j;
+import m2tk.assistant.api.Tracer;
+import m2tk.assistant.api.domain.StreamSource;
+import m2tk.assistant.app.kernel.metrics.SessionMetrics;
+import m2tk.io.RxChannel;
+import m2tk.multiplex.DemuxStatus;
+import m2tk.multiplex.TSDemux;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * 分析会话
+ * <p>
+ * 一个数据源对应一个会话，会话独占自己的解复用器、分析器实例和（可选的）流水线与回写队列，
+ * 分析数据以数据源编号区分。会话之间只共享分析器的线程池和数据库。
+ * <p>
+ * 从存档恢复的会话没有输入和解复用器，只用于查看分析结果。分段并行分析的会话由 {@link SegmentedAnalysis}
+ * 管理各分段的输入和解复用器。
+ */
+@Slf4j
+public final class AnalysisSession
+{
+    private final StreamSource source;
+    private final RxChannel input;
+    private final TSDemux demux;
+    private final TracerPipeline pipeline;
+    private final WriteBehindDatabase writeBehind;
+    private final Path archive;
+    private final SegmentedAnalysis segmented;
+    private final long startTime;
+    private volatile boolean running;
+    private volatile boolean released;
+
+    AnalysisSession(StreamSource source, RxChannel input, TSDemux demux,
+                    TracerPipeline pipeline, WriteBehindDatabase writeBehind)
+    {
+        this.source = source;
+        this.input = input;
+        this.demux = demux;
+        this.pipeline = pipeline;
+        this.writeBehind = writeBehind;
+        this.archive = null;
+        this.segmented = null;
+        this.startTime = System.currentTimeMillis();
+    }
+
+    AnalysisSession(StreamSource source, SegmentedAnalysis segmented)
+    {
+        this.source = source;
+        this.input = null;
+        this.demux = null;
+        this.pipeline = null;
+        this.writeBehind = null;
+        this.archive = null;
+        this.segmented = segmented;
+        this.startTime = System.currentTimeMillis();
+    }
+
+    private AnalysisSession(StreamSource source, Path archive)
+    {
+        this.source = source;
+        this.input = null;
+        this.demux = null;
+        this.pipeline = null;
+        this.writeBehind = null;
+        this.archive = archive;
+        this.segmented = null;
+        this.startTime = System.currentTimeMillis();
+        this.released = true;
+    }
+
+    static AnalysisSession archived(StreamSource source, Path archive)
+    {
+        return new AnalysisSession(source, archive);
+    }
+
+    public int getSourceId()
+    {
+        return source.getId();
+    }
+
+    public String getSourceName()
+    {
+        return source.getName();
+    }
+
+    public String getSourceUri()
+    {
+        return source.getUri();
+    }
+
+    public long getStartTime()
+    {
+        return startTime;
+    }
+
+    public boolean isRunning()
+    {
+        return running;
+    }
+
+    public boolean isArchived()
+    {
+        return archive != null;
+    }
+
+    public Path getArchive()
+    {
+        return archive;
+    }
+
+    public boolean isSegmented()
+    {
+        return segmented != null;
+    }
+
+    WriteBehindDatabase getWriteBehind()
+    {
+        return writeBehind;
+    }
+
+    /**
+     * 开始读取输入并分析
+     * @param consumer 解复用消息监听器
+     * @param onStopped 会话停止（解复用器停止且队列处理完毕）后的回调
+     */
+    void start(Consumer<DemuxStatus> consumer, Consumer<AnalysisSession> onStopped)
+    {
+        if (segmented != null)
+            throw new IllegalStateException("分段分析会话需通过 startSegmented 启动");
+
+        if (pipeline != null)
+            pipeline.start();
+
+        demux.registerEventListener(new StreamAnalyzer.EventFilter<>(DemuxStatus.class, consumer));
+        demux.registerEventListener(new StreamAnalyzer.EventFilter<>(DemuxStatus.class, status -> {
+            if (!status.isRunning())
+            {
+                release();
+                onStopped.accept(this);
+            }
+        }));
+
+        running = true;
+        demux.attach(input);
+    }
+
+    /**
+     * 开始分段并行分析，各分段结束并合并后才算会话停止。
+     * @param tracerFactory 分析器工厂，每个分段使用一组新的分析器
+     * @param metrics 会话的性能统计
+     * @param consumer 解复用消息监听器
+     * @param onStopped 会话停止（合并完成）后的回调
+     */
+    void startSegmented(Supplier<List<Tracer>> tracerFactory, SessionMetrics metrics,
+                        Consumer<DemuxStatus> consumer, Consumer<AnalysisSession> onStopped)
+    {
+        running = true;
+        segmented.start(tracerFactory, metrics, consumer, () -> {
+            release();
+            onStopped.accept(this);
+        });
+    }
+
+    void stop()
+    {
+        if (demux != null)
+            demux.detach();
+        if (segmented != null)
+            segmented.cancel();
+    }
+
+    /**
+     * 关闭会话，释放解复用器及相关资源。
+     */
+    void shutdown()
+    {
+        if (demux != null)
+            demux.shutdown();
+        if (segmented != null)
+            segmented.shutdown();
+        release();
+    }
+
+    private synchronized void release()
+    {
+        if (released)
+            return;
+        released = true;
+
+        try
+        {
+            if (input != null)
+                input.close();
+        } catch (IOException ex)
+        {
+            log.error("关闭通道时异常：{}", ex.getMessage());
+        }
+
+        if (pipeline != null)
+        {
+            if (!pipeline.awaitIdle(5000))
+                log.warn("等待分析器流水线处理完毕超时");
+            pipeline.stop();
+        }
+        if (writeBehind != null)
+            writeBehind.close();
+
+        running = false;
+    }
+}
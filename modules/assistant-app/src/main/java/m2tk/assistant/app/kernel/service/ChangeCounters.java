@@ -0,0 +1,65 @@
+/*
+ *  Copyright (c) M2TK Project. All rights reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package m2tk.assistant.app.kernel.service;
+
+import m2tk.assistant.api.ChangeDomain;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 数据变化计数表
+ * <p>
+ * 按数据源和数据域记录最近一次写操作的序号。序号取自全局递增序列，因此清除数据源后重新写入的数据，
+ * 以及不同数据源之间，变化计数都不会重复，界面只需比较计数是否相等即可判断数据是否变化。
+ */
+public class ChangeCounters
+{
+    private static final ChangeDomain[] DOMAINS = ChangeDomain.values();
+
+    private final AtomicLong sequence = new AtomicLong();
+    private final Map<Integer, AtomicLongArray> counters = new ConcurrentHashMap<>();
+
+    public void markChanged(int sourceRef, ChangeDomain domain)
+    {
+        counters.computeIfAbsent(sourceRef, ref -> new AtomicLongArray(DOMAINS.length))
+                .set(domain.ordinal(), sequence.incrementAndGet());
+    }
+
+    public void markAllChanged(int sourceRef)
+    {
+        AtomicLongArray array = counters.computeIfAbsent(sourceRef, ref -> new AtomicLongArray(DOMAINS.length));
+        long next = sequence.incrementAndGet();
+        for (int i = 0; i < DOMAINS.length; i++)
+            array.set(i, next);
+    }
+
+    public long getChangeCount(int sourceRef, ChangeDomain domain)
+    {
+        AtomicLongArray array = counters.get(sourceRef);
+        return (array == null) ? 0 : array.get(domain.ordinal());
+    }
+
+    /**
+     * 移除数据源的变化计数（数据源的数据已清除）。
+     */
+    public void remove(int sourceRef)
+    {
+        counters.remove(sourceRef);
+    }
+}
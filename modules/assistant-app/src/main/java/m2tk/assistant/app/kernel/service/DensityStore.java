@@ -0,0 +1,893 @@
+/*
+ *  Copyright (c) M2TK Project. All rights reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package m2tk.assistant.app.kernel.service;
+
+import m2tk.assistant.api.domain.StreamDensityBucket;
+import m2tk.assistant.api.domain.StreamDensityBulk;
+import m2tk.assistant.api.domain.StreamDensityStats;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 流密度存储
+ * <p>
+ * 按PID保存相邻包间隔（包计数之差）。明细数据以 {@value #BLOCK_SIZE} 个间隔为一块，块内按与前一间隔的差值
+ * 做 ZigZag + 变长整数编码（稳定码流通常每个间隔只占一个字节），只保留最近的若干块，最早的块被新数据复用。
+ * <p>
+ * 另外为每个PID维护多层预聚合的最小/最大/平均值：第0层每个区间覆盖 {@value #BASE_SPAN} 个间隔，
+ * 往上每层扩大 {@value #FANOUT} 倍，各层最多保留 {@value #LEVEL_CAPACITY} 个区间。最高层满时相邻区间两两合并，
+ * 因此始终覆盖整个分析过程。存储量只与PID数量有关，不随分析时长增长。
+ */
+public final class DensityStore
+{
+    public static final int BLOCK_SIZE = 1000;
+    public static final int DEFAULT_MAX_BLOCKS = 128;
+
+    private static final int BASE_SPAN = 100;
+    private static final int FANOUT = 10;
+    private static final int LEVELS = 5;
+    private static final int LEVEL_CAPACITY = 1024;
+
+    private final int maxBlocks;
+    private final Track[] tracks;
+
+    public DensityStore()
+    {
+        this(DEFAULT_MAX_BLOCKS);
+    }
+
+    public DensityStore(int maxBlocks)
+    {
+        this.maxBlocks = Math.max(2, maxBlocks);
+        this.tracks = new Track[8192];
+    }
+
+    /**
+     * 追加包间隔
+     * @param position 第一个间隔结束时的包位置
+     * @param intervals 包间隔，只读取前 {@code count} 个，调用者可以复用该数组
+     */
+    public synchronized void append(int pid, long position, int[] intervals, int count)
+    {
+        if (count <= 0)
+            return;
+
+        Track track = tracks[pid & 0x1FFF];
+        if (track == null)
+        {
+            track = new Track(pid & 0x1FFF, maxBlocks);
+            tracks[pid & 0x1FFF] = track;
+        }
+
+        long pos = position - intervals[0];
+        for (int i = 0; i < count; i++)
+        {
+            int interval = Math.max(0, intervals[i]);
+            pos += interval;
+            track.add(interval, pos);
+        }
+    }
+
+    /**
+     * 追加另一个存储的数据（分段并行分析），位置加上分段的起始位置。
+     * <p>
+     * 两边各层正在累计的区间先结束为完整区间，再按先后顺序拼接各层的区间和明细块，
+     * 因此分段交界处会出现跨度不足的区间。
+     * @param other 分段的流密度存储，合并后不应再使用
+     * @param positionOffset 分段起始位置（包计数）
+     */
+    public synchronized void appendFrom(DensityStore other, long positionOffset)
+    {
+        synchronized (other)
+        {
+            for (Track source : other.tracks)
+            {
+                if (source == null || source.count == 0)
+                    continue;
+
+                Track track = tracks[source.pid];
+                if (track == null)
+                {
+                    track = new Track(source.pid, maxBlocks);
+                    tracks[source.pid] = track;
+                }
+                track.append(source, positionOffset);
+            }
+        }
+    }
+
+    public synchronized List<StreamDensityStats> listStats()
+    {
+        List<StreamDensityStats> result = new ArrayList<>();
+        for (Track track : tracks)
+        {
+            if (track == null || track.count == 0)
+                continue;
+
+            StreamDensityStats stats = new StreamDensityStats();
+            stats.setPid(track.pid);
+            stats.setCount((int) Math.min(track.count, Integer.MAX_VALUE));
+            stats.setMinDensity(track.min);
+            stats.setMaxDensity(track.max);
+            stats.setAvgDensity((double) track.sum / track.count);
+            result.add(stats);
+        }
+        return result;
+    }
+
+    /**
+     * @return 最近的若干块明细数据，新的在前
+     */
+    public synchronized List<StreamDensityBulk> listRecentBulks(int pid, int limit)
+    {
+        List<StreamDensityBulk> result = new ArrayList<>();
+        Track track = tracks[pid & 0x1FFF];
+        if (track == null)
+            return result;
+
+        for (int i = track.blockCount - 1; i >= 0 && result.size() < limit; i--)
+        {
+            Block block = track.block(i);
+            StreamDensityBulk bulk = new StreamDensityBulk();
+            bulk.setId((int) block.id);
+            bulk.setPid(track.pid);
+            bulk.setBulkSize(block.count);
+            bulk.setDensities(block.decode());
+            bulk.setStartPosition(block.startPosition);
+            bulk.setMinDensity(block.min);
+            bulk.setMaxDensity(block.max);
+            bulk.setAvgDensity((double) block.sum / block.count);
+            result.add(bulk);
+        }
+        return result;
+    }
+
+    /**
+     * 查询位置范围内的密度概要
+     * <p>
+     * 从明细数据开始，逐层选择能覆盖整个范围、且区间数不超过 {@code maxPoints} 的最细粒度；
+     * 最高层仍然超出时，把相邻区间合并到 {@code maxPoints} 个以内。
+     */
+    public synchronized List<StreamDensityBucket> listBuckets(int pid, long fromPosition, long toPosition, int maxPoints)
+    {
+        Track track = tracks[pid & 0x1FFF];
+        if (track == null || track.count == 0 || maxPoints <= 0)
+            return new ArrayList<>();
+
+        long from = Math.max(fromPosition, track.firstPosition);
+        long to = Math.min(toPosition, track.lastPosition);
+        if (from > to)
+            return new ArrayList<>();
+
+        List<StreamDensityBucket> details = track.listDetails(from, to, maxPoints);
+        if (details != null)
+            return details;
+
+        for (int i = 0; i < LEVELS; i++)
+        {
+            Level level = track.levels[i];
+            if (level.oldestStart() > from)
+                continue; // 早期数据已被淘汰
+            List<StreamDensityBucket> buckets = level.list(track.pid, from, to, maxPoints);
+            if (buckets != null)
+                return appendPartials(track, i, buckets, from, to);
+        }
+
+        List<StreamDensityBucket> buckets = track.levels[LEVELS - 1].list(track.pid, from, to, Integer.MAX_VALUE);
+        return merge(appendPartials(track, LEVELS - 1, buckets, from, to), maxPoints);
+    }
+
+    /**
+     * 补上更低层正在累计的区间（它们还没有汇入第 {@code level} 层），位置依次递增。
+     */
+    private static List<StreamDensityBucket> appendPartials(Track track, int level,
+                                                            List<StreamDensityBucket> buckets,
+                                                            long from, long to)
+    {
+        for (int i = level - 1; i >= 0; i--)
+        {
+            StreamDensityBucket partial = track.levels[i].partial(track.pid, from, to);
+            if (partial != null)
+                buckets.add(partial);
+        }
+        return buckets;
+    }
+
+    /**
+     * 写出全部数据（会话存档），明细块保持原有的编码。
+     */
+    public synchronized void writeTo(DataOutput out) throws IOException
+    {
+        for (Track track : tracks)
+        {
+            if (track == null || track.count == 0)
+                continue;
+
+            out.writeShort(track.pid);
+            SessionArchive.writeVarLong(out, track.count);
+            SessionArchive.writeVarLong(out, track.sum);
+            SessionArchive.writeVarLong(out, track.min);
+            SessionArchive.writeVarLong(out, track.max);
+            SessionArchive.writeVarLong(out, track.firstPosition);
+            SessionArchive.writeVarLong(out, track.lastPosition);
+            SessionArchive.writeVarLong(out, track.blockSeq);
+
+            out.writeInt(track.blockCount);
+            for (int i = 0; i < track.blockCount; i++)
+                track.block(i).writeTo(out);
+            for (Level level : track.levels)
+                level.writeTo(out);
+        }
+        out.writeShort(-1);
+    }
+
+    /**
+     * 读入 {@link #writeTo(DataOutput)} 写出的数据，明细块超出容量时只保留最近的部分。
+     */
+    public synchronized void readFrom(DataInput in) throws IOException
+    {
+        int pid;
+        while ((pid = in.readShort()) >= 0)
+        {
+            Track track = new Track(pid & 0x1FFF, maxBlocks);
+            track.count = SessionArchive.readVarLong(in);
+            track.sum = SessionArchive.readVarLong(in);
+            track.min = (int) SessionArchive.readVarLong(in);
+            track.max = (int) SessionArchive.readVarLong(in);
+            track.firstPosition = SessionArchive.readVarLong(in);
+            track.lastPosition = SessionArchive.readVarLong(in);
+            track.blockSeq = SessionArchive.readVarLong(in);
+
+            int blockCount = in.readInt();
+            int skipped = Math.max(0, blockCount - track.blocks.length);
+            for (int i = 0; i < blockCount; i++)
+            {
+                Block block = new Block();
+                block.readFrom(in);
+                if (i >= skipped)
+                    track.blocks[track.blockCount++] = block;
+            }
+            for (Level level : track.levels)
+                level.readFrom(in);
+            tracks[track.pid] = track;
+        }
+    }
+
+    private static List<StreamDensityBucket> merge(List<StreamDensityBucket> buckets, int maxPoints)
+    {
+        int group = (buckets.size() + maxPoints - 1) / maxPoints;
+        if (group <= 1)
+            return buckets;
+
+        List<StreamDensityBucket> result = new ArrayList<>();
+        for (int i = 0; i < buckets.size(); i += group)
+        {
+            StreamDensityBucket merged = null;
+            double sum = 0;
+            for (StreamDensityBucket bucket : buckets.subList(i, Math.min(i + group, buckets.size())))
+            {
+                if (merged == null)
+                {
+                    merged = new StreamDensityBucket();
+                    merged.setPid(bucket.getPid());
+                    merged.setStartPosition(bucket.getStartPosition());
+                    merged.setMinDensity(bucket.getMinDensity());
+                    merged.setMaxDensity(bucket.getMaxDensity());
+                }
+                merged.setEndPosition(bucket.getEndPosition());
+                merged.setCount(merged.getCount() + bucket.getCount());
+                merged.setMinDensity(Math.min(merged.getMinDensity(), bucket.getMinDensity()));
+                merged.setMaxDensity(Math.max(merged.getMaxDensity(), bucket.getMaxDensity()));
+                sum += bucket.getAvgDensity() * bucket.getCount();
+            }
+            merged.setAvgDensity(sum / merged.getCount());
+            result.add(merged);
+        }
+        return result;
+    }
+
+    private static StreamDensityBucket bucket(int pid, long start, long end, long count, long min, long max, double avg)
+    {
+        StreamDensityBucket bucket = new StreamDensityBucket();
+        bucket.setPid(pid);
+        bucket.setStartPosition(start);
+        bucket.setEndPosition(end);
+        bucket.setCount(count);
+        bucket.setMinDensity(min);
+        bucket.setMaxDensity(max);
+        bucket.setAvgDensity(avg);
+        return bucket;
+    }
+
+    private static final class Track
+    {
+        private final int pid;
+        private long count;
+        private long sum;
+        private int min = Integer.MAX_VALUE;
+        private int max;
+        private long firstPosition;
+        private long lastPosition;
+
+        // 明细块的环形队列，head 指向最早的块，最后一块是当前正在写入的块。
+        private final Block[] blocks;
+        private int blockHead;
+        private int blockCount;
+        private long blockSeq;
+
+        private final Level[] levels;
+
+        private Track(int pid, int maxBlocks)
+        {
+            this.pid = pid;
+            this.blocks = new Block[maxBlocks];
+            this.levels = new Level[LEVELS];
+            long span = BASE_SPAN;
+            for (int i = 0; i < LEVELS; i++)
+            {
+                levels[i] = new Level(span, i == LEVELS - 1);
+                span *= FANOUT;
+            }
+        }
+
+        private Block block(int i)
+        {
+            return blocks[(blockHead + i) % blocks.length];
+        }
+
+        private void add(int interval, long position)
+        {
+            if (count == 0)
+                firstPosition = position;
+            count += 1;
+            sum += interval;
+            min = Math.min(min, interval);
+            max = Math.max(max, interval);
+            lastPosition = position;
+
+            Block block = (blockCount == 0) ? null : block(blockCount - 1);
+            if (block == null || block.count == BLOCK_SIZE)
+                block = nextBlock();
+            block.add(interval, position);
+
+            levels[0].add(position, position, 1, interval, interval, interval);
+            for (int i = 0; i < LEVELS - 1 && levels[i].completed; i++)
+            {
+                Level level = levels[i];
+                level.completed = false;
+                levels[i + 1].add(level.lastStart, level.lastEnd, level.lastCount,
+                                  level.lastMin, level.lastMax, level.lastSum);
+            }
+            levels[LEVELS - 1].completed = false;
+        }
+
+        private void append(Track other, long offset)
+        {
+            if (count == 0)
+                firstPosition = other.firstPosition + offset;
+            count += other.count;
+            sum += other.sum;
+            min = Math.min(min, other.min);
+            max = Math.max(max, other.max);
+            lastPosition = other.lastPosition + offset;
+
+            for (int i = 0; i < other.blockCount; i++)
+                nextBlock().copyFrom(other.block(i), offset);
+
+            flushLevels();
+            other.flushLevels();
+            for (int i = 0; i < LEVELS; i++)
+                levels[i].append(other.levels[i], offset);
+        }
+
+        /**
+         * 把各层正在累计的区间结束为完整区间，并逐层汇入上一层。
+         */
+        private void flushLevels()
+        {
+            for (int i = 0; i < LEVELS; i++)
+            {
+                Level level = levels[i];
+                if (level.completed && i < LEVELS - 1)
+                    levels[i + 1].add(level.lastStart, level.lastEnd, level.lastCount,
+                                      level.lastMin, level.lastMax, level.lastSum);
+                level.completed = false;
+
+                if (level.finish() && i < LEVELS - 1)
+                    levels[i + 1].add(level.lastStart, level.lastEnd, level.lastCount,
+                                      level.lastMin, level.lastMax, level.lastSum);
+                level.completed = false;
+            }
+        }
+
+        private Block nextBlock()
+        {
+            Block block;
+            if (blockCount < blocks.length)
+            {
+                int index = (blockHead + blockCount) % blocks.length;
+                if (blocks[index] == null)
+                    blocks[index] = new Block();
+                block = blocks[index];
+                blockCount += 1;
+            } else
+            {
+                // 复用最早的块
+                block = blocks[blockHead];
+                blockHead = (blockHead + 1) % blocks.length;
+            }
+            block.reset(blockSeq++);
+            return block;
+        }
+
+        private List<StreamDensityBucket> listDetails(long from, long to, int maxPoints)
+        {
+            if (blockCount == 0 || block(0).startPosition > from)
+                return null;
+
+            List<Block> selected = new ArrayList<>();
+            long candidates = 0;
+            for (int i = 0; i < blockCount; i++)
+            {
+                Block block = block(i);
+                if (block.endPosition >= from && block.startPosition <= to)
+                {
+                    selected.add(block);
+                    candidates += block.count;
+                }
+            }
+            // 粗略判断：相关块的间隔总数远超上限时直接使用聚合数据，避免无谓的解码。
+            if (candidates > maxPoints + 2L * BLOCK_SIZE)
+                return null;
+
+            List<StreamDensityBucket> result = new ArrayList<>();
+            for (Block block : selected)
+            {
+                int[] intervals = block.decode();
+                long position = block.startPosition - intervals[0];
+                for (int interval : intervals)
+                {
+                    position += interval;
+                    if (position < from || position > to)
+                        continue;
+                    if (result.size() == maxPoints)
+                        return null;
+                    result.add(bucket(pid, position, position, 1, interval, interval, interval));
+                }
+            }
+            return result;
+        }
+    }
+
+    private static final class Block
+    {
+        private long id;
+        private long startPosition;
+        private long endPosition;
+        private int count;
+        private int min;
+        private int max;
+        private long sum;
+        private int previous;
+        private byte[] data = new byte[256];
+        private int length;
+
+        private void reset(long id)
+        {
+            this.id = id;
+            count = 0;
+            min = Integer.MAX_VALUE;
+            max = 0;
+            sum = 0;
+            previous = 0;
+            length = 0;
+        }
+
+        private void add(int interval, long position)
+        {
+            if (count == 0)
+                startPosition = position;
+            endPosition = position;
+            count += 1;
+            sum += interval;
+            min = Math.min(min, interval);
+            max = Math.max(max, interval);
+
+            if (data.length - length < 5)
+                data = Arrays.copyOf(data, Math.min(data.length * 2, BLOCK_SIZE * 5));
+
+            int delta = interval - previous;
+            int zigzag = (delta << 1) ^ (delta >> 31);
+            while ((zigzag & ~0x7F) != 0)
+            {
+                data[length++] = (byte) ((zigzag & 0x7F) | 0x80);
+                zigzag >>>= 7;
+            }
+            data[length++] = (byte) zigzag;
+            previous = interval;
+        }
+
+        private void copyFrom(Block other, long offset)
+        {
+            startPosition = other.startPosition + offset;
+            endPosition = other.endPosition + offset;
+            count = other.count;
+            min = other.min;
+            max = other.max;
+            sum = other.sum;
+            previous = other.previous;
+            length = other.length;
+            data = Arrays.copyOf(other.data, Math.max(256, other.length));
+        }
+
+        private void writeTo(DataOutput out) throws IOException
+        {
+            SessionArchive.writeVarLong(out, id);
+            SessionArchive.writeVarLong(out, startPosition);
+            SessionArchive.writeVarLong(out, endPosition - startPosition);
+            SessionArchive.writeVarLong(out, count);
+            SessionArchive.writeVarLong(out, min);
+            SessionArchive.writeVarLong(out, max);
+            SessionArchive.writeVarLong(out, sum);
+            SessionArchive.writeVarLong(out, previous);
+            SessionArchive.writeVarLong(out, length);
+            out.write(data, 0, length);
+        }
+
+        private void readFrom(DataInput in) throws IOException
+        {
+            id = SessionArchive.readVarLong(in);
+            startPosition = SessionArchive.readVarLong(in);
+            endPosition = startPosition + SessionArchive.readVarLong(in);
+            count = (int) SessionArchive.readVarLong(in);
+            min = (int) SessionArchive.readVarLong(in);
+            max = (int) SessionArchive.readVarLong(in);
+            sum = SessionArchive.readVarLong(in);
+            previous = (int) SessionArchive.readVarLong(in);
+            length = (int) SessionArchive.readVarLong(in);
+            if (length < 0 || length > BLOCK_SIZE * 5)
+                throw new IOException("流密度数据块已损坏");
+            data = new byte[Math.max(256, length)];
+            in.readFully(data, 0, length);
+        }
+
+        private int[] decode()
+        {
+            int[] intervals = new int[count];
+            int offset = 0;
+            int value = 0;
+            for (int i = 0; i < count; i++)
+            {
+                int zigzag = 0;
+                int shift = 0;
+                byte b;
+                do
+                {
+                    b = data[offset++];
+                    zigzag |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while ((b & 0x80) != 0);
+                value += (zigzag >>> 1) ^ -(zigzag & 1);
+                intervals[i] = value;
+            }
+            return intervals;
+        }
+    }
+
+    private static final class Level
+    {
+        private long span;
+        private final boolean adaptive;
+
+        // 已完成的区间（环形队列，按位置递增）
+        private long[] starts = new long[16];
+        private long[] ends = new long[16];
+        private long[] counts = new long[16];
+        private long[] sums = new long[16];
+        private int[] mins = new int[16];
+        private int[] maxs = new int[16];
+        private int head;
+        private int size;
+
+        // 正在累计的区间
+        private long partialStart;
+        private long partialEnd;
+        private long partialCount;
+        private long partialSum;
+        private int partialMin;
+        private int partialMax;
+
+        // 最近一次完成的区间，由上一层读取后合并
+        private boolean completed;
+        private long lastStart;
+        private long lastEnd;
+        private long lastCount;
+        private long lastSum;
+        private int lastMin;
+        private int lastMax;
+
+        private Level(long span, boolean adaptive)
+        {
+            this.span = span;
+            this.adaptive = adaptive;
+        }
+
+        private void add(long start, long end, long count, int min, int max, long sum)
+        {
+            if (partialCount == 0)
+            {
+                partialStart = start;
+                partialMin = min;
+                partialMax = max;
+            }
+            partialEnd = end;
+            partialCount += count;
+            partialSum += sum;
+            partialMin = Math.min(partialMin, min);
+            partialMax = Math.max(partialMax, max);
+
+            if (partialCount >= span)
+                finish();
+        }
+
+        /**
+         * 结束正在累计的区间（作为最近完成的区间）。
+         * @return 是否有正在累计的区间
+         */
+        private boolean finish()
+        {
+            if (partialCount == 0)
+                return false;
+
+            lastStart = partialStart;
+            lastEnd = partialEnd;
+            lastCount = partialCount;
+            lastSum = partialSum;
+            lastMin = partialMin;
+            lastMax = partialMax;
+            completed = true;
+            push();
+            partialCount = 0;
+            partialSum = 0;
+            return true;
+        }
+
+        /**
+         * 按先后顺序追加另一层的完整区间，两层都不应有正在累计的区间。
+         */
+        private void append(Level other, long offset)
+        {
+            for (int i = 0; i < other.size; i++)
+            {
+                int index = (other.head + i) % other.starts.length;
+                lastStart = other.starts[index] + offset;
+                lastEnd = other.ends[index] + offset;
+                lastCount = other.counts[index];
+                lastSum = other.sums[index];
+                lastMin = other.mins[index];
+                lastMax = other.maxs[index];
+                push();
+            }
+            if (adaptive)
+                span = Math.max(span, other.span);
+        }
+
+        private void push()
+        {
+            if (size == starts.length)
+            {
+                if (starts.length < LEVEL_CAPACITY)
+                    grow();
+                else if (adaptive)
+                    compact();
+            }
+
+            int index;
+            if (size < starts.length)
+            {
+                index = (head + size) % starts.length;
+                size += 1;
+            } else
+            {
+                index = head;
+                head = (head + 1) % starts.length;
+            }
+            starts[index] = lastStart;
+            ends[index] = lastEnd;
+            counts[index] = lastCount;
+            sums[index] = lastSum;
+            mins[index] = lastMin;
+            maxs[index] = lastMax;
+        }
+
+        private void grow()
+        {
+            int capacity = Math.min(starts.length * 2, LEVEL_CAPACITY);
+            starts = linearize(starts, capacity);
+            ends = linearize(ends, capacity);
+            counts = linearize(counts, capacity);
+            sums = linearize(sums, capacity);
+            mins = linearize(mins, capacity);
+            maxs = linearize(maxs, capacity);
+            head = 0;
+        }
+
+        /**
+         * 相邻区间两两合并，区间跨度加倍。
+         */
+        private void compact()
+        {
+            grow(); // 先按原容量线性化
+            int merged = 0;
+            for (int i = 0; i + 1 < size; i += 2)
+            {
+                starts[merged] = starts[i];
+                ends[merged] = ends[i + 1];
+                counts[merged] = counts[i] + counts[i + 1];
+                sums[merged] = sums[i] + sums[i + 1];
+                mins[merged] = Math.min(mins[i], mins[i + 1]);
+                maxs[merged] = Math.max(maxs[i], maxs[i + 1]);
+                merged += 1;
+            }
+            if (size % 2 == 1)
+            {
+                int last = size - 1;
+                starts[merged] = starts[last];
+                ends[merged] = ends[last];
+                counts[merged] = counts[last];
+                sums[merged] = sums[last];
+                mins[merged] = mins[last];
+                maxs[merged] = maxs[last];
+                merged += 1;
+            }
+            size = merged;
+            span *= 2;
+        }
+
+        private long[] linearize(long[] array, int capacity)
+        {
+            long[] copy = new long[capacity];
+            for (int i = 0; i < size; i++)
+                copy[i] = array[(head + i) % array.length];
+            return copy;
+        }
+
+        private int[] linearize(int[] array, int capacity)
+        {
+            int[] copy = new int[capacity];
+            for (int i = 0; i < size; i++)
+                copy[i] = array[(head + i) % array.length];
+            return copy;
+        }
+
+        private void writeTo(DataOutput out) throws IOException
+        {
+            SessionArchive.writeVarLong(out, span);
+            out.writeInt(size);
+            for (int i = 0; i < size; i++)
+            {
+                int index = (head + i) % starts.length;
+                SessionArchive.writeVarLong(out, starts[index]);
+                SessionArchive.writeVarLong(out, ends[index] - starts[index]);
+                SessionArchive.writeVarLong(out, counts[index]);
+                SessionArchive.writeVarLong(out, sums[index]);
+                SessionArchive.writeVarLong(out, mins[index]);
+                SessionArchive.writeVarLong(out, maxs[index]);
+            }
+            SessionArchive.writeVarLong(out, partialStart);
+            SessionArchive.writeVarLong(out, partialEnd - partialStart);
+            SessionArchive.writeVarLong(out, partialCount);
+            SessionArchive.writeVarLong(out, partialSum);
+            SessionArchive.writeVarLong(out, partialMin);
+            SessionArchive.writeVarLong(out, partialMax);
+        }
+
+        private void readFrom(DataInput in) throws IOException
+        {
+            span = SessionArchive.readVarLong(in);
+            int n = in.readInt();
+            if (n < 0 || n > LEVEL_CAPACITY)
+                throw new IOException("流密度聚合数据已损坏");
+
+            int capacity = 16;
+            while (capacity < n)
+                capacity *= 2;
+            starts = new long[capacity];
+            ends = new long[capacity];
+            counts = new long[capacity];
+            sums = new long[capacity];
+            mins = new int[capacity];
+            maxs = new int[capacity];
+            head = 0;
+            size = n;
+            for (int i = 0; i < n; i++)
+            {
+                starts[i] = SessionArchive.readVarLong(in);
+                ends[i] = starts[i] + SessionArchive.readVarLong(in);
+                counts[i] = SessionArchive.readVarLong(in);
+                sums[i] = SessionArchive.readVarLong(in);
+                mins[i] = (int) SessionArchive.readVarLong(in);
+                maxs[i] = (int) SessionArchive.readVarLong(in);
+            }
+            partialStart = SessionArchive.readVarLong(in);
+            partialEnd = partialStart + SessionArchive.readVarLong(in);
+            partialCount = SessionArchive.readVarLong(in);
+            partialSum = SessionArchive.readVarLong(in);
+            partialMin = (int) SessionArchive.readVarLong(in);
+            partialMax = (int) SessionArchive.readVarLong(in);
+        }
+
+        private long oldestStart()
+        {
+            if (size > 0)
+                return starts[head];
+            return (partialCount > 0) ? partialStart : Long.MAX_VALUE;
+        }
+
+        /**
+         * @return 与范围相交的区间（含正在累计的区间），超过 {@code maxPoints} 个时返回空
+         */
+        private List<StreamDensityBucket> list(int pid, long from, long to, int maxPoints)
+        {
+            List<StreamDensityBucket> result = new ArrayList<>();
+
+            // 区间按位置递增，二分查找第一个结束位置不小于 from 的区间。
+            int lo = 0;
+            int hi = size;
+            while (lo < hi)
+            {
+                int mid = (lo + hi) >>> 1;
+                if (ends[(head + mid) % starts.length] < from)
+                    lo = mid + 1;
+                else
+                    hi = mid;
+            }
+
+            for (int i = lo; i < size; i++)
+            {
+                int index = (head + i) % starts.length;
+                if (starts[index] > to)
+                    return result;
+                if (result.size() == maxPoints)
+                    return null;
+                result.add(bucket(pid, starts[index], ends[index], counts[index],
+                                  mins[index], maxs[index], (double) sums[index] / counts[index]));
+            }
+
+            StreamDensityBucket partial = partial(pid, from, to);
+            if (partial != null)
+            {
+                if (result.size() == maxPoints)
+                    return null;
+                result.add(partial);
+            }
+            return result;
+        }
+
+        private StreamDensityBucket partial(int pid, long from, long to)
+        {
+            if (partialCount == 0 || partialEnd < from || partialStart > to)
+                return null;
+            return bucket(pid, partialStart, partialEnd, partialCount,
+                          partialMin, partialMax, (double) partialSum / partialCount);
+        }
+    }
+}
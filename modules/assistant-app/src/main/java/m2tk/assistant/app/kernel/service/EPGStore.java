@@ -0,0 +1,343 @@
+/*
+ *  Copyright (c) M2TK Project. All rights reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package m2tk.assistant.app.kernel.service;
+
+import m2tk.assistant.api.domain.SIEvent;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+
+/**
+ * EPG事件存储
+ * <p>
+ * 按 (原始网络号, 传输流号, 业务号) 分业务保存事件：当前/后续事件（EIT p/f）各占一个槽位，新的段直接覆盖；
+ * 时间表事件（EIT schedule）以事件号为键更新，并按开始时间建立有序索引，时间窗查询为 O(log n + k)。
+ * 存储量只与事件数量有关，不随EIT的重复播发增长。
+ * <p>
+ * 事件内容没有变化时保留原有对象及编号，内容变化时分配新的编号，因此界面可以按编号判断事件是否更新。
+ * 存储的事件对象不会被修改，调用者也不应修改查询返回的事件。
+ */
+public final class EPGStore
+{
+    private final Map<Long, ServiceEvents> services = new HashMap<>();
+    private int nextId = 1;
+
+    /**
+     * 写入事件，同一事件（或同一p/f槽位）已存在时覆盖。
+     * @return 存储的内容是否发生了变化
+     */
+    public synchronized boolean put(SIEvent event)
+    {
+        long key = serviceKey(event.getTransportStreamId(), event.getOriginalNetworkId(), event.getServiceId());
+        ServiceEvents events = services.computeIfAbsent(key, k -> new ServiceEvents());
+        SIEvent entry = copyOf(event);
+
+        if (entry.isScheduleEvent())
+            return events.putScheduled(entry);
+
+        if (entry.isPresentEvent())
+        {
+            SIEvent stored = replace(events.present, entry);
+            boolean changed = (stored != events.present);
+            events.present = stored;
+            return changed;
+        } else
+        {
+            SIEvent stored = replace(events.following, entry);
+            boolean changed = (stored != events.following);
+            events.following = stored;
+            return changed;
+        }
+    }
+
+    /**
+     * 查询业务的事件，当前/后续事件在前，时间表事件按开始时间排序。
+     * 指定了时间窗时只返回开始时间在时间窗内（含边界）的事件。
+     * @param nvodTimeShifted 只返回NVOD时移事件（true）或只返回普通事件（false）
+     * @param presentOnly 只返回当前事件
+     * @param scheduleOnly 只返回时间表事件
+     * @param begin 时间窗起点，为空时不限
+     * @param end 时间窗终点，为空时不限
+     */
+    public synchronized List<SIEvent> list(int transportStreamId, int originalNetworkId, int serviceId,
+                                           boolean nvodTimeShifted, boolean presentOnly, boolean scheduleOnly,
+                                           OffsetDateTime begin, OffsetDateTime end)
+    {
+        List<SIEvent> result = new ArrayList<>();
+        ServiceEvents events = services.get(serviceKey(transportStreamId, originalNetworkId, serviceId));
+        if (events == null)
+            return result;
+
+        boolean unbounded = (begin == null && end == null);
+        if (!scheduleOnly)
+        {
+            collect(result, events.present, nvodTimeShifted, begin, end);
+            if (!presentOnly)
+                collect(result, events.following, nvodTimeShifted, begin, end);
+        }
+
+        if (!presentOnly)
+        {
+            if (unbounded)
+            {
+                // 没有开始时间的事件（如NVOD索引事件）不在时间索引中，不限时间窗时排在最前。
+                for (SIEvent event : events.scheduled.values())
+                {
+                    if (event.getStartTime() == null && event.isNvodTimeShiftedEvent() == nvodTimeShifted)
+                        result.add(event);
+                }
+            }
+
+            long lo = (begin == null) ? Long.MIN_VALUE : timeKey(lowerBoundSecond(begin), 0);
+            long hi = (end == null) ? Long.MAX_VALUE : timeKey(end.toEpochSecond(), 0xFFFF);
+            for (SIEvent event : events.timeline.subMap(lo, true, hi, true).values())
+            {
+                if (event.isNvodTimeShiftedEvent() == nvodTimeShifted)
+                    result.add(event);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 并入另一个存储中的事件（分段并行分析），按写入规则覆盖已有的同一事件。
+     * @return 存储的内容是否发生了变化
+     */
+    public boolean mergeFrom(EPGStore other)
+    {
+        List<SIEvent> events = new ArrayList<>();
+        synchronized (other)
+        {
+            for (ServiceEvents entry : other.services.values())
+            {
+                events.addAll(entry.scheduled.values());
+                if (entry.present != null)
+                    events.add(entry.present);
+                if (entry.following != null)
+                    events.add(entry.following);
+            }
+        }
+
+        boolean changed = false;
+        for (SIEvent event : events)
+            changed |= put(event);
+        return changed;
+    }
+
+    /**
+     * 写出全部事件（会话存档）
+     */
+    public synchronized void writeTo(DataOutput out) throws IOException
+    {
+        List<SIEvent> events = new ArrayList<>();
+        for (ServiceEvents entry : services.values())
+        {
+            if (entry.present != null)
+                events.add(entry.present);
+            if (entry.following != null)
+                events.add(entry.following);
+            events.addAll(entry.scheduled.values());
+        }
+
+        out.writeInt(events.size());
+        for (SIEvent event : events)
+        {
+            writeString(out, event.getTitle());
+            writeString(out, event.getDescription());
+            writeString(out, event.getLanguageCode());
+            OffsetDateTime startTime = event.getStartTime();
+            out.writeBoolean(startTime != null);
+            if (startTime != null)
+            {
+                out.writeLong(startTime.toEpochSecond());
+                out.writeInt(startTime.getOffset().getTotalSeconds());
+            }
+            out.writeInt(event.getDuration());
+            out.writeInt(event.getRunningStatus());
+            out.writeBoolean(event.isFreeAccess());
+            out.writeBoolean(event.isPresentEvent());
+            out.writeBoolean(event.isScheduleEvent());
+            out.writeBoolean(event.isNvodTimeShiftedEvent());
+            out.writeInt(event.getTransportStreamId());
+            out.writeInt(event.getOriginalNetworkId());
+            out.writeInt(event.getServiceId());
+            out.writeInt(event.getEventId());
+            out.writeInt(event.getReferenceServiceId());
+            out.writeInt(event.getReferenceEventId());
+        }
+    }
+
+    /**
+     * 读入 {@link #writeTo(DataOutput)} 写出的事件，事件编号重新分配。
+     */
+    public synchronized void readFrom(DataInput in) throws IOException
+    {
+        int count = in.readInt();
+        for (int i = 0; i < count; i++)
+        {
+            SIEvent event = new SIEvent();
+            event.setTitle(readString(in));
+            event.setDescription(readString(in));
+            event.setLanguageCode(readString(in));
+            if (in.readBoolean())
+            {
+                long epochSecond = in.readLong();
+                ZoneOffset offset = ZoneOffset.ofTotalSeconds(in.readInt());
+                event.setStartTime(OffsetDateTime.ofInstant(Instant.ofEpochSecond(epochSecond), offset));
+            }
+            event.setDuration(in.readInt());
+            event.setRunningStatus(in.readInt());
+            event.setFreeAccess(in.readBoolean());
+            event.setPresentEvent(in.readBoolean());
+            event.setScheduleEvent(in.readBoolean());
+            event.setNvodTimeShiftedEvent(in.readBoolean());
+            event.setTransportStreamId(in.readInt());
+            event.setOriginalNetworkId(in.readInt());
+            event.setServiceId(in.readInt());
+            event.setEventId(in.readInt());
+            event.setReferenceServiceId(in.readInt());
+            event.setReferenceEventId(in.readInt());
+            put(event);
+        }
+    }
+
+    private static void writeString(DataOutput out, String value) throws IOException
+    {
+        out.writeBoolean(value != null);
+        if (value != null)
+            out.writeUTF(value);
+    }
+
+    private static String readString(DataInput in) throws IOException
+    {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private SIEvent replace(SIEvent current, SIEvent incoming)
+    {
+        if (current != null && isSameContent(current, incoming))
+            return current;
+        incoming.setId(nextId++);
+        return incoming;
+    }
+
+    private static void collect(List<SIEvent> result, SIEvent event, boolean nvodTimeShifted,
+                                OffsetDateTime begin, OffsetDateTime end)
+    {
+        if (event == null || event.isNvodTimeShiftedEvent() != nvodTimeShifted)
+            return;
+
+        OffsetDateTime startTime = event.getStartTime();
+        if (begin != null && (startTime == null || startTime.isBefore(begin)))
+            return;
+        if (end != null && (startTime == null || startTime.isAfter(end)))
+            return;
+        result.add(event);
+    }
+
+    private static long serviceKey(int transportStreamId, int originalNetworkId, int serviceId)
+    {
+        return ((long) (originalNetworkId & 0xFFFF) << 32) |
+               ((long) (transportStreamId & 0xFFFF) << 16) |
+               (serviceId & 0xFFFF);
+    }
+
+    // 时间索引键：开始时间（秒）在高位，事件号在低16位，同一时刻开始的不同事件互不覆盖。
+    private static long timeKey(long epochSecond, int eventId)
+    {
+        return (epochSecond << 16) | (eventId & 0xFFFF);
+    }
+
+    private static long timeKey(SIEvent event)
+    {
+        return timeKey(event.getStartTime().toEpochSecond(), event.getEventId());
+    }
+
+    private static long lowerBoundSecond(OffsetDateTime begin)
+    {
+        long second = begin.toEpochSecond();
+        return (begin.getNano() > 0) ? second + 1 : second;
+    }
+
+    private static SIEvent copyOf(SIEvent event)
+    {
+        SIEvent copy = new SIEvent();
+        copy.setTitle(Objects.requireNonNullElse(event.getTitle(), "未命名事件"));
+        copy.setDescription(Objects.requireNonNullElse(event.getDescription(), ""));
+        copy.setLanguageCode(Objects.requireNonNullElse(event.getLanguageCode(), "chi"));
+        copy.setStartTime(event.getStartTime() == null
+                          ? null
+                          : event.getStartTime().withOffsetSameInstant(ZoneOffset.UTC));
+        copy.setDuration(event.getDuration());
+        copy.setRunningStatus(event.getRunningStatus());
+        copy.setFreeAccess(event.isFreeAccess());
+        copy.setPresentEvent(event.isPresentEvent());
+        copy.setScheduleEvent(event.isScheduleEvent());
+        copy.setTransportStreamId(event.getTransportStreamId());
+        copy.setOriginalNetworkId(event.getOriginalNetworkId());
+        copy.setServiceId(event.getServiceId());
+        copy.setEventId(event.getEventId());
+        copy.setReferenceServiceId(event.getReferenceServiceId());
+        copy.setReferenceEventId(event.getReferenceEventId());
+        copy.setNvodTimeShiftedEvent(event.isNvodTimeShiftedEvent());
+        return copy;
+    }
+
+    private static boolean isSameContent(SIEvent a, SIEvent b)
+    {
+        return a.getEventId() == b.getEventId() &&
+               a.getDuration() == b.getDuration() &&
+               a.getRunningStatus() == b.getRunningStatus() &&
+               a.isFreeAccess() == b.isFreeAccess() &&
+               a.isPresentEvent() == b.isPresentEvent() &&
+               a.isScheduleEvent() == b.isScheduleEvent() &&
+               a.isNvodTimeShiftedEvent() == b.isNvodTimeShiftedEvent() &&
+               a.getReferenceServiceId() == b.getReferenceServiceId() &&
+               a.getReferenceEventId() == b.getReferenceEventId() &&
+               Objects.equals(a.getStartTime(), b.getStartTime()) &&
+               Objects.equals(a.getTitle(), b.getTitle()) &&
+               Objects.equals(a.getDescription(), b.getDescription()) &&
+               Objects.equals(a.getLanguageCode(), b.getLanguageCode());
+    }
+
+    private final class ServiceEvents
+    {
+        private SIEvent present;
+        private SIEvent following;
+        private final Map<Integer, SIEvent> scheduled = new HashMap<>();
+        private final NavigableMap<Long, SIEvent> timeline = new TreeMap<>();
+
+        private boolean putScheduled(SIEvent entry)
+        {
+            SIEvent current = scheduled.get(entry.getEventId());
+            SIEvent stored = replace(current, entry);
+            if (stored == current)
+                return false;
+
+            scheduled.put(entry.getEventId(), stored);
+            if (current != null && current.getStartTime() != null)
+                timeline.remove(timeKey(current));
+            if (stored.getStartTime() != null)
+                timeline.put(timeKey(stored), stored);
+            return true;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ *  Copyright (c) M2TK Project. All rights reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package m2tk.assistant.app.kernel.service;
+
+import m2tk.assistant.api.domain.ElementaryStream;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 基本流统计计数表
+ * <p>
+ * 按PID保存包数、PCR数、加扰标记、码率、占比及传输/连续计数错误数，分析线程直接更新，界面直接读取快照，
+ * 读写都不加锁。各字段分别原子更新，快照中不同字段之间可能相差一次更新，对统计显示没有影响。
+ * <p>
+ * 数据库中的基本流统计只作为检查点，由 {@link #isCheckpointDue()} 控制周期，每次只写入有变化的PID。
+ */
+public final class ElementaryStreamCounters
+{
+    public static final long DEFAULT_CHECKPOINT_INTERVAL_MILLIS = 5000;
+
+    private static final int PID_COUNT = 8192;
+
+    private static final int PACKET_COUNT = 0;
+    private static final int PCR_COUNT = 1;
+    private static final int BITRATE = 2;
+    private static final int RATIO = 3;  // double 的位模式
+    private static final int SCRAMBLED = 4;
+    private static final int TRANSPORT_ERRORS = 5;
+    private static final int CONTINUITY_ERRORS = 6;
+    private static final int FIELDS = 7;
+
+    private final AtomicLongArray counters;
+    private final AtomicLongArray versions;     // 每次更新加一，0 表示从未更新
+    private final long[] checkpointVersions;    // 上次检查点时的版本，只在 collectModified 中访问
+    private final AtomicLong nextCheckpoint;
+    private final long checkpointIntervalNanos;
+
+    public ElementaryStreamCounters()
+    {
+        this(DEFAULT_CHECKPOINT_INTERVAL_MILLIS);
+    }
+
+    public ElementaryStreamCounters(long checkpointIntervalMillis)
+    {
+        counters = new AtomicLongArray(PID_COUNT * FIELDS);
+        versions = new AtomicLongArray(PID_COUNT);
+        checkpointVersions = new long[PID_COUNT];
+        checkpointIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, checkpointIntervalMillis));
+        nextCheckpoint = new AtomicLong(System.nanoTime() + checkpointIntervalNanos);
+    }
+
+    public void update(int pid, long packetCount, long pcrCount, int bitrate, double ratio, boolean scrambled)
+    {
+        int base = (pid & 0x1FFF) * FIELDS;
+        counters.setRelease(base + PACKET_COUNT, packetCount);
+        counters.setRelease(base + PCR_COUNT, pcrCount);
+        counters.setRelease(base + BITRATE, bitrate);
+        counters.setRelease(base + RATIO, Double.doubleToRawLongBits(ratio));
+        counters.setRelease(base + SCRAMBLED, scrambled ? 1 : 0);
+        versions.incrementAndGet(pid & 0x1FFF);
+    }
+
+    public void addErrors(int pid, int transportErrors, int continuityErrors)
+    {
+        int base = (pid & 0x1FFF) * FIELDS;
+        counters.getAndAdd(base + TRANSPORT_ERRORS, transportErrors);
+        counters.getAndAdd(base + CONTINUITY_ERRORS, continuityErrors);
+        versions.incrementAndGet(pid & 0x1FFF);
+    }
+
+    /**
+     * @return 是否更新过该PID的统计（未更新过的PID以数据库中的记录为准）
+     */
+    public boolean isTracked(int pid)
+    {
+        return versions.get(pid & 0x1FFF) != 0;
+    }
+
+    /**
+     * @return 已出现（包数大于零）的PID，升序排列
+     */
+    public int[] listPresentPids()
+    {
+        int[] pids = new int[PID_COUNT];
+        int count = 0;
+        for (int pid = 0; pid < PID_COUNT; pid++)
+        {
+            if (counters.getAcquire(pid * FIELDS + PACKET_COUNT) > 0)
+                pids[count++] = pid;
+        }
+        return Arrays.copyOf(pids, count);
+    }
+
+    /**
+     * 用计数表中的统计值覆盖基本流对象的对应字段（PID未更新过时不做修改）
+     * @param stream 基本流
+     * @return 传入的基本流对象
+     */
+    public ElementaryStream apply(ElementaryStream stream)
+    {
+        int pid = stream.getStreamPid() & 0x1FFF;
+        if (!isTracked(pid))
+            return stream;
+
+        int base = pid * FIELDS;
+        stream.setPacketCount(counters.getAcquire(base + PACKET_COUNT));
+        stream.setPcrCount(counters.getAcquire(base + PCR_COUNT));
+        stream.setBitrate((int) counters.getAcquire(base + BITRATE));
+        stream.setRatio(Double.longBitsToDouble(counters.getAcquire(base + RATIO)));
+        stream.setScrambled(counters.getAcquire(base + SCRAMBLED) != 0);
+        stream.setTransportErrorCount(counters.getAcquire(base + TRANSPORT_ERRORS));
+        stream.setContinuityErrorCount(counters.getAcquire(base + CONTINUITY_ERRORS));
+        return stream;
+    }
+
+    /**
+     * 判断是否到了写检查点的时间。同一周期内只有一个调用者得到 true。
+     */
+    public boolean isCheckpointDue()
+    {
+        long next = nextCheckpoint.get();
+        long now = System.nanoTime();
+        return now - next >= 0 && nextCheckpoint.compareAndSet(next, now + checkpointIntervalNanos);
+    }
+
+    /**
+     * 收集自上次检查点以来有变化的PID，并把它们标记为已写入。
+     * @return 有变化的PID，升序排列
+     */
+    public synchronized int[] collectModified()
+    {
+        int[] pids = new int[PID_COUNT];
+        int count = 0;
+        for (int pid = 0; pid < PID_COUNT; pid++)
+        {
+            long version = versions.get(pid);
+            if (version != checkpointVersions[pid])
+            {
+                checkpointVersions[pid] = version;
+                pids[count++] = pid;
+            }
+        }
+        return Arrays.copyOf(pids, count);
+    }
+}
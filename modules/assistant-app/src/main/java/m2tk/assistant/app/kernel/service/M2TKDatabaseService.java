@@ -20,6 +20,7 @@ import cn.hutool.core.util.StrUtil;
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.core.toolkit.Wrappers;
 import lombok.extern.slf4j.Slf4j;
+import m2tk.assistant.api.ChangeDomain;
 import m2tk.assistant.api.M2TKDatabase;
 import m2tk.assistant.api.domain.*;
 import m2tk.assistant.api.presets.RunningStatus;
@@ -36,12 +37,17 @@ import org.noear.solon.core.util.ResourceUtil;
 import org.noear.solon.data.sql.RowIterator;
 import org.noear.solon.data.sql.SqlUtils;
 
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
-import java.time.LocalDateTime;
 import java.time.OffsetDateTime;
 import java.time.ZoneId;
 import java.time.ZoneOffset;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -50,6 +56,8 @@ public class M2TKDatabaseService implements M2TKDatabase
 {
     @Inject("m2tk")
     private SqlUtils sqlUtils;
+    @Inject("m2tk")
+    private DataSource dataSource;
 
     @Db("m2tk")
     private PreferenceEntityMapper preferenceMapper;
@@ -62,16 +70,6 @@ public class M2TKDatabaseService implements M2TKDatabase
     @Db("m2tk")
     private CAStreamEntityMapper caStreamMapper;
     @Db("m2tk")
-    private PCREntityMapper pcrMapper;
-    @Db("m2tk")
-    private PCRCheckEntityMapper pcrCheckMapper;
-    @Db("m2tk")
-    private PCRStatViewEntityMapper pcrStatMapper;
-    @Db("m2tk")
-    private TR290EventEntityMapper tr290EventMapper;
-    @Db("m2tk")
-    private TR290StatViewEntityMapper tr290StatMapper;
-    @Db("m2tk")
     private SIBouquetEntityMapper bouquetMapper;
     @Db("m2tk")
     private SINetworkEntityMapper networkMapper;
@@ -80,18 +78,12 @@ public class M2TKDatabaseService implements M2TKDatabase
     @Db("m2tk")
     private SIServiceEntityMapper serviceMapper;
     @Db("m2tk")
-    private SIEventEntityMapper eventMapper;
-    @Db("m2tk")
     private SIDateTimeEntityMapper datetimeMapper;
     @Db("m2tk")
     private TableVersionEntityMapper tableVersionMapper;
     @Db("m2tk")
     private PrivateSectionEntityMapper sectionMapper;
     @Db("m2tk")
-    private TransportPacketEntityMapper tsPacketMapper;
-    @Db("m2tk")
-    private PESPacketEntityMapper pesPacketMapper;
-    @Db("m2tk")
     private ProgramElementaryMappingEntityMapper programMappingMapper;
     @Db("m2tk")
     private MultiplexServiceMappingEntityMapper multiplexMappingMapper;
@@ -103,10 +95,26 @@ public class M2TKDatabaseService implements M2TKDatabase
     private SIMultiplexViewEntityMapper multiplexViewMapper;
     @Db("m2tk")
     private FilteringHookEntityMapper hookMapper;
-    @Db("m2tk")
-    private DensityBulkEntityMapper densityMapper;
-    @Db("m2tk")
-    private DensityStatViewEntityMapper densityStatMapper;
+
+    // PCR统计只保存在内存中，按数据源区分。
+    private final Map<Integer, PCRStatsEngine> pcrStatsEngines = new ConcurrentHashMap<>();
+    // 基本流统计以内存计数表为准，数据库中只保存周期性的检查点。
+    private final Map<Integer, ElementaryStreamCounters> streamCounters = new ConcurrentHashMap<>();
+    // 捕获的传输包和PES包保存在定长的环形缓冲区中，不写入数据库。
+    private final Map<Integer, PacketCaptureStore> transportPacketStores = new ConcurrentHashMap<>();
+    private final Map<Integer, PacketCaptureStore> pesPacketStores = new ConcurrentHashMap<>();
+    // 过滤得到的用户私有段同样保存在定长的环形缓冲区中，超出上限时淘汰最早的分段。
+    private final Map<Integer, SectionRingStore> filteredSectionStores = new ConcurrentHashMap<>();
+    // EPG事件按业务保存在内存索引中，重复播发的EIT只更新已有事件。
+    private final Map<Integer, EPGStore> epgStores = new ConcurrentHashMap<>();
+    // 流密度按PID做紧凑编码并逐级预聚合，只保存在内存中。
+    private final Map<Integer, DensityStore> densityStores = new ConcurrentHashMap<>();
+    // TR290错误按类型和PID在内存中汇总，只抽样保存部分明细。
+    private final Map<Integer, TR290ErrorAggregator> tr290Aggregators = new ConcurrentHashMap<>();
+    // 从存档恢复的数据源，体积较大的私有段和捕获包在首次查询时才载入。
+    private final Map<Integer, FutureTask<?>> deferredLoads = new ConcurrentHashMap<>();
+    // 各数据域的变化计数，界面据此判断是否需要重新查询。
+    private final ChangeCounters changeCounters = new ChangeCounters();
 
     @Init
     public void initDatabase()
@@ -162,12 +170,7 @@ public class M2TKDatabaseService implements M2TKDatabase
         {
             log.info("开始设置分析上下文");
 
-            String resetScript = ResourceUtil.getResourceAsString("/db_reset.sql");
-            List<String> statements = StrUtil.split(resetScript, ";", true, true);
-            for (String statement : statements)
-                sqlUtils.sql(statement).update();
-            log.info("清空历史数据");
-
+            // 各数据源的分析数据以 source_ref 区分，开始新的分析时不再清空其他数据源的数据。
             StreamSourceEntity entity = new StreamSourceEntity();
             entity.setSourceName(sourceName);
             entity.setSourceUri(sourceUri);
@@ -176,6 +179,12 @@ public class M2TKDatabaseService implements M2TKDatabase
             sourceMapper.insert(entity);
             log.info("本次数据源：{}", sourceUri);
 
+            purgeSourceData(entity.getId());
+            sqlUtils.sql("INSERT INTO `PUBLIC`.`t_elementary_stream` (`source_ref`, `pid`) " +
+                         "SELECT CAST(? AS INT), X FROM SYSTEM_RANGE(0, 8191)",
+                         entity.getId())
+                    .update();
+
             log.info("分析上下文设置完毕");
             return convert(entity);
         } catch (Exception ex)
@@ -185,6 +194,48 @@ public class M2TKDatabaseService implements M2TKDatabase
         }
     }
 
+    /**
+     * 清除指定数据源的全部分析数据（数据源记录本身保留）
+     * @param sourceRef 数据源编号
+     */
+    public void purgeSourceData(int sourceRef)
+    {
+        try
+        {
+            String resetScript = ResourceUtil.getResourceAsString("/db_reset.sql");
+            List<String> statements = StrUtil.split(resetScript, ";", true, true);
+            for (String statement : statements)
+                sqlUtils.sql(statement, sourceRef).update();
+            pcrStatsEngines.remove(sourceRef);
+            streamCounters.remove(sourceRef);
+            transportPacketStores.remove(sourceRef);
+            pesPacketStores.remove(sourceRef);
+            filteredSectionStores.remove(sourceRef);
+            epgStores.remove(sourceRef);
+            densityStores.remove(sourceRef);
+            tr290Aggregators.remove(sourceRef);
+            FutureTask<?> deferred = deferredLoads.remove(sourceRef);
+            if (deferred != null)
+                deferred.cancel(true);
+            changeCounters.remove(sourceRef);
+            log.info("清空数据源 {} 的分析数据", sourceRef);
+        } catch (Exception ex)
+        {
+            log.error("数据存储异常：{}", ex.getMessage(), ex);
+            throw new KernelException(ErrorCode.DATABASE_ERROR, "无法清空分析数据");
+        }
+    }
+
+    /**
+     * 删除数据源及其全部分析数据（用于分段分析的临时数据源）
+     * @param sourceRef 数据源编号
+     */
+    public void dropSource(int sourceRef)
+    {
+        purgeSourceData(sourceRef);
+        sourceMapper.deleteById(sourceRef);
+    }
+
     @Override
     public void updateStreamSourceStats(int sourceRef, int bitrate, int frameSize, boolean scrambled, long packetCount, int streamCount)
     {
@@ -196,6 +247,7 @@ public class M2TKDatabaseService implements M2TKDatabase
         change.setPacketCount(packetCount);
         change.setStreamCount(streamCount);
         sourceMapper.updateById(change);
+        changeCounters.markChanged(sourceRef, ChangeDomain.STREAM);
     }
 
     @Override
@@ -205,6 +257,7 @@ public class M2TKDatabaseService implements M2TKDatabase
         change.setId(sourceRef);
         change.setTransportStreamId(transportStreamId);
         sourceMapper.updateById(change);
+        changeCounters.markChanged(sourceRef, ChangeDomain.STREAM);
     }
 
     @Override
@@ -232,11 +285,18 @@ public class M2TKDatabaseService implements M2TKDatabase
             case "TOT" -> change.setTotPresent(present);
         }
         sourceMapper.updateById(change);
+        changeCounters.markChanged(sourceRef, ChangeDomain.STREAM);
     }
 
     @Override
     public StreamSource getCurrentStreamSource()
     {
+        if (SourceScope.isDefined())
+        {
+            StreamSourceEntity entity = sourceMapper.selectById(SourceScope.current());
+            return (entity == null) ? null : convert(entity);
+        }
+
         StreamSourceEntity entity = sourceMapper.selectOne(Wrappers.lambdaQuery(StreamSourceEntity.class)
                                                                    .orderByDesc(StreamSourceEntity::getId)
                                                                    .last("limit 1"));
@@ -266,27 +326,23 @@ public class M2TKDatabaseService implements M2TKDatabase
     @Override
     public void updateElementaryStreamStats(int pid, long pktCount, long pcrCount, int bitrate, double ratio, boolean scrambled)
     {
-        ElementaryStreamEntity change = new ElementaryStreamEntity();
-        change.setPid(pid);
-        change.setBitrate(bitrate);
-        change.setRatio(ratio);
-        change.setPacketCount(pktCount);
-        change.setPcrCount(pcrCount);
-        change.setScrambled(scrambled);
-        streamMapper.updateById(change);
+        ElementaryStreamCounters counters = streamCounters.computeIfAbsent(SourceScope.current(),
+                                                                           ref -> new ElementaryStreamCounters());
+        counters.update(pid, pktCount, pcrCount, bitrate, ratio, scrambled);
+        if (SourceScope.isDefined() && counters.isCheckpointDue())
+            checkpointElementaryStreams(SourceScope.current(), counters);
+        markChanged(ChangeDomain.STREAM);
     }
 
     @Override
     public void updateElementaryStreamStats(ElementaryStream stream)
     {
-        ElementaryStreamEntity change = new ElementaryStreamEntity();
-        change.setPid(stream.getStreamPid());
-        change.setBitrate(stream.getBitrate());
-        change.setRatio(stream.getRatio());
-        change.setPacketCount(stream.getPacketCount());
-        change.setPcrCount(stream.getPcrCount());
-        change.setScrambled(stream.isScrambled());
-        streamMapper.updateById(change);
+        updateElementaryStreamStats(stream.getStreamPid(),
+                                    stream.getPacketCount(),
+                                    stream.getPcrCount(),
+                                    stream.getBitrate(),
+                                    stream.getRatio(),
+                                    stream.isScrambled());
     }
 
     @Override
@@ -297,6 +353,7 @@ public class M2TKDatabaseService implements M2TKDatabase
         change.setCategory(category);
         change.setDescription(description);
         streamMapper.updateById(change);
+        markChanged(ChangeDomain.STREAM);
     }
 
     @Override
@@ -307,33 +364,106 @@ public class M2TKDatabaseService implements M2TKDatabase
         change.setCategory(stream.getCategory());
         change.setDescription(stream.getDescription());
         streamMapper.updateById(change);
+        markChanged(ChangeDomain.STREAM);
     }
 
     @Override
     public void accumulateElementaryStreamErrors(int pid, int transportErrors, int continuityErrors)
     {
-        streamMapper.accumulateStreamErrors(pid, transportErrors, continuityErrors);
+        streamCounters.computeIfAbsent(SourceScope.current(), ref -> new ElementaryStreamCounters())
+                      .addErrors(pid, transportErrors, continuityErrors);
+        markChanged(ChangeDomain.STREAM);
     }
 
     @Override
     public ElementaryStream getElementaryStream(int pid)
     {
         ElementaryStreamEntity entity = streamMapper.selectById(pid & 0x1FFF);
-        return convert(entity);
+        return applyStreamCounters(convert(entity));
     }
 
     @Override
     public List<ElementaryStream> listElementaryStreams(boolean presentOnly)
     {
+        ElementaryStreamCounters counters = streamCounters.get(SourceScope.current());
         LambdaQueryWrapper<ElementaryStreamEntity> query = Wrappers.lambdaQuery(ElementaryStreamEntity.class)
-                                                                   .gt(presentOnly, ElementaryStreamEntity::getPacketCount, 0)
                                                                    .orderByAsc(ElementaryStreamEntity::getPid);
+        if (presentOnly && counters == null)
+        {
+            query.gt(ElementaryStreamEntity::getPacketCount, 0);
+        } else if (presentOnly)
+        {
+            // 数据库中的包数可能滞后一个检查点，以计数表为准。
+            int[] pids = counters.listPresentPids();
+            if (pids.length == 0)
+                return new ArrayList<>();
+            query.in(ElementaryStreamEntity::getPid, Arrays.stream(pids).boxed().toList());
+        }
         return streamMapper.selectList(query)
                            .stream()
                            .map(this::convert)
+                           .map(this::applyStreamCounters)
                            .collect(Collectors.toList());
     }
 
+    /**
+     * 把数据源的基本流统计写入数据库（只写入自上次检查点以来有变化的PID）
+     * @param sourceRef 数据源编号
+     */
+    public void checkpointElementaryStreams(int sourceRef)
+    {
+        ElementaryStreamCounters counters = streamCounters.get(sourceRef);
+        if (counters != null)
+            checkpointElementaryStreams(sourceRef, counters);
+    }
+
+    private void checkpointElementaryStreams(int sourceRef, ElementaryStreamCounters counters)
+    {
+        int[] pids = counters.collectModified();
+        if (pids.length == 0)
+            return;
+
+        ElementaryStream stream = new ElementaryStream();
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement("""
+                     UPDATE `t_elementary_stream`
+                     SET `pkt_cnt` = ?, `pcr_cnt` = ?, `bitrate` = ?, `ratio` = ?, `is_scrambled` = ?, `tse_cnt` = ?, `cce_cnt` = ?
+                     WHERE `source_ref` = ? AND `pid` = ?
+                     """))
+        {
+            for (int pid : pids)
+            {
+                stream.setStreamPid(pid);
+                counters.apply(stream);
+                statement.setLong(1, stream.getPacketCount());
+                statement.setLong(2, stream.getPcrCount());
+                statement.setInt(3, stream.getBitrate());
+                statement.setDouble(4, stream.getRatio());
+                statement.setBoolean(5, stream.isScrambled());
+                statement.setLong(6, stream.getTransportErrorCount());
+                statement.setLong(7, stream.getContinuityErrorCount());
+                statement.setInt(8, sourceRef);
+                statement.setInt(9, pid);
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        } catch (SQLException ex)
+        {
+            log.error("无法写入基本流统计检查点：{}", ex.getMessage());
+        }
+    }
+
+    ElementaryStreamCounters getStreamCounters(int sourceRef)
+    {
+        return streamCounters.computeIfAbsent(sourceRef, ref -> new ElementaryStreamCounters());
+    }
+
+    private ElementaryStream applyStreamCounters(ElementaryStream stream)
+    {
+        ElementaryStreamCounters counters = streamCounters.get(SourceScope.current());
+        return (counters == null) ? stream : counters.apply(stream);
+    }
+
     @Override
     public MPEGProgram addMPEGProgram(int programNumber, int transportStreamId, int pmtPid)
     {
@@ -344,6 +474,7 @@ public class M2TKDatabaseService implements M2TKDatabase
         entity.setPcrPid(8191);
         entity.setFreeAccess(Boolean.TRUE);
         programMapper.insert(entity);
+        markChanged(ChangeDomain.PROGRAM);
         return convert(entity);
     }
 
@@ -356,12 +487,14 @@ public class M2TKDatabaseService implements M2TKDatabase
         change.setPmtVersion(pmtVersion);
         change.setFreeAccess(freeAccess);
         programMapper.updateById(change);
+        markChanged(ChangeDomain.PROGRAM);
     }
 
     @Override
     public void clearMPEGPrograms()
     {
         programMapper.delete(Wrappers.emptyWrapper());
+        markChanged(ChangeDomain.PROGRAM);
     }
 
     @Override
@@ -372,6 +505,7 @@ public class M2TKDatabaseService implements M2TKDatabase
         entity.setStreamPid(streamPid);
         entity.setStreamType(streamType);
         programMappingMapper.insert(entity);
+        markChanged(ChangeDomain.PROGRAM);
     }
 
     @Override
@@ -411,11 +545,11 @@ public class M2TKDatabaseService implements M2TKDatabase
             List<ElementaryStreamEntity> streams = streamMapper.selectBatchIds(streamPids);
             for (ElementaryStreamEntity stream : streams)
             {
-                bandwidth += stream.getBitrate();
+                ElementaryStream es = applyStreamCounters(convert(stream));
+                bandwidth += es.getBitrate();
                 ProgramElementaryMappingEntity mapping = esMappings.get(stream.getPid());
                 if (mapping != null)
                 {
-                    ElementaryStream es = convert(stream);
                     es.setStreamType(mapping.getStreamType());
                     es.setProgramNumber(program.getProgramNumber());
                     program.getElementaryStreams().add(es);
@@ -438,6 +572,7 @@ public class M2TKDatabaseService implements M2TKDatabase
         entity.setProgramNumber(programNumber);
         entity.setElementaryStreamPid(elementaryStreamPid);
         caStreamMapper.insert(entity);
+        markChanged(ChangeDomain.PROGRAM);
     }
 
     @Override
@@ -456,6 +591,7 @@ public class M2TKDatabaseService implements M2TKDatabase
         entity.setBouquetId(bouquetId);
         entity.setBouquetName("未命名业务群");
         bouquetMapper.insert(entity);
+        markChanged(ChangeDomain.SI);
         return convert(entity);
     }
 
@@ -467,6 +603,7 @@ public class M2TKDatabaseService implements M2TKDatabase
         change.setBouquetId(bouquet.getBouquetId());
         change.setBouquetName(bouquet.getName());
         bouquetMapper.updateById(change);
+        markChanged(ChangeDomain.SI);
     }
 
     @Override
@@ -478,6 +615,7 @@ public class M2TKDatabaseService implements M2TKDatabase
         entity.setOriginalNetworkId(originalNetworkId);
         entity.setServiceId(serviceId);
         bouquetMappingMapper.insert(entity);
+        markChanged(ChangeDomain.SI);
     }
 
     @Override
@@ -513,6 +651,7 @@ public class M2TKDatabaseService implements M2TKDatabase
         entity.setNetworkName("未命名网络");
         entity.setActualNetwork(actualNetwork);
         networkMapper.insert(entity);
+        markChanged(ChangeDomain.SI);
         return convert(entity);
     }
 
@@ -524,6 +663,7 @@ public class M2TKDatabaseService implements M2TKDatabase
         change.setNetworkId(network.getNetworkId());
         change.setNetworkName(network.getName());
         networkMapper.updateById(change);
+        markChanged(ChangeDomain.SI);
     }
 
     @Override
@@ -567,6 +707,7 @@ public class M2TKDatabaseService implements M2TKDatabase
         entity.setDeliveryType("未知");
         entity.setTransmitFrequency("");
         multiplexMapper.insert(entity);
+        markChanged(ChangeDomain.SI);
         return convert(entity);
     }
 
@@ -580,6 +721,7 @@ public class M2TKDatabaseService implements M2TKDatabase
         change.setDeliveryType(multiplex.getDeliverySystemType());
         change.setTransmitFrequency(multiplex.getTransmitFrequency());
         multiplexMapper.updateById(change);
+        markChanged(ChangeDomain.SI);
     }
 
     @Override
@@ -589,6 +731,7 @@ public class M2TKDatabaseService implements M2TKDatabase
         entity.setMultiplexRef(multiplexRef);
         entity.setServiceId(serviceId);
         multiplexMappingMapper.insert(entity);
+        markChanged(ChangeDomain.SI);
     }
 
     @Override
@@ -695,6 +838,7 @@ public class M2TKDatabaseService implements M2TKDatabase
         entity.setNvodReferenceService(false);
         entity.setActualTransportStream(actualTransportStream);
         serviceMapper.insert(entity);
+        markChanged(ChangeDomain.SI);
         return convert(entity);
     }
 
@@ -718,6 +862,7 @@ public class M2TKDatabaseService implements M2TKDatabase
         change.setNvodReferenceService(service.isNVODReferenceService());
         change.setNvodTimeShiftedService(service.isNVODTimeShiftedService());
         serviceMapper.updateById(change);
+        markChanged(ChangeDomain.SI);
     }
 
     @Override
@@ -780,56 +925,11 @@ public class M2TKDatabaseService implements M2TKDatabase
                             .collect(Collectors.toList());
     }
 
-    @Override
-    public SIEvent addSIEvent(int eventId, int transportStreamId, int originalNetworkId, int serviceId)
-    {
-        SIEventEntity entity = new SIEventEntity();
-        entity.setEventId(eventId);
-        entity.setTransportStreamId(transportStreamId);
-        entity.setOriginalNetworkId(originalNetworkId);
-        entity.setServiceId(serviceId);
-        entity.setFreeAccess(true);
-        entity.setLanguageCode("chi");
-        entity.setEventName("未命名事件");
-        entity.setReferenceEventId(-1);
-        entity.setReferenceServiceId(-1);
-        entity.setNvodTimeShiftedEvent(false);
-        entity.setPresentEvent(false);
-        entity.setScheduleEvent(true);
-        eventMapper.insert(entity);
-        return convert(entity);
-    }
-
     @Override
     public void updateSIEvent(SIEvent event)
     {
-        SIEventEntity change = new SIEventEntity();
-        change.setId(event.getId());
-        change.setTransportStreamId(event.getTransportStreamId());
-        change.setOriginalNetworkId(event.getOriginalNetworkId());
-        change.setServiceId(event.getServiceId());
-        change.setEventId(event.getEventId());
-        change.setEventName(event.getTitle());
-        change.setEventDescription(event.getDescription());
-        change.setLanguageCode(event.getLanguageCode());
-        change.setRunningStatus(event.getRunningStatus());
-        change.setDuration(event.getDuration());
-        change.setFreeAccess(event.isFreeAccess());
-        change.setPresentEvent(event.isPresentEvent());
-        change.setScheduleEvent(event.isScheduleEvent());
-        change.setNvodTimeShiftedEvent(event.isNvodTimeShiftedEvent());
-        change.setReferenceServiceId(event.getReferenceServiceId());
-        change.setReferenceEventId(event.getReferenceEventId());
-
-        if (event.getStartTime() != null)
-        {
-            LocalDateTime utcStartTime = event.getStartTime()
-                                              .atZoneSameInstant(ZoneOffset.UTC)
-                                              .toLocalDateTime();
-            change.setStartTime(utcStartTime);
-        }
-
-        eventMapper.updateById(change);
+        if (epgStore().put(event))
+            markChanged(ChangeDomain.EPG);
     }
 
     @Override
@@ -837,24 +937,9 @@ public class M2TKDatabaseService implements M2TKDatabase
                                              boolean presentOnly, boolean scheduleOnly,
                                              OffsetDateTime timeFilterBegin, OffsetDateTime timeFilterEnd)
     {
-        LambdaQueryWrapper<SIEventEntity> query = Wrappers.lambdaQuery(SIEventEntity.class)
-                                                          .eq(SIEventEntity::getTransportStreamId, transportStreamId)
-                                                          .eq(SIEventEntity::getOriginalNetworkId, originalNetworkId)
-                                                          .eq(SIEventEntity::getServiceId, serviceId)
-                                                          .eq(SIEventEntity::getNvodTimeShiftedEvent, Boolean.FALSE)
-                                                          .eq(presentOnly, SIEventEntity::getPresentEvent, Boolean.TRUE)
-                                                          .eq(scheduleOnly, SIEventEntity::getScheduleEvent, Boolean.TRUE);
-        if (timeFilterBegin != null)
-            query.ge(SIEventEntity::getStartTime,
-                     timeFilterBegin.atZoneSameInstant(ZoneOffset.UTC).toLocalDateTime());
-        if (timeFilterEnd != null)
-            query.le(SIEventEntity::getStartTime,
-                     timeFilterEnd.atZoneSameInstant(ZoneOffset.UTC).toLocalDateTime());
-
-        return eventMapper.selectList(query)
-                          .stream()
-                          .map(this::convert)
-                          .collect(Collectors.toList());
+        return epgStore().list(transportStreamId, originalNetworkId, serviceId,
+                               false, presentOnly, scheduleOnly,
+                               timeFilterBegin, timeFilterEnd);
     }
 
     @Override
@@ -862,24 +947,19 @@ public class M2TKDatabaseService implements M2TKDatabase
                                           boolean presentOnly, boolean scheduleOnly,
                                           OffsetDateTime timeFilterBegin, OffsetDateTime timeFilterEnd)
     {
-        LambdaQueryWrapper<SIEventEntity> query = Wrappers.lambdaQuery(SIEventEntity.class)
-                                                          .eq(SIEventEntity::getTransportStreamId, transportStreamId)
-                                                          .eq(SIEventEntity::getOriginalNetworkId, originalNetworkId)
-                                                          .eq(SIEventEntity::getServiceId, serviceId)
-                                                          .eq(SIEventEntity::getNvodTimeShiftedEvent, Boolean.TRUE)
-                                                          .eq(presentOnly, SIEventEntity::getPresentEvent, Boolean.TRUE)
-                                                          .eq(scheduleOnly, SIEventEntity::getScheduleEvent, Boolean.TRUE);
-        if (timeFilterBegin != null)
-            query.ge(SIEventEntity::getStartTime,
-                     timeFilterBegin.atZoneSameInstant(ZoneOffset.UTC).toLocalDateTime());
-        if (timeFilterEnd != null)
-            query.le(SIEventEntity::getStartTime,
-                     timeFilterEnd.atZoneSameInstant(ZoneOffset.UTC).toLocalDateTime());
+        return epgStore().list(transportStreamId, originalNetworkId, serviceId,
+                               true, presentOnly, scheduleOnly,
+                               timeFilterBegin, timeFilterEnd);
+    }
 
-        return eventMapper.selectList(query)
-                          .stream()
-                          .map(this::convert)
-                          .collect(Collectors.toList());
+    private EPGStore epgStore()
+    {
+        return getEPGStore(SourceScope.current());
+    }
+
+    EPGStore getEPGStore(int sourceRef)
+    {
+        return epgStores.computeIfAbsent(sourceRef, ref -> new EPGStore());
     }
 
     @Override
@@ -889,6 +969,7 @@ public class M2TKDatabaseService implements M2TKDatabase
         entity.setTimepoint(timestamp.atZoneSameInstant(ZoneId.of("UTC"))
                                      .toLocalDateTime());
         datetimeMapper.insert(entity);
+        markChanged(ChangeDomain.SI);
     }
 
     @Override
@@ -905,112 +986,86 @@ public class M2TKDatabaseService implements M2TKDatabase
     @Override
     public void addTR290Event(TR290Event event)
     {
-        TR290EventEntity entity = new TR290EventEntity();
-        entity.setTimestamp(event.getTimestamp()
-                                 .atZoneSameInstant(ZoneId.systemDefault())
-                                 .toLocalDateTime());
-        entity.setType(event.getType());
-        entity.setDescription(event.getDescription());
-        entity.setStream(event.getStream());
-        entity.setPosition(event.getPosition());
-        tr290EventMapper.insert(entity);
+        tr290Aggregator().add(event);
+        markChanged(ChangeDomain.TR290);
+    }
+
+    @Override
+    public void addTR290Error(String type, int stream, long position, String format, long arg1, long arg2, long arg3)
+    {
+        tr290Aggregator().add(type, stream, position, format, arg1, arg2, arg3);
+        markChanged(ChangeDomain.TR290);
     }
 
     @Override
     public void clearTR290Events()
     {
-        tr290EventMapper.delete(Wrappers.emptyWrapper());
+        tr290Aggregator().clear();
+        markChanged(ChangeDomain.TR290);
     }
 
     @Override
     public List<TR290Event> listTR290Events(String type, int count)
     {
-        return tr290EventMapper.selectList(Wrappers.lambdaQuery(TR290EventEntity.class)
-                                                   .eq(TR290EventEntity::getType, type)
-                                                   .orderByDesc(TR290EventEntity::getId)
-                                                   .last("limit " + Math.min(count, 100)))
-                               .stream()
-                               .map(this::convert)
-                               .collect(Collectors.toList());
+        return tr290Aggregator().listRecent(type, Math.min(count, TR290ErrorAggregator.DEFAULT_SAMPLE_CAPACITY));
     }
 
     @Override
     public List<TR290Event> listTR290Events()
     {
-        return tr290EventMapper.selectList(Wrappers.emptyWrapper())
-                               .stream()
-                               .map(this::convert)
-                               .collect(Collectors.toList());
+        return tr290Aggregator().listAll();
     }
 
     @Override
     public TR290Stats getTR290Stats()
     {
-        TR290Stats stats = new TR290Stats();
-        List<TR290StatViewEntity> entities = tr290StatMapper.selectList(Wrappers.emptyWrapper());
-        for (TR290StatViewEntity entity : entities)
-        {
-            TR290Event event = new TR290Event();
-            event.setType(entity.getType());
-            event.setDescription(entity.getDescription());
-            event.setStream(entity.getPid());
-            event.setPosition(entity.getPosition());
-            event.setTimestamp(entity.getTimepoint()
-                                     .atZone(ZoneId.systemDefault())
-                                     .toOffsetDateTime());
-
-            stats.setStat(entity.getType(), entity.getCount(), event);
-        }
-        return stats;
+        return tr290Aggregator().getStats();
+    }
+
+    private TR290ErrorAggregator tr290Aggregator()
+    {
+        return getTR290ErrorAggregator(SourceScope.current());
+    }
+
+    TR290ErrorAggregator getTR290ErrorAggregator(int sourceRef)
+    {
+        return tr290Aggregators.computeIfAbsent(sourceRef, ref -> new TR290ErrorAggregator());
     }
 
     @Override
     public void addPCR(PCR pcr)
     {
-        PCREntity entity = new PCREntity();
-        entity.setPid(pcr.getPid());
-        entity.setPosition(pcr.getPosition());
-        entity.setValue(pcr.getValue());
-        pcrMapper.insert(entity);
+        pcrStatsEngine().addPCR(pcr.getPid());
+        markChanged(ChangeDomain.PCR);
     }
 
     @Override
     public void addPCRCheck(PCRCheck check)
     {
-        PCRCheckEntity entity = new PCRCheckEntity();
-        entity.setPid(check.getPid());
-        entity.setPreviousValue(check.getPrevValue());
-        entity.setPreviousPosition(check.getPrevPosition());
-        entity.setCurrentValue(check.getCurrValue());
-        entity.setCurrentPosition(check.getCurrPosition());
-        entity.setBitrate(check.getBitrate());
-        entity.setIntervalNanos(check.getIntervalNanos());
-        entity.setDiffNanos(check.getDiffNanos());
-        entity.setAccuracyNanos(check.getAccuracyNanos());
-        entity.setRepetitionCheckFailed(check.isRepetitionCheckFailed());
-        entity.setDiscontinuityCheckFailed(check.isDiscontinuityCheckFailed());
-        entity.setAccuracyCheckFailed(check.isAccuracyCheckFailed());
-        pcrCheckMapper.insert(entity);
+        pcrStatsEngine().addCheck(check);
+        markChanged(ChangeDomain.PCR);
     }
 
     @Override
     public List<PCRStats> listPCRStats()
     {
-        return pcrStatMapper.selectList(Wrappers.emptyWrapper())
-                            .stream()
-                            .map(this::convert)
-                            .collect(Collectors.toList());
+        return pcrStatsEngine().listStats();
     }
 
     @Override
     public List<PCRCheck> getRecentPCRChecks(int pid, int limit)
     {
-        return pcrCheckMapper.selectList(Wrappers.lambdaQuery(PCRCheckEntity.class)
-                                                 .eq(PCRCheckEntity::getPid, pid)
-                                                 .last("limit " + limit))
-                             .stream()
-                             .map(this::convert)
-                             .collect(Collectors.toList());
+        return pcrStatsEngine().getRecentChecks(pid, limit);
+    }
+
+    private PCRStatsEngine pcrStatsEngine()
+    {
+        return getPCRStatsEngine(SourceScope.current());
+    }
+
+    PCRStatsEngine getPCRStatsEngine(int sourceRef)
+    {
+        return pcrStatsEngines.computeIfAbsent(sourceRef, ref -> new PCRStatsEngine());
     }
 
     @Override
@@ -1022,12 +1077,14 @@ public class M2TKDatabaseService implements M2TKDatabase
         entity.setPosition(position);
         entity.setEncoding(encoding);
         sectionMapper.insert(entity);
+        markChanged(ChangeDomain.DATAGRAM);
     }
 
     @Override
     public void removePrivateSections(String tag, int pid, int count)
     {
         sectionMapper.deleteOldestN(tag, pid, count);
+        markChanged(ChangeDomain.DATAGRAM);
     }
 
     @Override
@@ -1037,11 +1094,13 @@ public class M2TKDatabaseService implements M2TKDatabase
                                                                  .eq(PrivateSectionEntity::getTag, tag)
                                                                  .eq(PrivateSectionEntity::getStream, pid);
         sectionMapper.delete(query);
+        markChanged(ChangeDomain.DATAGRAM);
     }
 
     @Override
     public List<PrivateSection> getPrivateSections(int pid, int count)
     {
+        loadDeferred();
         LambdaQueryWrapper<PrivateSectionEntity> query = Wrappers.lambdaQuery(PrivateSectionEntity.class)
                                                                  .eq(PrivateSectionEntity::getStream, pid)
                                                                  .orderByAsc(PrivateSectionEntity::getPosition)
@@ -1055,6 +1114,7 @@ public class M2TKDatabaseService implements M2TKDatabase
     @Override
     public List<PrivateSection> getPrivateSections(String tag, int pid, int count)
     {
+        loadDeferred();
         LambdaQueryWrapper<PrivateSectionEntity> query = Wrappers.lambdaQuery(PrivateSectionEntity.class)
                                                                  .eq(PrivateSectionEntity::getTag, tag)
                                                                  .eq(PrivateSectionEntity::getStream, pid)
@@ -1069,6 +1129,7 @@ public class M2TKDatabaseService implements M2TKDatabase
     @Override
     public Map<String, List<PrivateSection>> getPrivateSectionGroups()
     {
+        loadDeferred();
         LambdaQueryWrapper<PrivateSectionEntity> query = Wrappers.lambdaQuery(PrivateSectionEntity.class)
                                                                  .orderByAsc(PrivateSectionEntity::getPosition);
         return sectionMapper.selectList(query)
@@ -1080,6 +1141,7 @@ public class M2TKDatabaseService implements M2TKDatabase
     @Override
     public Map<String, List<PrivateSection>> getPrivateSectionGroups(String... tags)
     {
+        loadDeferred();
         LambdaQueryWrapper<PrivateSectionEntity> query = Wrappers.lambdaQuery(PrivateSectionEntity.class)
                                                                  .in(tags.length > 0, PrivateSectionEntity::getTag, Arrays.asList(tags))
                                                                  .orderByAsc(PrivateSectionEntity::getPosition);
@@ -1089,85 +1151,223 @@ public class M2TKDatabaseService implements M2TKDatabase
                             .collect(Collectors.groupingBy(PrivateSection::getTag));
     }
 
+    @Override
+    public Map<String, List<PrivateSection>> getPrivateSectionGroupsAfter(long id)
+    {
+        loadDeferred();
+        LambdaQueryWrapper<PrivateSectionEntity> query = Wrappers.lambdaQuery(PrivateSectionEntity.class)
+                                                                 .gt(PrivateSectionEntity::getId, id)
+                                                                 .orderByAsc(PrivateSectionEntity::getId);
+        return sectionMapper.selectList(query)
+                            .stream()
+                            .map(this::convert)
+                            .collect(Collectors.groupingBy(PrivateSection::getTag));
+    }
+
+    @Override
+    public Map<String, Integer> countPrivateSectionGroups()
+    {
+        loadDeferred();
+        Map<String, Integer> counts = new HashMap<>();
+        for (Map<String, Object> row : sectionMapper.countByTag())
+            counts.put((String) row.get("tag"), ((Number) row.get("count")).intValue());
+        return counts;
+    }
+
+    @Override
+    public void addFilteredSection(int pid, long position, byte[] encoding)
+    {
+        filteredSectionStore().add(pid, position, encoding);
+        markChanged(ChangeDomain.DATAGRAM);
+    }
+
+    @Override
+    public List<PrivateSection> getFilteredSectionsAfter(long id)
+    {
+        loadDeferred();
+        return filteredSectionStore().listAfter(id)
+                                     .stream()
+                                     .map(this::convertFilteredSection)
+                                     .collect(Collectors.toList());
+    }
+
+    @Override
+    public int countFilteredSections()
+    {
+        loadDeferred();
+        return filteredSectionStore().count();
+    }
+
+    private SectionRingStore filteredSectionStore()
+    {
+        return getFilteredSectionStore(SourceScope.current());
+    }
+
+    SectionRingStore getFilteredSectionStore(int sourceRef)
+    {
+        return filteredSectionStores.computeIfAbsent(sourceRef, ref -> createFilteredSectionStore());
+    }
+
+    /**
+     * 按首选项创建过滤私有段存储（每个PID的分段数上限：{@code filtering.section.limit-per-stream}，不超过1000）
+     */
+    private SectionRingStore createFilteredSectionStore()
+    {
+        int limit = 1000;
+        try
+        {
+            limit = Integer.parseInt(getPreference("filtering.section.limit-per-stream", "1000"));
+        } catch (NumberFormatException ex)
+        {
+            log.warn("私有段过滤参数无效，使用默认值：{}", ex.getMessage());
+        }
+        return new SectionRingStore(Math.max(Math.min(limit, 1000), 1));
+    }
+
     @Override
     public void addTransportPacket(int pid, long position, byte[] encoding)
     {
-        TransportPacketEntity entity = new TransportPacketEntity();
-        entity.setStream(pid);
-        entity.setPosition(position);
-        entity.setEncoding(encoding);
-        tsPacketMapper.insert(entity);
+        transportPacketStore().add(pid, position, encoding);
+        markChanged(ChangeDomain.DATAGRAM);
     }
 
     @Override
     public void removeTransportPackets(int pid, int count)
     {
-        tsPacketMapper.deleteOldestN(pid, count);
+        transportPacketStore().removeOldest(pid, count);
+        markChanged(ChangeDomain.DATAGRAM);
     }
 
     @Override
     public List<TransportPacket> getTransportPackets(int pid, int count)
     {
-        LambdaQueryWrapper<TransportPacketEntity> query = Wrappers.lambdaQuery(TransportPacketEntity.class)
-                                                                  .eq(TransportPacketEntity::getStream, pid)
-                                                                  .orderByDesc(TransportPacketEntity::getId)
-                                                                  .last("limit " + count);
-        return tsPacketMapper.selectList(query)
-                             .stream()
-                             .map(this::convert)
-                             .collect(Collectors.toList());
+        loadDeferred();
+        return transportPacketStore().listRecent(pid, count)
+                                     .stream()
+                                     .map(this::convertTransportPacket)
+                                     .collect(Collectors.toList());
     }
 
     @Override
     public Map<Integer, List<TransportPacket>> getTransportPacketGroups()
     {
-        return tsPacketMapper.selectList(Wrappers.lambdaQuery(TransportPacketEntity.class)
-                                                 .orderByDesc(TransportPacketEntity::getId)
-                                                 .last("limit 1000"))
-                             .stream()
-                             .map(this::convert)
-                             .collect(Collectors.groupingBy(TransportPacket::getPid));
+        loadDeferred();
+        return transportPacketStore().listRecentGroups(1000)
+                                     .values()
+                                     .stream()
+                                     .flatMap(List::stream)
+                                     .map(this::convertTransportPacket)
+                                     .collect(Collectors.groupingBy(TransportPacket::getPid));
     }
 
     @Override
     public void addPESPacket(int pid, long position, byte[] encoding)
     {
-        PESPacketEntity entity = new PESPacketEntity();
-        entity.setStream(pid);
-        entity.setPosition(position);
-        entity.setSize(encoding.length);
-        entity.setEncoding(encoding);
-        pesPacketMapper.insert(entity);
+        pesPacketStore().add(pid, position, encoding);
+        markChanged(ChangeDomain.DATAGRAM);
     }
 
     @Override
     public void removePESPackets(int pid, int count)
     {
-        pesPacketMapper.deleteOldestN(pid, count);
+        pesPacketStore().removeOldest(pid, count);
+        markChanged(ChangeDomain.DATAGRAM);
     }
 
     @Override
     public List<PESPacket> getPESPackets(int pid, int count)
     {
-        LambdaQueryWrapper<PESPacketEntity> query = Wrappers.lambdaQuery(PESPacketEntity.class)
-                                                            .eq(PESPacketEntity::getStream, pid)
-                                                            .orderByDesc(PESPacketEntity::getId)
-                                                            .last("limit " + count);
-        return pesPacketMapper.selectList(query)
-                              .stream()
-                              .map(this::convert)
-                              .collect(Collectors.toList());
+        loadDeferred();
+        return pesPacketStore().listRecent(pid, count)
+                               .stream()
+                               .map(this::convertPESPacket)
+                               .collect(Collectors.toList());
     }
 
     @Override
     public Map<Integer, List<PESPacket>> getPESPacketGroups()
     {
-        return pesPacketMapper.selectList(Wrappers.lambdaQuery(PESPacketEntity.class)
-                                                  .orderByDesc(PESPacketEntity::getId)
-                                                  .last("limit 100"))
-                              .stream()
-                              .map(this::convert)
-                              .collect(Collectors.groupingBy(PESPacket::getPid));
+        loadDeferred();
+        return pesPacketStore().listRecentGroups(100)
+                               .values()
+                               .stream()
+                               .flatMap(List::stream)
+                               .map(this::convertPESPacket)
+                               .collect(Collectors.groupingBy(PESPacket::getPid));
+    }
+
+    private PacketCaptureStore transportPacketStore()
+    {
+        return getTransportPacketStore(SourceScope.current());
+    }
+
+    private PacketCaptureStore pesPacketStore()
+    {
+        return getPESPacketStore(SourceScope.current());
+    }
+
+    PacketCaptureStore getTransportPacketStore(int sourceRef)
+    {
+        return transportPacketStores.computeIfAbsent(sourceRef,
+                                                     ref -> createPacketStore("capture.ts", 1000, 1000 * 204));
+    }
+
+    PacketCaptureStore getPESPacketStore(int sourceRef)
+    {
+        return pesPacketStores.computeIfAbsent(sourceRef,
+                                               ref -> createPacketStore("capture.pes", 100, 2 * 1024 * 1024));
+    }
+
+    /**
+     * 登记数据源的延迟载入任务，任务在首次查询私有段或捕获包时执行。
+     */
+    void deferLoading(int sourceRef, FutureTask<?> task)
+    {
+        deferredLoads.put(sourceRef, task);
+    }
+
+    private void loadDeferred()
+    {
+        int sourceRef = SourceScope.current();
+        FutureTask<?> task = deferredLoads.get(sourceRef);
+        if (task == null)
+            return;
+
+        // 并发的查询中只有一个会真正执行任务，其余的等待结果。
+        task.run();
+        try
+        {
+            task.get();
+        } catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            return;
+        } catch (Exception ex)
+        {
+            Throwable cause = (ex instanceof ExecutionException) ? ex.getCause() : ex;
+            log.error("无法载入存档数据：{}", cause.getMessage(), cause);
+        }
+
+        if (deferredLoads.remove(sourceRef, task))
+            changeCounters.markChanged(sourceRef, ChangeDomain.DATAGRAM);
+    }
+
+    /**
+     * 按首选项创建包捕获存储（每个PID的包数上限：{@code <prefix>.max-packets}，字节数上限：{@code <prefix>.max-bytes}）
+     */
+    private PacketCaptureStore createPacketStore(String prefix, int defaultPackets, int defaultBytes)
+    {
+        int maxPackets = defaultPackets;
+        int maxBytes = defaultBytes;
+        try
+        {
+            maxPackets = Integer.parseInt(getPreference(prefix + ".max-packets", String.valueOf(defaultPackets)));
+            maxBytes = Integer.parseInt(getPreference(prefix + ".max-bytes", String.valueOf(defaultBytes)));
+        } catch (NumberFormatException ex)
+        {
+            log.warn("包捕获参数无效，使用默认值：{}", ex.getMessage());
+        }
+        return new PacketCaptureStore(maxPackets, maxBytes);
     }
 
     @Override
@@ -1181,6 +1381,7 @@ public class M2TKDatabaseService implements M2TKDatabase
         entity.setPosition(version.getPosition());
         entity.setTag(version.getTag());
         tableVersionMapper.insert(entity);
+        markChanged(ChangeDomain.SI);
     }
 
     @Override
@@ -1200,6 +1401,9 @@ public class M2TKDatabaseService implements M2TKDatabase
         entity.setSubjectType(hook.getSubjectType());
         entity.setSubjectPid(hook.getSubjectPid());
         entity.setSubjectTableId(hook.getSubjectTableId());
+        entity.setFilterMatch(hook.getFilterMatch());
+        entity.setFilterMask(hook.getFilterMask());
+        entity.setFilterMode(hook.getFilterMode());
         hookMapper.insert(entity);
     }
 
@@ -1221,55 +1425,66 @@ public class M2TKDatabaseService implements M2TKDatabase
     }
 
     @Override
-    public int addStreamDensity(int pid, long position, int count, byte[] density)
+    public void addStreamDensities(int pid, long position, int[] intervals, int count)
     {
-        DensityBulkEntity entity = new DensityBulkEntity();
-        entity.setPid(pid);
-        entity.setStartPosition(position);
-        entity.setBulkSize(count);
-        entity.setBulkEncoding(density);
-        densityMapper.insert(entity);
-        return entity.getId();
+        densityStore().append(pid, position, intervals, count);
+        markChanged(ChangeDomain.DENSITY);
     }
 
     @Override
-    public void updateStreamDensity(int densityRef, int count, byte[] density, double avgDensity, long maxDensity, long minDensity)
+    public List<StreamDensityStats> listStreamDensityStats()
     {
-        DensityBulkEntity change = new DensityBulkEntity();
-        change.setId(densityRef);
-        change.setBulkSize(count);
-        change.setBulkEncoding(density);
-        change.setAvgDensity(avgDensity);
-        change.setMaxDensity(maxDensity);
-        change.setMinDensity(minDensity);
-        densityMapper.updateById(change);
+        return densityStore().listStats();
     }
 
     @Override
-    public List<StreamDensityStats> listStreamDensityStats()
+    public List<StreamDensityBulk> getRecentStreamDensityBulks(int pid, int limit)
     {
-        return densityStatMapper.selectList(Wrappers.emptyWrapper())
-                                .stream()
-                                .map(this::convert)
-                                .collect(Collectors.toList());
+        return densityStore().listRecentBulks(pid, limit);
     }
 
     @Override
-    public List<StreamDensityBulk> getRecentStreamDensityBulks(int pid, int limit)
+    public List<StreamDensityBucket> getStreamDensityOverview(int pid, long fromPosition, long toPosition, int maxPoints)
     {
-        return densityMapper.selectList(Wrappers.lambdaQuery(DensityBulkEntity.class)
-                                                .eq(DensityBulkEntity::getPid, pid)
-                                                .orderByDesc(DensityBulkEntity::getId)
-                                                .last("limit " + limit))
-                            .stream()
-                            .map(this::convert)
-                            .collect(Collectors.toList());
+        return densityStore().listBuckets(pid, fromPosition, toPosition, maxPoints);
+    }
+
+    private DensityStore densityStore()
+    {
+        return getDensityStore(SourceScope.current());
+    }
+
+    DensityStore getDensityStore(int sourceRef)
+    {
+        return densityStores.computeIfAbsent(sourceRef, ref -> new DensityStore());
+    }
+
+    @Override
+    public long getChangeCount(ChangeDomain domain)
+    {
+        return changeCounters.getChangeCount(SourceScope.current(), domain);
+    }
+
+    /**
+     * 变化计数表，供延迟写入的数据库在批量提交后标记变化。
+     */
+    public ChangeCounters getChangeCounters()
+    {
+        return changeCounters;
+    }
+
+    private void markChanged(ChangeDomain domain)
+    {
+        changeCounters.markChanged(SourceScope.current(), domain);
     }
 
     @Override
     public int update(String sql) throws SQLException
     {
-        return sqlUtils.sql(sql).update();
+        // 任意SQL可能修改任何数据域，全部标记为已变化。
+        int rows = sqlUtils.sql(sql).update();
+        changeCounters.markAllChanged(SourceScope.current());
+        return rows;
     }
 
     @Override
@@ -1447,85 +1662,10 @@ public class M2TKDatabaseService implements M2TKDatabase
         return service;
     }
 
-    private SIEvent convert(SIEventEntity entity)
-    {
-        SIEvent event = new SIEvent();
-        event.setId(entity.getId());
-        event.setTitle(StrUtil.nullToDefault(entity.getEventName(), "未定义事件"));
-        event.setDescription(StrUtil.nullToEmpty(entity.getEventDescription()));
-        event.setEventId(NumberUtil.nullToZero(entity.getEventId()));
-        event.setTransportStreamId(NumberUtil.nullToZero(entity.getTransportStreamId()));
-        event.setOriginalNetworkId(NumberUtil.nullToZero(entity.getOriginalNetworkId()));
-        event.setServiceId(NumberUtil.nullToZero(entity.getServiceId()));
-        event.setDuration(NumberUtil.nullToZero(entity.getDuration()));
-        event.setRunningStatus(NumberUtil.nullToZero(entity.getRunningStatus()));
-        event.setFreeAccess(entity.getFreeAccess() == Boolean.TRUE);
-        event.setPresentEvent(entity.getPresentEvent() == Boolean.TRUE);
-        event.setScheduleEvent(entity.getScheduleEvent() == Boolean.TRUE);
-
-        if (entity.getStartTime() != null)
-        {
-            event.setStartTime(entity.getStartTime().atOffset(ZoneOffset.UTC));
-        }
-
-        event.setNvodTimeShiftedEvent(entity.getNvodTimeShiftedEvent() == Boolean.TRUE);
-        event.setReferenceServiceId(NumberUtil.nullToZero(entity.getReferenceServiceId()));
-        event.setReferenceEventId(NumberUtil.nullToZero(entity.getReferenceEventId()));
-        return event;
-    }
-
-    private TR290Event convert(TR290EventEntity entity)
-    {
-        TR290Event event = new TR290Event();
-        event.setType(entity.getType());
-        event.setDescription(StrUtil.nullToEmpty(entity.getDescription()));
-        event.setStream(entity.getStream());
-        event.setPosition(entity.getPosition());
-        event.setTimestamp(entity.getTimestamp()
-                                 .atZone(ZoneId.systemDefault())
-                                 .toOffsetDateTime());
-        return event;
-    }
-
-    private PCRStats convert(PCRStatViewEntity entity)
-    {
-        PCRStats stats = new PCRStats();
-        stats.setPid(entity.getPid());
-        stats.setPcrCount(entity.getPcrCount());
-        stats.setAvgBitrate(entity.getAvgBitrate());
-        stats.setAvgInterval(entity.getAvgInterval());
-        stats.setMinInterval(entity.getMinInterval());
-        stats.setMaxInterval(entity.getMaxInterval());
-        stats.setAvgAccuracy(entity.getAvgAccuracy());
-        stats.setMinAccuracy(entity.getMinAccuracy());
-        stats.setMaxAccuracy(entity.getMaxAccuracy());
-        stats.setRepetitionErrors(entity.getRepetitionErrors());
-        stats.setDiscontinuityErrors(entity.getDiscontinuityErrors());
-        stats.setAccuracyErrors(entity.getAccuracyErrors());
-        return stats;
-    }
-
-    private PCRCheck convert(PCRCheckEntity entity)
-    {
-        PCRCheck check = new PCRCheck();
-        check.setPid(entity.getPid());
-        check.setPrevValue(entity.getPreviousValue());
-        check.setPrevPosition(entity.getPreviousPosition());
-        check.setCurrValue(entity.getCurrentValue());
-        check.setCurrPosition(entity.getCurrentPosition());
-        check.setBitrate(entity.getBitrate());
-        check.setIntervalNanos(entity.getIntervalNanos());
-        check.setDiffNanos(entity.getDiffNanos());
-        check.setAccuracyNanos(entity.getAccuracyNanos());
-        check.setRepetitionCheckFailed(entity.getRepetitionCheckFailed());
-        check.setDiscontinuityCheckFailed(entity.getDiscontinuityCheckFailed());
-        check.setAccuracyCheckFailed(entity.getAccuracyCheckFailed());
-        return check;
-    }
-
     private PrivateSection convert(PrivateSectionEntity entity)
     {
         PrivateSection section = new PrivateSection();
+        section.setId(entity.getId());
         section.setTag(entity.getTag());
         section.setPid(entity.getStream());
         section.setPosition(entity.getPosition());
@@ -1533,21 +1673,32 @@ public class M2TKDatabaseService implements M2TKDatabase
         return section;
     }
 
-    private TransportPacket convert(TransportPacketEntity entity)
+    private PrivateSection convertFilteredSection(SectionRingStore.Section filtered)
+    {
+        PrivateSection section = new PrivateSection();
+        section.setId(filtered.id());
+        section.setTag("UserPrivate");
+        section.setPid(filtered.pid());
+        section.setPosition(filtered.position());
+        section.setEncoding(filtered.encoding());
+        return section;
+    }
+
+    private TransportPacket convertTransportPacket(PacketCaptureStore.Packet captured)
     {
         TransportPacket packet = new TransportPacket();
-        packet.setPid(entity.getStream());
-        packet.setPosition(entity.getPosition());
-        packet.setEncoding(entity.getEncoding());
+        packet.setPid(captured.pid());
+        packet.setPosition(captured.position());
+        packet.setEncoding(captured.encoding());
         return packet;
     }
 
-    private PESPacket convert(PESPacketEntity entity)
+    private PESPacket convertPESPacket(PacketCaptureStore.Packet captured)
     {
         PESPacket packet = new PESPacket();
-        packet.setPid(entity.getStream());
-        packet.setPosition(entity.getPosition());
-        packet.setEncoding(entity.getEncoding());
+        packet.setPid(captured.pid());
+        packet.setPosition(captured.position());
+        packet.setEncoding(captured.encoding());
         return packet;
     }
 
@@ -1571,31 +1722,9 @@ public class M2TKDatabaseService implements M2TKDatabase
         hook.setSubjectType(entity.getSubjectType());
         hook.setSubjectPid(entity.getSubjectPid());
         hook.setSubjectTableId(entity.getSubjectTableId());
+        hook.setFilterMatch(entity.getFilterMatch());
+        hook.setFilterMask(entity.getFilterMask());
+        hook.setFilterMode(entity.getFilterMode());
         return hook;
     }
-
-    private StreamDensityStats convert(DensityStatViewEntity entity)
-    {
-        StreamDensityStats stats = new StreamDensityStats();
-        stats.setPid(entity.getPid());
-        stats.setCount(entity.getCount());
-        stats.setAvgDensity(entity.getAvgDensity());
-        stats.setMaxDensity(entity.getMaxDensity());
-        stats.setMinDensity(entity.getMinDensity());
-        return stats;
-    }
-
-    private StreamDensityBulk convert(DensityBulkEntity entity)
-    {
-        StreamDensityBulk bulk = new StreamDensityBulk();
-        bulk.setId(entity.getId());
-        bulk.setPid(entity.getPid());
-        bulk.setBulkSize(entity.getBulkSize());
-        bulk.setBulkEncoding(entity.getBulkEncoding());
-        bulk.setStartPosition(entity.getStartPosition());
-        bulk.setAvgDensity(entity.getAvgDensity());
-        bulk.setMaxDensity(entity.getMaxDensity());
-        bulk.setMinDensity(entity.getMinDensity());
-        return bulk;
-    }
 }
@@ -0,0 +1,386 @@
+/*
+ *  Copyright (c) M2TK Project. All rights reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package m2tk.assistant.app.kernel.service;
+
+import m2tk.assistant.api.domain.PCRCheck;
+import m2tk.assistant.api.domain.PCRStats;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * PCR统计引擎
+ * <p>
+ * 按PID在内存中累计PCR统计量（计数、间隔、精度、码率、错误数及精度/间隔分布直方图），
+ * 每个PCR的更新都是常数时间，并为每个PID保留最近 {@value #DEFAULT_RECENT_CAPACITY} 条检测记录供图表使用。
+ * 统计量以基本类型数组保存，存储量只与PCR流的数量有关，不随分析时长增长。
+ */
+public final class PCRStatsEngine
+{
+    public static final int DEFAULT_RECENT_CAPACITY = 1000;
+    public static final int HISTOGRAM_BUCKETS = 11;
+
+    // 分布区间上界（含），最后一个区间没有上界。与 PCRChartPanel 的坐标刻度一致。
+    private static final long[] ACCURACY_BOUNDS = {-800, -500, -300, -150, -50, 50, 150, 300, 500, 800};
+    private static final long[] INTERVAL_BOUNDS = {8_000_000, 16_000_000, 24_000_000, 32_000_000, 40_000_000,
+                                                   48_000_000, 56_000_000, 64_000_000, 72_000_000, 80_000_000};
+
+    // 每个PID的统计量在 long[] 中的位置
+    private static final int PCR_COUNT = 0;
+    private static final int CHECK_COUNT = 1;
+    private static final int BITRATE_SUM = 2;
+    private static final int INTERVAL_SUM = 3;
+    private static final int INTERVAL_MIN = 4;
+    private static final int INTERVAL_MAX = 5;
+    private static final int ACCURACY_SUM = 6;
+    private static final int ACCURACY_MIN = 7;
+    private static final int ACCURACY_MAX = 8;
+    private static final int REPETITION_ERRORS = 9;
+    private static final int DISCONTINUITY_ERRORS = 10;
+    private static final int ACCURACY_ERRORS = 11;
+    private static final int ACCURACY_HISTOGRAM = 12;
+    private static final int INTERVAL_HISTOGRAM = ACCURACY_HISTOGRAM + HISTOGRAM_BUCKETS;
+    private static final int STATS_SIZE = INTERVAL_HISTOGRAM + HISTOGRAM_BUCKETS;
+
+    // 最近检测记录在环形缓冲区中的布局
+    private static final int PREV_VALUE = 0;
+    private static final int PREV_POSITION = 1;
+    private static final int CURR_VALUE = 2;
+    private static final int CURR_POSITION = 3;
+    private static final int BITRATE = 4;
+    private static final int INTERVAL = 5;
+    private static final int DIFF = 6;
+    private static final int ACCURACY = 7;
+    private static final int FLAGS = 8;
+    private static final int RECORD_SIZE = 9;
+
+    private static final int FLAG_REPETITION = 1;
+    private static final int FLAG_DISCONTINUITY = 2;
+    private static final int FLAG_ACCURACY = 4;
+
+    private final int recentCapacity;
+    private final int[] slotOfPid;  // 0 表示未分配，否则为槽位号 + 1
+    private long[][] stats;
+    private long[][] recent;
+    private int[] recentHeads;
+    private int[] recentSizes;
+    private int slotCount;
+
+    public PCRStatsEngine()
+    {
+        this(DEFAULT_RECENT_CAPACITY);
+    }
+
+    public PCRStatsEngine(int recentCapacity)
+    {
+        this.recentCapacity = Math.max(1, recentCapacity);
+        this.slotOfPid = new int[8192];
+        this.stats = new long[4][];
+        this.recent = new long[4][];
+        this.recentHeads = new int[4];
+        this.recentSizes = new int[4];
+        this.slotCount = 0;
+    }
+
+    public synchronized void addPCR(int pid)
+    {
+        stats[slotOf(pid)][PCR_COUNT] += 1;
+    }
+
+    public synchronized void addCheck(PCRCheck check)
+    {
+        int slot = slotOf(check.getPid());
+        long[] s = stats[slot];
+
+        long interval = check.getIntervalNanos();
+        long accuracy = check.getAccuracyNanos();
+        if (s[CHECK_COUNT] == 0)
+        {
+            s[INTERVAL_MIN] = s[INTERVAL_MAX] = interval;
+            s[ACCURACY_MIN] = s[ACCURACY_MAX] = accuracy;
+        } else
+        {
+            s[INTERVAL_MIN] = Math.min(s[INTERVAL_MIN], interval);
+            s[INTERVAL_MAX] = Math.max(s[INTERVAL_MAX], interval);
+            s[ACCURACY_MIN] = Math.min(s[ACCURACY_MIN], accuracy);
+            s[ACCURACY_MAX] = Math.max(s[ACCURACY_MAX], accuracy);
+        }
+        s[CHECK_COUNT] += 1;
+        s[BITRATE_SUM] += check.getBitrate();
+        s[INTERVAL_SUM] += interval;
+        s[ACCURACY_SUM] += accuracy;
+        s[ACCURACY_HISTOGRAM + accuracyBucket(accuracy)] += 1;
+        s[INTERVAL_HISTOGRAM + intervalBucket(interval)] += 1;
+
+        int flags = 0;
+        if (check.isRepetitionCheckFailed())
+        {
+            s[REPETITION_ERRORS] += 1;
+            flags |= FLAG_REPETITION;
+        }
+        if (check.isDiscontinuityCheckFailed())
+        {
+            s[DISCONTINUITY_ERRORS] += 1;
+            flags |= FLAG_DISCONTINUITY;
+        }
+        if (check.isAccuracyCheckFailed())
+        {
+            s[ACCURACY_ERRORS] += 1;
+            flags |= FLAG_ACCURACY;
+        }
+
+        long[] ring = recent[slot];
+        int offset = recentHeads[slot] * RECORD_SIZE;
+        ring[offset + PREV_VALUE] = check.getPrevValue();
+        ring[offset + PREV_POSITION] = check.getPrevPosition();
+        ring[offset + CURR_VALUE] = check.getCurrValue();
+        ring[offset + CURR_POSITION] = check.getCurrPosition();
+        ring[offset + BITRATE] = check.getBitrate();
+        ring[offset + INTERVAL] = interval;
+        ring[offset + DIFF] = check.getDiffNanos();
+        ring[offset + ACCURACY] = accuracy;
+        ring[offset + FLAGS] = flags;
+        recentHeads[slot] = (recentHeads[slot] + 1) % recentCapacity;
+        recentSizes[slot] = Math.min(recentSizes[slot] + 1, recentCapacity);
+    }
+
+    /**
+     * @return 各PCR流的统计结果，按PID升序排列
+     */
+    public synchronized List<PCRStats> listStats()
+    {
+        List<PCRStats> result = new ArrayList<>(slotCount);
+        for (int pid = 0; pid < slotOfPid.length; pid++)
+        {
+            int slot = slotOfPid[pid] - 1;
+            if (slot < 0 || stats[slot][PCR_COUNT] == 0)
+                continue;
+
+            long[] s = stats[slot];
+            long checks = s[CHECK_COUNT];
+            PCRStats item = new PCRStats();
+            item.setPid(pid);
+            item.setPcrCount(s[PCR_COUNT]);
+            item.setAvgBitrate(checks == 0 ? 0 : s[BITRATE_SUM] / checks);
+            item.setAvgInterval(checks == 0 ? 0 : s[INTERVAL_SUM] / checks);
+            item.setMinInterval(s[INTERVAL_MIN]);
+            item.setMaxInterval(s[INTERVAL_MAX]);
+            item.setAvgAccuracy(checks == 0 ? 0 : s[ACCURACY_SUM] / checks);
+            item.setMinAccuracy(s[ACCURACY_MIN]);
+            item.setMaxAccuracy(s[ACCURACY_MAX]);
+            item.setRepetitionErrors(s[REPETITION_ERRORS]);
+            item.setDiscontinuityErrors(s[DISCONTINUITY_ERRORS]);
+            item.setAccuracyErrors(s[ACCURACY_ERRORS]);
+            item.setAccuracyHistogram(Arrays.copyOfRange(s, ACCURACY_HISTOGRAM, ACCURACY_HISTOGRAM + HISTOGRAM_BUCKETS));
+            item.setIntervalHistogram(Arrays.copyOfRange(s, INTERVAL_HISTOGRAM, INTERVAL_HISTOGRAM + HISTOGRAM_BUCKETS));
+            result.add(item);
+        }
+        return result;
+    }
+
+    /**
+     * @param pid PCR流
+     * @param limit 最多返回的记录数
+     * @return 最近的检测记录，按时间先后排列
+     */
+    public synchronized List<PCRCheck> getRecentChecks(int pid, int limit)
+    {
+        int slot = (pid < 0 || pid >= slotOfPid.length) ? -1 : slotOfPid[pid] - 1;
+        if (slot < 0 || limit <= 0)
+            return new ArrayList<>();
+
+        int count = Math.min(limit, recentSizes[slot]);
+        List<PCRCheck> checks = new ArrayList<>(count);
+        long[] ring = recent[slot];
+        int index = Math.floorMod(recentHeads[slot] - count, recentCapacity);
+        for (int i = 0; i < count; i++)
+        {
+            int offset = index * RECORD_SIZE;
+            long flags = ring[offset + FLAGS];
+            PCRCheck check = new PCRCheck();
+            check.setPid(pid);
+            check.setPrevValue(ring[offset + PREV_VALUE]);
+            check.setPrevPosition(ring[offset + PREV_POSITION]);
+            check.setCurrValue(ring[offset + CURR_VALUE]);
+            check.setCurrPosition(ring[offset + CURR_POSITION]);
+            check.setBitrate(ring[offset + BITRATE]);
+            check.setIntervalNanos(ring[offset + INTERVAL]);
+            check.setDiffNanos(ring[offset + DIFF]);
+            check.setAccuracyNanos(ring[offset + ACCURACY]);
+            check.setRepetitionCheckFailed((flags & FLAG_REPETITION) != 0);
+            check.setDiscontinuityCheckFailed((flags & FLAG_DISCONTINUITY) != 0);
+            check.setAccuracyCheckFailed((flags & FLAG_ACCURACY) != 0);
+            checks.add(check);
+            index = (index + 1) % recentCapacity;
+        }
+        return checks;
+    }
+
+    /**
+     * 并入另一个引擎的统计量和检测记录（分段并行分析），检测记录的包位置加上分段的起始位置。
+     * 另一个引擎的记录排在本引擎已有记录之后。
+     * @param other 分段的统计引擎
+     * @param positionOffset 分段起始位置（包计数）
+     */
+    public synchronized void mergeFrom(PCRStatsEngine other, long positionOffset)
+    {
+        synchronized (other)
+        {
+            for (int pid = 0; pid < other.slotOfPid.length; pid++)
+            {
+                int from = other.slotOfPid[pid] - 1;
+                if (from < 0)
+                    continue;
+
+                int slot = slotOf(pid);
+                long[] s = stats[slot];
+                long[] o = other.stats[from];
+                if (o[CHECK_COUNT] > 0)
+                {
+                    boolean empty = (s[CHECK_COUNT] == 0);
+                    s[INTERVAL_MIN] = empty ? o[INTERVAL_MIN] : Math.min(s[INTERVAL_MIN], o[INTERVAL_MIN]);
+                    s[INTERVAL_MAX] = empty ? o[INTERVAL_MAX] : Math.max(s[INTERVAL_MAX], o[INTERVAL_MAX]);
+                    s[ACCURACY_MIN] = empty ? o[ACCURACY_MIN] : Math.min(s[ACCURACY_MIN], o[ACCURACY_MIN]);
+                    s[ACCURACY_MAX] = empty ? o[ACCURACY_MAX] : Math.max(s[ACCURACY_MAX], o[ACCURACY_MAX]);
+                }
+                for (int j : new int[]{PCR_COUNT, CHECK_COUNT, BITRATE_SUM, INTERVAL_SUM, ACCURACY_SUM,
+                                       REPETITION_ERRORS, DISCONTINUITY_ERRORS, ACCURACY_ERRORS})
+                    s[j] += o[j];
+                for (int j = 0; j < HISTOGRAM_BUCKETS * 2; j++)
+                    s[ACCURACY_HISTOGRAM + j] += o[ACCURACY_HISTOGRAM + j];
+
+                long[] ring = recent[slot];
+                int size = other.recentSizes[from];
+                int oldest = Math.floorMod(other.recentHeads[from] - size, other.recentCapacity);
+                for (int i = 0; i < size; i++)
+                {
+                    int src = ((oldest + i) % other.recentCapacity) * RECORD_SIZE;
+                    int dst = recentHeads[slot] * RECORD_SIZE;
+                    System.arraycopy(other.recent[from], src, ring, dst, RECORD_SIZE);
+                    ring[dst + PREV_POSITION] += positionOffset;
+                    ring[dst + CURR_POSITION] += positionOffset;
+                    recentHeads[slot] = (recentHeads[slot] + 1) % recentCapacity;
+                    recentSizes[slot] = Math.min(recentSizes[slot] + 1, recentCapacity);
+                }
+            }
+        }
+    }
+
+    /**
+     * 写出全部统计量和最近的检测记录（会话存档）
+     */
+    public synchronized void writeTo(DataOutput out) throws IOException
+    {
+        out.writeInt(STATS_SIZE);
+        out.writeInt(RECORD_SIZE);
+        out.writeInt(slotCount);
+        for (int pid = 0; pid < slotOfPid.length; pid++)
+        {
+            int slot = slotOfPid[pid] - 1;
+            if (slot < 0)
+                continue;
+
+            out.writeShort(pid);
+            for (long value : stats[slot])
+                SessionArchive.writeVarLong(out, value);
+
+            int size = recentSizes[slot];
+            int oldest = (recentHeads[slot] - size + recentCapacity) % recentCapacity;
+            out.writeInt(size);
+            for (int i = 0; i < size; i++)
+            {
+                int offset = ((oldest + i) % recentCapacity) * RECORD_SIZE;
+                for (int j = 0; j < RECORD_SIZE; j++)
+                    SessionArchive.writeVarLong(out, recent[slot][offset + j]);
+            }
+        }
+    }
+
+    /**
+     * 读入 {@link #writeTo(DataOutput)} 写出的统计状态，检测记录超出容量时只保留最近的部分。
+     */
+    public synchronized void readFrom(DataInput in) throws IOException
+    {
+        if (in.readInt() != STATS_SIZE || in.readInt() != RECORD_SIZE)
+            throw new IOException("PCR统计格式不兼容");
+
+        int count = in.readInt();
+        for (int n = 0; n < count; n++)
+        {
+            int slot = slotOf(in.readUnsignedShort() & 0x1FFF);
+            long[] s = stats[slot];
+            for (int j = 0; j < STATS_SIZE; j++)
+                s[j] = SessionArchive.readVarLong(in);
+
+            long[] ring = recent[slot];
+            int size = in.readInt();
+            for (int i = 0; i < size; i++)
+            {
+                int offset = recentHeads[slot] * RECORD_SIZE;
+                for (int j = 0; j < RECORD_SIZE; j++)
+                    ring[offset + j] = SessionArchive.readVarLong(in);
+                recentHeads[slot] = (recentHeads[slot] + 1) % recentCapacity;
+                recentSizes[slot] = Math.min(recentSizes[slot] + 1, recentCapacity);
+            }
+        }
+    }
+
+    public static int accuracyBucket(long accuracyNanos)
+    {
+        return bucketOf(ACCURACY_BOUNDS, accuracyNanos);
+    }
+
+    public static int intervalBucket(long intervalNanos)
+    {
+        return bucketOf(INTERVAL_BOUNDS, intervalNanos);
+    }
+
+    private static int bucketOf(long[] bounds, long value)
+    {
+        for (int i = 0; i < bounds.length; i++)
+        {
+            if (value <= bounds[i])
+                return i;
+        }
+        return bounds.length;
+    }
+
+    private int slotOf(int pid)
+    {
+        int slot = slotOfPid[pid] - 1;
+        if (slot >= 0)
+            return slot;
+
+        if (slotCount == stats.length)
+        {
+            int capacity = slotCount * 2;
+            stats = Arrays.copyOf(stats, capacity);
+            recent = Arrays.copyOf(recent, capacity);
+            recentHeads = Arrays.copyOf(recentHeads, capacity);
+            recentSizes = Arrays.copyOf(recentSizes, capacity);
+        }
+
+        slot = slotCount++;
+        stats[slot] = new long[STATS_SIZE];
+        recent[slot] = new long[recentCapacity * RECORD_SIZE];
+        slotOfPid[pid] = slot + 1;
+        return slot;
+    }
+}
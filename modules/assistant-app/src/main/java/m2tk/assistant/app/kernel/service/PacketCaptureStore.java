@@ -0,0 +1,303 @@
+/*
+ *  Copyright (c) M2TK Project. All rights reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package m2tk.assistant.app.kernel.service;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * 定长包捕获存储
+ * <p>
+ * 按PID保存最近的若干个包（传输包或PES包），每个PID最多保存 {@code maxPackets} 个包、占用 {@code maxBytes} 字节，
+ * 超出时覆盖最早的包。包数据保存在环形缓冲区中，追加和淘汰都是常数时间，内存占用不随分析时长增长。
+ * 缓冲区按实际占用逐步扩大到 {@code maxBytes}，包量很小的PID不会预先占满上限。
+ * 单个包超过 {@code maxBytes} 时只保存前 {@code maxBytes} 字节。
+ */
+public final class PacketCaptureStore
+{
+    /**
+     * 捕获的包
+     * @param pid 所属PID
+     * @param position 包位置（包计数）
+     * @param encoding 包数据
+     */
+    public record Packet(int pid, long position, byte[] encoding)
+    {
+    }
+
+    private final int maxPackets;
+    private final int maxBytes;
+    private final Ring[] rings;
+
+    public PacketCaptureStore(int maxPackets, int maxBytes)
+    {
+        this.maxPackets = Math.max(1, maxPackets);
+        this.maxBytes = Math.max(1, maxBytes);
+        this.rings = new Ring[8192];
+    }
+
+    public void add(int pid, long position, byte[] encoding)
+    {
+        ring(pid & 0x1FFF).append(position, encoding);
+    }
+
+    /**
+     * 删除最早的若干个包
+     */
+    public void removeOldest(int pid, int count)
+    {
+        Ring ring = rings[pid & 0x1FFF];
+        if (ring != null)
+            ring.removeOldest(count);
+    }
+
+    /**
+     * @return 指定PID最近的若干个包，新包在前
+     */
+    public List<Packet> listRecent(int pid, int limit)
+    {
+        Ring ring = rings[pid & 0x1FFF];
+        return (ring == null) ? new ArrayList<>() : ring.listRecent(pid & 0x1FFF, limit);
+    }
+
+    /**
+     * @return 所有PID中最近的若干个包，按PID分组，组内新包在前
+     */
+    public Map<Integer, List<Packet>> listRecentGroups(int limit)
+    {
+        List<Packet> packets = new ArrayList<>();
+        for (int pid = 0; pid < rings.length; pid++)
+        {
+            Ring ring = rings[pid];
+            if (ring != null)
+                packets.addAll(ring.listRecent(pid, limit));
+        }
+
+        packets.sort(Comparator.comparingLong(Packet::position).reversed());
+        Map<Integer, List<Packet>> groups = new HashMap<>();
+        for (Packet packet : packets.subList(0, Math.min(limit, packets.size())))
+            groups.computeIfAbsent(packet.pid(), pid -> new ArrayList<>()).add(packet);
+        return groups;
+    }
+
+    /**
+     * 追加另一个存储中的包（分段并行分析），包位置加上分段的起始位置，超出容量的部分按先后顺序淘汰。
+     * @param other 分段的包捕获存储
+     * @param positionOffset 分段起始位置（包计数）
+     */
+    public void appendFrom(PacketCaptureStore other, long positionOffset)
+    {
+        for (int pid = 0; pid < other.rings.length; pid++)
+        {
+            Ring ring = other.rings[pid];
+            if (ring == null)
+                continue;
+
+            List<Packet> packets = ring.listRecent(pid, other.maxPackets);
+            for (int i = packets.size() - 1; i >= 0; i--)
+            {
+                Packet packet = packets.get(i);
+                add(pid, packet.position() + positionOffset, packet.encoding());
+            }
+        }
+    }
+
+    /**
+     * 写出全部捕获的包（会话存档），各PID的包按时间先后排列。
+     */
+    public void writeTo(DataOutput out) throws IOException
+    {
+        for (int pid = 0; pid < rings.length; pid++)
+        {
+            Ring ring = rings[pid];
+            if (ring == null)
+                continue;
+
+            List<Packet> packets = ring.listRecent(pid, maxPackets);
+            if (packets.isEmpty())
+                continue;
+
+            out.writeShort(pid);
+            out.writeInt(packets.size());
+            long previous = 0;
+            for (int i = packets.size() - 1; i >= 0; i--)
+            {
+                Packet packet = packets.get(i);
+                SessionArchive.writeVarLong(out, packet.position() - previous);
+                SessionArchive.writeVarLong(out, packet.encoding().length);
+                out.write(packet.encoding());
+                previous = packet.position();
+            }
+        }
+        out.writeShort(-1);
+    }
+
+    /**
+     * 读入 {@link #writeTo(DataOutput)} 写出的包，超出容量的部分按先后顺序淘汰。
+     */
+    public void readFrom(DataInput in) throws IOException
+    {
+        int pid;
+        while ((pid = in.readShort()) >= 0)
+        {
+            int count = in.readInt();
+            long position = 0;
+            for (int i = 0; i < count; i++)
+            {
+                position += SessionArchive.readVarLong(in);
+                byte[] encoding = new byte[(int) SessionArchive.readVarLong(in)];
+                in.readFully(encoding);
+                add(pid, position, encoding);
+            }
+        }
+    }
+
+    private synchronized Ring ring(int pid)
+    {
+        Ring ring = rings[pid];
+        if (ring == null)
+        {
+            ring = new Ring(maxPackets, maxBytes);
+            rings[pid] = ring;
+        }
+        return ring;
+    }
+
+    /**
+     * 单个PID的环形缓冲区：包数据连续存放在缓冲区中，放不下时先把缓冲区加倍（不超过字节数上限），
+     * 达到上限后回绕到缓冲区开头，并淘汰最早的包直到腾出足够的空间。
+     */
+    private static final class Ring
+    {
+        private static final int INITIAL_BYTES = 16 * 1024;
+
+        private final int maxBytes;
+        private byte[] data;
+        private final long[] positions;
+        private final int[] offsets;
+        private final int[] lengths;
+        private int first;  // 最早的包在索引中的位置
+        private int count;
+        private int tail;   // 下一个包的写入位置
+
+        Ring(int maxPackets, int maxBytes)
+        {
+            this.maxBytes = maxBytes;
+            data = new byte[Math.min(maxBytes, INITIAL_BYTES)];
+            positions = new long[maxPackets];
+            offsets = new int[maxPackets];
+            lengths = new int[maxPackets];
+        }
+
+        synchronized void append(long position, byte[] encoding)
+        {
+            int length = Math.min(encoding.length, maxBytes);
+            if (count == positions.length)
+                evict();
+            int offset = allocate(length);
+
+            System.arraycopy(encoding, 0, data, offset, length);
+            int index = (first + count) % positions.length;
+            positions[index] = position;
+            offsets[index] = offset;
+            lengths[index] = length;
+            count++;
+            tail = offset + length;
+        }
+
+        synchronized void removeOldest(int n)
+        {
+            for (int i = 0; i < n && count > 0; i++)
+                evict();
+        }
+
+        synchronized List<Packet> listRecent(int pid, int limit)
+        {
+            int n = Math.min(Math.max(0, limit), count);
+            List<Packet> packets = new ArrayList<>(n);
+            for (int i = 0; i < n; i++)
+            {
+                int index = (first + count - 1 - i) % positions.length;
+                byte[] encoding = Arrays.copyOfRange(data, offsets[index], offsets[index] + lengths[index]);
+                packets.add(new Packet(pid, positions[index], encoding));
+            }
+            return packets;
+        }
+
+        private int allocate(int length)
+        {
+            while (true)
+            {
+                if (count == 0)
+                {
+                    if (data.length < length)
+                        data = new byte[Math.min(maxBytes, Math.max(data.length * 2, length))];
+                    tail = 0;
+                    return 0;
+                }
+
+                int head = offsets[first];
+                if (tail > head)
+                {
+                    // 空闲区为 [tail, capacity) 和 [0, head)
+                    if (data.length - tail >= length)
+                        return tail;
+                    if (head >= length)
+                        return 0;
+                } else if (head - tail >= length)
+                {
+                    // 空闲区为 [tail, head)
+                    return tail;
+                }
+
+                if (data.length < maxBytes)
+                    grow(length);
+                else
+                    evict();
+            }
+        }
+
+        /**
+         * 扩大缓冲区，并把现有的包按先后顺序紧凑地复制到新缓冲区的开头。
+         */
+        private void grow(int length)
+        {
+            int used = 0;
+            for (int i = 0; i < count; i++)
+                used += lengths[(first + i) % positions.length];
+
+            byte[] expanded = new byte[(int) Math.min(maxBytes, Math.max(data.length * 2L, (long) used + length))];
+            int offset = 0;
+            for (int i = 0; i < count; i++)
+            {
+                int index = (first + i) % positions.length;
+                System.arraycopy(data, offsets[index], expanded, offset, lengths[index]);
+                offsets[index] = offset;
+                offset += lengths[index];
+            }
+            data = expanded;
+            tail = offset;
+        }
+
+        private void evict()
+        {
+            first = (first + 1) % positions.length;
+            count--;
+        }
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ *  Copyright (c) M2TK Project. All rights reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package m2tk.assistant.app.kernel.service;
+
+import lombok.extern.slf4j.Slf4j;
+import m2tk.encoding.Encoding;
+import m2tk.multiplex.TSDemux;
+import m2tk.multiplex.TSDemuxPayload;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+
+/**
+ * 解复用载荷复制
+ * <p>
+ * 解复用器不保证回调的载荷（尤其是原始包）不引用内部复用的缓冲区，流水线把载荷投递到工作线程之前要先复制一份，
+ * 否则工作线程处理时，解复用线程可能已经用后续的包覆盖了其中的数据。
+ * <p>
+ * 分析器的通道回调和分段消息都以 {@link TSDemuxPayload} 为参数，副本也只能是 {@link TSDemuxPayload}。
+ * m2tk 没有公开复制载荷的方法，这里按参数类型匹配载荷的构造方法（解复用器、载荷类型、PID、起止包计数、编码），
+ * 并在类加载时用探测值构造一次，确认各参数与读取方法一一对应（包括两个包计数的顺序）。
+ * 探测失败时流水线不可用，分析器使用单线程模式；探测通过后复制时不再做任何推断。
+ * 复制在解复用线程上执行，不是线程安全的。
+ */
+@Slf4j
+final class PayloadCopier
+{
+    private static final Constructor<?> CONSTRUCTOR;
+    private static final boolean COUNTERS_SWAPPED;
+
+    static
+    {
+        Constructor<?> constructor = findConstructor();
+        Boolean swapped = (constructor == null) ? null : probe(constructor);
+        CONSTRUCTOR = (swapped == null) ? null : constructor;
+        COUNTERS_SWAPPED = Boolean.TRUE.equals(swapped);
+    }
+
+    private final TSDemux demux;
+    // 同一个分段在一次回调内会投递给多个订阅者，共享同一个副本；回调结束时清除（见 release）。
+    private TSDemuxPayload sharedSource;
+    private TSDemuxPayload sharedCopy;
+
+    PayloadCopier(TSDemux demux)
+    {
+        this.demux = demux;
+    }
+
+    static boolean isAvailable()
+    {
+        return CONSTRUCTOR != null;
+    }
+
+    /**
+     * @return 数据独立的载荷副本
+     */
+    TSDemuxPayload copy(TSDemuxPayload payload)
+    {
+        Encoding encoding = payload.getEncoding();
+        byte[] bytes = new byte[encoding.size()];
+        encoding.copyRange(0, bytes.length, bytes);
+        return create(CONSTRUCTOR, demux, COUNTERS_SWAPPED,
+                      payload.getType(), payload.getStreamPID(),
+                      payload.getStartPacketCounter(), payload.getFinishPacketCounter(),
+                      Encoding.wrap(bytes));
+    }
+
+    /**
+     * 复制载荷，在同一次解复用回调内重复复制同一个载荷时返回同一个副本。
+     * 调用方必须在回调结束时调用 {@link #release()}，解复用器可能在之后的回调中复用载荷对象。
+     */
+    TSDemuxPayload copyShared(TSDemuxPayload payload)
+    {
+        if (payload != sharedSource)
+        {
+            sharedCopy = copy(payload);
+            sharedSource = payload;
+        }
+        return sharedCopy;
+    }
+
+    /**
+     * 清除当前回调内共享的副本
+     */
+    void release()
+    {
+        sharedSource = null;
+        sharedCopy = null;
+    }
+
+    private static TSDemuxPayload create(Constructor<?> constructor, TSDemux demux, boolean countersSwapped,
+                                         TSDemuxPayload.Type type, int pid, long start, long finish,
+                                         Encoding encoding)
+    {
+        Class<?>[] types = constructor.getParameterTypes();
+        Object[] args = new Object[types.length];
+        boolean firstCounter = true;
+        for (int i = 0; i < types.length; i++)
+        {
+            if (types[i] == long.class)
+            {
+                args[i] = (firstCounter != countersSwapped) ? start : finish;
+                firstCounter = false;
+            } else if (types[i] == int.class)
+            {
+                args[i] = pid;
+            } else if (types[i] == TSDemuxPayload.Type.class)
+            {
+                args[i] = type;
+            } else if (types[i] == Encoding.class)
+            {
+                args[i] = encoding;
+            } else
+            {
+                args[i] = demux;
+            }
+        }
+
+        try
+        {
+            return (TSDemuxPayload) constructor.newInstance(args);
+        } catch (InvocationTargetException ex)
+        {
+            throw new IllegalStateException("无法复制解复用载荷：" + ex.getCause().getMessage(), ex.getCause());
+        } catch (ReflectiveOperationException ex)
+        {
+            throw new IllegalStateException("无法复制解复用载荷：" + ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * 用互不相同的探测值构造载荷，检查读取方法是否返回对应的值。
+     * @return 两个包计数参数是否与（起始，结束）顺序相反；构造方法不可用时返回 null
+     */
+    private static Boolean probe(Constructor<?> constructor)
+    {
+        TSDemux demux = (TSDemux) Proxy.newProxyInstance(TSDemux.class.getClassLoader(),
+                                                         new Class<?>[]{TSDemux.class},
+                                                         (proxy, method, args) -> null);
+        byte[] bytes = {0x47, 0x1F, (byte) 0xFF, 0x10};
+        for (boolean swapped : new boolean[]{false, true})
+        {
+            try
+            {
+                TSDemuxPayload payload = create(constructor, demux, swapped,
+                                                TSDemuxPayload.Type.PES, 0x1FFE, 11, 23, Encoding.wrap(bytes));
+                if (payload.getType() == TSDemuxPayload.Type.PES &&
+                    payload.getStreamPID() == 0x1FFE &&
+                    payload.getStartPacketCounter() == 11 &&
+                    payload.getFinishPacketCounter() == 23 &&
+                    payload.getEncoding().identicalTo(bytes))
+                    return swapped;
+            } catch (RuntimeException ex)
+            {
+                log.debug("解复用载荷的构造方法探测失败：{}", ex.getMessage());
+                return null;
+            }
+        }
+        log.debug("解复用载荷的构造方法参数与读取方法不对应");
+        return null;
+    }
+
+    private static Constructor<?> findConstructor()
+    {
+        for (Constructor<?> constructor : TSDemuxPayload.class.getDeclaredConstructors())
+        {
+            int demuxes = 0, types = 0, pids = 0, counters = 0, encodings = 0;
+            boolean others = false;
+            for (Class<?> type : constructor.getParameterTypes())
+            {
+                if (type == TSDemux.class)
+                    demuxes++;
+                else if (type == TSDemuxPayload.Type.class)
+                    types++;
+                else if (type == int.class)
+                    pids++;
+                else if (type == long.class)
+                    counters++;
+                else if (type == Encoding.class)
+                    encodings++;
+                else
+                    others = true;
+            }
+            if (others || demuxes > 1 || types != 1 || pids != 1 || counters != 2 || encodings != 1)
+                continue;
+
+            try
+            {
+                constructor.setAccessible(true);
+                return constructor;
+            } catch (RuntimeException ex)
+            {
+                log.debug("解复用载荷的构造方法不可访问：{}", ex.getMessage());
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ *  Copyright (c) M2TK Project. All rights reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package m2tk.assistant.app.kernel.service;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 定长私有段存储
+ * <p>
+ * 按PID保存过滤得到的最近若干个私有段，每个PID最多保存 {@code capacity} 个分段，超出时覆盖最早的分段。
+ * 追加和淘汰都是常数时间，不需要像数据库表那样先插入再成批删除。
+ * 每个分段有一个单调递增的编号，界面按编号增量获取新分段。
+ */
+public final class SectionRingStore
+{
+    /**
+     * 保存的私有段
+     * @param id 分段编号（单调递增）
+     * @param pid 所属PID
+     * @param position 分段位置（结束包的包计数）
+     * @param encoding 分段数据
+     */
+    public record Section(long id, int pid, long position, byte[] encoding)
+    {
+    }
+
+    private final int capacity;
+    private final Ring[] rings;
+    private long lastId;
+    private int count;
+
+    public SectionRingStore(int capacity)
+    {
+        this.capacity = Math.max(1, capacity);
+        this.rings = new Ring[8192];
+    }
+
+    public synchronized void add(int pid, long position, byte[] encoding)
+    {
+        Ring ring = rings[pid & 0x1FFF];
+        if (ring == null)
+        {
+            ring = new Ring(capacity);
+            rings[pid & 0x1FFF] = ring;
+        }
+        if (!ring.append(++lastId, position, encoding))
+            count++;
+    }
+
+    /**
+     * @return 编号大于 {@code id} 的全部分段，按编号排列
+     */
+    public synchronized List<Section> listAfter(long id)
+    {
+        List<Section> sections = new ArrayList<>();
+        if (id >= lastId)
+            return sections;
+
+        for (int pid = 0; pid < rings.length; pid++)
+        {
+            Ring ring = rings[pid];
+            if (ring != null)
+                ring.collectAfter(pid, id, sections);
+        }
+        sections.sort(Comparator.comparingLong(Section::id));
+        return sections;
+    }
+
+    /**
+     * @return 当前保存的分段数
+     */
+    public synchronized int count()
+    {
+        return count;
+    }
+
+    /**
+     * 追加另一个存储中的分段（分段并行分析），分段位置加上分段的起始位置，超出容量的部分按先后顺序淘汰。
+     * @param other 分段的私有段存储
+     * @param positionOffset 分段起始位置（包计数）
+     */
+    public void appendFrom(SectionRingStore other, long positionOffset)
+    {
+        for (Section section : other.listAfter(0))
+            add(section.pid(), section.position() + positionOffset, section.encoding());
+    }
+
+    /**
+     * 写出全部分段（会话存档），按编号先后排列。
+     */
+    public void writeTo(DataOutput out) throws IOException
+    {
+        List<Section> sections = listAfter(0);
+        out.writeInt(sections.size());
+        long previous = 0;
+        for (Section section : sections)
+        {
+            out.writeShort(section.pid());
+            SessionArchive.writeVarLong(out, section.position() - previous);
+            SessionArchive.writeVarLong(out, section.encoding().length);
+            out.write(section.encoding());
+            previous = section.position();
+        }
+    }
+
+    /**
+     * 读入 {@link #writeTo(DataOutput)} 写出的分段，重新编号，超出容量的部分按先后顺序淘汰。
+     */
+    public void readFrom(DataInput in) throws IOException
+    {
+        int n = in.readInt();
+        long position = 0;
+        for (int i = 0; i < n; i++)
+        {
+            int pid = in.readShort();
+            position += SessionArchive.readVarLong(in);
+            byte[] encoding = new byte[(int) SessionArchive.readVarLong(in)];
+            in.readFully(encoding);
+            add(pid, position, encoding);
+        }
+    }
+
+    /**
+     * 单个PID的环形缓冲区，由外层存储加锁。
+     */
+    private static final class Ring
+    {
+        private final long[] ids;
+        private final long[] positions;
+        private final byte[][] encodings;
+        private int first;  // 最早的分段在缓冲区中的位置
+        private int size;
+
+        Ring(int capacity)
+        {
+            ids = new long[capacity];
+            positions = new long[capacity];
+            encodings = new byte[capacity][];
+        }
+
+        /**
+         * @return 是否淘汰了最早的分段
+         */
+        boolean append(long id, long position, byte[] encoding)
+        {
+            boolean full = (size == ids.length);
+            int index = (first + size) % ids.length;
+            if (full)
+                first = (first + 1) % ids.length;
+            else
+                size++;
+
+            ids[index] = id;
+            positions[index] = position;
+            encodings[index] = encoding;
+            return full;
+        }
+
+        void collectAfter(int pid, long id, List<Section> sections)
+        {
+            // 缓冲区内的编号递增，从最新的分段向前找到第一个不大于 id 的分段为止。
+            int n = 0;
+            while (n < size && ids[(first + size - 1 - n) % ids.length] > id)
+                n++;
+            for (int i = size - n; i < size; i++)
+            {
+                int index = (first + i) % ids.length;
+                sections.add(new Section(ids[index], pid, positions[index], encodings[index]));
+            }
+        }
+    }
+}
@@ -0,0 +1,367 @@
+/*
+ *  Copyright (c) M2TK Project. All rights reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package m2tk.assistant.app.kernel.service;
+
+import m2tk.assistant.api.M2TKDatabase;
+import m2tk.assistant.api.domain.PCRCheck;
+import m2tk.assistant.api.domain.TR290Event;
+import m2tk.assistant.api.presets.TR290ErrorTypes;
+import m2tk.mpeg2.ProgramClockReference;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 分段交界处的补充检查
+ * <p>
+ * 各分段的分析器从分段起点重新开始，每个PID的第一个包只作为基准，所以交界两侧的连续计数、PCR间隔和包间隔都没有检查。
+ * 合并时直接从文件读取交界前后各一段包，按 {@code TR290Tracer1} 的规则补做连续计数和PCR检查，并补上交界处的流密度间隔。
+ * <p>
+ * 交界前只记录每个PID最后的状态（读取范围之外的PID不做检查），交界后每个PID只检查到第一个有负载的包和第一个PCR为止，
+ * 此后的包已由分段的分析器检查过。
+ */
+final class SegmentBorder
+{
+    static final int DEFAULT_SCAN_PACKETS = 65536;
+
+    private final long borderPacket;
+    private final int[] lastCcs;
+    private final long[] lastPcrs;
+    private final long[] lastPcrPositions;
+    private final long[] lastPositions;
+
+    private final List<TR290Event> events;
+    private final List<PCRCheck> checks;
+    private final List<Integer> continuityErrorPids;
+    private final List<long[]> densityIntervals; // {pid, position, interval}
+
+    private SegmentBorder(long borderPacket)
+    {
+        this.borderPacket = borderPacket;
+        lastCcs = new int[8192];
+        lastPcrs = new long[8192];
+        lastPcrPositions = new long[8192];
+        lastPositions = new long[8192];
+        Arrays.fill(lastCcs, -1);
+        Arrays.fill(lastPcrs, -1);
+        Arrays.fill(lastPcrPositions, -1);
+        Arrays.fill(lastPositions, -1);
+
+        events = new ArrayList<>();
+        checks = new ArrayList<>();
+        continuityErrorPids = new ArrayList<>();
+        densityIntervals = new ArrayList<>();
+    }
+
+    /**
+     * 读取并检查交界前后的包
+     * @param channel 文件通道
+     * @param frameSize 包长
+     * @param borderOffset 交界位置（字节偏移，即后一分段的起点）
+     * @param lowerOffset 前一分段的起点，交界前最多读到这里
+     * @param upperOffset 后一分段的终点，交界后最多读到这里
+     * @param scanPackets 交界两侧各读取的包数
+     * @param bitrate 前一分段的平均码率（bps），用于计算PCR间隔；无效时按交界两侧的PCR估算
+     */
+    static SegmentBorder scan(FileChannel channel, int frameSize,
+                              long borderOffset, long lowerOffset, long upperOffset,
+                              int scanPackets, long bitrate) throws IOException
+    {
+        SegmentBorder border = new SegmentBorder(borderOffset / frameSize);
+
+        long before = Math.min((long) scanPackets, (borderOffset - lowerOffset) / frameSize);
+        if (before > 0)
+        {
+            long start = borderOffset - before * frameSize;
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, before * frameSize);
+            border.scanBefore(buffer, frameSize, start / frameSize);
+        }
+
+        long after = Math.min((long) scanPackets, (upperOffset - borderOffset) / frameSize);
+        if (after > 0)
+        {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, borderOffset, after * frameSize);
+            border.scanAfter(buffer, frameSize, bitrate);
+        }
+        return border;
+    }
+
+    long getBorderPacket()
+    {
+        return borderPacket;
+    }
+
+    int getErrorCount()
+    {
+        return events.size();
+    }
+
+    /**
+     * 把检查结果写入合并后的数据源
+     * @param target 限定在合并后数据源作用域内的数据库
+     */
+    void applyTo(M2TKDatabase target)
+    {
+        for (int pid : continuityErrorPids)
+            target.accumulateElementaryStreamErrors(pid, 0, 1);
+        for (TR290Event event : events)
+            target.addTR290Event(event);
+        for (PCRCheck check : checks)
+            target.addPCRCheck(check);
+    }
+
+    /**
+     * 补上交界处的包间隔。需在前一分段的流密度合并之后、后一分段合并之前调用。
+     */
+    void appendDensity(DensityStore density)
+    {
+        int[] interval = new int[1];
+        for (long[] entry : densityIntervals)
+        {
+            interval[0] = (int) entry[2];
+            density.append((int) entry[0], entry[1], interval, 1);
+        }
+    }
+
+    private void scanBefore(MappedByteBuffer buffer, int frameSize, long firstPacket)
+    {
+        long position = firstPacket;
+        for (int p = 0; p + frameSize <= buffer.limit(); p += frameSize, position++)
+        {
+            if ((buffer.get(p) & 0xFF) != 0x47)
+                continue;
+
+            int pid = readPid(buffer, p);
+            lastPositions[pid] = position;
+
+            if (isTransportError(buffer, p))
+            {
+                lastCcs[pid] = -1;
+                lastPcrs[pid] = -1;
+                continue;
+            }
+
+            if (containsPayload(buffer, p))
+                lastCcs[pid] = buffer.get(p + 3) & 0x0F;
+
+            if (containsPCR(buffer, p))
+            {
+                if (isDiscontinuous(buffer, p))
+                {
+                    lastPcrs[pid] = -1;
+                } else
+                {
+                    lastPcrs[pid] = readPCR(buffer, p);
+                    lastPcrPositions[pid] = position;
+                }
+            }
+        }
+    }
+
+    private void scanAfter(MappedByteBuffer buffer, int frameSize, long bitrate)
+    {
+        boolean[] densityPending = new boolean[8192];
+        boolean[] ccPending = new boolean[8192];
+        boolean[] pcrPending = new boolean[8192];
+        for (int pid = 0; pid < 8192; pid++)
+        {
+            densityPending[pid] = lastPositions[pid] != -1;
+            ccPending[pid] = pid != 8191 && lastCcs[pid] != -1;
+            pcrPending[pid] = pid != 8191 && lastPcrs[pid] != -1;
+        }
+
+        long position = borderPacket;
+        for (int p = 0; p + frameSize <= buffer.limit(); p += frameSize, position++)
+        {
+            if ((buffer.get(p) & 0xFF) != 0x47)
+                continue;
+
+            int pid = readPid(buffer, p);
+            if (densityPending[pid])
+            {
+                densityIntervals.add(new long[]{pid, position, Math.min(position - lastPositions[pid], Integer.MAX_VALUE)});
+                densityPending[pid] = false;
+            }
+
+            if (!ccPending[pid] && !pcrPending[pid])
+                continue;
+
+            if (isTransportError(buffer, p))
+            {
+                // 传输错误由分段的分析器报告，交界检查到此为止。
+                ccPending[pid] = false;
+                pcrPending[pid] = false;
+                continue;
+            }
+
+            if (ccPending[pid] && !checkContinuityCount(buffer, p, pid, position, ccPending))
+            {
+                // 连续计数错误时当前包不可靠，不再做PCR检查。
+                pcrPending[pid] = false;
+                continue;
+            }
+
+            if (pcrPending[pid] && containsPCR(buffer, p))
+            {
+                pcrPending[pid] = false;
+                if (!isDiscontinuous(buffer, p))
+                    checkPCR(pid, readPCR(buffer, p), position, bitrate);
+            }
+        }
+    }
+
+    /**
+     * @return 连续计数是否正常
+     */
+    private boolean checkContinuityCount(MappedByteBuffer buffer, int p, int pid, long position, boolean[] ccPending)
+    {
+        int prev = lastCcs[pid];
+        int curr = buffer.get(p + 3) & 0x0F;
+
+        if (!containsPayload(buffer, p))
+        {
+            // 没有负载的情况下，CCT不允许变化。有负载的包出现之前继续检查。
+            if (prev == curr)
+                return true;
+
+            ccPending[pid] = false;
+            reportContinuityError(String.format("无负载时连续计数器发生变化（期望：%d，实际：%d，pid = %d，分段交界）",
+                                                prev, curr, pid),
+                                  position, pid);
+            return false;
+        }
+
+        ccPending[pid] = false;
+        int expected = (prev + 1) & 0xF;
+        if (curr == expected || curr == prev) // 计数不变时按重复包处理，重复次数由分段的分析器检查。
+            return true;
+
+        reportContinuityError(String.format("连续计数错误（期望：%d，实际：%d，pid = %d，分段交界）",
+                                            expected, curr, pid),
+                              position, pid);
+        return false;
+    }
+
+    private void checkPCR(int pid, long currPcr, long currPct, long avgBitrate)
+    {
+        long prevPcr = lastPcrs[pid];
+        long prevPct = lastPcrPositions[pid];
+
+        long bitrate = ProgramClockReference.bitrate(prevPcr, currPcr, currPct - prevPct);
+        if (avgBitrate <= 0)
+            avgBitrate = bitrate;
+        if (avgBitrate <= 0)
+            return;
+
+        long deltaTb = (currPct - prevPct) * 188 * 8 * 1000_000_000 / avgBitrate;
+        long deltaTpcr = ProgramClockReference.deltaNanos(prevPcr, currPcr);
+        long pcrAccuracy = deltaTb - deltaTpcr;
+        boolean repetitionCheckFailed = deltaTb > 40_000_000;
+        boolean discontinuityCheckFailed = deltaTpcr > 100_000_000;
+        boolean accuracyCheckFailed = Math.abs(pcrAccuracy) > 500;
+
+        if (repetitionCheckFailed)
+            reportError(TR290ErrorTypes.PCR_REPETITION_ERROR,
+                        String.format("PCR间隔超过40ms（当前间隔：%dms，分段交界）", deltaTb / 1000_000),
+                        currPct, pid);
+        if (discontinuityCheckFailed)
+            reportError(TR290ErrorTypes.PCR_DISCONTINUITY_INDICATOR_ERROR,
+                        String.format("未设置不连续标志情况下前后PCR差值大于100ms（当前差值：%dms，分段交界）", deltaTpcr / 1000_000),
+                        currPct, pid);
+        if (accuracyCheckFailed)
+            reportError(TR290ErrorTypes.PCR_ACCURACY_ERROR,
+                        String.format("PCR精度误差超过正负500ns（当前误差：%dns，分段交界）", pcrAccuracy),
+                        currPct, pid);
+
+        PCRCheck check = new PCRCheck();
+        check.setPid(pid);
+        check.setPrevValue(prevPcr);
+        check.setPrevPosition(prevPct);
+        check.setCurrValue(currPcr);
+        check.setCurrPosition(currPct);
+        check.setBitrate(bitrate);
+        check.setDiffNanos(deltaTpcr);
+        check.setIntervalNanos(deltaTb);
+        check.setAccuracyNanos(pcrAccuracy);
+        check.setRepetitionCheckFailed(repetitionCheckFailed);
+        check.setDiscontinuityCheckFailed(discontinuityCheckFailed);
+        check.setAccuracyCheckFailed(accuracyCheckFailed);
+        checks.add(check);
+    }
+
+    private void reportContinuityError(String message, long position, int pid)
+    {
+        continuityErrorPids.add(pid);
+        reportError(TR290ErrorTypes.CONTINUITY_COUNT_ERROR, message, position, pid);
+    }
+
+    private void reportError(String errorType, String errorMessage, long position, int stream)
+    {
+        TR290Event event = new TR290Event();
+        event.setTimestamp(OffsetDateTime.now());
+        event.setType(errorType);
+        event.setDescription(errorMessage);
+        event.setPosition(position);
+        event.setStream(stream);
+        events.add(event);
+    }
+
+    private static int readPid(MappedByteBuffer buffer, int p)
+    {
+        return ((buffer.get(p + 1) & 0x1F) << 8) | (buffer.get(p + 2) & 0xFF);
+    }
+
+    private static boolean isTransportError(MappedByteBuffer buffer, int p)
+    {
+        return (buffer.get(p + 1) & 0x80) != 0;
+    }
+
+    private static boolean containsPayload(MappedByteBuffer buffer, int p)
+    {
+        return (buffer.get(p + 3) & 0x10) != 0;
+    }
+
+    private static int adaptationFieldLength(MappedByteBuffer buffer, int p)
+    {
+        return ((buffer.get(p + 3) & 0x20) != 0) ? (buffer.get(p + 4) & 0xFF) : 0;
+    }
+
+    private static boolean containsPCR(MappedByteBuffer buffer, int p)
+    {
+        return adaptationFieldLength(buffer, p) >= 7 && (buffer.get(p + 5) & 0x10) != 0;
+    }
+
+    private static boolean isDiscontinuous(MappedByteBuffer buffer, int p)
+    {
+        return adaptationFieldLength(buffer, p) > 0 && (buffer.get(p + 5) & 0x80) != 0;
+    }
+
+    private static long readPCR(MappedByteBuffer buffer, int p)
+    {
+        long base = ((long) (buffer.get(p + 6) & 0xFF) << 25) |
+                    ((long) (buffer.get(p + 7) & 0xFF) << 17) |
+                    ((long) (buffer.get(p + 8) & 0xFF) << 9) |
+                    ((long) (buffer.get(p + 9) & 0xFF) << 1) |
+                    ((buffer.get(p + 10) & 0x80) >> 7);
+        int extension = ((buffer.get(p + 10) & 0x01) << 8) | (buffer.get(p + 11) & 0xFF);
+        return base * 300 + extension;
+    }
+}
@@ -0,0 +1,326 @@
+/*
+ *  Copyright (c) M2TK Project. All rights reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package m2tk.assistant.app.kernel.service;
+
+import lombok.extern.slf4j.Slf4j;
+import m2tk.assistant.api.M2TKDatabase;
+import m2tk.assistant.api.domain.ElementaryStream;
+import org.noear.solon.annotation.Component;
+import org.noear.solon.annotation.Inject;
+
+import javax.sql.DataSource;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 分段分析结果的合并
+ * <p>
+ * 各分段的分析数据先写入各自的临时数据源，全部结束后按分段顺序并入最终数据源，位置（包计数）加上分段的起始位置：
+ * <ul>
+ *     <li>私有段、表版本和时间记录直接改挂到最终数据源。私有段去掉与前面分段内容相同的记录，
+ *     表版本去掉与前一分段最后版本相同的记录，使合并结果与顺序分析一致。</li>
+ *     <li>PSI/SI表（节目、网络、业务、业务群及其映射）描述的是码流的当前状态，取最后一个有记录的分段，整组改挂，
+ *     组内的引用关系保持不变。</li>
+ *     <li>基本流计数按PID累加，码率按包数加权平均；数据源的各组件标记取并集。</li>
+ *     <li>内存中的PCR统计、TR290错误汇总、流密度、EPG、捕获包和过滤私有段按分段顺序合并，交界处的补充检查见 {@link SegmentBorder}。</li>
+ * </ul>
+ */
+@Slf4j
+@Component
+public class SegmentMerger
+{
+    // PSI/SI表按组合并，每组的第一张表决定取哪个分段。
+    private static final List<List<String>> SNAPSHOT_GROUPS = List.of(
+            List.of("t_mpeg_program", "t_program_elementary_mapping", "t_ca_stream"),
+            List.of("t_si_network", "t_si_multiplex", "t_multiplex_service_mapping"),
+            List.of("t_si_service"),
+            List.of("t_si_bouquet", "t_bouquet_service_mapping"));
+
+    @Inject
+    private M2TKDatabaseService database;
+    @Inject("m2tk")
+    private DataSource dataSource;
+
+    /**
+     * 合并分段的分析数据
+     * @param targetRef 最终数据源编号
+     * @param segments 各分段，按文件中的先后顺序排列
+     * @param borders 各交界的补充检查结果，第 i 项为第 i 段与第 i+1 段之间的交界（中途停止时为空）
+     */
+    void merge(int targetRef, List<SegmentedAnalysis.Segment> segments, List<SegmentBorder> borders) throws SQLException
+    {
+        long t0 = System.currentTimeMillis();
+
+        for (SegmentedAnalysis.Segment segment : segments)
+            database.checkpointElementaryStreams(segment.sourceRef());
+
+        int streamCount = mergeStreamCounters(targetRef, segments);
+
+        try (Connection connection = dataSource.getConnection())
+        {
+            connection.setAutoCommit(false);
+            try
+            {
+                for (SegmentedAnalysis.Segment segment : segments)
+                    mergeRecords(connection, targetRef, segment);
+                for (List<String> group : SNAPSHOT_GROUPS)
+                    mergeSnapshot(connection, targetRef, segments, group);
+                for (SegmentedAnalysis.Segment segment : segments)
+                    mergeStreamUsage(connection, targetRef, segment.sourceRef());
+                mergeStreamSource(connection, targetRef, segments, streamCount);
+                connection.commit();
+            } catch (SQLException ex)
+            {
+                connection.rollback();
+                throw ex;
+            }
+        }
+
+        mergeMemoryStores(targetRef, segments, borders);
+
+        M2TKDatabase target = SourceScope.bind(database, targetRef);
+        int borderErrors = 0;
+        for (SegmentBorder border : borders)
+        {
+            border.applyTo(target);
+            borderErrors += border.getErrorCount();
+        }
+
+        database.checkpointElementaryStreams(targetRef);
+        database.getChangeCounters().markAllChanged(targetRef);
+        log.info("合并 {} 个分段的分析结果，交界处发现 {} 个错误，用时 {}ms",
+                 segments.size(), borderErrors, System.currentTimeMillis() - t0);
+    }
+
+    private static void mergeRecords(Connection connection, int targetRef, SegmentedAnalysis.Segment segment) throws SQLException
+    {
+        int sourceRef = segment.sourceRef();
+        long offset = segment.packetOffset();
+
+        // 分析器只在内容变化时保存私有段，前面分段已有的相同内容不再重复。
+        update(connection, """
+                DELETE FROM `PUBLIC`.`t_private_section` `S`
+                WHERE `S`.`source_ref` = ?
+                  AND EXISTS (SELECT 1 FROM `PUBLIC`.`t_private_section` `T`
+                              WHERE `T`.`source_ref` = ? AND `T`.`tag` = `S`.`tag` AND `T`.`pid` = `S`.`pid`
+                                AND `T`.`encoding` = `S`.`encoding`)
+                """, sourceRef, targetRef);
+        update(connection, "UPDATE `PUBLIC`.`t_private_section` SET `source_ref` = ?, `pct` = `pct` + ? WHERE `source_ref` = ?",
+               targetRef, offset, sourceRef);
+
+        // 分段开始时记录的版本如果与前一分段最后的版本相同，不算版本变化。
+        update(connection, """
+                DELETE FROM `PUBLIC`.`t_table_version` `S`
+                WHERE `S`.`source_ref` = ?
+                  AND `S`.`id` = (SELECT MIN(`X`.`id`) FROM `PUBLIC`.`t_table_version` `X`
+                                  WHERE `X`.`source_ref` = `S`.`source_ref` AND `X`.`table_id` = `S`.`table_id`
+                                    AND `X`.`table_id_ext` = `S`.`table_id_ext` AND `X`.`tag` = `S`.`tag`)
+                  AND `S`.`version` = (SELECT `T`.`version` FROM `PUBLIC`.`t_table_version` `T`
+                                       WHERE `T`.`source_ref` = ? AND `T`.`table_id` = `S`.`table_id`
+                                         AND `T`.`table_id_ext` = `S`.`table_id_ext` AND `T`.`tag` = `S`.`tag`
+                                       ORDER BY `T`.`pct` DESC LIMIT 1)
+                """, sourceRef, targetRef);
+        update(connection, "UPDATE `PUBLIC`.`t_table_version` SET `source_ref` = ?, `pct` = `pct` + ? WHERE `source_ref` = ?",
+               targetRef, offset, sourceRef);
+
+        update(connection, "UPDATE `PUBLIC`.`t_si_datetime` SET `source_ref` = ? WHERE `source_ref` = ?",
+               targetRef, sourceRef);
+    }
+
+    private static void mergeSnapshot(Connection connection, int targetRef,
+                                      List<SegmentedAnalysis.Segment> segments, List<String> group) throws SQLException
+    {
+        for (int i = segments.size() - 1; i >= 0; i--)
+        {
+            int sourceRef = segments.get(i).sourceRef();
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "SELECT COUNT(*) FROM `PUBLIC`.`" + group.get(0) + "` WHERE `source_ref` = ?"))
+            {
+                statement.setInt(1, sourceRef);
+                try (ResultSet rs = statement.executeQuery())
+                {
+                    if (!rs.next() || rs.getLong(1) == 0)
+                        continue;
+                }
+            }
+
+            for (String table : group)
+                update(connection, "UPDATE `PUBLIC`.`" + table + "` SET `source_ref` = ? WHERE `source_ref` = ?",
+                       targetRef, sourceRef);
+            return;
+        }
+    }
+
+    private static void mergeStreamUsage(Connection connection, int targetRef, int sourceRef) throws SQLException
+    {
+        update(connection, """
+                UPDATE `PUBLIC`.`t_elementary_stream` `T`
+                SET (`stream_type`, `category`, `description`) =
+                    (SELECT `S`.`stream_type`, `S`.`category`, `S`.`description`
+                     FROM `PUBLIC`.`t_elementary_stream` `S`
+                     WHERE `S`.`source_ref` = ? AND `S`.`pid` = `T`.`pid`)
+                WHERE `T`.`source_ref` = ?
+                  AND EXISTS (SELECT 1 FROM `PUBLIC`.`t_elementary_stream` `S`
+                              WHERE `S`.`source_ref` = ? AND `S`.`pid` = `T`.`pid`
+                                AND (`S`.`category` IS NOT NULL OR `S`.`stream_type` <> -1))
+                """, sourceRef, targetRef, sourceRef);
+    }
+
+    private static void mergeStreamSource(Connection connection, int targetRef,
+                                          List<SegmentedAnalysis.Segment> segments, int streamCount) throws SQLException
+    {
+        double weightedBitrate = 0;
+        long packets = 0;
+        int frameSize = 188;
+        int transportStreamId = -1;
+        Map<String, Boolean> flags = new LinkedHashMap<>();
+
+        try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT * FROM `PUBLIC`.`t_stream_source` WHERE `id` = ?"))
+        {
+            for (SegmentedAnalysis.Segment segment : segments)
+            {
+                statement.setInt(1, segment.sourceRef());
+                try (ResultSet rs = statement.executeQuery())
+                {
+                    if (!rs.next())
+                        continue;
+
+                    long count = segment.packetCount();
+                    weightedBitrate += (double) rs.getInt("bitrate") * count;
+                    packets += count;
+                    frameSize = rs.getInt("frame_size");
+                    if (rs.getInt("transport_stream_id") >= 0)
+                        transportStreamId = rs.getInt("transport_stream_id");
+
+                    ResultSetMetaData meta = rs.getMetaData();
+                    for (int i = 1; i <= meta.getColumnCount(); i++)
+                    {
+                        String column = meta.getColumnLabel(i).toLowerCase();
+                        if (column.startsWith("is_"))
+                            flags.merge(column, rs.getBoolean(i), Boolean::logicalOr);
+                    }
+                }
+            }
+        }
+
+        StringBuilder sql = new StringBuilder("UPDATE `PUBLIC`.`t_stream_source` SET `bitrate` = ?, `frame_size` = ?, " +
+                                              "`transport_stream_id` = ?, `packet_count` = ?, `stream_count` = ?");
+        List<Object> params = new ArrayList<>(List.of((int) ((packets == 0) ? 0 : weightedBitrate / packets),
+                                                      frameSize, transportStreamId, packets, streamCount));
+        for (Map.Entry<String, Boolean> flag : flags.entrySet())
+        {
+            sql.append(", `").append(flag.getKey()).append("` = ?");
+            params.add(flag.getValue());
+        }
+        sql.append(" WHERE `id` = ?");
+        params.add(targetRef);
+        update(connection, sql.toString(), params.toArray());
+    }
+
+    /**
+     * @return 合并后出现过的PID数量
+     */
+    private int mergeStreamCounters(int targetRef, List<SegmentedAnalysis.Segment> segments)
+    {
+        long[] packets = new long[8192];
+        long[] pcrs = new long[8192];
+        long[] transportErrors = new long[8192];
+        long[] continuityErrors = new long[8192];
+        double[] weightedBitrates = new double[8192];
+        boolean[] scrambled = new boolean[8192];
+        long total = 0;
+
+        ElementaryStream stream = new ElementaryStream();
+        for (SegmentedAnalysis.Segment segment : segments)
+        {
+            ElementaryStreamCounters counters = database.getStreamCounters(segment.sourceRef());
+            for (int pid = 0; pid < 8192; pid++)
+            {
+                if (!counters.isTracked(pid))
+                    continue;
+
+                stream.setStreamPid(pid);
+                counters.apply(stream);
+                packets[pid] += stream.getPacketCount();
+                pcrs[pid] += stream.getPcrCount();
+                transportErrors[pid] += stream.getTransportErrorCount();
+                continuityErrors[pid] += stream.getContinuityErrorCount();
+                weightedBitrates[pid] += (double) stream.getBitrate() * stream.getPacketCount();
+                scrambled[pid] |= stream.isScrambled();
+                total += stream.getPacketCount();
+            }
+        }
+
+        ElementaryStreamCounters target = database.getStreamCounters(targetRef);
+        int streamCount = 0;
+        for (int pid = 0; pid < 8192; pid++)
+        {
+            if (packets[pid] == 0 && transportErrors[pid] == 0 && continuityErrors[pid] == 0)
+                continue;
+
+            target.update(pid, packets[pid], pcrs[pid],
+                          (packets[pid] == 0) ? 0 : (int) (weightedBitrates[pid] / packets[pid]),
+                          (total == 0) ? 0 : 1.0 * packets[pid] / total,
+                          scrambled[pid]);
+            target.addErrors(pid, (int) transportErrors[pid], (int) continuityErrors[pid]);
+            if (packets[pid] > 0)
+                streamCount++;
+        }
+        return streamCount;
+    }
+
+    private void mergeMemoryStores(int targetRef, List<SegmentedAnalysis.Segment> segments, List<SegmentBorder> borders)
+    {
+        PCRStatsEngine pcrStats = database.getPCRStatsEngine(targetRef);
+        TR290ErrorAggregator tr290Errors = database.getTR290ErrorAggregator(targetRef);
+        DensityStore density = database.getDensityStore(targetRef);
+        EPGStore epg = database.getEPGStore(targetRef);
+        PacketCaptureStore transportPackets = database.getTransportPacketStore(targetRef);
+        PacketCaptureStore pesPackets = database.getPESPacketStore(targetRef);
+        SectionRingStore filteredSections = database.getFilteredSectionStore(targetRef);
+
+        for (int i = 0; i < segments.size(); i++)
+        {
+            SegmentedAnalysis.Segment segment = segments.get(i);
+            int sourceRef = segment.sourceRef();
+            long offset = segment.packetOffset();
+
+            if (i > 0 && i <= borders.size())
+                borders.get(i - 1).appendDensity(density);
+            density.appendFrom(database.getDensityStore(sourceRef), offset);
+            pcrStats.mergeFrom(database.getPCRStatsEngine(sourceRef), offset);
+            tr290Errors.mergeFrom(database.getTR290ErrorAggregator(sourceRef), offset);
+            epg.mergeFrom(database.getEPGStore(sourceRef));
+            transportPackets.appendFrom(database.getTransportPacketStore(sourceRef), offset);
+            pesPackets.appendFrom(database.getPESPacketStore(sourceRef), offset);
+            filteredSections.appendFrom(database.getFilteredSectionStore(sourceRef), offset);
+        }
+    }
+
+    private static void update(Connection connection, String sql, Object... params) throws SQLException
+    {
+        try (PreparedStatement statement = connection.prepareStatement(sql))
+        {
+            for (int i = 0; i < params.length; i++)
+                statement.setObject(i + 1, params[i]);
+            statement.executeUpdate();
+        }
+    }
+}
@@ -0,0 +1,305 @@
+/*
+ *  Copyright (c) M2TK Project. All rights reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package m2tk.assistant.app.kernel.service;
+
+import lombok.extern.slf4j.Slf4j;
+import m2tk.assistant.api.M2TKDatabase;
+import m2tk.assistant.api.SectionBus;
+import m2tk.assistant.api.Tracer;
+import m2tk.assistant.api.domain.StreamSource;
+import m2tk.assistant.app.kernel.io.MappedFileRxChannel;
+import m2tk.assistant.app.kernel.metrics.SessionMetrics;
+import m2tk.multiplex.DemuxStatus;
+import m2tk.multiplex.TSDemux;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * 本地文件的分段并行分析
+ * <p>
+ * 把文件按包边界切成若干段，每段使用独立的解复用器、分析器实例和临时数据源，在专用的 {@link ForkJoinPool} 上同时分析。
+ * 全部分段结束后，先从文件中补做交界处的检查（{@link SegmentBorder}），再由 {@link SegmentMerger} 按分段顺序
+ * 合并到最终数据源，最后删除临时数据源。
+ * <p>
+ * 中途停止时各分段已分析的部分照常合并，但不做交界检查。
+ */
+@Slf4j
+final class SegmentedAnalysis
+{
+    static final long MIN_SEGMENT_SIZE = 32L * 1024 * 1024;
+
+    private static final int SYNC_SEARCH_PACKETS = 64;
+    private static final int SYNC_CHECK_COUNT = 3;
+
+    /**
+     * @param sourceRef 分段的临时数据源编号
+     * @param startOffset 分段起点（字节偏移）
+     * @param endOffset 分段终点（字节偏移，不含）
+     * @param packetOffset 分段第一个包在整个文件中的位置（包计数）
+     * @param packetCount 分段的包数
+     */
+    record Segment(int sourceRef, long startOffset, long endOffset, long packetOffset, long packetCount)
+    {
+    }
+
+    private final M2TKDatabaseService database;
+    private final SegmentMerger merger;
+    private final StreamSource target;
+    private final Path file;
+    private final int frameSize;
+    private final List<Segment> segments;
+    private final List<StreamSource> sources;
+    private final List<MappedFileRxChannel> inputs;
+    private final List<TSDemux> demuxes;
+    private final ForkJoinPool pool;
+    private volatile boolean cancelled;
+    private boolean released;
+
+    private SegmentedAnalysis(M2TKDatabaseService database, SegmentMerger merger, StreamSource target,
+                              Path file, int frameSize, int parallelism)
+    {
+        this.database = database;
+        this.merger = merger;
+        this.target = target;
+        this.file = file;
+        this.frameSize = frameSize;
+        this.segments = new ArrayList<>();
+        this.sources = new ArrayList<>();
+        this.inputs = new ArrayList<>();
+        this.demuxes = new ArrayList<>();
+        this.pool = new ForkJoinPool(parallelism);
+    }
+
+    /**
+     * 切分文件并为各分段建立临时数据源
+     * @param target 最终数据源
+     * @param file 本地文件
+     * @param parallelism 最大分段数，实际分段数还受 {@value #MIN_SEGMENT_SIZE} 字节的最小分段长度限制
+     */
+    static SegmentedAnalysis create(M2TKDatabaseService database, SegmentMerger merger,
+                                    StreamSource target, Path file, int parallelism) throws IOException
+    {
+        long[] bounds;
+        int frameSize;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+        {
+            frameSize = MappedFileRxChannel.detectFrameSize(channel);
+            bounds = split(channel, frameSize, parallelism);
+        }
+
+        SegmentedAnalysis analysis = new SegmentedAnalysis(database, merger, target, file, frameSize, bounds.length - 1);
+        try
+        {
+            for (int i = 0; i < bounds.length - 1; i++)
+            {
+                StreamSource source = database.beginDiagnosis(String.format("%s #%d", target.getName(), i + 1),
+                                                              target.getUri());
+                analysis.sources.add(source);
+                analysis.segments.add(new Segment(source.getId(), bounds[i], bounds[i + 1],
+                                                  bounds[i] / frameSize, (bounds[i + 1] - bounds[i]) / frameSize));
+                analysis.inputs.add(MappedFileRxChannel.open(file, frameSize, bounds[i], bounds[i + 1]));
+            }
+        } catch (IOException | RuntimeException ex)
+        {
+            analysis.release();
+            analysis.pool.shutdownNow();
+            throw ex;
+        }
+
+        log.info("文件 {} 分为 {} 段并行分析，包长 {}", file, analysis.segments.size(), frameSize);
+        return analysis;
+    }
+
+    int getSegmentCount()
+    {
+        return segments.size();
+    }
+
+    /**
+     * 开始分析各分段
+     * @param tracerFactory 分析器工厂，每个分段调用一次
+     * @param metrics 最终数据源的性能统计
+     * @param consumer 解复用消息监听器：第一个分段开始时收到开始消息，合并完成后收到停止消息
+     * @param onFinished 合并完成（或失败）后的回调
+     */
+    void start(Supplier<List<Tracer>> tracerFactory, SessionMetrics metrics,
+               Consumer<DemuxStatus> consumer, Runnable onFinished)
+    {
+        AtomicBoolean started = new AtomicBoolean();
+        List<CompletableFuture<DemuxStatus>> stopped = new ArrayList<>();
+
+        for (int i = 0; i < segments.size(); i++)
+        {
+            StreamSource source = sources.get(i);
+            M2TKDatabase scoped = metrics.instrument(SourceScope.bind(database, source.getId()));
+
+            TSDemux demux = TSDemux.newDefaultDemux(pool);
+            demux.registerRawChannel(payload -> metrics.countPacket());
+            SectionBus sectionBus = SectionBus.create(metrics.instrumentSectionBus(demux));
+            for (Tracer tracer : tracerFactory.get())
+            {
+                String name = tracer.getClass().getSimpleName();
+                tracer.configure(source, metrics.instrument(demux, name), metrics.instrument(sectionBus, name), scoped);
+            }
+
+            // 在分析器之后注册，分析器处理完停止消息（写入最后的统计）后才算分段结束。
+            CompletableFuture<DemuxStatus> future = new CompletableFuture<>();
+            demux.registerEventListener(new StreamAnalyzer.EventFilter<>(DemuxStatus.class, status -> {
+                if (!status.isRunning())
+                    future.complete(status);
+                else if (started.compareAndSet(false, true))
+                    consumer.accept(status);
+            }));
+            stopped.add(future);
+            demuxes.add(demux);
+        }
+
+        CompletableFuture.allOf(stopped.toArray(new CompletableFuture[0]))
+                         .thenRunAsync(() -> {
+                             finish();
+                             consumer.accept(stopped.get(stopped.size() - 1).join());
+                             onFinished.run();
+                         }, pool);
+
+        for (int i = 0; i < demuxes.size(); i++)
+            demuxes.get(i).attach(inputs.get(i));
+    }
+
+    /**
+     * 停止各分段的分析，已分析的部分照常合并。
+     */
+    void cancel()
+    {
+        cancelled = true;
+        for (TSDemux demux : demuxes)
+            demux.detach();
+    }
+
+    /**
+     * 关闭各分段的解复用器，并删除尚未合并的临时数据源。
+     */
+    void shutdown()
+    {
+        cancelled = true;
+        for (TSDemux demux : demuxes)
+            demux.shutdown();
+        pool.shutdownNow();
+        release();
+    }
+
+    private void finish()
+    {
+        long t0 = System.currentTimeMillis();
+        try
+        {
+            List<SegmentBorder> borders = cancelled ? List.of() : scanBorders();
+            merger.merge(target.getId(), segments, borders);
+        } catch (Exception ex)
+        {
+            log.error("合并分段分析结果时异常：{}", ex.getMessage(), ex);
+        }
+        release();
+        pool.shutdown();
+        log.info("分段分析结束：{}，合并用时 {}ms", file, System.currentTimeMillis() - t0);
+    }
+
+    private List<SegmentBorder> scanBorders() throws IOException
+    {
+        List<SegmentBorder> borders = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+        {
+            for (int i = 1; i < segments.size(); i++)
+            {
+                Segment prev = segments.get(i - 1);
+                Segment next = segments.get(i);
+                long bitrate = SourceScope.bind(database, prev.sourceRef()).getCurrentStreamSource().getBitrate();
+                borders.add(SegmentBorder.scan(channel, frameSize,
+                                               next.startOffset(), prev.startOffset(), next.endOffset(),
+                                               SegmentBorder.DEFAULT_SCAN_PACKETS, bitrate));
+            }
+        }
+        return borders;
+    }
+
+    private synchronized void release()
+    {
+        if (released)
+            return;
+        released = true;
+
+        for (MappedFileRxChannel input : inputs)
+        {
+            try
+            {
+                input.close();
+            } catch (IOException ex)
+            {
+                log.error("关闭通道时异常：{}", ex.getMessage());
+            }
+        }
+        for (Segment segment : segments)
+            database.dropSource(segment.sourceRef());
+    }
+
+    /**
+     * 按包数均分文件，分段起点对齐到包边界，遇到同步字节不对的位置时向后寻找连续的同步字节。
+     * @return 各分段的边界（字节偏移），长度为分段数加一
+     */
+    static long[] split(FileChannel channel, int frameSize, int parallelism) throws IOException
+    {
+        long size = channel.size();
+        int count = (int) Math.max(1, Math.min(parallelism, size / MIN_SEGMENT_SIZE));
+        long packets = size / frameSize;
+
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(0L);
+        for (int i = 1; i < count; i++)
+        {
+            long offset = alignToSync(channel, frameSize, packets * i / count * frameSize);
+            if (offset > bounds.get(bounds.size() - 1) && offset < size)
+                bounds.add(offset);
+        }
+        bounds.add(size);
+        return bounds.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    private static long alignToSync(FileChannel channel, int frameSize, long offset) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(frameSize * (SYNC_SEARCH_PACKETS + SYNC_CHECK_COUNT));
+        int n = channel.read(buffer, offset);
+        for (int i = 0; i + frameSize * (SYNC_CHECK_COUNT - 1) < n; i++)
+        {
+            boolean synced = true;
+            for (int k = 0; k < SYNC_CHECK_COUNT && synced; k++)
+                synced = (buffer.get(i + k * frameSize) & 0xFF) == 0x47;
+            if (synced)
+                return offset + i;
+        }
+        // 找不到同步位置时保持原位，由解复用器重新同步。
+        return offset;
+    }
+}
@@ -0,0 +1,333 @@
+/*
+ *  Copyright (c) M2TK Project. All rights reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package m2tk.assistant.app.kernel.service;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * 会话存档文件
+ * <p>
+ * 存档由若干命名数据块组成，每块单独压缩（Deflate），文件末尾是数据块目录：
+ * <pre>
+ * 文件头：  魔数 "M2TKSA"（6字节） | 版本（2字节） | 目录偏移（8字节）
+ * 数据块：  压缩数据 ...
+ * 目录：    块数 | { 块名 | 偏移 | 压缩长度 | 原始长度 } ...
+ * </pre>
+ * 打开存档时只读取目录，数据块在读取时才映射到内存并解压，不读取的数据块不占用内存。
+ * 存档对象不持有文件句柄，映射缓冲区在读取完毕后随垃圾回收释放。
+ */
+public final class SessionArchive
+{
+    public static final String FILE_EXTENSION = "m2sa";
+
+    private static final byte[] MAGIC = "M2TKSA".getBytes(StandardCharsets.US_ASCII);
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = MAGIC.length + 2 + 8;
+
+    private final Path file;
+    private final Map<String, Chunk> chunks;
+
+    private record Chunk(String name, long offset, long compressedLength, long rawLength)
+    {
+    }
+
+    private SessionArchive(Path file, Map<String, Chunk> chunks)
+    {
+        this.file = file;
+        this.chunks = chunks;
+    }
+
+    public static SessionArchive open(Path file) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+        {
+            long size = channel.size();
+            if (size < HEADER_SIZE)
+                throw new IOException("无效的存档文件：" + file);
+
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            byte[] magic = new byte[MAGIC.length];
+            header.get(magic);
+            if (!Arrays.equals(magic, MAGIC))
+                throw new IOException("无效的存档文件：" + file);
+            int version = header.getShort() & 0xFFFF;
+            if (version != VERSION)
+                throw new IOException("不支持的存档版本：" + version);
+            long directoryOffset = header.getLong();
+            if (directoryOffset < HEADER_SIZE || directoryOffset >= size)
+                throw new IOException("存档文件不完整：" + file);
+
+            MappedByteBuffer directory = channel.map(FileChannel.MapMode.READ_ONLY, directoryOffset, size - directoryOffset);
+            DataInputStream in = new DataInputStream(new BufferInputStream(directory));
+            int count = in.readInt();
+            Map<String, Chunk> chunks = new LinkedHashMap<>();
+            for (int i = 0; i < count; i++)
+            {
+                Chunk chunk = new Chunk(in.readUTF(), in.readLong(), in.readLong(), in.readLong());
+                if (chunk.offset < HEADER_SIZE || chunk.offset + chunk.compressedLength > directoryOffset)
+                    throw new IOException("存档目录已损坏：" + file);
+                chunks.put(chunk.name, chunk);
+            }
+            return new SessionArchive(file, chunks);
+        }
+    }
+
+    public static Writer create(Path file) throws IOException
+    {
+        return new Writer(file);
+    }
+
+    public Path getFile()
+    {
+        return file;
+    }
+
+    public boolean hasChunk(String name)
+    {
+        return chunks.containsKey(name);
+    }
+
+    public Set<String> listChunks()
+    {
+        return Collections.unmodifiableSet(chunks.keySet());
+    }
+
+    /**
+     * @return 数据块解压后的长度，不存在时返回 -1
+     */
+    public long getChunkSize(String name)
+    {
+        Chunk chunk = chunks.get(name);
+        return (chunk == null) ? -1 : chunk.rawLength;
+    }
+
+    /**
+     * 打开数据块（映射文件区域并在读取时解压），数据块不存在时返回 null。
+     */
+    public DataInputStream openChunk(String name) throws IOException
+    {
+        Chunk chunk = chunks.get(name);
+        if (chunk == null)
+            return null;
+
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+        {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, chunk.offset, chunk.compressedLength);
+        }
+        return new DataInputStream(new InflaterInputStream(new BufferInputStream(buffer), new Inflater(), 65536));
+    }
+
+    /**
+     * 写入 ZigZag 变长整数：绝对值小的数（包括负数）占用的字节少。
+     */
+    public static void writeVarLong(DataOutput out, long value) throws IOException
+    {
+        long zigzag = (value << 1) ^ (value >> 63);
+        while ((zigzag & ~0x7FL) != 0)
+        {
+            out.writeByte((int) ((zigzag & 0x7F) | 0x80));
+            zigzag >>>= 7;
+        }
+        out.writeByte((int) zigzag);
+    }
+
+    public static long readVarLong(DataInput in) throws IOException
+    {
+        long zigzag = 0;
+        int shift = 0;
+        int b;
+        do
+        {
+            if (shift > 63)
+                throw new IOException("变长整数格式错误");
+            b = in.readUnsignedByte();
+            zigzag |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return (zigzag >>> 1) ^ -(zigzag & 1);
+    }
+
+    /**
+     * 存档写入器：依次写入各数据块，关闭时写入目录并回填文件头。
+     */
+    public static final class Writer implements Closeable
+    {
+        private final FileChannel channel;
+        private final List<Chunk> written;
+        private String chunkName;
+        private long chunkOffset;
+        private CountingOutputStream rawCounter;
+        private DeflaterOutputStream deflater;
+        private DataOutputStream output;
+
+        private Writer(Path file) throws IOException
+        {
+            channel = FileChannel.open(file,
+                                       StandardOpenOption.CREATE,
+                                       StandardOpenOption.TRUNCATE_EXISTING,
+                                       StandardOpenOption.WRITE);
+            written = new ArrayList<>();
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.put(MAGIC);
+            header.putShort((short) VERSION);
+            header.putLong(0);
+            header.flip();
+            while (header.hasRemaining())
+                channel.write(header);
+        }
+
+        /**
+         * 开始写入数据块，返回的输出流在 {@link #endChunk()} 之前有效，不要关闭。
+         */
+        public DataOutput beginChunk(String name) throws IOException
+        {
+            if (chunkName != null)
+                throw new IllegalStateException("上一个数据块尚未结束：" + chunkName);
+
+            chunkName = Objects.requireNonNull(name);
+            chunkOffset = channel.position();
+            OutputStream file = new BufferedOutputStream(Channels.newOutputStream(channel), 65536);
+            deflater = new DeflaterOutputStream(file, new Deflater(Deflater.BEST_SPEED), 65536);
+            rawCounter = new CountingOutputStream(deflater);
+            output = new DataOutputStream(rawCounter);
+            return output;
+        }
+
+        public void endChunk() throws IOException
+        {
+            if (chunkName == null)
+                throw new IllegalStateException("没有正在写入的数据块");
+
+            output.flush();
+            deflater.finish();
+            deflater.flush();
+            written.add(new Chunk(chunkName, chunkOffset, channel.position() - chunkOffset, rawCounter.count));
+
+            chunkName = null;
+            output = null;
+            deflater = null;
+            rawCounter = null;
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            try
+            {
+                if (chunkName != null)
+                    endChunk();
+
+                long directoryOffset = channel.position();
+                ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+                DataOutputStream out = new DataOutputStream(buffer);
+                out.writeInt(written.size());
+                for (Chunk chunk : written)
+                {
+                    out.writeUTF(chunk.name);
+                    out.writeLong(chunk.offset);
+                    out.writeLong(chunk.compressedLength);
+                    out.writeLong(chunk.rawLength);
+                }
+                writeFully(ByteBuffer.wrap(buffer.toByteArray()), directoryOffset);
+
+                ByteBuffer offset = ByteBuffer.allocate(8);
+                offset.putLong(directoryOffset);
+                offset.flip();
+                writeFully(offset, MAGIC.length + 2);
+                channel.force(false);
+            } finally
+            {
+                channel.close();
+            }
+        }
+
+        private void writeFully(ByteBuffer buffer, long position) throws IOException
+        {
+            while (buffer.hasRemaining())
+                position += channel.write(buffer, position);
+        }
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream
+    {
+        private long count;
+
+        private CountingOutputStream(OutputStream out)
+        {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException
+        {
+            out.write(b);
+            count += 1;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException
+        {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+
+    private static final class BufferInputStream extends InputStream
+    {
+        private final ByteBuffer buffer;
+
+        private BufferInputStream(ByteBuffer buffer)
+        {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read()
+        {
+            return buffer.hasRemaining() ? (buffer.get() & 0xFF) : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len)
+        {
+            if (!buffer.hasRemaining())
+                return -1;
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public int available()
+        {
+            return buffer.remaining();
+        }
+    }
+}
@@ -0,0 +1,647 @@
+/*
+ *  Copyright (c) M2TK Project. All rights reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package m2tk.assistant.app.kernel.service;
+
+import lombok.extern.slf4j.Slf4j;
+import m2tk.assistant.api.domain.StreamSource;
+import m2tk.assistant.api.domain.TR290Event;
+import org.noear.solon.annotation.Component;
+import org.noear.solon.annotation.Inject;
+
+import javax.sql.DataSource;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.*;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.FutureTask;
+
+/**
+ * 会话存档的读写
+ * <p>
+ * 数据库中的分析数据按表写成列式数据块：每 {@value #ROW_GROUP_SIZE} 行为一组，组内逐列编码，
+ * 整数和时间按差值变长编码，布尔值按位存储，字符串使用组内字典。内存中的统计（PCR、流密度、EPG、捕获包）
+ * 使用各自的紧凑格式。TR290错误只保存内存中的汇总，旧版本存档中的错误明细在载入时转为汇总。
+ * <p>
+ * 载入存档时新建一个数据源，先导入体积较小的表和内存统计，私有段和捕获包登记为延迟任务，
+ * 在首次查询时才从存档中读取。
+ */
+@Slf4j
+@Component
+public class SessionArchiver
+{
+    private static final int ROW_GROUP_SIZE = 4096;
+    private static final String TABLE_PREFIX = "table:";
+    private static final String SOURCE_TABLE = "t_stream_source";
+    private static final String SECTION_TABLE = "t_private_section";
+
+    // 导入顺序需保证被引用的表在前。
+    private static final List<String> TABLES = List.of("t_elementary_stream",
+                                                       "t_mpeg_program",
+                                                       "t_program_elementary_mapping",
+                                                       "t_ca_stream",
+                                                       "t_si_network",
+                                                       "t_si_multiplex",
+                                                       "t_multiplex_service_mapping",
+                                                       "t_si_service",
+                                                       "t_si_bouquet",
+                                                       "t_bouquet_service_mapping",
+                                                       "t_si_datetime",
+                                                       "t_table_version",
+                                                       "t_tr290_event");
+    // 引用字段及其指向的表，导入时换成新记录的编号。
+    private static final Map<String, String> REFERENCES = Map.of("program_ref", "t_mpeg_program",
+                                                                 "network_ref", "t_si_network",
+                                                                 "multiplex_ref", "t_si_multiplex",
+                                                                 "bouquet_ref", "t_si_bouquet");
+    private static final Set<String> REFERENCED_TABLES = Set.copyOf(REFERENCES.values());
+
+    private static final byte T_INT = 1;
+    private static final byte T_LONG = 2;
+    private static final byte T_BOOLEAN = 3;
+    private static final byte T_DOUBLE = 4;
+    private static final byte T_STRING = 5;
+    private static final byte T_BYTES = 6;
+    private static final byte T_TIMESTAMP = 7;
+
+    @Inject
+    private M2TKDatabaseService database;
+    @Inject("m2tk")
+    private DataSource dataSource;
+
+    private interface ChunkWriter
+    {
+        void write(DataOutput out) throws IOException;
+    }
+
+    private interface ChunkReader
+    {
+        void read(DataInput in) throws IOException;
+    }
+
+    /**
+     * 把数据源的全部分析数据写入存档文件（已有文件将被覆盖）
+     * @param sourceRef 数据源编号
+     * @param file 存档文件
+     */
+    public void save(int sourceRef, Path file) throws IOException
+    {
+        long t0 = System.currentTimeMillis();
+        database.checkpointElementaryStreams(sourceRef);
+
+        try (Connection connection = dataSource.getConnection();
+             SessionArchive.Writer writer = SessionArchive.create(file))
+        {
+            writeTable(writer, connection, SOURCE_TABLE,
+                       "SELECT * FROM `PUBLIC`.`t_stream_source` WHERE `id` = ?", sourceRef);
+            for (String table : TABLES)
+                writeTable(writer, connection, table, selectBySource(table), sourceRef);
+            writeTable(writer, connection, SECTION_TABLE, selectBySource(SECTION_TABLE), sourceRef);
+
+            writeChunk(writer, "pcr", database.getPCRStatsEngine(sourceRef)::writeTo);
+            writeChunk(writer, "density", database.getDensityStore(sourceRef)::writeTo);
+            writeChunk(writer, "epg", database.getEPGStore(sourceRef)::writeTo);
+            writeChunk(writer, "tr290", database.getTR290ErrorAggregator(sourceRef)::writeTo);
+            writeChunk(writer, "capture.ts", database.getTransportPacketStore(sourceRef)::writeTo);
+            writeChunk(writer, "capture.pes", database.getPESPacketStore(sourceRef)::writeTo);
+            writeChunk(writer, "sections.filtered", database.getFilteredSectionStore(sourceRef)::writeTo);
+        } catch (IOException | SQLException ex)
+        {
+            Files.deleteIfExists(file);
+            throw (ex instanceof IOException io) ? io : new IOException("无法读取分析数据：" + ex.getMessage(), ex);
+        }
+
+        log.info("数据源 {} 已存档：{}，用时 {}ms", sourceRef, file, System.currentTimeMillis() - t0);
+    }
+
+    /**
+     * 载入存档，恢复为一个新的数据源
+     * @param file 存档文件
+     * @return 新数据源
+     */
+    public StreamSource load(Path file) throws IOException
+    {
+        long t0 = System.currentTimeMillis();
+        SessionArchive archive = SessionArchive.open(file);
+        if (!archive.hasChunk(TABLE_PREFIX + SOURCE_TABLE))
+            throw new IOException("存档中没有数据源信息");
+
+        int sourceRef;
+        try (Connection connection = dataSource.getConnection())
+        {
+            connection.setAutoCommit(false);
+            try
+            {
+                Map<String, Map<Long, Long>> keys = new HashMap<>();
+                importTable(archive, connection, SOURCE_TABLE, -1, keys);
+                sourceRef = keys.get(SOURCE_TABLE).values().iterator().next().intValue();
+                for (String table : TABLES)
+                    importTable(archive, connection, table, sourceRef, keys);
+                connection.commit();
+            } catch (IOException | SQLException | RuntimeException ex)
+            {
+                connection.rollback();
+                throw ex;
+            }
+        } catch (SQLException ex)
+        {
+            throw new IOException("无法导入存档数据：" + ex.getMessage(), ex);
+        }
+
+        try
+        {
+            readChunk(archive, "pcr", database.getPCRStatsEngine(sourceRef)::readFrom);
+            readChunk(archive, "density", database.getDensityStore(sourceRef)::readFrom);
+            readChunk(archive, "epg", database.getEPGStore(sourceRef)::readFrom);
+            if (archive.hasChunk("tr290"))
+                readChunk(archive, "tr290", database.getTR290ErrorAggregator(sourceRef)::readFrom);
+            else
+                restoreTR290Events(sourceRef);
+        } catch (IOException ex)
+        {
+            database.purgeSourceData(sourceRef);
+            throw ex;
+        }
+
+        int ref = sourceRef;
+        database.deferLoading(sourceRef, new FutureTask<>(() -> importBulkData(archive, ref), null));
+
+        log.info("已载入存档：{}（数据源 {}），用时 {}ms", file, sourceRef, System.currentTimeMillis() - t0);
+        return SourceScope.bind(database, sourceRef).getCurrentStreamSource();
+    }
+
+    /**
+     * 旧版本存档的TR290错误逐条保存在表中，载入后转为内存汇总，并删除导入的明细记录。
+     */
+    private void restoreTR290Events(int sourceRef) throws IOException
+    {
+        TR290ErrorAggregator aggregator = database.getTR290ErrorAggregator(sourceRef);
+        try (Connection connection = dataSource.getConnection())
+        {
+            try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT `type`, `description`, `pid`, `pct`, `timepoint` FROM `PUBLIC`.`t_tr290_event` WHERE `source_ref` = ? ORDER BY `id`"))
+            {
+                statement.setInt(1, sourceRef);
+                try (ResultSet rs = statement.executeQuery())
+                {
+                    while (rs.next())
+                    {
+                        TR290Event event = new TR290Event();
+                        event.setType(rs.getString(1));
+                        event.setDescription(rs.getString(2));
+                        event.setStream(rs.getInt(3));
+                        event.setPosition(rs.getLong(4));
+                        event.setTimestamp(rs.getTimestamp(5)
+                                             .toLocalDateTime()
+                                             .atZone(ZoneId.systemDefault())
+                                             .toOffsetDateTime());
+                        aggregator.add(event);
+                    }
+                }
+            }
+            try (PreparedStatement statement = connection.prepareStatement(
+                "DELETE FROM `PUBLIC`.`t_tr290_event` WHERE `source_ref` = ?"))
+            {
+                statement.setInt(1, sourceRef);
+                statement.executeUpdate();
+            }
+        } catch (SQLException ex)
+        {
+            throw new IOException("无法导入TR290错误记录：" + ex.getMessage(), ex);
+        }
+    }
+
+    private void importBulkData(SessionArchive archive, int sourceRef)
+    {
+        long t0 = System.currentTimeMillis();
+        try (Connection connection = dataSource.getConnection())
+        {
+            connection.setAutoCommit(false);
+            importTable(archive, connection, SECTION_TABLE, sourceRef, new HashMap<>());
+            if (!archive.hasChunk("sections.filtered"))
+                restoreFilteredSections(connection, sourceRef);
+            connection.commit();
+
+            readChunk(archive, "capture.ts", database.getTransportPacketStore(sourceRef)::readFrom);
+            readChunk(archive, "capture.pes", database.getPESPacketStore(sourceRef)::readFrom);
+            readChunk(archive, "sections.filtered", database.getFilteredSectionStore(sourceRef)::readFrom);
+        } catch (IOException | SQLException ex)
+        {
+            throw new IllegalStateException("无法载入存档中的私有段和捕获包：" + ex.getMessage(), ex);
+        }
+        log.info("已载入存档中的私有段和捕获包（数据源 {}），用时 {}ms", sourceRef, System.currentTimeMillis() - t0);
+    }
+
+    /**
+     * 旧版本存档的过滤私有段和其他私有段一起保存在表中，载入后移入定长存储，并删除导入的记录。
+     */
+    private void restoreFilteredSections(Connection connection, int sourceRef) throws SQLException
+    {
+        SectionRingStore store = database.getFilteredSectionStore(sourceRef);
+        try (PreparedStatement statement = connection.prepareStatement(
+            "SELECT `pid`, `pct`, `encoding` FROM `PUBLIC`.`t_private_section` WHERE `source_ref` = ? AND `tag` = 'UserPrivate' ORDER BY `id`"))
+        {
+            statement.setInt(1, sourceRef);
+            try (ResultSet rs = statement.executeQuery())
+            {
+                while (rs.next())
+                    store.add(rs.getInt(1), rs.getLong(2), rs.getBytes(3));
+            }
+        }
+        try (PreparedStatement statement = connection.prepareStatement(
+            "DELETE FROM `PUBLIC`.`t_private_section` WHERE `source_ref` = ? AND `tag` = 'UserPrivate'"))
+        {
+            statement.setInt(1, sourceRef);
+            statement.executeUpdate();
+        }
+    }
+
+    private static String selectBySource(String table)
+    {
+        // 基本流表没有自增编号，按PID排序。
+        String order = table.equals("t_elementary_stream") ? "`pid`" : "`id`";
+        return "SELECT * FROM `PUBLIC`.`" + table + "` WHERE `source_ref` = ? ORDER BY " + order;
+    }
+
+    private static void writeChunk(SessionArchive.Writer writer, String name, ChunkWriter content) throws IOException
+    {
+        content.write(writer.beginChunk(name));
+        writer.endChunk();
+    }
+
+    private static void readChunk(SessionArchive archive, String name, ChunkReader content) throws IOException
+    {
+        try (DataInputStream in = archive.openChunk(name))
+        {
+            if (in != null)
+                content.read(in);
+        }
+    }
+
+    private static void writeTable(SessionArchive.Writer writer, Connection connection,
+                                   String table, String sql, int sourceRef) throws IOException, SQLException
+    {
+        try (PreparedStatement statement = connection.prepareStatement(sql))
+        {
+            statement.setInt(1, sourceRef);
+            try (ResultSet rs = statement.executeQuery())
+            {
+                ResultSetMetaData meta = rs.getMetaData();
+                int columns = meta.getColumnCount();
+                byte[] types = new byte[columns];
+
+                DataOutput out = writer.beginChunk(TABLE_PREFIX + table);
+                out.writeShort(columns);
+                for (int c = 0; c < columns; c++)
+                {
+                    types[c] = typeOf(meta.getColumnType(c + 1));
+                    if (types[c] == 0)
+                        throw new IOException("不支持的字段类型：" + table + "." + meta.getColumnLabel(c + 1));
+                    out.writeUTF(meta.getColumnLabel(c + 1).toLowerCase());
+                    out.writeByte(types[c]);
+                }
+
+                Object[][] group = new Object[columns][ROW_GROUP_SIZE];
+                int rows = 0;
+                while (rs.next())
+                {
+                    for (int c = 0; c < columns; c++)
+                        group[c][rows] = readValue(rs, c + 1, types[c]);
+                    if (++rows == ROW_GROUP_SIZE)
+                    {
+                        writeRowGroup(out, types, group, rows);
+                        rows = 0;
+                    }
+                }
+                if (rows > 0)
+                    writeRowGroup(out, types, group, rows);
+                out.writeInt(0);
+                writer.endChunk();
+            }
+        }
+    }
+
+    private static void importTable(SessionArchive archive, Connection connection, String table,
+                                    int sourceRef, Map<String, Map<Long, Long>> keys) throws IOException, SQLException
+    {
+        try (DataInputStream in = archive.openChunk(TABLE_PREFIX + table))
+        {
+            if (in == null)
+                return;
+
+            int columns = in.readUnsignedShort();
+            String[] names = new String[columns];
+            byte[] types = new byte[columns];
+            for (int c = 0; c < columns; c++)
+            {
+                names[c] = in.readUTF();
+                types[c] = in.readByte();
+            }
+
+            // 自增编号由数据库重新生成，数据源编号和引用字段换成新值。
+            int idColumn = -1;
+            StringJoiner fields = new StringJoiner(", ");
+            StringJoiner params = new StringJoiner(", ");
+            for (int c = 0; c < columns; c++)
+            {
+                if (names[c].equals("id"))
+                {
+                    idColumn = c;
+                    continue;
+                }
+                fields.add("`" + names[c] + "`");
+                params.add("?");
+            }
+            String sql = "INSERT INTO `PUBLIC`.`" + table + "` (" + fields + ") VALUES (" + params + ")";
+
+            boolean keyed = idColumn >= 0 && (REFERENCED_TABLES.contains(table) || table.equals(SOURCE_TABLE));
+            Map<Long, Long> keyMap = new HashMap<>();
+            keys.put(table, keyMap);
+
+            try (PreparedStatement statement = keyed
+                                               ? connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)
+                                               : connection.prepareStatement(sql))
+            {
+                int rows;
+                while ((rows = in.readInt()) > 0)
+                {
+                    Object[][] group = readRowGroup(in, types, rows);
+                    for (int r = 0; r < rows; r++)
+                    {
+                        int index = 1;
+                        for (int c = 0; c < columns; c++)
+                        {
+                            if (c == idColumn)
+                                continue;
+
+                            Object value = group[c][r];
+                            if (names[c].equals(SourceScope.COLUMN))
+                                value = (long) sourceRef;
+                            else if (value != null && REFERENCES.containsKey(names[c]))
+                                value = keys.getOrDefault(REFERENCES.get(names[c]), Map.of())
+                                            .getOrDefault((Long) value, (Long) value);
+                            setValue(statement, index++, types[c], value);
+                        }
+
+                        if (!keyed)
+                        {
+                            statement.addBatch();
+                            continue;
+                        }
+
+                        statement.executeUpdate();
+                        try (ResultSet generated = statement.getGeneratedKeys())
+                        {
+                            if (generated.next())
+                                keyMap.put((Long) group[idColumn][r], generated.getLong(1));
+                        }
+                    }
+                    if (!keyed)
+                        statement.executeBatch();
+                }
+            }
+        }
+    }
+
+    private static byte typeOf(int sqlType)
+    {
+        return switch (sqlType)
+        {
+            case Types.INTEGER, Types.SMALLINT, Types.TINYINT -> T_INT;
+            case Types.BIGINT -> T_LONG;
+            case Types.BOOLEAN, Types.BIT -> T_BOOLEAN;
+            case Types.DOUBLE, Types.FLOAT, Types.REAL -> T_DOUBLE;
+            case Types.VARCHAR, Types.CHAR, Types.LONGVARCHAR -> T_STRING;
+            case Types.VARBINARY, Types.BINARY, Types.LONGVARBINARY, Types.BLOB -> T_BYTES;
+            case Types.TIMESTAMP -> T_TIMESTAMP;
+            default -> 0;
+        };
+    }
+
+    private static Object readValue(ResultSet rs, int index, byte type) throws SQLException
+    {
+        Object value = switch (type)
+        {
+            case T_INT, T_LONG -> rs.getLong(index);
+            case T_BOOLEAN -> rs.getBoolean(index);
+            case T_DOUBLE -> rs.getDouble(index);
+            case T_STRING -> rs.getString(index);
+            case T_BYTES -> rs.getBytes(index);
+            default -> rs.getObject(index, LocalDateTime.class);
+        };
+        return rs.wasNull() ? null : value;
+    }
+
+    private static void setValue(PreparedStatement statement, int index, byte type, Object value) throws SQLException
+    {
+        if (value == null)
+        {
+            statement.setObject(index, null);
+            return;
+        }
+
+        switch (type)
+        {
+            case T_INT -> statement.setInt(index, ((Long) value).intValue());
+            case T_LONG -> statement.setLong(index, (Long) value);
+            case T_BOOLEAN -> statement.setBoolean(index, (Boolean) value);
+            case T_DOUBLE -> statement.setDouble(index, (Double) value);
+            case T_STRING -> statement.setString(index, (String) value);
+            case T_BYTES -> statement.setBytes(index, (byte[]) value);
+            default -> statement.setObject(index, value);
+        }
+    }
+
+    private static void writeRowGroup(DataOutput out, byte[] types, Object[][] group, int rows) throws IOException
+    {
+        out.writeInt(rows);
+        for (int c = 0; c < types.length; c++)
+        {
+            Object[] values = group[c];
+
+            byte[] nulls = null;
+            for (int r = 0; r < rows; r++)
+            {
+                if (values[r] != null)
+                    continue;
+                if (nulls == null)
+                    nulls = new byte[(rows + 7) / 8];
+                nulls[r >>> 3] |= (byte) (1 << (r & 7));
+            }
+            out.writeBoolean(nulls != null);
+            if (nulls != null)
+                out.write(nulls);
+
+            switch (types[c])
+            {
+                case T_INT, T_LONG, T_TIMESTAMP ->
+                {
+                    long previous = 0;
+                    for (int r = 0; r < rows; r++)
+                    {
+                        if (values[r] == null)
+                            continue;
+                        long value = (types[c] == T_TIMESTAMP)
+                                     ? toMicros((LocalDateTime) values[r])
+                                     : (Long) values[r];
+                        SessionArchive.writeVarLong(out, value - previous);
+                        previous = value;
+                    }
+                }
+                case T_BOOLEAN ->
+                {
+                    byte[] bits = new byte[(rows + 7) / 8];
+                    for (int r = 0; r < rows; r++)
+                    {
+                        if (Boolean.TRUE.equals(values[r]))
+                            bits[r >>> 3] |= (byte) (1 << (r & 7));
+                    }
+                    out.write(bits);
+                }
+                case T_DOUBLE ->
+                {
+                    for (int r = 0; r < rows; r++)
+                    {
+                        if (values[r] != null)
+                            out.writeDouble((Double) values[r]);
+                    }
+                }
+                case T_STRING ->
+                {
+                    Map<String, Integer> dictionary = new LinkedHashMap<>();
+                    for (int r = 0; r < rows; r++)
+                    {
+                        if (values[r] != null)
+                            dictionary.putIfAbsent((String) values[r], dictionary.size());
+                    }
+                    SessionArchive.writeVarLong(out, dictionary.size());
+                    for (String text : dictionary.keySet())
+                        out.writeUTF(text);
+                    for (int r = 0; r < rows; r++)
+                    {
+                        if (values[r] != null)
+                            SessionArchive.writeVarLong(out, dictionary.get((String) values[r]));
+                    }
+                }
+                default ->
+                {
+                    for (int r = 0; r < rows; r++)
+                    {
+                        if (values[r] == null)
+                            continue;
+                        byte[] bytes = (byte[]) values[r];
+                        SessionArchive.writeVarLong(out, bytes.length);
+                        out.write(bytes);
+                    }
+                }
+            }
+        }
+    }
+
+    private static Object[][] readRowGroup(DataInput in, byte[] types, int rows) throws IOException
+    {
+        Object[][] group = new Object[types.length][rows];
+        for (int c = 0; c < types.length; c++)
+        {
+            Object[] values = group[c];
+
+            boolean[] present = new boolean[rows];
+            Arrays.fill(present, true);
+            if (in.readBoolean())
+            {
+                byte[] nulls = new byte[(rows + 7) / 8];
+                in.readFully(nulls);
+                for (int r = 0; r < rows; r++)
+                    present[r] = (nulls[r >>> 3] & (1 << (r & 7))) == 0;
+            }
+
+            switch (types[c])
+            {
+                case T_INT, T_LONG, T_TIMESTAMP ->
+                {
+                    long previous = 0;
+                    for (int r = 0; r < rows; r++)
+                    {
+                        if (!present[r])
+                            continue;
+                        previous += SessionArchive.readVarLong(in);
+                        values[r] = (types[c] == T_TIMESTAMP) ? fromMicros(previous) : (Object) previous;
+                    }
+                }
+                case T_BOOLEAN ->
+                {
+                    byte[] bits = new byte[(rows + 7) / 8];
+                    in.readFully(bits);
+                    for (int r = 0; r < rows; r++)
+                    {
+                        if (present[r])
+                            values[r] = (bits[r >>> 3] & (1 << (r & 7))) != 0;
+                    }
+                }
+                case T_DOUBLE ->
+                {
+                    for (int r = 0; r < rows; r++)
+                    {
+                        if (present[r])
+                            values[r] = in.readDouble();
+                    }
+                }
+                case T_STRING ->
+                {
+                    String[] dictionary = new String[(int) SessionArchive.readVarLong(in)];
+                    for (int i = 0; i < dictionary.length; i++)
+                        dictionary[i] = in.readUTF();
+                    for (int r = 0; r < rows; r++)
+                    {
+                        if (present[r])
+                            values[r] = dictionary[(int) SessionArchive.readVarLong(in)];
+                    }
+                }
+                case T_BYTES ->
+                {
+                    for (int r = 0; r < rows; r++)
+                    {
+                        if (!present[r])
+                            continue;
+                        byte[] bytes = new byte[(int) SessionArchive.readVarLong(in)];
+                        in.readFully(bytes);
+                        values[r] = bytes;
+                    }
+                }
+                default -> throw new IOException("不支持的字段类型：" + types[c]);
+            }
+        }
+        return group;
+    }
+
+    private static long toMicros(LocalDateTime time)
+    {
+        return time.toEpochSecond(ZoneOffset.UTC) * 1_000_000L + time.getNano() / 1000;
+    }
+
+    private static LocalDateTime fromMicros(long micros)
+    {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(micros, 1_000_000L),
+                                           (int) Math.floorMod(micros, 1_000_000L) * 1000,
+                                           ZoneOffset.UTC);
+    }
+}
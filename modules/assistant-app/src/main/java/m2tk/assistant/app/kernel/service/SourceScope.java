@@ -0,0 +1,109 @@
+/*
+ *  Copyright (c) M2TK Project. All rights reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package m2tk.assistant.app.kernel.service;
+
+import m2tk.assistant.api.M2TKDatabase;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.function.IntSupplier;
+
+/**
+ * 数据源作用域
+ * <p>
+ * 多个数据源同时分析时，各数据源的分析数据保存在同一组表中，以 {@code source_ref} 列区分。
+ * 当前线程设置作用域后，经 MyBatis-Plus 执行的读写语句都会自动附加（或填充）对应的 {@code source_ref} 条件，
+ * 未设置作用域时不做任何限制。
+ */
+public final class SourceScope
+{
+    public static final String COLUMN = "source_ref";
+    public static final int UNDEFINED = -1;
+
+    private static final ThreadLocal<Integer> CURRENT = new ThreadLocal<>();
+
+    private SourceScope()
+    {
+    }
+
+    /**
+     * @return 当前线程的数据源编号，未设置时返回 {@link #UNDEFINED}
+     */
+    public static int current()
+    {
+        Integer sourceRef = CURRENT.get();
+        return (sourceRef == null) ? UNDEFINED : sourceRef;
+    }
+
+    public static boolean isDefined()
+    {
+        return CURRENT.get() != null;
+    }
+
+    /**
+     * 生成限定作用域的数据库代理，每次调用都在指定数据源的作用域内执行。
+     * @param database 原数据库
+     * @param sourceRef 数据源编号（每次调用时获取），返回 {@link #UNDEFINED} 时不限定作用域
+     * @return 数据库代理
+     */
+    public static M2TKDatabase bind(M2TKDatabase database, IntSupplier sourceRef)
+    {
+        InvocationHandler handler = (proxy, method, args) -> {
+            if (method.getDeclaringClass() == Object.class)
+                return invokeObjectMethod(proxy, method, args);
+
+            int ref = sourceRef.getAsInt();
+            Integer previous = CURRENT.get();
+            if (ref == UNDEFINED)
+                CURRENT.remove();
+            else
+                CURRENT.set(ref);
+            try
+            {
+                return method.invoke(database, args);
+            } catch (InvocationTargetException ex)
+            {
+                throw ex.getCause();
+            } finally
+            {
+                if (previous == null)
+                    CURRENT.remove();
+                else
+                    CURRENT.set(previous);
+            }
+        };
+        return (M2TKDatabase) Proxy.newProxyInstance(M2TKDatabase.class.getClassLoader(),
+                                                     new Class<?>[]{M2TKDatabase.class},
+                                                     handler);
+    }
+
+    public static M2TKDatabase bind(M2TKDatabase database, int sourceRef)
+    {
+        return bind(database, () -> sourceRef);
+    }
+
+    private static Object invokeObjectMethod(Object proxy, Method method, Object[] args)
+    {
+        return switch (method.getName())
+        {
+            case "equals" -> proxy == args[0];
+            case "hashCode" -> System.identityHashCode(proxy);
+            default -> "SourceScope$Database@" + Integer.toHexString(System.identityHashCode(proxy));
+        };
+    }
+}
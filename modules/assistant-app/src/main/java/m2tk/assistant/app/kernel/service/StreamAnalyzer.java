@@ -19,9 +19,14 @@ import cn.hutool.core.util.StrUtil;
 import com.google.common.eventbus.EventBus;
 import lombok.extern.slf4j.Slf4j;
 import m2tk.assistant.api.M2TKDatabase;
+import m2tk.assistant.api.SectionBus;
 import m2tk.assistant.api.Tracer;
 import m2tk.assistant.api.domain.StreamSource;
 import m2tk.assistant.api.event.SourceStateEvent;
+import m2tk.assistant.app.kernel.io.MappedFileRxChannel;
+import m2tk.assistant.app.kernel.io.MulticastRxChannel;
+import m2tk.assistant.app.kernel.metrics.PerformanceMetrics;
+import m2tk.assistant.app.kernel.metrics.SessionMetrics;
 import m2tk.io.ProtocolManager;
 import m2tk.io.RxChannel;
 import m2tk.multiplex.DemuxStatus;
@@ -30,54 +35,87 @@ import m2tk.multiplex.TSDemuxEvent;
 import org.noear.solon.annotation.Component;
 import org.noear.solon.annotation.Inject;
 
+import javax.sql.DataSource;
 import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
+import java.util.function.Supplier;
 
+/**
+ * 码流分析器
+ * <p>
+ * 每个数据源在独立的分析会话中分析，多个会话可以同时运行，共享一个有界线程池（每个运行中的会话占用一个线程）。
+ * 会话以数据源编号区分，界面通过 {@link #switchSession(int)} 选择当前显示的会话。
+ */
 @Slf4j
 @Component
 public class StreamAnalyzer
 {
-    private final ExecutorService executor;
-    private final TSDemux demux;
-    private volatile boolean running;
+    private static final int DEFAULT_MAX_SESSIONS = 16;
+
+    private final Map<Integer, AnalysisSession> sessions;
+    private ThreadPoolExecutor executor;
+    private int maxSessions;
+    private volatile int currentSourceId;
 
     @Inject
     private EventBus bus;
     @Inject
-    private M2TKDatabase database;
-
-    private RxChannel input;
+    private M2TKDatabaseService database;
+    @Inject("m2tk")
+    private DataSource dataSource;
+    @Inject
+    private SessionArchiver archiver;
+    @Inject
+    private SegmentMerger merger;
+    @Inject
+    private PerformanceMetrics performanceMetrics;
 
     public StreamAnalyzer()
     {
-        executor = Executors.newSingleThreadExecutor();
-        demux = TSDemux.newDefaultDemux(executor);
+        sessions = new LinkedHashMap<>();
+        currentSourceId = SourceScope.UNDEFINED;
     }
 
     /**
-     * 开始分析输入流
+     * 开始分析输入流（新建分析会话，并设为当前会话）
      * @param uri 输入流地址
-     * @param tracers 相关码流分析器
+     * @param tracers 相关码流分析器，每个会话需使用独立的分析器实例
      * @param consumer 解复用消息监听器
      * @return 是否开始分析任务
      */
-    public boolean start(String uri, List<Tracer> tracers, Consumer<DemuxStatus> consumer)
+    public synchronized boolean start(String uri, List<Tracer> tracers, Consumer<DemuxStatus> consumer)
     {
+        ThreadPoolExecutor pool = getExecutor();
+        if (sessions.size() >= maxSessions && !evictStoppedSession())
+        {
+            log.warn("同时分析的数据源已达上限（{}），无法开始新的分析", maxSessions);
+            return false;
+        }
+
+        RxChannel input;
         try
         {
-            input = ProtocolManager.openRxChannel(uri);
+            input = openInputChannel(uri);
         } catch (Exception ex)
         {
             log.error("无法获取输入通道：{}", ex.getMessage());
-            input = null;
             return false;
         }
 
-        demux.reset();
-
         // 增加途径网口信息，用于调试。
         String sourceName = (String) input.query("source name");
         String nifName = (String) input.query("nif");
@@ -85,51 +123,474 @@ public class StreamAnalyzer
             sourceName = String.format("%s (%s)", sourceName, nifName);
 
         StreamSource source = database.beginDiagnosis(sourceName, uri);
-        tracers.forEach(tracer -> tracer.configure(source, demux, database));
+        SessionMetrics metrics = performanceMetrics.createSession(source.getId(), sourceName,
+                                                                  Boolean.parseBoolean(database.getPreference("analyzer.metrics.enabled", "true")));
+        M2TKDatabase scoped = SourceScope.bind(database, source.getId());
+        WriteBehindDatabase writeBehind = createWriteBehind(scoped, source.getId());
+        M2TKDatabase target = metrics.instrument((writeBehind != null) ? writeBehind : scoped);
+
+        TSDemux demux = TSDemux.newDefaultDemux(pool);
+        demux.registerRawChannel(payload -> metrics.countPacket());
+        TracerPipeline pipeline = createPipeline(demux, tracers.size());
+        if (pipeline == null)
+        {
+            SectionBus sectionBus = SectionBus.create(metrics.instrumentSectionBus(demux));
+            for (Tracer tracer : tracers)
+            {
+                String name = tracer.getClass().getSimpleName();
+                tracer.configure(source, metrics.instrument(demux, name), metrics.instrument(sectionBus, name), target);
+            }
+        } else
+        {
+            // 分段总线在解复用线程上完成解析和分发，分段消息再投递到各分析器的工作线程。
+            SectionBus sectionBus = SectionBus.create(metrics.instrumentSectionBus(pipeline.bindDirect()));
+            for (int i = 0; i < tracers.size(); i++)
+            {
+                int index = i;
+                String name = tracers.get(i).getClass().getSimpleName();
+                tracers.get(i).configure(source,
+                                         metrics.instrument(pipeline.bind(i), name),
+                                         sectionBus.withDispatcher(listener -> pipeline.dispatch(index, metrics.timed(name, listener))),
+                                         target);
+            }
+            metrics.bindQueueFill(pipeline::getQueueFill);
+        }
+        if (writeBehind != null)
+            metrics.bindWriteQueueDepth(writeBehind::getQueueDepth);
+        if (input instanceof MulticastRxChannel multicast)
+            metrics.bindInput(multicast);
+        metrics.bindDroppedMessages(() -> ((pipeline == null) ? 0 : pipeline.getDroppedCount()) +
+                                          ((writeBehind == null) ? 0 : writeBehind.getDroppedWrites()));
+
+        AnalysisSession session = new AnalysisSession(source, input, demux, pipeline, writeBehind);
+        sessions.put(session.getSourceId(), session);
+        currentSourceId = session.getSourceId();
+        session.start(consumer, this::onSessionStopped);
+
+        bus.post(new SourceStateEvent(SourceStateEvent.ATTACHED, session.getSourceId()));
+        log.info("开始分析：[{}] {}", session.getSourceId(), sourceName);
+
+        return true;
+    }
+
+    /**
+     * 分段并行分析本地文件（新建分析会话，并设为当前会话）
+     * <p>
+     * 文件按包边界切成若干段（最多 {@code analyzer.segmented.parallelism} 段，默认为处理器数量），各段同时分析，
+     * 全部结束后合并为一个数据源。文件较小时只分一段，等同于普通分析。
+     * @param uri 本地文件地址（file:）
+     * @param tracerFactory 分析器工厂，每个分段需使用一组新的分析器实例
+     * @param consumer 解复用消息监听器
+     * @return 是否开始分析任务
+     */
+    public synchronized boolean startSegmented(String uri, Supplier<List<Tracer>> tracerFactory, Consumer<DemuxStatus> consumer)
+    {
+        if (!StrUtil.startWithIgnoreCase(uri, "file:"))
+        {
+            log.warn("分段分析只支持本地文件：{}", uri);
+            return false;
+        }
+
+        getExecutor();
+        if (sessions.size() >= maxSessions && !evictStoppedSession())
+        {
+            log.warn("同时分析的数据源已达上限（{}），无法开始新的分析", maxSessions);
+            return false;
+        }
+
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        try
+        {
+            parallelism = Integer.parseInt(database.getPreference("analyzer.segmented.parallelism",
+                                                                  String.valueOf(parallelism)));
+        } catch (NumberFormatException ex)
+        {
+            log.warn("分段分析并行度无效，使用默认值：{}", ex.getMessage());
+        }
+
+        Path file = Paths.get(URI.create(uri));
+        StreamSource source = database.beginDiagnosis(file.getFileName().toString(), uri);
+        SegmentedAnalysis analysis;
+        try
+        {
+            analysis = SegmentedAnalysis.create(database, merger, source, file, Math.max(1, parallelism));
+        } catch (Exception ex)
+        {
+            log.error("无法切分文件 {}：{}", file, ex.getMessage());
+            database.dropSource(source.getId());
+            return false;
+        }
 
-        demux.registerEventListener(new EventFilter<>(DemuxStatus.class, consumer));
-        demux.registerEventListener(new EventFilter<>(DemuxStatus.class, this::closeChannelWhenDemuxStopped));
+        SessionMetrics metrics = performanceMetrics.createSession(source.getId(), source.getName(),
+                                                                  Boolean.parseBoolean(database.getPreference("analyzer.metrics.enabled", "true")));
 
-        demux.attach(input);
+        AnalysisSession session = new AnalysisSession(source, analysis);
+        sessions.put(session.getSourceId(), session);
+        currentSourceId = session.getSourceId();
+        session.startSegmented(tracerFactory, metrics, consumer, this::onSessionStopped);
 
-        running = true;
-        bus.post(new SourceStateEvent(SourceStateEvent.ATTACHED));
-        log.info("开始分析");
+        bus.post(new SourceStateEvent(SourceStateEvent.ATTACHED, session.getSourceId()));
+        log.info("开始分段分析：[{}] {}，共 {} 段", session.getSourceId(), source.getName(), analysis.getSegmentCount());
 
         return true;
     }
 
+    /**
+     * 打开会话存档（新建一个只读会话，并设为当前会话）
+     * @param file 存档文件
+     * @return 是否打开成功
+     */
+    public boolean openArchive(Path file)
+    {
+        synchronized (this)
+        {
+            getExecutor();
+            if (sessions.size() >= maxSessions && !evictStoppedSession())
+            {
+                log.warn("同时分析的数据源已达上限（{}），无法打开存档", maxSessions);
+                return false;
+            }
+        }
+
+        StreamSource source;
+        try
+        {
+            source = archiver.load(file);
+        } catch (IOException ex)
+        {
+            log.error("无法打开存档 {}：{}", file, ex.getMessage(), ex);
+            return false;
+        }
+
+        AnalysisSession session = AnalysisSession.archived(source, file);
+        synchronized (this)
+        {
+            sessions.put(session.getSourceId(), session);
+            currentSourceId = session.getSourceId();
+        }
+
+        bus.post(new SourceStateEvent(SourceStateEvent.SWITCHED, session.getSourceId()));
+        log.info("打开存档：[{}] {}", session.getSourceId(), file);
+        return true;
+    }
+
+    /**
+     * 保存会话存档
+     * @param sourceId 数据源编号
+     * @param file 存档文件
+     * @return 是否保存成功
+     */
+    public boolean saveArchive(int sourceId, Path file)
+    {
+        try
+        {
+            archiver.save(sourceId, file);
+            return true;
+        } catch (IOException ex)
+        {
+            log.error("无法保存存档 {}：{}", file, ex.getMessage(), ex);
+            return false;
+        }
+    }
+
+    /**
+     * 停止当前会话
+     */
     public void stop()
     {
-        demux.detach();
+        stop(currentSourceId);
+    }
+
+    public synchronized void stop(int sourceId)
+    {
+        AnalysisSession session = sessions.get(sourceId);
+        if (session != null)
+            session.stop();
+    }
+
+    /**
+     * 关闭会话并清除其分析数据
+     * @param sourceId 数据源编号
+     */
+    public void closeSession(int sourceId)
+    {
+        AnalysisSession session;
+        synchronized (this)
+        {
+            session = sessions.remove(sourceId);
+            if (session == null)
+                return;
+            if (currentSourceId == sourceId)
+                currentSourceId = sessions.isEmpty()
+                                  ? SourceScope.UNDEFINED
+                                  : sessions.keySet().stream().reduce((a, b) -> b).orElseThrow();
+        }
+
+        session.shutdown();
+        database.purgeSourceData(sourceId);
+        performanceMetrics.removeSession(sourceId);
+        bus.post(new SourceStateEvent(SourceStateEvent.SWITCHED, currentSourceId));
+        log.info("关闭分析会话：[{}] {}", sourceId, session.getSourceName());
+    }
+
+    /**
+     * 切换当前会话，界面显示的数据随之切换。
+     * @param sourceId 数据源编号
+     * @return 是否切换成功
+     */
+    public boolean switchSession(int sourceId)
+    {
+        synchronized (this)
+        {
+            if (!sessions.containsKey(sourceId))
+                return false;
+            if (currentSourceId == sourceId)
+                return true;
+            currentSourceId = sourceId;
+        }
+
+        bus.post(new SourceStateEvent(SourceStateEvent.SWITCHED, sourceId));
+        return true;
     }
 
-    public void shutdown()
+    public int getCurrentSourceId()
     {
-        demux.shutdown();
-        executor.shutdownNow();
+        return currentSourceId;
     }
 
+    public synchronized AnalysisSession getCurrentSession()
+    {
+        return sessions.get(currentSourceId);
+    }
+
+    public synchronized List<AnalysisSession> listSessions()
+    {
+        return new ArrayList<>(sessions.values());
+    }
+
+    public synchronized void shutdown()
+    {
+        for (AnalysisSession session : sessions.values())
+        {
+            session.shutdown();
+            performanceMetrics.removeSession(session.getSourceId());
+        }
+        sessions.clear();
+        if (executor != null)
+            executor.shutdownNow();
+    }
+
+    /**
+     * @return 当前会话是否正在分析
+     */
     public boolean isRunning()
     {
-        return running;
+        AnalysisSession session = getCurrentSession();
+        return session != null && session.isRunning();
+    }
+
+    public synchronized boolean isAnyRunning()
+    {
+        return sessions.values().stream().anyMatch(AnalysisSession::isRunning);
     }
 
-    private void closeChannelWhenDemuxStopped(DemuxStatus status)
+    private ThreadPoolExecutor getExecutor()
     {
-        if (!status.isRunning())
+        if (executor == null)
         {
             try
             {
-                input.close();
-            } catch (IOException ex)
+                maxSessions = Integer.parseInt(database.getPreference("analyzer.max-sessions",
+                                                                      String.valueOf(DEFAULT_MAX_SESSIONS)));
+            } catch (NumberFormatException ex)
+            {
+                log.warn("会话数量上限无效，使用默认值：{}", ex.getMessage());
+                maxSessions = DEFAULT_MAX_SESSIONS;
+            }
+            maxSessions = Math.max(1, maxSessions);
+
+            AtomicInteger counter = new AtomicInteger();
+            executor = new ThreadPoolExecutor(maxSessions, maxSessions,
+                                              60, TimeUnit.SECONDS,
+                                              new LinkedBlockingQueue<>(),
+                                              r -> {
+                                                  Thread thread = new Thread(r, "stream-analyzer-" + counter.incrementAndGet());
+                                                  thread.setDaemon(true);
+                                                  return thread;
+                                              });
+            executor.allowCoreThreadTimeOut(true);
+        }
+        return executor;
+    }
+
+    /**
+     * 会话数量达到上限时，关闭最早的已停止会话。
+     * @return 是否腾出了位置
+     */
+    private boolean evictStoppedSession()
+    {
+        for (AnalysisSession session : sessions.values())
+        {
+            if (!session.isRunning())
             {
-                log.error("关闭通道时异常：{}", ex.getMessage());
+                sessions.remove(session.getSourceId());
+                session.shutdown();
+                database.purgeSourceData(session.getSourceId());
+                performanceMetrics.removeSession(session.getSourceId());
+                log.info("会话数量已达上限，关闭已停止的会话：[{}] {}", session.getSourceId(), session.getSourceName());
+                return true;
             }
+        }
+        return false;
+    }
+
+    private void onSessionStopped(AnalysisSession session)
+    {
+        database.checkpointElementaryStreams(session.getSourceId());
+        bus.post(new SourceStateEvent(SourceStateEvent.DETACHED, session.getSourceId()));
+        log.info("停止分析：[{}] {}", session.getSourceId(), session.getSourceName());
+
+        if (Boolean.parseBoolean(database.getPreference("archive.auto-save", "false")))
+            autoSaveArchive(session);
+    }
+
+    /**
+     * 会话结束后自动存档（首选项 {@code archive.auto-save} 为 true 时，默认关闭；
+     * 目录：{@code archive.directory}，默认为工作目录下的 archives）
+     */
+    private void autoSaveArchive(AnalysisSession session)
+    {
+        String defaultDirectory = Paths.get(System.getProperty("user.dir"), "archives").toString();
+        Path directory = Paths.get(database.getPreference("archive.directory", defaultDirectory));
+        String name = String.format("%s_%s.%s",
+                                    LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss")),
+                                    session.getSourceName().replaceAll("[\\\\/:*?\"<>|\\s]+", "_"),
+                                    SessionArchive.FILE_EXTENSION);
+        try
+        {
+            Files.createDirectories(directory);
+            saveArchive(session.getSourceId(), directory.resolve(name));
+        } catch (IOException ex)
+        {
+            log.error("无法创建存档目录 {}：{}", directory, ex.getMessage());
+        }
+    }
 
-            running = false;
-            bus.post(new SourceStateEvent(SourceStateEvent.DETACHED));
-            log.info("停止分析");
+    /**
+     * 打开输入通道
+     * <p>
+     * 本地文件在启用内存映射时使用 {@link MappedFileRxChannel}，组播默认使用独立接收线程的 {@link MulticastRxChannel}，
+     * 其他输入仍由 {@link ProtocolManager} 打开。
+     * @param uri 输入流地址
+     * @return 输入通道
+     */
+    private RxChannel openInputChannel(String uri) throws Exception
+    {
+        if (StrUtil.startWithIgnoreCase(uri, "file:") &&
+            Boolean.parseBoolean(database.getPreference("input.file.memory-mapped", "false")))
+        {
+            return MappedFileRxChannel.open(Paths.get(URI.create(uri)));
+        }
+        if (StrUtil.startWithIgnoreCase(uri, "udp:") &&
+            Boolean.parseBoolean(database.getPreference("input.multicast.ingest.enabled", "true")))
+        {
+            return openMulticastChannel(uri);
+        }
+        return ProtocolManager.openRxChannel(uri);
+    }
+
+    private MulticastRxChannel openMulticastChannel(String uri) throws IOException
+    {
+        int receiveBufferSize = MulticastRxChannel.DEFAULT_RECEIVE_BUFFER_SIZE;
+        int ringSlots = MulticastRxChannel.DEFAULT_RING_SLOTS;
+        int datagramSize = MulticastRxChannel.DEFAULT_DATAGRAM_SIZE;
+        try
+        {
+            receiveBufferSize = Integer.parseInt(database.getPreference("input.multicast.receive-buffer-size",
+                                                                        String.valueOf(receiveBufferSize)));
+            ringSlots = Integer.parseInt(database.getPreference("input.multicast.ring-slots",
+                                                                String.valueOf(ringSlots)));
+            datagramSize = Integer.parseInt(database.getPreference("input.multicast.datagram-size",
+                                                                   String.valueOf(datagramSize)));
+        } catch (NumberFormatException ex)
+        {
+            log.warn("组播接收参数无效，使用默认值：{}", ex.getMessage());
+        }
+        return MulticastRxChannel.open(uri,
+                                       Math.max(64 * 1024, receiveBufferSize),
+                                       Math.max(256, ringSlots),
+                                       Math.max(1500, datagramSize));
+    }
+
+    /**
+     * 按首选项创建会话的回写数据库
+     * <p>
+     * 启用回写模式时，分析器的高频写操作经内存队列合并后批量提交，不再阻塞分析线程。
+     * @param scoped 限定在会话数据源作用域内的数据库
+     * @param sourceRef 数据源编号
+     * @return 回写数据库，未启用时返回 null
+     */
+    private WriteBehindDatabase createWriteBehind(M2TKDatabase scoped, int sourceRef)
+    {
+        if (!Boolean.parseBoolean(database.getPreference("database.write-behind.enabled", "false")))
+            return null;
+
+        int capacity = 100000;
+        long interval = 200;
+        try
+        {
+            capacity = Integer.parseInt(database.getPreference("database.write-behind.queue-capacity", "100000"));
+            interval = Long.parseLong(database.getPreference("database.write-behind.flush-interval", "200"));
+        } catch (NumberFormatException ex)
+        {
+            log.warn("回写参数无效，使用默认值：{}", ex.getMessage());
+        }
+        log.info("启用数据库回写模式");
+        return new WriteBehindDatabase(scoped,
+                                       dataSource,
+                                       sourceRef,
+                                       database.getChangeCounters(),
+                                       Math.max(1000, capacity),
+                                       Math.max(20, interval));
+    }
+
+    /**
+     * 按首选项创建分析器流水线
+     * <p>
+     * 启用后，各分析器（或分析器组）在独立的工作线程上执行回调，解复用线程只负责分发。
+     * @param demux 会话的解复用器
+     * @param tracerCount 分析器数量
+     * @return 分析器流水线，未启用时返回 null
+     */
+    private TracerPipeline createPipeline(TSDemux demux, int tracerCount)
+    {
+        if (!Boolean.parseBoolean(database.getPreference("analyzer.pipeline.enabled", "false")))
+            return null;
+
+        if (!TracerPipeline.isSupported())
+        {
+            log.warn("当前解复用器不支持流水线模式，使用单线程模式");
+            return null;
+        }
+
+        try
+        {
+            int cores = Runtime.getRuntime().availableProcessors();
+            int workers = Integer.parseInt(database.getPreference("analyzer.pipeline.workers",
+                                                                  String.valueOf(Math.max(1, cores - 1))));
+            int capacity = Integer.parseInt(database.getPreference("analyzer.pipeline.queue-capacity", "16384"));
+            TracerPipeline.BackPressure backPressure =
+                StrUtil.equalsIgnoreCase(database.getPreference("analyzer.pipeline.back-pressure", "block"), "drop")
+                ? TracerPipeline.BackPressure.DROP
+                : TracerPipeline.BackPressure.BLOCK;
+
+            workers = Math.max(1, Math.min(workers, tracerCount));
+            capacity = Math.max(1024, Math.min(capacity, 1 << 20));
+            return new TracerPipeline(demux, workers, capacity, backPressure);
+        } catch (NumberFormatException ex)
+        {
+            log.warn("流水线参数无效，使用单线程模式：{}", ex.getMessage());
+            return null;
         }
     }
 
@@ -0,0 +1,467 @@
+/*
+ *  Copyright (c) M2TK Project. All rights reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package m2tk.assistant.app.kernel.service;
+
+import m2tk.assistant.api.domain.TR290Event;
+import m2tk.assistant.api.domain.TR290Stats;
+import m2tk.assistant.api.domain.TR290StreamStats;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.util.*;
+
+/**
+ * TR290错误汇总
+ * <p>
+ * 按错误类型和PID在内存中累计错误数及首次、最近出现的位置，并为每类错误保留最近
+ * {@value #DEFAULT_SAMPLE_CAPACITY} 条抽样记录。记录时只保存格式串（常量）和整数参数，
+ * 错误描述在查询时才生成，已出现过的类型和PID再次出错时不分配对象。
+ * <p>
+ * 同一类型、同一PID每 {@value #SAMPLE_INTERVAL_MILLIS} 毫秒最多抽样一次（首次出错总会抽样），
+ * 持续出错的流不会把其他流的记录挤出抽样缓冲区。
+ */
+public final class TR290ErrorAggregator
+{
+    public static final int DEFAULT_SAMPLE_CAPACITY = 100;
+    public static final long SAMPLE_INTERVAL_MILLIS = 100;
+
+    // 每个PID的统计量在 long[] 中的位置
+    private static final int COUNT = 0;
+    private static final int FIRST_POSITION = 1;
+    private static final int LAST_POSITION = 2;
+    private static final int LAST_TIME = 3;
+    private static final int LAST_SAMPLE_TIME = 4;
+    private static final int STATS_SIZE = 5;
+
+    private static final int FORMAT_VERSION = 1;
+
+    private final int sampleCapacity;
+    private final Map<String, TypeStats> types;
+
+    public TR290ErrorAggregator()
+    {
+        this(DEFAULT_SAMPLE_CAPACITY);
+    }
+
+    public TR290ErrorAggregator(int sampleCapacity)
+    {
+        this.sampleCapacity = Math.max(1, sampleCapacity);
+        this.types = new LinkedHashMap<>();
+    }
+
+    /**
+     * 记录一次错误，描述在查询时按 {@code format} 和参数生成。
+     */
+    public synchronized void add(String type, int pid, long position, String format, long arg1, long arg2, long arg3)
+    {
+        typeOf(type).record(pid & 0x1FFF, position, System.currentTimeMillis(), format, false, arg1, arg2, arg3);
+    }
+
+    /**
+     * 记录一条已生成描述的错误事件（来自插件或旧版本的存档）。
+     */
+    public synchronized void add(TR290Event event)
+    {
+        long time = (event.getTimestamp() == null) ? System.currentTimeMillis()
+                                                   : event.getTimestamp().toInstant().toEpochMilli();
+        String description = (event.getDescription() == null) ? "" : event.getDescription();
+        typeOf(event.getType()).record(event.getStream() & 0x1FFF, event.getPosition(), time,
+                                       description, true, 0, 0, 0);
+    }
+
+    public synchronized void clear()
+    {
+        types.clear();
+    }
+
+    public synchronized TR290Stats getStats()
+    {
+        TR290Stats stats = new TR290Stats();
+        for (TypeStats t : types.values())
+        {
+            if (t.count == 0)
+                continue;
+
+            TR290Event last = new TR290Event();
+            last.setType(t.type);
+            last.setDescription(describe(t.lastFormat, t.lastLiteral, t.lastArgs[0], t.lastArgs[1], t.lastArgs[2]));
+            last.setStream(t.lastPid);
+            last.setPosition(t.lastPosition);
+            last.setTimestamp(toTimestamp(t.lastTime));
+            stats.setStat(t.type, t.count, last);
+
+            List<TR290StreamStats> streams = new ArrayList<>(t.pidCount);
+            for (int pid = 0; pid < t.slotOfPid.length; pid++)
+            {
+                int slot = t.slotOfPid[pid] - 1;
+                if (slot < 0)
+                    continue;
+
+                long[] s = t.pidStats[slot];
+                TR290StreamStats item = new TR290StreamStats();
+                item.setStream(pid);
+                item.setCount(s[COUNT]);
+                item.setFirstPosition(s[FIRST_POSITION]);
+                item.setLastPosition(s[LAST_POSITION]);
+                item.setLastTimestamp(toTimestamp(s[LAST_TIME]));
+                streams.add(item);
+            }
+            stats.setStreamStats(t.type, streams);
+        }
+        return stats;
+    }
+
+    /**
+     * @return 指定类型最近的抽样记录，最新的排在最前
+     */
+    public synchronized List<TR290Event> listRecent(String type, int count)
+    {
+        TypeStats t = types.get(type);
+        if (t == null || count <= 0)
+            return new ArrayList<>();
+
+        int n = Math.min(count, t.sampleSize);
+        List<TR290Event> events = new ArrayList<>(n);
+        for (int i = 1; i <= n; i++)
+            events.add(t.sample(Math.floorMod(t.sampleHead - i, sampleCapacity)));
+        return events;
+    }
+
+    /**
+     * @return 全部抽样记录，按时间先后排列
+     */
+    public synchronized List<TR290Event> listAll()
+    {
+        List<TR290Event> events = new ArrayList<>();
+        for (TypeStats t : types.values())
+        {
+            int oldest = Math.floorMod(t.sampleHead - t.sampleSize, sampleCapacity);
+            for (int i = 0; i < t.sampleSize; i++)
+                events.add(t.sample((oldest + i) % sampleCapacity));
+        }
+        events.sort(Comparator.comparing(TR290Event::getTimestamp)
+                              .thenComparingLong(TR290Event::getPosition));
+        return events;
+    }
+
+    /**
+     * 并入另一个汇总的统计量和抽样记录（分段并行分析），包位置加上分段的起始位置。
+     * 另一个汇总对应的分段应位于本汇总已有数据之后。
+     * @param other 分段的错误汇总
+     * @param positionOffset 分段起始位置（包计数）
+     */
+    public synchronized void mergeFrom(TR290ErrorAggregator other, long positionOffset)
+    {
+        synchronized (other)
+        {
+            for (TypeStats o : other.types.values())
+            {
+                if (o.count == 0)
+                    continue;
+
+                TypeStats t = typeOf(o.type);
+                t.firstPosition = (t.count == 0) ? o.firstPosition + positionOffset : t.firstPosition;
+                t.count += o.count;
+                t.lastPosition = o.lastPosition + positionOffset;
+                t.lastTime = o.lastTime;
+                t.lastPid = o.lastPid;
+                t.lastFormat = o.lastFormat;
+                t.lastLiteral = o.lastLiteral;
+                System.arraycopy(o.lastArgs, 0, t.lastArgs, 0, 3);
+
+                for (int pid = 0; pid < o.slotOfPid.length; pid++)
+                {
+                    int from = o.slotOfPid[pid] - 1;
+                    if (from < 0)
+                        continue;
+
+                    long[] s = t.pidStats[t.slotOf(pid)];
+                    long[] os = o.pidStats[from];
+                    s[FIRST_POSITION] = (s[COUNT] == 0) ? os[FIRST_POSITION] + positionOffset : s[FIRST_POSITION];
+                    s[COUNT] += os[COUNT];
+                    s[LAST_POSITION] = os[LAST_POSITION] + positionOffset;
+                    s[LAST_TIME] = os[LAST_TIME];
+                    s[LAST_SAMPLE_TIME] = os[LAST_SAMPLE_TIME];
+                }
+
+                int oldest = Math.floorMod(o.sampleHead - o.sampleSize, other.sampleCapacity);
+                for (int i = 0; i < o.sampleSize; i++)
+                {
+                    int k = (oldest + i) % other.sampleCapacity;
+                    t.putSample(o.samplePids[k], o.samplePositions[k] + positionOffset, o.sampleTimes[k],
+                                o.sampleFormats[k], o.sampleLiterals[k],
+                                o.sampleArgs[k * 3], o.sampleArgs[k * 3 + 1], o.sampleArgs[k * 3 + 2]);
+                }
+            }
+        }
+    }
+
+    /**
+     * 写出全部统计量和抽样记录（会话存档）
+     */
+    public synchronized void writeTo(DataOutput out) throws IOException
+    {
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(types.size());
+        for (TypeStats t : types.values())
+        {
+            out.writeUTF(t.type);
+            SessionArchive.writeVarLong(out, t.count);
+            SessionArchive.writeVarLong(out, t.firstPosition);
+            SessionArchive.writeVarLong(out, t.lastPosition);
+            SessionArchive.writeVarLong(out, t.lastTime);
+            writeDetail(out, t.lastPid, t.lastFormat, t.lastLiteral, t.lastArgs[0], t.lastArgs[1], t.lastArgs[2]);
+
+            out.writeInt(t.pidCount);
+            for (int pid = 0; pid < t.slotOfPid.length; pid++)
+            {
+                int slot = t.slotOfPid[pid] - 1;
+                if (slot < 0)
+                    continue;
+
+                out.writeShort(pid);
+                long[] s = t.pidStats[slot];
+                for (int j = 0; j < LAST_SAMPLE_TIME; j++)
+                    SessionArchive.writeVarLong(out, s[j]);
+            }
+
+            int oldest = Math.floorMod(t.sampleHead - t.sampleSize, sampleCapacity);
+            out.writeInt(t.sampleSize);
+            for (int i = 0; i < t.sampleSize; i++)
+            {
+                int k = (oldest + i) % sampleCapacity;
+                SessionArchive.writeVarLong(out, t.samplePositions[k]);
+                SessionArchive.writeVarLong(out, t.sampleTimes[k]);
+                writeDetail(out, t.samplePids[k], t.sampleFormats[k], t.sampleLiterals[k],
+                            t.sampleArgs[k * 3], t.sampleArgs[k * 3 + 1], t.sampleArgs[k * 3 + 2]);
+            }
+        }
+    }
+
+    /**
+     * 读入 {@link #writeTo(DataOutput)} 写出的汇总状态，抽样记录超出容量时只保留最近的部分。
+     */
+    public synchronized void readFrom(DataInput in) throws IOException
+    {
+        if (in.readInt() != FORMAT_VERSION)
+            throw new IOException("TR290错误汇总格式不兼容");
+
+        int typeCount = in.readInt();
+        for (int n = 0; n < typeCount; n++)
+        {
+            TypeStats t = typeOf(in.readUTF());
+            t.count = SessionArchive.readVarLong(in);
+            t.firstPosition = SessionArchive.readVarLong(in);
+            t.lastPosition = SessionArchive.readVarLong(in);
+            t.lastTime = SessionArchive.readVarLong(in);
+            t.lastPid = in.readUnsignedShort() & 0x1FFF;
+            t.lastFormat = in.readUTF();
+            t.lastLiteral = in.readBoolean();
+            for (int j = 0; j < 3; j++)
+                t.lastArgs[j] = SessionArchive.readVarLong(in);
+
+            int pidCount = in.readInt();
+            for (int i = 0; i < pidCount; i++)
+            {
+                long[] s = t.pidStats[t.slotOf(in.readUnsignedShort() & 0x1FFF)];
+                for (int j = 0; j < LAST_SAMPLE_TIME; j++)
+                    s[j] = SessionArchive.readVarLong(in);
+                s[LAST_SAMPLE_TIME] = s[LAST_TIME];
+            }
+
+            int sampleCount = in.readInt();
+            for (int i = 0; i < sampleCount; i++)
+            {
+                long position = SessionArchive.readVarLong(in);
+                long time = SessionArchive.readVarLong(in);
+                int pid = in.readUnsignedShort() & 0x1FFF;
+                String format = in.readUTF();
+                boolean literal = in.readBoolean();
+                long arg1 = SessionArchive.readVarLong(in);
+                long arg2 = SessionArchive.readVarLong(in);
+                long arg3 = SessionArchive.readVarLong(in);
+                t.putSample(pid, position, time, format, literal, arg1, arg2, arg3);
+            }
+        }
+    }
+
+    private static void writeDetail(DataOutput out, int pid, String format, boolean literal,
+                                    long arg1, long arg2, long arg3) throws IOException
+    {
+        out.writeShort(pid);
+        out.writeUTF(format);
+        out.writeBoolean(literal);
+        SessionArchive.writeVarLong(out, arg1);
+        SessionArchive.writeVarLong(out, arg2);
+        SessionArchive.writeVarLong(out, arg3);
+    }
+
+    private static String describe(String format, boolean literal, long arg1, long arg2, long arg3)
+    {
+        if (literal)
+            return format;
+        try
+        {
+            return String.format(format, arg1, arg2, arg3);
+        } catch (IllegalFormatException ex)
+        {
+            return format;
+        }
+    }
+
+    private static OffsetDateTime toTimestamp(long millis)
+    {
+        return Instant.ofEpochMilli(millis).atZone(ZoneId.systemDefault()).toOffsetDateTime();
+    }
+
+    private TypeStats typeOf(String type)
+    {
+        TypeStats t = types.get(type);
+        if (t == null)
+        {
+            t = new TypeStats(type, sampleCapacity);
+            types.put(type, t);
+        }
+        return t;
+    }
+
+    private static final class TypeStats
+    {
+        private final String type;
+        private final int capacity;
+
+        private long count;
+        private long firstPosition;
+        private long lastPosition;
+        private long lastTime;
+        private int lastPid;
+        private String lastFormat;
+        private boolean lastLiteral;
+        private final long[] lastArgs;
+
+        private final int[] slotOfPid;  // 0 表示未分配，否则为槽位号 + 1
+        private long[][] pidStats;
+        private int pidCount;
+
+        // 抽样记录的环形缓冲区
+        private final int[] samplePids;
+        private final long[] samplePositions;
+        private final long[] sampleTimes;
+        private final long[] sampleArgs;
+        private final String[] sampleFormats;
+        private final boolean[] sampleLiterals;
+        private int sampleHead;
+        private int sampleSize;
+
+        TypeStats(String type, int capacity)
+        {
+            this.type = type;
+            this.capacity = capacity;
+            this.lastArgs = new long[3];
+            this.slotOfPid = new int[8192];
+            this.pidStats = new long[4][];
+            this.samplePids = new int[capacity];
+            this.samplePositions = new long[capacity];
+            this.sampleTimes = new long[capacity];
+            this.sampleArgs = new long[capacity * 3];
+            this.sampleFormats = new String[capacity];
+            this.sampleLiterals = new boolean[capacity];
+        }
+
+        void record(int pid, long position, long time, String format, boolean literal,
+                    long arg1, long arg2, long arg3)
+        {
+            // 补充检查（如分段交界）产生的错误可能晚于后面位置的错误记录，最近一次错误按位置判断。
+            if (count == 0 || position < firstPosition)
+                firstPosition = position;
+            if (count == 0 || position >= lastPosition)
+            {
+                lastPosition = position;
+                lastTime = time;
+                lastPid = pid;
+                lastFormat = format;
+                lastLiteral = literal;
+                lastArgs[0] = arg1;
+                lastArgs[1] = arg2;
+                lastArgs[2] = arg3;
+            }
+            count += 1;
+
+            long[] s = pidStats[slotOf(pid)];
+            if (s[COUNT] == 0 || position < s[FIRST_POSITION])
+                s[FIRST_POSITION] = position;
+            if (s[COUNT] == 0 || position >= s[LAST_POSITION])
+            {
+                s[LAST_POSITION] = position;
+                s[LAST_TIME] = time;
+            }
+            s[COUNT] += 1;
+
+            if (s[COUNT] == 1 || time - s[LAST_SAMPLE_TIME] >= SAMPLE_INTERVAL_MILLIS)
+            {
+                s[LAST_SAMPLE_TIME] = time;
+                putSample(pid, position, time, format, literal, arg1, arg2, arg3);
+            }
+        }
+
+        void putSample(int pid, long position, long time, String format, boolean literal,
+                       long arg1, long arg2, long arg3)
+        {
+            int k = sampleHead;
+            samplePids[k] = pid;
+            samplePositions[k] = position;
+            sampleTimes[k] = time;
+            sampleFormats[k] = format;
+            sampleLiterals[k] = literal;
+            sampleArgs[k * 3] = arg1;
+            sampleArgs[k * 3 + 1] = arg2;
+            sampleArgs[k * 3 + 2] = arg3;
+            sampleHead = (sampleHead + 1) % capacity;
+            sampleSize = Math.min(sampleSize + 1, capacity);
+        }
+
+        TR290Event sample(int k)
+        {
+            TR290Event event = new TR290Event();
+            event.setType(type);
+            event.setDescription(describe(sampleFormats[k], sampleLiterals[k],
+                                          sampleArgs[k * 3], sampleArgs[k * 3 + 1], sampleArgs[k * 3 + 2]));
+            event.setStream(samplePids[k]);
+            event.setPosition(samplePositions[k]);
+            event.setTimestamp(toTimestamp(sampleTimes[k]));
+            return event;
+        }
+
+        int slotOf(int pid)
+        {
+            int slot = slotOfPid[pid] - 1;
+            if (slot >= 0)
+                return slot;
+
+            if (pidCount == pidStats.length)
+                pidStats = Arrays.copyOf(pidStats, pidCount * 2);
+
+            slot = pidCount++;
+            pidStats[slot] = new long[STATS_SIZE];
+            slotOfPid[pid] = slot + 1;
+            return slot;
+        }
+    }
+}
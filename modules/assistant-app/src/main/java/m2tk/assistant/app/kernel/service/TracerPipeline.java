@@ -0,0 +1,421 @@
+/*
+ *  Copyright (c) M2TK Project. All rights reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package m2tk.assistant.app.kernel.service;
+
+import lombok.extern.slf4j.Slf4j;
+import m2tk.assistant.api.SectionEvent;
+import m2tk.assistant.app.util.SpscRingBuffer;
+import m2tk.multiplex.TSDemux;
+import m2tk.multiplex.TSDemuxPayload;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * 分析器流水线
+ * <p>
+ * 解复用线程只负责把回调消息投递到各工作线程的环形队列，由工作线程执行分析器回调。
+ * 同一个分析器的全部回调（包括事件）都投递到同一个队列，保证处理顺序与解复用顺序一致。
+ * <p>
+ * 分析器在回调中注册/关闭通道时，操作会转交给解复用线程执行，避免与解复用线程并发修改通道表。
+ * 通道操作只在解复用线程上执行，即使等待超时也不会改由调用线程执行。
+ * <p>
+ * 投递到工作线程的解复用载荷（包括分段总线消息中的分段）都先复制一份（见 {@link PayloadCopier}），
+ * 工作线程不与解复用线程共享缓冲区。同一个分段只在一次直接回调内共享副本，回调返回即清除。
+ */
+@Slf4j
+final class TracerPipeline
+{
+    enum BackPressure
+    {
+        BLOCK, DROP
+    }
+
+    private static final int DRAIN_BATCH_SIZE = 256;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final long STRUCTURAL_OP_TIMEOUT_MILLIS = 1000;
+
+    private final TSDemux demux;
+    private final PayloadCopier copier;
+    private final Worker[] workers;
+    private final BackPressure backPressure;
+    private final Queue<Runnable> pendingOps;
+    private final AtomicLong dropped;
+    private volatile Thread demuxThread;
+    private volatile boolean running;
+
+    TracerPipeline(TSDemux demux, int workerCount, int queueCapacity, BackPressure backPressure)
+    {
+        this.demux = demux;
+        this.copier = new PayloadCopier(demux);
+        this.backPressure = backPressure;
+        this.pendingOps = new ConcurrentLinkedQueue<>();
+        this.dropped = new AtomicLong();
+        this.workers = new Worker[Math.max(1, workerCount)];
+        for (int i = 0; i < workers.length; i++)
+            workers[i] = new Worker(i, queueCapacity);
+    }
+
+    static boolean isSupported()
+    {
+        return TSDemux.class.isInterface() && PayloadCopier.isAvailable();
+    }
+
+    /**
+     * 为指定分析器生成解复用器代理，分析器通过代理注册的回调都在对应工作线程上执行。
+     * @param tracerIndex 分析器序号，按序号分组到工作线程
+     * @return 解复用器代理
+     */
+    TSDemux bind(int tracerIndex)
+    {
+        Worker worker = workers[tracerIndex % workers.length];
+        return (TSDemux) Proxy.newProxyInstance(TSDemux.class.getClassLoader(),
+                                                new Class<?>[]{TSDemux.class},
+                                                new DemuxBinding(worker));
+    }
+
+    /**
+     * 生成直接回调的解复用器代理：回调仍在解复用线程上执行，只有通道操作转交给解复用线程。
+     * 供分段总线这类需要在解复用线程上完成分发的组件使用。
+     */
+    TSDemux bindDirect()
+    {
+        return (TSDemux) Proxy.newProxyInstance(TSDemux.class.getClassLoader(),
+                                                new Class<?>[]{TSDemux.class},
+                                                new DemuxBinding(null));
+    }
+
+    /**
+     * 把回调包装为向指定分析器的工作线程投递消息，与 {@link #bind(int)} 的回调使用同一个队列，保证处理顺序。
+     */
+    @SuppressWarnings("unchecked")
+    <T> Consumer<T> dispatch(int tracerIndex, Consumer<T> consumer)
+    {
+        Worker worker = workers[tracerIndex % workers.length];
+        Consumer<Object> target = (Consumer<Object>) consumer;
+        return message -> deliver(worker, target, message);
+    }
+
+    void start()
+    {
+        running = true;
+        // 原始包通道每个包都会回调，借此在解复用线程上执行待处理的通道操作。
+        demux.registerRawChannel(payload -> {
+            demuxThread = Thread.currentThread();
+            runPendingOps();
+        });
+        for (Worker worker : workers)
+            worker.thread.start();
+        log.info("分析器流水线已启动：{} 个工作线程，背压策略 {}", workers.length, backPressure);
+    }
+
+    /**
+     * 等待所有队列处理完毕
+     * @param timeoutMillis 最长等待时间（毫秒）
+     * @return 是否已全部处理完毕
+     */
+    boolean awaitIdle(long timeoutMillis)
+    {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (System.currentTimeMillis() < deadline)
+        {
+            runPendingOps();
+            boolean idle = true;
+            for (Worker worker : workers)
+                idle &= worker.isIdle();
+            if (idle)
+                return true;
+            LockSupport.parkNanos(IDLE_PARK_NANOS);
+        }
+        return false;
+    }
+
+    void stop()
+    {
+        running = false;
+        runPendingOps();
+        for (Worker worker : workers)
+        {
+            LockSupport.unpark(worker.thread);
+            try
+            {
+                worker.thread.join(1000);
+            } catch (InterruptedException ex)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+        runPendingOps();
+
+        long count = dropped.get();
+        if (count > 0)
+            log.warn("分析器流水线队列溢出，共丢弃 {} 条消息", count);
+        log.info("分析器流水线已停止");
+    }
+
+    long getDroppedCount()
+    {
+        return dropped.get();
+    }
+
+    /**
+     * @return 各工作线程队列中占用率最高的一个（%）
+     */
+    int getQueueFill()
+    {
+        int fill = 0;
+        for (Worker worker : workers)
+            fill = Math.max(fill, (int) (worker.queue.size() * 100L / worker.queue.capacity()));
+        return fill;
+    }
+
+    private void runPendingOps()
+    {
+        Runnable op;
+        while ((op = pendingOps.poll()) != null)
+            op.run();
+    }
+
+    private void deliver(Worker worker, Consumer<Object> target, Object message)
+    {
+        // 解复用线程返回后就会继续读入后续的包，载荷可能引用其内部缓冲区，必须复制后再交给工作线程。
+        // 分段消息在一次总线回调内投递给多个订阅者，共享同一个副本。
+        if (message instanceof TSDemuxPayload payload)
+            message = copier.copy(payload);
+        else if (message instanceof SectionEvent event)
+            message = event.withPayload(copier.copyShared(event.payload()));
+        Delivery delivery = new Delivery(target, message);
+        if (worker.queue.offer(delivery))
+            return;
+
+        if (backPressure == BackPressure.DROP)
+        {
+            dropped.incrementAndGet();
+            return;
+        }
+
+        while (running && !worker.queue.offer(delivery))
+        {
+            // 等待期间工作线程可能正在等待通道操作，必须在这里继续执行，否则会互相等待。
+            runPendingOps();
+            LockSupport.parkNanos(IDLE_PARK_NANOS);
+        }
+    }
+
+    /**
+     * 在解复用线程上执行通道操作。解复用线程在每个包、背压等待以及流水线停止时执行待处理的操作；
+     * 输入暂停期间调用方会一直等待，流水线停止后仍未执行的操作以异常结束，不会在调用线程上执行。
+     */
+    private Object executeStructural(Callable<Object> operation) throws Exception
+    {
+        Thread owner = demuxThread;
+        if (!running || owner == null || owner == Thread.currentThread())
+            return operation.call();
+
+        AtomicBoolean claimed = new AtomicBoolean();
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        Runnable task = () -> {
+            if (!claimed.compareAndSet(false, true))
+                return;
+            try
+            {
+                future.complete(operation.call());
+            } catch (Throwable t)
+            {
+                future.completeExceptionally(t);
+            }
+        };
+        pendingOps.add(task);
+
+        boolean warned = false;
+        while (true)
+        {
+            try
+            {
+                return future.get(STRUCTURAL_OP_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException ex)
+            {
+                if (!running && claimed.compareAndSet(false, true))
+                {
+                    pendingOps.remove(task);
+                    throw new IllegalStateException("分析器流水线已停止，通道操作未执行");
+                }
+                if (!warned)
+                {
+                    log.debug("通道操作等待解复用线程执行已超过 {} 毫秒", STRUCTURAL_OP_TIMEOUT_MILLIS);
+                    warned = true;
+                }
+            } catch (ExecutionException ex)
+            {
+                throw rethrow(ex.getCause());
+            }
+        }
+    }
+
+    private static Exception rethrow(Throwable cause)
+    {
+        if (cause instanceof Error error)
+            throw error;
+        return (cause instanceof Exception ex) ? ex : new RuntimeException(cause);
+    }
+
+    private record Delivery(Consumer<Object> target, Object message)
+    {
+    }
+
+    private final class Worker implements Runnable
+    {
+        private final SpscRingBuffer<Delivery> queue;
+        private final Thread thread;
+        private volatile boolean busy;
+
+        Worker(int index, int capacity)
+        {
+            queue = new SpscRingBuffer<>(capacity);
+            thread = new Thread(this, "tracer-pipeline-" + index);
+            thread.setDaemon(true);
+        }
+
+        boolean isIdle()
+        {
+            return !busy && queue.isEmpty();
+        }
+
+        @Override
+        public void run()
+        {
+            while (running || !queue.isEmpty())
+            {
+                busy = true;
+                int n = queue.drain(this::process, DRAIN_BATCH_SIZE);
+                busy = false;
+                if (n == 0)
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+        }
+
+        private void process(Delivery delivery)
+        {
+            try
+            {
+                delivery.target().accept(delivery.message());
+            } catch (Exception ex)
+            {
+                log.error("处理流水线消息时异常：{}", ex.getMessage(), ex);
+            }
+        }
+    }
+
+    /**
+     * 解复用器代理：把分析器注册的回调包装为向工作线程投递消息（未指定工作线程时直接回调），
+     * 通道操作交给解复用线程执行。
+     */
+    private final class DemuxBinding implements InvocationHandler
+    {
+        private final Worker worker;
+        private final Map<Consumer<?>, Consumer<Object>> wrappers;
+
+        DemuxBinding(Worker worker)
+        {
+            this.worker = worker;
+            this.wrappers = new IdentityHashMap<>();
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+        {
+            if (method.getDeclaringClass() == Object.class)
+            {
+                return switch (method.getName())
+                {
+                    case "equals" -> proxy == args[0];
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    default -> "TracerPipeline$DemuxBinding@" + Integer.toHexString(System.identityHashCode(proxy));
+                };
+            }
+
+            String name = method.getName();
+            boolean structural = name.startsWith("register") ||
+                                 name.startsWith("unregister") ||
+                                 name.startsWith("close");
+            if (!structural)
+                return invokeDirect(method, args);
+
+            Object[] actualArgs = (args == null) ? null : args.clone();
+            if (actualArgs != null)
+            {
+                for (int i = 0; i < actualArgs.length; i++)
+                {
+                    if (actualArgs[i] instanceof Consumer<?> consumer)
+                        actualArgs[i] = name.startsWith("register") ? wrap(consumer) : lookup(consumer);
+                }
+            }
+            return executeStructural(() -> invokeDirect(method, actualArgs));
+        }
+
+        @SuppressWarnings("unchecked")
+        private synchronized Consumer<Object> wrap(Consumer<?> consumer)
+        {
+            Consumer<Object> target = (Consumer<Object>) consumer;
+            if (worker != null)
+                return wrappers.computeIfAbsent(consumer, c -> message -> deliver(worker, target, message));
+
+            // 直接回调返回后，解复用器可能复用载荷对象，回调内共享的副本随之作废。
+            return wrappers.computeIfAbsent(consumer, c -> message -> {
+                try
+                {
+                    target.accept(message);
+                } finally
+                {
+                    copier.release();
+                }
+            });
+        }
+
+        @SuppressWarnings("unchecked")
+        private synchronized Consumer<Object> lookup(Consumer<?> consumer)
+        {
+            Consumer<Object> wrapper = wrappers.remove(consumer);
+            return (wrapper != null) ? wrapper : (Consumer<Object>) consumer;
+        }
+
+        private Object invokeDirect(Method method, Object[] args) throws Exception
+        {
+            try
+            {
+                return method.invoke(demux, args);
+            } catch (InvocationTargetException ex)
+            {
+                throw rethrow(ex.getCause());
+            }
+        }
+    }
+}
@@ -0,0 +1,994 @@
+/*
+ *  Copyright (c) M2TK Project. All rights reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package m2tk.assistant.app.kernel.service;
+
+import lombok.extern.slf4j.Slf4j;
+import m2tk.assistant.api.ChangeDomain;
+import m2tk.assistant.api.M2TKDatabase;
+import m2tk.assistant.api.domain.*;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.OffsetDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 异步回写数据库
+ * <p>
+ * 分析器产生的高频写操作（插入记录、统计更新）先进入内存队列，由独立的写线程按固定周期
+ * 以 JDBC 批处理方式在同一事务中提交。对数据源统计的更新只保留最后一次；基本流统计由内存计数表维护，直接转交。
+ * 查询及其他低频操作直接转交给被代理的数据库服务，因此查询结果最多滞后一个刷写周期。
+ * <p>
+ * 每个回写实例只服务一个数据源，直接写入的记录都带有该数据源的 {@code source_ref}。
+ * 批量提交成功后才标记对应数据域的变化计数，界面不会因尚未落库的数据提前刷新。
+ */
+@Slf4j
+public class WriteBehindDatabase implements M2TKDatabase, AutoCloseable
+{
+    private final M2TKDatabase delegate;
+    private final DataSource dataSource;
+    private final int sourceRef;
+    private final ChangeCounters changeCounters;
+    private final BlockingQueue<Mutation> queue;
+    private final AtomicReference<SourceStats> pendingSourceStats;
+    private final ReentrantLock flushLock;
+    private final ScheduledExecutorService writer;
+
+    private final AtomicLong droppedWrites;
+    private final AtomicLong failedWrites;
+    private final AtomicLong writtenRows;
+    private final AtomicLong flushCount;
+    private volatile long lastFlushNanos;
+    private volatile long maxFlushNanos;
+
+    public WriteBehindDatabase(M2TKDatabase delegate, DataSource dataSource, int sourceRef,
+                               ChangeCounters changeCounters, int queueCapacity, long flushIntervalMillis)
+    {
+        this.delegate = Objects.requireNonNull(delegate);
+        this.dataSource = Objects.requireNonNull(dataSource);
+        this.sourceRef = sourceRef;
+        this.changeCounters = Objects.requireNonNull(changeCounters);
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.pendingSourceStats = new AtomicReference<>();
+        this.flushLock = new ReentrantLock();
+        this.droppedWrites = new AtomicLong();
+        this.failedWrites = new AtomicLong();
+        this.writtenRows = new AtomicLong();
+        this.flushCount = new AtomicLong();
+
+        writer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "db-write-behind");
+            thread.setDaemon(true);
+            return thread;
+        });
+        writer.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 当前待写入的操作数量（含待合并的统计更新）
+     */
+    public int getQueueDepth()
+    {
+        return queue.size() + (pendingSourceStats.get() == null ? 0 : 1);
+    }
+
+    /**
+     * 因队列已满而丢弃的写操作数量
+     */
+    public long getDroppedWrites()
+    {
+        return droppedWrites.get();
+    }
+
+    /**
+     * 因提交失败而丢失的写操作数量
+     */
+    public long getFailedWrites()
+    {
+        return failedWrites.get();
+    }
+
+    public long getWrittenRows()
+    {
+        return writtenRows.get();
+    }
+
+    public long getFlushCount()
+    {
+        return flushCount.get();
+    }
+
+    public long getLastFlushMillis()
+    {
+        return TimeUnit.NANOSECONDS.toMillis(lastFlushNanos);
+    }
+
+    public long getMaxFlushMillis()
+    {
+        return TimeUnit.NANOSECONDS.toMillis(maxFlushNanos);
+    }
+
+    /**
+     * 立即把队列中的写操作提交到数据库（调用线程同步执行）
+     */
+    public void flush()
+    {
+        flushLock.lock();
+        try
+        {
+            List<Mutation> mutations = new ArrayList<>(queue.size());
+            queue.drainTo(mutations);
+
+            SourceStats sourceStats = pendingSourceStats.getAndSet(null);
+
+            int total = mutations.size() + (sourceStats == null ? 0 : 1);
+            if (total == 0)
+                return;
+
+            long t0 = System.nanoTime();
+            try (Connection connection = dataSource.getConnection())
+            {
+                boolean autoCommit = connection.getAutoCommit();
+                connection.setAutoCommit(false);
+                try
+                {
+                    writeMutations(connection, mutations);
+                    writeSourceStats(connection, sourceStats);
+                    connection.commit();
+                    writtenRows.addAndGet(total);
+                    markChanged(mutations, sourceStats);
+                } catch (SQLException ex)
+                {
+                    connection.rollback();
+                    failedWrites.addAndGet(total);
+                    log.error("批量写入数据库失败，丢弃 {} 条写操作：{}", total, ex.getMessage());
+                } finally
+                {
+                    connection.setAutoCommit(autoCommit);
+                }
+            } catch (SQLException ex)
+            {
+                failedWrites.addAndGet(total);
+                log.error("无法获取数据库连接，丢弃 {} 条写操作：{}", total, ex.getMessage());
+            }
+
+            long elapsed = System.nanoTime() - t0;
+            lastFlushNanos = elapsed;
+            maxFlushNanos = Math.max(maxFlushNanos, elapsed);
+            flushCount.incrementAndGet();
+        } finally
+        {
+            flushLock.unlock();
+        }
+    }
+
+    @Override
+    public void close()
+    {
+        writer.shutdown();
+        try
+        {
+            if (!writer.awaitTermination(5, TimeUnit.SECONDS))
+                writer.shutdownNow();
+        } catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+
+        if (droppedWrites.get() > 0 || failedWrites.get() > 0)
+            log.warn("回写统计：写入 {} 条，丢弃 {} 条，失败 {} 条",
+                     writtenRows.get(), droppedWrites.get(), failedWrites.get());
+    }
+
+    @Override
+    public void setPreference(String key, String value)
+    {
+        delegate.setPreference(key, value);
+    }
+
+    @Override
+    public String getPreference(String key, String defaultValue)
+    {
+        return delegate.getPreference(key, defaultValue);
+    }
+
+    @Override
+    public List<String> listPreferenceKeys()
+    {
+        return delegate.listPreferenceKeys();
+    }
+
+    @Override
+    public StreamSource beginDiagnosis(String source, String uri)
+    {
+        discardPendingWrites();
+        return delegate.beginDiagnosis(source, uri);
+    }
+
+    @Override
+    public void updateStreamSourceStats(int sourceRef, int bitrate, int frameSize, boolean scrambled, long packetCount, int streamCount)
+    {
+        pendingSourceStats.set(new SourceStats(sourceRef, bitrate, frameSize, scrambled, packetCount, streamCount));
+    }
+
+    @Override
+    public void updateStreamSourceTransportId(int sourceRef, int transportStreamId)
+    {
+        delegate.updateStreamSourceTransportId(sourceRef, transportStreamId);
+    }
+
+    @Override
+    public void updateStreamSourceComponentPresence(int sourceRef, String component, boolean present)
+    {
+        delegate.updateStreamSourceComponentPresence(sourceRef, component, present);
+    }
+
+    @Override
+    public StreamSource getCurrentStreamSource()
+    {
+        return delegate.getCurrentStreamSource();
+    }
+
+    @Override
+    public List<StreamSource> listStreamSources()
+    {
+        return delegate.listStreamSources();
+    }
+
+    @Override
+    public List<String> listStreamSourceUris()
+    {
+        return delegate.listStreamSourceUris();
+    }
+
+    @Override
+    public void updateElementaryStreamStats(int pid, long pktCount, long pcrCount, int bitrate, double ratio, boolean scrambled)
+    {
+        // 基本流统计只更新内存计数表，开销固定，不必排队。
+        delegate.updateElementaryStreamStats(pid, pktCount, pcrCount, bitrate, ratio, scrambled);
+    }
+
+    @Override
+    public void updateElementaryStreamStats(ElementaryStream stream)
+    {
+        updateElementaryStreamStats(stream.getStreamPid(),
+                                    stream.getPacketCount(),
+                                    stream.getPcrCount(),
+                                    stream.getBitrate(),
+                                    stream.getRatio(),
+                                    stream.isScrambled());
+    }
+
+    @Override
+    public void updateElementaryStreamUsage(int pid, String category, String description)
+    {
+        delegate.updateElementaryStreamUsage(pid, category, description);
+    }
+
+    @Override
+    public void updateElementaryStreamUsage(ElementaryStream stream)
+    {
+        delegate.updateElementaryStreamUsage(stream);
+    }
+
+    @Override
+    public void accumulateElementaryStreamErrors(int pid, int transportErrors, int continuityErrors)
+    {
+        delegate.accumulateElementaryStreamErrors(pid, transportErrors, continuityErrors);
+    }
+
+    @Override
+    public ElementaryStream getElementaryStream(int pid)
+    {
+        return delegate.getElementaryStream(pid);
+    }
+
+    @Override
+    public List<ElementaryStream> listElementaryStreams(boolean presentOnly)
+    {
+        return delegate.listElementaryStreams(presentOnly);
+    }
+
+    @Override
+    public MPEGProgram addMPEGProgram(int programNumber, int transportStreamId, int pmtPid)
+    {
+        return delegate.addMPEGProgram(programNumber, transportStreamId, pmtPid);
+    }
+
+    @Override
+    public void updateMPEGProgram(int programRef, int pcrPid, int pmtVersion, boolean freeAccess)
+    {
+        delegate.updateMPEGProgram(programRef, pcrPid, pmtVersion, freeAccess);
+    }
+
+    @Override
+    public void clearMPEGPrograms()
+    {
+        delegate.clearMPEGPrograms();
+    }
+
+    @Override
+    public void addProgramElementaryMapping(int programRef, int streamPid, int streamType)
+    {
+        delegate.addProgramElementaryMapping(programRef, streamPid, streamType);
+    }
+
+    @Override
+    public List<MPEGProgram> listMPEGPrograms()
+    {
+        return delegate.listMPEGPrograms();
+    }
+
+    @Override
+    public void addCASystemStream(int pid, int type, int systemId, byte[] privateData, int programRef, int programNumber, int elementaryStreamPid)
+    {
+        delegate.addCASystemStream(pid, type, systemId, privateData, programRef, programNumber, elementaryStreamPid);
+    }
+
+    @Override
+    public List<CASystemStream> listCASystemStreams()
+    {
+        return delegate.listCASystemStreams();
+    }
+
+    @Override
+    public SIBouquet addSIBouquet(int bouquetId)
+    {
+        return delegate.addSIBouquet(bouquetId);
+    }
+
+    @Override
+    public void updateSIBouquet(SIBouquet bouquet)
+    {
+        delegate.updateSIBouquet(bouquet);
+    }
+
+    @Override
+    public void addBouquetServiceMapping(int bouquetRef, int transportStreamId, int originalNetworkId, int serviceId)
+    {
+        delegate.addBouquetServiceMapping(bouquetRef, transportStreamId, originalNetworkId, serviceId);
+    }
+
+    @Override
+    public List<SIBouquet> listSIBouquets()
+    {
+        return delegate.listSIBouquets();
+    }
+
+    @Override
+    public SINetwork addSINetwork(int networkId, boolean actualNetwork)
+    {
+        return delegate.addSINetwork(networkId, actualNetwork);
+    }
+
+    @Override
+    public void updateSINetwork(SINetwork network)
+    {
+        delegate.updateSINetwork(network);
+    }
+
+    @Override
+    public List<SINetwork> listSINetworks()
+    {
+        return delegate.listSINetworks();
+    }
+
+    @Override
+    public SINetwork getCurrenetSINetwork()
+    {
+        return delegate.getCurrenetSINetwork();
+    }
+
+    @Override
+    public List<SINetwork> getOtherSINetworks()
+    {
+        return delegate.getOtherSINetworks();
+    }
+
+    @Override
+    public SIMultiplex addSIMultiplex(int networkRef, int transportStreamId, int originalNetworkId)
+    {
+        return delegate.addSIMultiplex(networkRef, transportStreamId, originalNetworkId);
+    }
+
+    @Override
+    public void updateSIMultiplex(SIMultiplex multiplex)
+    {
+        delegate.updateSIMultiplex(multiplex);
+    }
+
+    @Override
+    public void addMultiplexServiceMapping(int bouquetRef, int serviceId)
+    {
+        delegate.addMultiplexServiceMapping(bouquetRef, serviceId);
+    }
+
+    @Override
+    public List<SIMultiplex> listSIMultiplexes()
+    {
+        return delegate.listSIMultiplexes();
+    }
+
+    @Override
+    public List<SIMultiplex> getActualNetworkMultiplexes()
+    {
+        return delegate.getActualNetworkMultiplexes();
+    }
+
+    @Override
+    public List<SIMultiplex> getOtherNetworkMultiplexes()
+    {
+        return delegate.getOtherNetworkMultiplexes();
+    }
+
+    @Override
+    public SIService addSIService(int serviceId, int transportStreamId, int originalNetworkId, boolean actualTransportStream)
+    {
+        return delegate.addSIService(serviceId, transportStreamId, originalNetworkId, actualTransportStream);
+    }
+
+    @Override
+    public void updateSIService(SIService service)
+    {
+        delegate.updateSIService(service);
+    }
+
+    @Override
+    public List<SIService> listRegularSIServices()
+    {
+        return delegate.listRegularSIServices();
+    }
+
+    @Override
+    public List<SIService> listNVODSIServices()
+    {
+        return delegate.listNVODSIServices();
+    }
+
+    @Override
+    public List<SIService> getActualTransportStreamServices()
+    {
+        return delegate.getActualTransportStreamServices();
+    }
+
+    @Override
+    public List<SIService> getOtherTransportStreamServices()
+    {
+        return delegate.getOtherTransportStreamServices();
+    }
+
+    @Override
+    public void updateSIEvent(SIEvent event)
+    {
+        delegate.updateSIEvent(event);
+    }
+
+    @Override
+    public List<SIEvent> listRegularSIEvents(int transportStreamId, int originalNetworkId, int serviceId,
+                                             boolean presentOnly, boolean scheduleOnly,
+                                             OffsetDateTime timeFilterBegin, OffsetDateTime timeFilterEnd)
+    {
+        return delegate.listRegularSIEvents(transportStreamId, originalNetworkId, serviceId,
+                                            presentOnly, scheduleOnly,
+                                            timeFilterBegin, timeFilterEnd);
+    }
+
+    @Override
+    public List<SIEvent> listNVODSIEvents(int transportStreamId, int originalNetworkId, int serviceId,
+                                          boolean presentOnly, boolean scheduleOnly,
+                                          OffsetDateTime timeFilterBegin, OffsetDateTime timeFilterEnd)
+    {
+        return delegate.listNVODSIEvents(transportStreamId, originalNetworkId, serviceId,
+                                         presentOnly, scheduleOnly,
+                                         timeFilterBegin, timeFilterEnd);
+    }
+
+    @Override
+    public void addTimestamp(OffsetDateTime timestamp)
+    {
+        delegate.addTimestamp(timestamp);
+    }
+
+    @Override
+    public OffsetDateTime getLastTimestamp()
+    {
+        return delegate.getLastTimestamp();
+    }
+
+    @Override
+    public void addTR290Event(TR290Event event)
+    {
+        // TR290错误在内存中汇总，开销固定，不必排队。
+        delegate.addTR290Event(event);
+    }
+
+    @Override
+    public void addTR290Error(String type, int stream, long position, String format, long arg1, long arg2, long arg3)
+    {
+        delegate.addTR290Error(type, stream, position, format, arg1, arg2, arg3);
+    }
+
+    @Override
+    public void clearTR290Events()
+    {
+        delegate.clearTR290Events();
+    }
+
+    @Override
+    public List<TR290Event> listTR290Events(String type, int count)
+    {
+        return delegate.listTR290Events(type, count);
+    }
+
+    @Override
+    public List<TR290Event> listTR290Events()
+    {
+        return delegate.listTR290Events();
+    }
+
+    @Override
+    public TR290Stats getTR290Stats()
+    {
+        return delegate.getTR290Stats();
+    }
+
+    @Override
+    public void addPCR(PCR pcr)
+    {
+        // PCR统计在内存中完成，开销固定，不必排队。
+        delegate.addPCR(pcr);
+    }
+
+    @Override
+    public void addPCRCheck(PCRCheck check)
+    {
+        delegate.addPCRCheck(check);
+    }
+
+    @Override
+    public List<PCRStats> listPCRStats()
+    {
+        return delegate.listPCRStats();
+    }
+
+    @Override
+    public List<PCRCheck> getRecentPCRChecks(int pid, int limit)
+    {
+        return delegate.getRecentPCRChecks(pid, limit);
+    }
+
+    @Override
+    public void addPrivateSection(String tag, int pid, long position, byte[] encoding)
+    {
+        enqueue(new PrivateSectionRow(tag, pid, position, encoding));
+    }
+
+    @Override
+    public void removePrivateSections(String tag, int pid, int count)
+    {
+        enqueue(new PrivateSectionTrim(tag, pid, count));
+    }
+
+    @Override
+    public void removePrivateSections(String tag, int pid)
+    {
+        enqueue(new PrivateSectionClear(tag, pid));
+    }
+
+    @Override
+    public List<PrivateSection> getPrivateSections(int pid, int count)
+    {
+        return delegate.getPrivateSections(pid, count);
+    }
+
+    @Override
+    public List<PrivateSection> getPrivateSections(String tag, int pid, int count)
+    {
+        return delegate.getPrivateSections(tag, pid, count);
+    }
+
+    @Override
+    public Map<String, List<PrivateSection>> getPrivateSectionGroups()
+    {
+        return delegate.getPrivateSectionGroups();
+    }
+
+    @Override
+    public Map<String, List<PrivateSection>> getPrivateSectionGroups(String... tags)
+    {
+        return delegate.getPrivateSectionGroups(tags);
+    }
+
+    @Override
+    public Map<String, List<PrivateSection>> getPrivateSectionGroupsAfter(long id)
+    {
+        return delegate.getPrivateSectionGroupsAfter(id);
+    }
+
+    @Override
+    public Map<String, Integer> countPrivateSectionGroups()
+    {
+        return delegate.countPrivateSectionGroups();
+    }
+
+    @Override
+    public void addFilteredSection(int pid, long position, byte[] encoding)
+    {
+        // 过滤私有段保存在内存中的定长缓冲区，开销固定，不必排队。
+        delegate.addFilteredSection(pid, position, encoding);
+    }
+
+    @Override
+    public List<PrivateSection> getFilteredSectionsAfter(long id)
+    {
+        return delegate.getFilteredSectionsAfter(id);
+    }
+
+    @Override
+    public int countFilteredSections()
+    {
+        return delegate.countFilteredSections();
+    }
+
+    @Override
+    public void addTransportPacket(int pid, long position, byte[] encoding)
+    {
+        // 捕获的包保存在内存环形缓冲区中，开销固定，不必排队。
+        delegate.addTransportPacket(pid, position, encoding);
+    }
+
+    @Override
+    public void removeTransportPackets(int pid, int count)
+    {
+        delegate.removeTransportPackets(pid, count);
+    }
+
+    @Override
+    public List<TransportPacket> getTransportPackets(int pid, int count)
+    {
+        return delegate.getTransportPackets(pid, count);
+    }
+
+    @Override
+    public Map<Integer, List<TransportPacket>> getTransportPacketGroups()
+    {
+        return delegate.getTransportPacketGroups();
+    }
+
+    @Override
+    public void addPESPacket(int pid, long position, byte[] encoding)
+    {
+        delegate.addPESPacket(pid, position, encoding);
+    }
+
+    @Override
+    public void removePESPackets(int pid, int count)
+    {
+        delegate.removePESPackets(pid, count);
+    }
+
+    @Override
+    public List<PESPacket> getPESPackets(int pid, int count)
+    {
+        return delegate.getPESPackets(pid, count);
+    }
+
+    @Override
+    public Map<Integer, List<PESPacket>> getPESPacketGroups()
+    {
+        return delegate.getPESPacketGroups();
+    }
+
+    @Override
+    public void addTableVersion(TableVersion version)
+    {
+        delegate.addTableVersion(version);
+    }
+
+    @Override
+    public List<TableVersion> listTableVersions()
+    {
+        return delegate.listTableVersions();
+    }
+
+    @Override
+    public void addFilteringHook(FilteringHook hook)
+    {
+        delegate.addFilteringHook(hook);
+    }
+
+    @Override
+    public void clearFilteringHooks(String sourceUri)
+    {
+        delegate.clearFilteringHooks(sourceUri);
+    }
+
+    @Override
+    public List<FilteringHook> listFilteringHooks(String sourceUri)
+    {
+        return delegate.listFilteringHooks(sourceUri);
+    }
+
+    @Override
+    public void addStreamDensities(int pid, long position, int[] intervals, int count)
+    {
+        delegate.addStreamDensities(pid, position, intervals, count);
+    }
+
+    @Override
+    public List<StreamDensityStats> listStreamDensityStats()
+    {
+        return delegate.listStreamDensityStats();
+    }
+
+    @Override
+    public List<StreamDensityBulk> getRecentStreamDensityBulks(int pid, int limit)
+    {
+        return delegate.getRecentStreamDensityBulks(pid, limit);
+    }
+
+    @Override
+    public List<StreamDensityBucket> getStreamDensityOverview(int pid, long fromPosition, long toPosition, int maxPoints)
+    {
+        return delegate.getStreamDensityOverview(pid, fromPosition, toPosition, maxPoints);
+    }
+
+    @Override
+    public long getChangeCount(ChangeDomain domain)
+    {
+        return delegate.getChangeCount(domain);
+    }
+
+    @Override
+    public int update(String sql) throws SQLException
+    {
+        return delegate.update(sql);
+    }
+
+    @Override
+    public <T> List<T> query(String sql, Class<T> clazz) throws SQLException
+    {
+        return delegate.query(sql, clazz);
+    }
+
+    private void enqueue(Mutation mutation)
+    {
+        if (!queue.offer(mutation))
+            droppedWrites.incrementAndGet();
+    }
+
+    private void discardPendingWrites()
+    {
+        flushLock.lock();
+        try
+        {
+            int discarded = queue.size();
+            queue.clear();
+            pendingSourceStats.set(null);
+            if (discarded > 0)
+                log.debug("重置数据库，放弃 {} 条未提交的写操作", discarded);
+        } finally
+        {
+            flushLock.unlock();
+        }
+    }
+
+    private void flushQuietly()
+    {
+        try
+        {
+            flush();
+        } catch (Exception ex)
+        {
+            log.error("回写数据库时异常：{}", ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * 批量提交后标记本批操作涉及的数据域。
+     */
+    private void markChanged(List<Mutation> mutations, SourceStats sourceStats)
+    {
+        EnumSet<ChangeDomain> domains = EnumSet.noneOf(ChangeDomain.class);
+        for (Mutation mutation : mutations)
+            domains.add(mutation.domain());
+        if (sourceStats != null)
+            domains.add(ChangeDomain.STREAM);
+        for (ChangeDomain domain : domains)
+            changeCounters.markChanged(sourceRef, domain);
+    }
+
+    /**
+     * 按顺序写入操作序列：同一张表上的操作保持原有顺序，不同表的操作各自攒批。
+     */
+    private void writeMutations(Connection connection, List<Mutation> mutations) throws SQLException
+    {
+        if (mutations.isEmpty())
+            return;
+
+        Map<String, PreparedStatement> statements = new HashMap<>();
+        Map<String, PreparedStatement> pendingBatches = new HashMap<>();
+        try
+        {
+            for (Mutation mutation : mutations)
+            {
+                PreparedStatement statement = statements.get(mutation.sql());
+                if (statement == null)
+                {
+                    statement = connection.prepareStatement(mutation.sql());
+                    statements.put(mutation.sql(), statement);
+                }
+
+                PreparedStatement pending = pendingBatches.get(mutation.table());
+                if (pending != null && pending != statement)
+                    pending.executeBatch();
+
+                mutation.bind(statement, sourceRef);
+                statement.addBatch();
+                pendingBatches.put(mutation.table(), statement);
+            }
+
+            for (PreparedStatement pending : pendingBatches.values())
+                pending.executeBatch();
+        } finally
+        {
+            for (PreparedStatement statement : statements.values())
+                statement.close();
+        }
+    }
+
+    private void writeSourceStats(Connection connection, SourceStats stats) throws SQLException
+    {
+        if (stats == null)
+            return;
+
+        try (PreparedStatement statement = connection.prepareStatement("""
+                UPDATE `t_stream_source`
+                SET `bitrate` = ?, `frame_size` = ?, `is_scrambled` = ?, `packet_count` = ?, `stream_count` = ?
+                WHERE `id` = ?
+                """))
+        {
+            statement.setInt(1, stats.bitrate());
+            statement.setInt(2, stats.frameSize());
+            statement.setBoolean(3, stats.scrambled());
+            statement.setLong(4, stats.packetCount());
+            statement.setInt(5, stats.streamCount());
+            statement.setInt(6, stats.sourceRef());
+            statement.executeUpdate();
+        }
+    }
+
+    private interface Mutation
+    {
+        String table();
+
+        String sql();
+
+        ChangeDomain domain();
+
+        void bind(PreparedStatement statement, int sourceRef) throws SQLException;
+    }
+
+    private record SourceStats(int sourceRef, int bitrate, int frameSize, boolean scrambled, long packetCount, int streamCount)
+    {
+    }
+
+    private record PrivateSectionRow(String tag, int pid, long position, byte[] encoding) implements Mutation
+    {
+        @Override
+        public String table()
+        {
+            return "t_private_section";
+        }
+
+        @Override
+        public ChangeDomain domain()
+        {
+            return ChangeDomain.DATAGRAM;
+        }
+
+        @Override
+        public String sql()
+        {
+            return "INSERT INTO `t_private_section` (`source_ref`, `tag`, `pid`, `pct`, `encoding`) VALUES (?, ?, ?, ?, ?)";
+        }
+
+        @Override
+        public void bind(PreparedStatement statement, int sourceRef) throws SQLException
+        {
+            statement.setInt(1, sourceRef);
+            statement.setString(2, tag);
+            statement.setInt(3, pid);
+            statement.setLong(4, position);
+            statement.setBytes(5, encoding);
+        }
+    }
+
+    private record PrivateSectionTrim(String tag, int pid, int count) implements Mutation
+    {
+        @Override
+        public String table()
+        {
+            return "t_private_section";
+        }
+
+        @Override
+        public ChangeDomain domain()
+        {
+            return ChangeDomain.DATAGRAM;
+        }
+
+        @Override
+        public String sql()
+        {
+            return """
+                   DELETE FROM `t_private_section`
+                   WHERE `id` IN
+                    (SELECT `tmp`.`id` FROM
+                      (SELECT `id` FROM `t_private_section`
+                       WHERE `source_ref` = ? AND `tag` = ? AND `pid` = ?
+                       ORDER BY `id` ASC
+                       LIMIT ?) AS `tmp`
+                    )
+                   """;
+        }
+
+        @Override
+        public void bind(PreparedStatement statement, int sourceRef) throws SQLException
+        {
+            statement.setInt(1, sourceRef);
+            statement.setString(2, tag);
+            statement.setInt(3, pid);
+            statement.setInt(4, count);
+        }
+    }
+
+    private record PrivateSectionClear(String tag, int pid) implements Mutation
+    {
+        @Override
+        public String table()
+        {
+            return "t_private_section";
+        }
+
+        @Override
+        public ChangeDomain domain()
+        {
+            return ChangeDomain.DATAGRAM;
+        }
+
+        @Override
+        public String sql()
+        {
+            return "DELETE FROM `t_private_section` WHERE `source_ref` = ? AND `tag` = ? AND `pid` = ?";
+        }
+
+        @Override
+        public void bind(PreparedStatement statement, int sourceRef) throws SQLException
+        {
+            statement.setInt(1, sourceRef);
+            statement.setString(2, tag);
+            statement.setInt(3, pid);
+        }
+    }
+}
@@ -22,7 +22,6 @@ import m2tk.multiplex.DemuxStatus;
 import m2tk.multiplex.TSDemux;
 import m2tk.multiplex.TSDemuxEvent;
 import m2tk.multiplex.TSDemuxPayload;
-import m2tk.util.BigEndian;
 import org.pf4j.Extension;
 
 import java.util.Arrays;
@@ -31,22 +30,18 @@ import java.util.Arrays;
 public class DensityTracer implements Tracer
 {
     private final DensityContext[] contexts;
-    private static final int BULK_SIZE = 1000; // 不要超过1000，因为数据表里对应字段的长度上限设置为1000。
+    private static final int BULK_SIZE = 1000;
 
     private M2TKDatabase databaseService;
     private long t0;
 
     private static class DensityContext
     {
-        private int ref;
         private int pid;
-        private int offset;
-        private int count;
-        private byte[] density;
         private long lastPosition;
-        private long maxDensity;
-        private long minDensity;
-        private double avgDensity; // 用整型会降低数据精度，导致数值错误
+        private long firstPosition; // 缓冲区中第一个间隔结束时的包位置
+        private int count;
+        private final int[] intervals = new int[BULK_SIZE]; // 写入数据库后复用
     }
 
     public DensityTracer()
@@ -94,71 +89,34 @@ public class DensityTracer implements Tracer
         if (context == null)
         {
             context = new DensityContext();
-            context.ref = -1;
             context.pid = pid;
             context.lastPosition = pct;
-            context.count = 0;
-            context.offset = 0;
-            context.density = new byte[BULK_SIZE * 4];
-            context.avgDensity = 0;
-            context.maxDensity = 0;
-            context.minDensity = Integer.MAX_VALUE;
-
             contexts[pid] = context;
-        } else
-        {
-            long interval = Math.min(pct - context.lastPosition, Integer.MAX_VALUE);
-            BigEndian.setUINT32(context.density, context.offset, interval);
+            return;
+        }
 
-            context.offset += 4;
-            context.lastPosition = pct;
-            context.maxDensity = Math.max(context.maxDensity, interval);
-            context.minDensity = Math.min(context.minDensity, interval);
-            context.avgDensity = (context.avgDensity * context.count + interval) / (context.count + 1);
-            context.count += 1;
+        if (context.count == 0)
+            context.firstPosition = pct;
+        context.intervals[context.count] = (int) Math.min(pct - context.lastPosition, Integer.MAX_VALUE);
+        context.lastPosition = pct;
+        context.count += 1;
 
-            if (context.ref == -1)
-            {
-                context.ref = databaseService.addStreamDensity(context.pid,
-                                                               context.lastPosition,
-                                                               context.count,
-                                                               Arrays.copyOf(context.density, context.offset));
-                t0 = System.currentTimeMillis();
-            }
-            if (context.count >= BULK_SIZE)
-            {
-                databaseService.updateStreamDensity(context.ref,
-                                                    context.count,
-                                                    Arrays.copyOf(context.density, context.offset),
-                                                    context.avgDensity,
-                                                    context.maxDensity,
-                                                    context.minDensity);
-                context.ref = -1;
-                context.count = 0;
-                context.offset = 0;
-                context.avgDensity = 0;
-                context.maxDensity = 0;
-                context.minDensity = Integer.MAX_VALUE;
-
-                Arrays.fill(context.density, (byte) 0);
-                t0 = System.currentTimeMillis();
-            }
-        }
+        if (context.count == BULK_SIZE)
+            flush(context);
+    }
+
+    private void flush(DensityContext context)
+    {
+        databaseService.addStreamDensities(context.pid, context.firstPosition, context.intervals, context.count);
+        context.count = 0;
     }
 
     private void saveToDatabase()
     {
         for (DensityContext context : contexts)
         {
-            if (context != null && context.ref != -1)
-            {
-                databaseService.updateStreamDensity(context.ref,
-                                                    context.count,
-                                                    Arrays.copyOf(context.density, context.offset),
-                                                    context.avgDensity,
-                                                    context.maxDensity,
-                                                    context.minDensity);
-            }
+            if (context != null && context.count > 0)
+                flush(context);
         }
         t0 = System.currentTimeMillis();
     }
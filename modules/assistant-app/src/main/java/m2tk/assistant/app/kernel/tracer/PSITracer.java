@@ -17,6 +17,8 @@ package m2tk.assistant.app.kernel.tracer;
 
 import lombok.extern.slf4j.Slf4j;
 import m2tk.assistant.api.M2TKDatabase;
+import m2tk.assistant.api.SectionBus;
+import m2tk.assistant.api.SectionEvent;
 import m2tk.assistant.api.Tracer;
 import m2tk.assistant.api.domain.CASystemStream;
 import m2tk.assistant.api.domain.MPEGProgram;
@@ -36,9 +38,9 @@ import m2tk.multiplex.TSDemuxEvent;
 import m2tk.multiplex.TSDemuxPayload;
 import org.pf4j.Extension;
 
-import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.function.Consumer;
 
 @Slf4j
 @Extension
@@ -51,20 +53,19 @@ public class PSITracer implements Tracer
     private final CADescriptorDecoder cad;
     private final DescriptorLoopDecoder descloop;
     private final ProgramElementDecoder element;
-    private final Map<Integer, Integer> pmtVersions;
     private final Map<Integer, ProgramContext> programs;
+    private final Consumer<SectionEvent> pmtListener;
 
     private M2TKDatabase databaseService;
+    private TSDemux demuxService;
+    private SectionBus sectionBus;
     private int sourceId;
-    private int[] patSections;
-    private int[] catSections;
-    private int[] tsdtSections;
+    private int patSectionCount;
     private int tsid;
 
     static class ProgramContext
     {
         MPEGProgram program;
-        TSDemux.Channel channel;
     }
 
     public PSITracer()
@@ -77,19 +78,27 @@ public class PSITracer implements Tracer
         descloop = new DescriptorLoopDecoder();
         element = new ProgramElementDecoder();
         programs = new HashMap<>();
-        pmtVersions = new HashMap<>();
+        pmtListener = this::processPMT;
     }
 
     @Override
     public void configure(StreamSource source, TSDemux demux, M2TKDatabase database)
+    {
+        configure(source, demux, SectionBus.create(demux), database);
+    }
+
+    @Override
+    public void configure(StreamSource source, TSDemux demux, SectionBus bus, M2TKDatabase database)
     {
         sourceId = source.getId();
         databaseService = database;
+        demuxService = demux;
+        sectionBus = bus;
 
         demux.registerEventListener(this::processDemuxStatus);
-        demux.registerSectionChannel(0x0000, this::processPAT);
-        demux.registerSectionChannel(0x0001, this::processCAT);
-        demux.registerSectionChannel(0x0002, this::processTSDT);
+        bus.subscribe(0x0000, this::processPAT);
+        bus.subscribe(0x0001, this::processCAT);
+        bus.subscribe(0x0002, this::processTSDT);
     }
 
     private void processDemuxStatus(TSDemuxEvent event)
@@ -98,51 +107,38 @@ public class PSITracer implements Tracer
         {
             if (status.isRunning())
             {
-                pmtVersions.clear();
                 programs.clear();
-                patSections = new int[0];
-                catSections = new int[0];
-                tsdtSections = new int[0];
+                patSectionCount = 0;
                 tsid = -1;
             }
         }
     }
 
-    private void processPAT(TSDemuxPayload payload)
+    private void processPAT(SectionEvent event)
     {
-        if (payload.getType() != TSDemuxPayload.Type.SECTION ||
-            payload.getStreamPID() != 0x0000 ||
-            !pat.isAttachable(payload.getEncoding()))
-            return;
-
-        pat.attach(payload.getEncoding());
-        if (!pat.isChecksumCorrect())
+        if (event.kind() == SectionEvent.Kind.CORRUPTED)
         {
             log.warn("PAT校验错误。");
             return;
         }
 
-        int version = pat.getVersionNumber();
-        int secnum = pat.getSectionNumber();
-        int total = pat.getLastSectionNumber() + 1;
-        if (total == patSections.length && patSections[secnum] == version)
+        TSDemuxPayload payload = event.payload();
+        if (!event.isUpdate() || !pat.isAttachable(payload.getEncoding()))
             return; // 已经处理过了。
 
-        TSDemux demux = payload.getChannel().getHost();
-
-        if (total != patSections.length)
+        pat.attach(payload.getEncoding());
+        int total = event.lastSectionNumber() + 1;
+        if (total != patSectionCount)
         {
-            patSections = new int[total];
-            Arrays.fill(patSections, -1);
+            patSectionCount = total;
 
             for (ProgramContext context : programs.values())
             {
-                demux.closeChannel(context.channel);
+                sectionBus.unsubscribe(context.program.getPmtPid(), pmtListener);
                 databaseService.updateElementaryStreamUsage(context.program.getPmtPid(),
                                                             "",
                                                             "");
             }
-            pmtVersions.clear();
             programs.clear();
             databaseService.clearMPEGPrograms();
         }
@@ -153,14 +149,12 @@ public class PSITracer implements Tracer
 
             ProgramContext context = new ProgramContext();
             context.program = databaseService.addMPEGProgram(number, tsid, pmtpid);
-            context.channel = demux.registerSectionChannel(pmtpid, this::processPMT);
             programs.put(number, context);
-            pmtVersions.put(pmtpid, -1);
+            sectionBus.subscribe(pmtpid, pmtListener); // 重新订阅，之后收到的每个PMT分段先按新分段处理一次。
         });
 
         databaseService.updateStreamSourceTransportId(sourceId, tsid);
 
-        patSections[secnum] = version;
         databaseService.updateStreamSourceComponentPresence(sourceId, "PAT", true);
         databaseService.updateElementaryStreamUsage(payload.getStreamPID(), StreamTypes.CATEGORY_DATA, "PAT");
         databaseService.addPrivateSection("PAT",
@@ -169,32 +163,19 @@ public class PSITracer implements Tracer
                                           payload.getEncoding().getBytes());
     }
 
-    private void processCAT(TSDemuxPayload payload)
+    private void processCAT(SectionEvent event)
     {
-        if (payload.getType() != TSDemuxPayload.Type.SECTION ||
-            payload.getStreamPID() != 0x0001 ||
-            !cat.isAttachable(payload.getEncoding()))
-            return;
-
-        cat.attach(payload.getEncoding());
-        if (!cat.isChecksumCorrect())
+        if (event.kind() == SectionEvent.Kind.CORRUPTED)
         {
             log.warn("CAT校验错误。");
             return;
         }
 
-        int version = cat.getVersionNumber();
-        int secnum = cat.getSectionNumber();
-        int total = cat.getLastSectionNumber() + 1;
-        if (total == catSections.length && catSections[secnum] == version)
+        TSDemuxPayload payload = event.payload();
+        if (!event.isUpdate() || !cat.isAttachable(payload.getEncoding()))
             return; // 已经处理过了。
 
-        if (total != catSections.length)
-        {
-            catSections = new int[total];
-            Arrays.fill(catSections, -1);
-        }
-
+        cat.attach(payload.getEncoding());
         descloop.attach(cat.getDescriptorLoop());
         descloop.forEach(cad::isAttachable, descriptor -> {
             cad.attach(descriptor);
@@ -211,7 +192,6 @@ public class PSITracer implements Tracer
                                               -1, -1, -1);
         });
 
-        catSections[secnum] = version;
         databaseService.updateStreamSourceComponentPresence(sourceId, "CAT", true);
         databaseService.updateElementaryStreamUsage(payload.getStreamPID(), StreamTypes.CATEGORY_DATA, "CAT");
         databaseService.addPrivateSection("CAT",
@@ -220,33 +200,18 @@ public class PSITracer implements Tracer
                                           payload.getEncoding().getBytes());
     }
 
-    private void processTSDT(TSDemuxPayload payload)
+    private void processTSDT(SectionEvent event)
     {
-        if (payload.getType() != TSDemuxPayload.Type.SECTION ||
-            payload.getStreamPID() != 0x0002 ||
-            !tsdt.isAttachable(payload.getEncoding()))
-            return;
-
-        tsdt.attach(payload.getEncoding());
-        if (!tsdt.isChecksumCorrect())
+        if (event.kind() == SectionEvent.Kind.CORRUPTED)
         {
             log.warn("TSDT校验错误。");
             return;
         }
 
-        int version = tsdt.getVersionNumber();
-        int secnum = tsdt.getSectionNumber();
-        int total = tsdt.getLastSectionNumber() + 1;
-        if (total == tsdtSections.length && tsdtSections[secnum] == version)
+        TSDemuxPayload payload = event.payload();
+        if (!event.isUpdate() || !tsdt.isAttachable(payload.getEncoding()))
             return; // 已经处理过了。
 
-        if (total != tsdtSections.length)
-        {
-            tsdtSections = new int[total];
-            Arrays.fill(tsdtSections, -1);
-        }
-
-        tsdtSections[secnum] = version;
         databaseService.updateStreamSourceComponentPresence(sourceId, "TSDT", true);
         databaseService.updateElementaryStreamUsage(payload.getStreamPID(), StreamTypes.CATEGORY_DATA, "TSDT");
         databaseService.addPrivateSection("TSDT",
@@ -255,25 +220,21 @@ public class PSITracer implements Tracer
                                           payload.getEncoding().getBytes());
     }
 
-    private void processPMT(TSDemuxPayload payload)
+    private void processPMT(SectionEvent event)
     {
-        if (payload.getType() != TSDemuxPayload.Type.SECTION ||
-            !pmtVersions.containsKey(payload.getStreamPID()) ||
-            !pmt.isAttachable(payload.getEncoding()))
-            return;
-
-        pmt.attach(payload.getEncoding());
-        if (!pat.isChecksumCorrect())
+        if (event.kind() == SectionEvent.Kind.CORRUPTED)
         {
             log.warn("PMT校验错误。");
             return;
         }
 
-        int version = pmt.getVersionNumber();
-        int pmtpid = payload.getStreamPID();
+        TSDemuxPayload payload = event.payload();
+        if (!event.isUpdate() || !pmt.isAttachable(payload.getEncoding()))
+            return; // 已经处理过了。
 
-        if (pmtVersions.get(pmtpid) == version)
-            return;
+        pmt.attach(payload.getEncoding());
+        int version = event.versionNumber();
+        int pmtpid = payload.getStreamPID();
 
         ProgramContext context = programs.get(pmt.getProgramNumber());
         if (context == null)
@@ -315,7 +276,7 @@ public class PSITracer implements Tracer
                                                         String.format("（节目号：%d）", program.getProgramNumber()));
             databaseService.addProgramElementaryMapping(program.getId(), esPid, esType);
 
-            filterPESStream(payload.getChannel().getHost(), esPid, esType);
+            filterPESStream(esPid, esType);
 
             descloop.attach(element.getDescriptorLoop());
             descloop.forEach(cad::isAttachable, descriptor -> {
@@ -343,7 +304,6 @@ public class PSITracer implements Tracer
                                           program.getPmtVersion(),
                                           program.isFreeAccess());
 
-        pmtVersions.put(pmtpid, version);
         databaseService.updateStreamSourceComponentPresence(sourceId, "PMT", true);
         databaseService.updateElementaryStreamUsage(pmtpid,
                                                     StreamTypes.CATEGORY_DATA,
@@ -355,11 +315,11 @@ public class PSITracer implements Tracer
                                           payload.getEncoding().getBytes());
     }
 
-    private void filterPESStream(TSDemux demux, int pid, int type)
+    private void filterPESStream(int pid, int type)
     {
         if (0x01 <= type && type <= 0x14 && type != 0x05)
         {
-            demux.registerPESChannel(pid, payload ->
+            demuxService.registerPESChannel(pid, payload ->
                 databaseService.addPESPacket(payload.getStreamPID(),
                                              payload.getFinishPacketCounter(),
                                              payload.getEncoding().getBytes()));
@@ -0,0 +1,145 @@
+/*
+ *  Copyright (c) M2TK Project. All rights reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package m2tk.assistant.app.kernel.tracer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.LongConsumer;
+
+/**
+ * 以包计数为时钟的时间轮
+ * <p>
+ * 定时器的到期时间以包位置表示，每 {@value #TICK_PACKETS} 个包为一格，到期的定时器在所在格被推进时触发，
+ * 最多延迟一格。推进、设置和取消定时器都是常数时间（不计到期回调），跨度超过一圈的定时器按圈数保留在格中。
+ * 时间轮不是线程安全的，应在分析器的处理线程中使用。
+ */
+final class PacketTimerWheel
+{
+    static final int TICK_PACKETS = 64;
+    private static final int TICK_SHIFT = 6;
+    private static final int SLOT_COUNT = 1024;
+    private static final int SLOT_MASK = SLOT_COUNT - 1;
+
+    /**
+     * 定时器，到期时以当前包位置调用回调。
+     */
+    static final class Timer
+    {
+        private final LongConsumer task;
+        private long expiryTick;
+        private int slot = -1;
+        private Timer prev;
+        private Timer next;
+
+        Timer(LongConsumer task)
+        {
+            this.task = task;
+        }
+
+        boolean isScheduled()
+        {
+            return slot >= 0;
+        }
+    }
+
+    private final Timer[] slots;
+    private final List<Timer> expired;
+    private long lastTick;
+
+    PacketTimerWheel()
+    {
+        slots = new Timer[SLOT_COUNT];
+        expired = new ArrayList<>();
+        lastTick = -1;
+    }
+
+    /**
+     * 设置定时器（已设置的定时器先取消）
+     * @param timer 定时器
+     * @param deadline 到期的包位置，早于当前位置时在下一格触发
+     */
+    void schedule(Timer timer, long deadline)
+    {
+        cancel(timer);
+
+        long tick = (Math.max(0, deadline) + TICK_PACKETS - 1) >>> TICK_SHIFT;
+        timer.expiryTick = Math.max(tick, lastTick + 1);
+        link(timer, (int) (timer.expiryTick & SLOT_MASK));
+    }
+
+    void cancel(Timer timer)
+    {
+        if (timer.slot < 0)
+            return;
+
+        if (timer.prev != null)
+            timer.prev.next = timer.next;
+        else
+            slots[timer.slot] = timer.next;
+        if (timer.next != null)
+            timer.next.prev = timer.prev;
+
+        timer.prev = null;
+        timer.next = null;
+        timer.slot = -1;
+    }
+
+    /**
+     * 推进时钟到指定的包位置，触发其间到期的定时器。
+     * @param position 当前包位置
+     */
+    void advance(long position)
+    {
+        long target = position >>> TICK_SHIFT;
+        if (target <= lastTick)
+            return;
+
+        // 一次跨越超过一圈时，每个格只需处理一次。
+        long from = Math.max(lastTick + 1, target - SLOT_COUNT + 1);
+        lastTick = target;
+        for (long tick = from; tick <= target; tick++)
+            expire((int) (tick & SLOT_MASK), target, position);
+    }
+
+    private void expire(int slot, long target, long position)
+    {
+        // 先摘下本格中到期的定时器再逐个回调，回调中可以安全地重新设置定时器。
+        Timer timer = slots[slot];
+        while (timer != null)
+        {
+            Timer next = timer.next;
+            if (timer.expiryTick <= target)
+            {
+                cancel(timer);
+                expired.add(timer);
+            }
+            timer = next;
+        }
+
+        for (int i = 0; i < expired.size(); i++)
+            expired.get(i).task.accept(position);
+        expired.clear();
+    }
+
+    private void link(Timer timer, int slot)
+    {
+        timer.slot = slot;
+        timer.next = slots[slot];
+        if (timer.next != null)
+            timer.next.prev = timer;
+        slots[slot] = timer;
+    }
+}
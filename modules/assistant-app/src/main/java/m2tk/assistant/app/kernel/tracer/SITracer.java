@@ -17,6 +17,8 @@ package m2tk.assistant.app.kernel.tracer;
 
 import lombok.extern.slf4j.Slf4j;
 import m2tk.assistant.api.M2TKDatabase;
+import m2tk.assistant.api.SectionBus;
+import m2tk.assistant.api.SectionEvent;
 import m2tk.assistant.api.Tracer;
 import m2tk.assistant.api.domain.*;
 import m2tk.assistant.api.presets.StreamTypes;
@@ -27,24 +29,16 @@ import m2tk.dvb.decoder.element.ServiceDescriptionDecoder;
 import m2tk.dvb.decoder.element.TransportStreamDescriptionDecoder;
 import m2tk.dvb.decoder.section.*;
 import m2tk.mpeg2.decoder.DescriptorLoopDecoder;
-import m2tk.mpeg2.decoder.SectionDecoder;
-import m2tk.multiplex.DemuxStatus;
 import m2tk.multiplex.TSDemux;
-import m2tk.multiplex.TSDemuxEvent;
 import m2tk.multiplex.TSDemuxPayload;
 import org.pf4j.Extension;
 
 import java.time.OffsetDateTime;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
 
 @Slf4j
 @Extension
 public class SITracer implements Tracer
 {
-    private final SectionDecoder sec;
     private final NITSectionDecoder nit;
     private final BATSectionDecoder bat;
     private final SDTSectionDecoder sdt;
@@ -65,14 +59,12 @@ public class SITracer implements Tracer
     private final TerrestrialDeliverySystemDescriptorDecoder tdsd;
     private final BouquetNameDescriptorDecoder bnd;
     private final ServiceListDescriptorDecoder sld;
-    private final Map<String, Integer> tableVersions;
 
     private int sourceId;
     private M2TKDatabase databaseService;
 
     public SITracer()
     {
-        sec = new SectionDecoder();
         nit = new NITSectionDecoder();
         bat = new BATSectionDecoder();
         sdt = new SDTSectionDecoder();
@@ -93,37 +85,37 @@ public class SITracer implements Tracer
         sdd = new ServiceDescriptionDecoder();
         edd = new EventDescriptionDecoder();
         sld = new ServiceListDescriptorDecoder();
-        tableVersions = new HashMap<>();
     }
 
     @Override
     public void configure(StreamSource source, TSDemux demux, M2TKDatabase database)
+    {
+        configure(source, demux, SectionBus.create(demux), database);
+    }
+
+    @Override
+    public void configure(StreamSource source, TSDemux demux, SectionBus bus, M2TKDatabase database)
     {
         sourceId = source.getId();
         databaseService = database;
 
-        demux.registerEventListener(this::processDemuxStatus);
-        demux.registerSectionChannel(0x0010, this::processSection);
-        demux.registerSectionChannel(0x0011, this::processSection);
-        demux.registerSectionChannel(0x0012, this::processSection);
-        demux.registerSectionChannel(0x0014, this::processSection);
+        bus.subscribe(0x0010, this::processSection);
+        bus.subscribe(0x0011, this::processSection);
+        bus.subscribe(0x0012, this::processSection);
+        bus.subscribe(0x0014, this::processSection);
     }
 
-    private void processDemuxStatus(TSDemuxEvent event)
+    private void processSection(SectionEvent event)
     {
-        if (event instanceof DemuxStatus status)
+        if (event.kind() == SectionEvent.Kind.CORRUPTED)
         {
-            if (status.isRunning())
-            {
-                tableVersions.clear();
-            }
+            log.warn("[PID {}] 分段校验错误。", event.pid());
+            return;
         }
-    }
+        if (!event.isUpdate())
+            return; // 已经处理过了。
 
-    private void processSection(TSDemuxPayload payload)
-    {
-        if (payload.getType() != TSDemuxPayload.Type.SECTION || !sec.isAttachable(payload.getEncoding()))
-            return;
+        TSDemuxPayload payload = event.payload();
 
         if (payload.getStreamPID() == 0x0010 && nit.isAttachable(payload.getEncoding()))
             processNIT(payload);
@@ -142,30 +134,7 @@ public class SITracer implements Tracer
     private void processNIT(TSDemuxPayload payload)
     {
         nit.attach(payload.getEncoding());
-        if (!nit.isChecksumCorrect())
-        {
-            log.warn("NIT校验错误。");
-            return;
-        }
-
         int tableId = nit.getTableID();
-        int version = nit.getVersionNumber();
-        int secnum = nit.getSectionNumber();
-
-        String uid = String.format("nit.%02x", tableId);
-        if (!tableVersions.containsKey(uid) || tableVersions.get(uid) != version)
-        {
-            // 版本变化
-            List<String> keys = new ArrayList<>(tableVersions.keySet());
-            for (String key : keys)
-                if (key.startsWith(uid))
-                    tableVersions.remove(uid);
-            tableVersions.put(uid, version);
-        }
-
-        uid = String.format("nit.%02x.%d", tableId, secnum);
-        if (tableVersions.containsKey(uid) && tableVersions.get(uid) == version)
-            return; // 已经处理过了。
 
         SINetwork network = databaseService.addSINetwork(nit.getNetworkID(), tableId == 0x40);
         databaseService.updateStreamSourceComponentPresence(sourceId, network.isActualNetwork() ? "NIT_Actual" : "NIT_Other", true);
@@ -175,8 +144,6 @@ public class SITracer implements Tracer
                                           payload.getFinishPacketCounter(),
                                           payload.getEncoding().getBytes());
 
-        tableVersions.put(uid, version);
-
         descloop.attach(nit.getDescriptorLoop());
         descloop.findFirstDescriptor(nnd::isAttachable)
                 .ifPresent(encoding -> {
@@ -219,30 +186,7 @@ public class SITracer implements Tracer
     private void processBAT(TSDemuxPayload payload)
     {
         bat.attach(payload.getEncoding());
-        if (!bat.isChecksumCorrect())
-        {
-            log.warn("BAT校验错误。");
-            return;
-        }
-
         int bouquetId = bat.getBouquetID();
-        int version = bat.getVersionNumber();
-        int secnum = bat.getSectionNumber();
-
-        String uid = String.format("bat.%d", bouquetId);
-        if (!tableVersions.containsKey(uid) || tableVersions.get(uid) != version)
-        {
-            // 版本变化
-            List<String> keys = new ArrayList<>(tableVersions.keySet());
-            for (String key : keys)
-                if (key.startsWith(uid))
-                    tableVersions.remove(uid);
-            tableVersions.put(uid, version);
-        }
-
-        uid = String.format("bat.%d.%d", bouquetId, secnum);
-        if (tableVersions.containsKey(uid) && tableVersions.get(uid) == version)
-            return; // 已经处理过了。
 
         SIBouquet bouquet = databaseService.addSIBouquet(bouquetId);
         databaseService.updateStreamSourceComponentPresence(sourceId, "BAT", true);
@@ -252,8 +196,6 @@ public class SITracer implements Tracer
                                           payload.getFinishPacketCounter(),
                                           payload.getEncoding().getBytes());
 
-        tableVersions.put(uid, version);
-
         descloop.attach(bat.getDescriptorLoop());
         descloop.findFirstDescriptor(bnd::isAttachable)
                 .ifPresent(encoding ->
@@ -284,32 +226,9 @@ public class SITracer implements Tracer
     private void processSDT(TSDemuxPayload payload)
     {
         sdt.attach(payload.getEncoding());
-        if (!sdt.isChecksumCorrect())
-        {
-            log.warn("SDT校验错误。");
-            return;
-        }
-
         int tableId = sdt.getTableID();
         int transportStreamId = sdt.getTransportStreamID();
         int originalNetworkId = sdt.getOriginalNetworkID();
-        int version = sdt.getVersionNumber();
-        int secnum = sdt.getSectionNumber();
-
-        String uid = String.format("sdt.%02x.%d.%d", tableId, transportStreamId, originalNetworkId);
-        if (!tableVersions.containsKey(uid) || tableVersions.get(uid) != version)
-        {
-            // 版本变化
-            List<String> keys = new ArrayList<>(tableVersions.keySet());
-            for (String key : keys)
-                if (key.startsWith(uid))
-                    tableVersions.remove(uid);
-            tableVersions.put(uid, version);
-        }
-
-        uid = String.format("sdt.%02x.%d.%d.%d", tableId, transportStreamId, originalNetworkId, secnum);
-        if (tableVersions.containsKey(uid) && tableVersions.get(uid) == version)
-            return; // 已经处理过了。
 
         boolean actualTS = (tableId == 0x42);
         databaseService.updateStreamSourceComponentPresence(sourceId, actualTS ? "SDT_Actual" : "SDT_Other", true);
@@ -318,7 +237,6 @@ public class SITracer implements Tracer
                                           payload.getStreamPID(),
                                           payload.getFinishPacketCounter(),
                                           payload.getEncoding().getBytes());
-        tableVersions.put(uid, version);
 
         sdt.forEachServiceDescription(encoding -> {
             sdd.attach(encoding);
@@ -353,36 +271,12 @@ public class SITracer implements Tracer
     private void processEIT(TSDemuxPayload payload)
     {
         eit.attach(payload.getEncoding());
-        if (!eit.isChecksumCorrect())
-        {
-            log.warn("EIT校验错误。");
-            return;
-        }
-
         int tableId = eit.getTableID();
         int serviceId = eit.getServiceID();
         int transportStreamId = eit.getTransportStreamID();
         int originalNetworkId = eit.getOriginalNetworkID();
-        int version = eit.getVersionNumber();
         int secnum = eit.getSectionNumber();
 
-        String uid = String.format("eit.%02x.%d.%d.%d",
-                                   tableId, transportStreamId, originalNetworkId, serviceId);
-        if (!tableVersions.containsKey(uid) || tableVersions.get(uid) != version)
-        {
-            // 版本变化
-            List<String> keys = new ArrayList<>(tableVersions.keySet());
-            for (String key : keys)
-                if (key.startsWith(uid))
-                    tableVersions.remove(uid);
-            tableVersions.put(uid, version);
-        }
-
-        uid = String.format("eit.%02x.%d.%d.%d.%d",
-                            tableId, transportStreamId, originalNetworkId, serviceId, secnum);
-        if (tableVersions.containsKey(uid) && tableVersions.get(uid) == version)
-            return; // 已经处理过了。
-
         databaseService.updateStreamSourceComponentPresence(sourceId, getEITTag(tableId), true);
         databaseService.updateElementaryStreamUsage(payload.getStreamPID(), StreamTypes.CATEGORY_DATA, "EIT");
         databaseService.addPrivateSection(getEITTag(tableId),
@@ -390,12 +284,17 @@ public class SITracer implements Tracer
                                           payload.getFinishPacketCounter(),
                                           payload.getEncoding().getBytes());
 
-        tableVersions.put(uid, version);
-
         eit.forEachEventDescription(encoding -> {
             edd.attach(encoding);
 
-            SIEvent event = databaseService.addSIEvent(edd.getEventID(), transportStreamId, originalNetworkId, serviceId);
+            // EIT会周期性重复播发，事件按 (原始网络号, 传输流号, 业务号, 事件号) 覆盖写入，不会重复累积。
+            SIEvent event = new SIEvent();
+            event.setEventId(edd.getEventID());
+            event.setTransportStreamId(transportStreamId);
+            event.setOriginalNetworkId(originalNetworkId);
+            event.setServiceId(serviceId);
+            event.setReferenceServiceId(-1);
+            event.setReferenceEventId(-1);
             event.setRunningStatus(edd.getRunningStatus());
             event.setFreeAccess(edd.getFreeCAMode() == 0);
             event.setStartTime(translateStartTime(edd.getStartTime()));
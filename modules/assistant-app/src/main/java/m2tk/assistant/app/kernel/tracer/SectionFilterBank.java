@@ -0,0 +1,226 @@
+/*
+ *  Copyright (c) M2TK Project. All rights reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package m2tk.assistant.app.kernel.tracer;
+
+import m2tk.assistant.api.domain.FilteringHook;
+import m2tk.encoding.Encoding;
+
+import java.util.Arrays;
+
+/**
+ * 私有段过滤器组
+ * <p>
+ * 仿照解复用芯片的段过滤器：每个过滤器由最多 {@value #FILTER_DEPTH} 字节的匹配值（match）、掩码（mask）和模式（mode）组成。
+ * 过滤器的第0字节对应分段的 table_id，其余字节跳过 section_length，从分段的第3字节开始依次对应
+ * table_id_extension、version_number/current_next_indicator、section_number、last_section_number 以及之后的内容。
+ * 掩码为1的位参与比较：模式为1的位必须与匹配值相同；模式为0的位中至少要有一位与匹配值不同（如"版本号不等于当前版本"）。
+ * <p>
+ * 过滤器按PID编译成查找表，先按 table_id 直接查表：只约束 table_id 的过滤器在编译时就得出结果，
+ * 其余过滤器把16个字节打包成两个 long 一次比较完。每个分段的匹配开销只与同一PID、同一 table_id 上的过滤器个数有关。
+ * 过滤器组不是线程安全的，应在分析器的处理线程中使用。
+ */
+final class SectionFilterBank
+{
+    static final int FILTER_DEPTH = 16;
+
+    // 每个编译后的过滤器占6个 long：匹配值、正向掩码、反向掩码，各两个字。
+    private static final int FILTER_WORDS = 6;
+    private static final int MATCH = 0;
+    private static final int POSITIVE = 2;
+    private static final int NEGATIVE = 4;
+
+    /**
+     * 单个PID的查找表，按 table_id 索引。
+     */
+    private static final class Table
+    {
+        private final boolean[] acceptAll = new boolean[256];
+        private final long[][] candidates = new long[256][];
+    }
+
+    private final Table[] tables = new Table[8192];
+
+    void clear()
+    {
+        Arrays.fill(tables, null);
+    }
+
+    boolean isEmpty()
+    {
+        for (Table table : tables)
+        {
+            if (table != null)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return 设置了过滤器的PID
+     */
+    int[] streams()
+    {
+        int n = 0;
+        int[] pids = new int[tables.length];
+        for (int pid = 0; pid < tables.length; pid++)
+        {
+            if (tables[pid] != null)
+                pids[n++] = pid;
+        }
+        return Arrays.copyOf(pids, n);
+    }
+
+    /**
+     * 按过滤条件添加过滤器。过滤条件指定了 table_id（不为 -1）时，以它代替过滤器的第0字节。
+     */
+    void add(FilteringHook hook)
+    {
+        byte[] match = hook.getFilterMatch();
+        byte[] mask = hook.getFilterMask();
+        byte[] mode = hook.getFilterMode();
+
+        int tableId = hook.getSubjectTableId();
+        if (tableId >= 0)
+        {
+            match = withFirstByte(match, tableId);
+            mask = withFirstByte(mask, 0xFF);
+            mode = withFirstByte(mode, 0xFF);
+        }
+        add(hook.getSubjectPid(), match, mask, mode);
+    }
+
+    /**
+     * 添加过滤器。缺少的掩码字节按0（不比较）处理，缺少的模式字节按 0xFF（正向匹配）处理。
+     */
+    void add(int pid, byte[] match, byte[] mask, byte[] mode)
+    {
+        long[] filter = new long[FILTER_WORDS];
+        for (int i = 0; i < FILTER_DEPTH; i++)
+        {
+            int m = byteAt(match, i, 0);
+            int k = byteAt(mask, i, 0);
+            int p = byteAt(mode, i, 0xFF);
+            int word = i >> 3;
+            int shift = (7 - (i & 7)) << 3;
+            filter[MATCH + word] |= (long) (m & k) << shift;
+            filter[POSITIVE + word] |= (long) (k & p) << shift;
+            filter[NEGATIVE + word] |= (long) (k & ~p & 0xFF) << shift;
+        }
+
+        Table table = tables[pid & 0x1FFF];
+        if (table == null)
+        {
+            table = new Table();
+            tables[pid & 0x1FFF] = table;
+        }
+
+        int match0 = (int) (filter[MATCH] >>> 56);
+        int positive0 = (int) (filter[POSITIVE] >>> 56);
+        int negative0 = (int) (filter[NEGATIVE] >>> 56);
+        boolean tableIdOnly = ((filter[POSITIVE] | filter[NEGATIVE]) & 0x00FF_FFFF_FFFF_FFFFL) == 0 &&
+                              (filter[POSITIVE + 1] | filter[NEGATIVE + 1]) == 0;
+
+        for (int id = 0; id < 256; id++)
+        {
+            int diff = id ^ match0;
+            if (table.acceptAll[id] || (diff & positive0) != 0)
+                continue;
+
+            if (!tableIdOnly)
+            {
+                table.candidates[id] = append(table.candidates[id], filter);
+            } else if (negative0 == 0 || (diff & negative0) != 0)
+            {
+                // 其他过滤器在这个 table_id 上已没有必要比较。
+                table.acceptAll[id] = true;
+                table.candidates[id] = null;
+            }
+        }
+    }
+
+    /**
+     * @param pid 分段所在的PID
+     * @param section 完整的分段
+     * @return 是否有过滤器接受该分段
+     */
+    boolean matches(int pid, Encoding section)
+    {
+        Table table = tables[pid & 0x1FFF];
+        if (table == null)
+            return false;
+
+        int tableId = section.readUINT8(0);
+        if (table.acceptAll[tableId])
+            return true;
+
+        long[] candidates = table.candidates[tableId];
+        if (candidates == null)
+            return false;
+
+        long header0 = headerWord(section, 0);
+        long header1 = headerWord(section, 8);
+        for (int i = 0; i < candidates.length; i += FILTER_WORDS)
+        {
+            long diff0 = header0 ^ candidates[i + MATCH];
+            long diff1 = header1 ^ candidates[i + MATCH + 1];
+            if (((diff0 & candidates[i + POSITIVE]) | (diff1 & candidates[i + POSITIVE + 1])) != 0)
+                continue;
+
+            long negative0 = candidates[i + NEGATIVE];
+            long negative1 = candidates[i + NEGATIVE + 1];
+            if ((negative0 | negative1) == 0 || ((diff0 & negative0) | (diff1 & negative1)) != 0)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * 把过滤器第 {@code from} 至 {@code from + 7} 字节对应的分段内容打包成一个 long，分段不够长时补0。
+     */
+    private static long headerWord(Encoding section, int from)
+    {
+        int size = section.size();
+        long word = 0;
+        for (int i = from; i < from + 8; i++)
+        {
+            int offset = (i == 0) ? 0 : i + 2;
+            word = (word << 8) | ((offset < size) ? section.readUINT8(offset) : 0);
+        }
+        return word;
+    }
+
+    private static int byteAt(byte[] bytes, int index, int defaultValue)
+    {
+        return (bytes != null && index < bytes.length) ? bytes[index] & 0xFF : defaultValue;
+    }
+
+    private static byte[] withFirstByte(byte[] bytes, int value)
+    {
+        byte[] copy = (bytes == null || bytes.length == 0) ? new byte[1] : bytes.clone();
+        copy[0] = (byte) value;
+        return copy;
+    }
+
+    private static long[] append(long[] candidates, long[] filter)
+    {
+        if (candidates == null)
+            return filter.clone();
+
+        long[] extended = Arrays.copyOf(candidates, candidates.length + filter.length);
+        System.arraycopy(filter, 0, extended, candidates.length, filter.length);
+        return extended;
+    }
+}
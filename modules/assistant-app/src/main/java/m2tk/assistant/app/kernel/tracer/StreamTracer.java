@@ -106,7 +106,9 @@ public class StreamTracer implements Tracer
         ElementaryStream stream = streams[pid];
         if (stream == null)
         {
-            stream = databaseService.getElementaryStream(pid);
+            // 统计值只在本地累加，不必从数据库读取。
+            stream = new ElementaryStream();
+            stream.setStreamPid(pid);
             stream.setLastPct(-1);
             streams[pid] = stream;
         }
@@ -20,8 +20,8 @@ import m2tk.assistant.api.Tracer;
 import m2tk.assistant.api.domain.PCR;
 import m2tk.assistant.api.domain.PCRCheck;
 import m2tk.assistant.api.domain.StreamSource;
-import m2tk.assistant.api.domain.TR290Event;
 import m2tk.assistant.api.presets.TR290ErrorTypes;
+import m2tk.encoding.Encoding;
 import m2tk.mpeg2.MPEG2;
 import m2tk.mpeg2.ProgramClockReference;
 import m2tk.mpeg2.decoder.TransportPacketDecoder;
@@ -30,31 +30,28 @@ import m2tk.mpeg2.decoder.element.ProgramClockReferenceDecoder;
 import m2tk.multiplex.*;
 import org.pf4j.Extension;
 
-import java.time.OffsetDateTime;
 import java.util.Arrays;
 
 /**
  * TR290错误检测有很多项，有些项目相对独立，有些项目比较矛盾，不宜放在同一个处理逻辑里。
  * 因此拆分到不同的检测流程里。
  * TR290Trace1只负责与传输包有关的错误。
+ * <p>
+ * 各PID的检测状态保存在紧凑的状态表中，只为出现过的PID分配槽位（包括前一个有效包的副本）。
+ * 只有连续计数重复时才与副本逐字节比较（屏蔽PCR字段），判断是否为重复包。
  */
 @Extension
 public class TR290Tracer1 implements Tracer
 {
-    private final int[] TEFs;
-    private final int[] CCTs; // next cct
-    private final int[] DupCnts;
-    private final int[] TECnts; // trans_err_cnt
-    private final int[] CECnts; // cc_err_cnt
-    private final long[] PCRs;
-    private final long[] PCRPcts;
-    private final byte[][] PktStubs;
-    private final TransportPacketDecoder pkt;
-    private final AdaptationFieldDecoder adpt;
-    private final ProgramClockReferenceDecoder pcr;
-    private int pktcnt;
-    private long avgBitrate;
-    private M2TKDatabase databaseService;
+    // 每个PID的状态在 long[] 中的位置
+    private static final int TEF = 0;           // 传输错误已通报
+    private static final int CCT = 1;           // 前一个有效包的连续计数，-1 表示需要重新同步
+    private static final int DUP_COUNT = 2;     // 重复次数
+    private static final int TE_COUNT = 3;      // 待提交的传输错误数
+    private static final int CE_COUNT = 4;      // 待提交的连续计数错误数
+    private static final int PCR_VALUE = 5;
+    private static final int PCR_POSITION = 6;
+    private static final int STATE_SIZE = 7;
 
     private static final byte[] DUPLICATE_PACKET_MASK = new byte[MPEG2.TS_PACKET_SIZE];
 
@@ -64,31 +61,29 @@ public class TR290Tracer1 implements Tracer
         Arrays.fill(DUPLICATE_PACKET_MASK, 6, 12, (byte) 0); // PCR field
     }
 
+    private final int[] slotOfPid;  // 0 表示未分配，否则为槽位号 + 1
+    private int[] pidOfSlot;
+    private long[] states;
+    private byte[][] stubs;         // 各槽位前一个有效包的副本
+    private int slotCount;
+    private final TransportPacketDecoder pkt;
+    private final AdaptationFieldDecoder adpt;
+    private final ProgramClockReferenceDecoder pcr;
+    private int pktcnt;
+    private long avgBitrate;
+    private M2TKDatabase databaseService;
+
     public TR290Tracer1()
     {
-        TEFs = new int[8192];
-        CCTs = new int[8192];
-        TECnts = new int[8192];
-        CECnts = new int[8192];
-        DupCnts = new int[8192];
-        PCRs = new long[8192];
-        PCRPcts = new long[8192];
-        PktStubs = new byte[8192][188];
+        slotOfPid = new int[8192];
+        pidOfSlot = new int[64];
+        states = new long[64 * STATE_SIZE];
+        stubs = new byte[64][];
+        slotCount = 0;
         pkt = new TransportPacketDecoder();
         adpt = new AdaptationFieldDecoder();
         pcr = new ProgramClockReferenceDecoder();
 
-        for (int i = 0; i < 8192; i++)
-        {
-            PCRs[i] = -1;
-            PCRPcts[i] = -1;
-            TEFs[i] = 0;
-            TECnts[i] = 0;
-            CECnts[i] = 0;
-            CCTs[i] = -1;
-            DupCnts[i] = 0;
-        }
-
         avgBitrate = 0;
     }
 
@@ -101,15 +96,15 @@ public class TR290Tracer1 implements Tracer
         demux.registerRawChannel(this::processTransportPacket);
     }
 
-    private void reportError(String errorType, String errorMessage, long position, int stream)
+    private void reportError(String errorType, long position, int stream, String message)
     {
-        TR290Event event = new TR290Event();
-        event.setTimestamp(OffsetDateTime.now());
-        event.setType(errorType);
-        event.setDescription(errorMessage);
-        event.setPosition(position);
-        event.setStream(stream);
-        databaseService.addTR290Event(event);
+        databaseService.addTR290Error(errorType, stream, position, message, 0, 0, 0);
+    }
+
+    private void reportError(String errorType, long position, int stream, String format, long arg1, long arg2, long arg3)
+    {
+        // 错误描述在查询时才生成，这里只传递格式串和参数。
+        databaseService.addTR290Error(errorType, stream, position, format, arg1, arg2, arg3);
     }
 
     private void processDemuxEvent(TSDemuxEvent event)
@@ -124,33 +119,33 @@ public class TR290Tracer1 implements Tracer
             TSState currentState = status.getCurrentState();
             if (currentState == TSState.SYNC_BYTE_ERROR)
             {
-                for (int i = 0; i < 8192; i++)
-                {
-                    PCRs[i] = -1;
-                    PCRPcts[i] = -1;
-                    CCTs[i] = -1;
-                    DupCnts[i] = 0;
-                }
+                resetAllStreams();
 
-                reportError(TR290ErrorTypes.SYNC_BYTE_ERROR, "同步字节错误",
-                            status.getPosition(), status.getPid());
+                reportError(TR290ErrorTypes.SYNC_BYTE_ERROR, status.getPosition(), status.getPid(),
+                            "同步字节错误");
             }
             if (currentState == TSState.SYNC_LOST)
             {
-                for (int i = 0; i < 8192; i++)
-                {
-                    PCRs[i] = -1;
-                    PCRPcts[i] = -1;
-                    CCTs[i] = -1;
-                    DupCnts[i] = 0;
-                }
+                resetAllStreams();
 
-                reportError(TR290ErrorTypes.TS_SYNC_LOSS, "同步丢失错误",
-                            status.getPosition(), status.getPid());
+                reportError(TR290ErrorTypes.TS_SYNC_LOSS, status.getPosition(), status.getPid(),
+                            "同步丢失错误");
             }
         }
     }
 
+    private void resetAllStreams()
+    {
+        for (int slot = 0; slot < slotCount; slot++)
+        {
+            int base = slot * STATE_SIZE;
+            states[base + CCT] = -1;
+            states[base + DUP_COUNT] = 0;
+            states[base + PCR_VALUE] = -1;
+            states[base + PCR_POSITION] = -1;
+        }
+    }
+
     private void processTransportPacket(TSDemuxPayload payload)
     {
         pktcnt++;
@@ -160,49 +155,50 @@ public class TR290Tracer1 implements Tracer
         if (pid == 8191)
             return; // 空包不做检查
 
+        int base = slotOf(pid) * STATE_SIZE;
         pkt.attach(payload.getEncoding());
         if (pkt.containsTransportError())
         {
-            reportTransportError(payload);
+            reportTransportError(payload, base);
         } else
         {
-            TEFs[pid] = 0; // 传输错误恢复或持续正常，此后允许通报传输错误。
-            checkContinuityCount(payload);
-            checkPCRMeasurements(payload);
+            states[base + TEF] = 0; // 传输错误恢复或持续正常，此后允许通报传输错误。
+            checkContinuityCount(payload, base);
+            checkPCRMeasurements(payload, base);
         }
     }
 
-    private void reportTransportError(TSDemuxPayload payload)
+    private void reportTransportError(TSDemuxPayload payload, int base)
     {
         int pid = payload.getStreamPID();
-        if (TEFs[pid] == 0)
+        if (states[base + TEF] == 0)
         {
-            reportError(TR290ErrorTypes.TRANSPORT_ERROR,
-                        String.format("当前流指示传输错误（pid = %d）", pid),
-                        payload.getStartPacketCounter(), payload.getStreamPID());
-            TEFs[pid] = 1; // 该流的传输错误已经通报过，就不再重复通报了。
+            reportError(TR290ErrorTypes.TRANSPORT_ERROR, payload.getStartPacketCounter(), pid,
+                        "当前流指示传输错误（pid = %d）", pid, 0, 0);
+            states[base + TEF] = 1; // 该流的传输错误已经通报过，就不再重复通报了。
         }
 
-        TECnts[pid] += 1;
-        CCTs[pid] = -1;
-        DupCnts[pid] = 0;
-        PCRs[pid] = -1;
-        PCRPcts[pid] = -1;
+        states[base + TE_COUNT] += 1;
+        states[base + CCT] = -1;
+        states[base + DUP_COUNT] = 0;
+        states[base + PCR_VALUE] = -1;
+        states[base + PCR_POSITION] = -1;
     }
 
-    private void checkContinuityCount(TSDemuxPayload payload)
+    private void checkContinuityCount(TSDemuxPayload payload, int base)
     {
         int pid = payload.getStreamPID();
 
         // Continuity Counter
         int curr_cct = pkt.getContinuityCounter();
-        if (CCTs[pid] == -1)
+        long prev_cct = states[base + CCT];
+        if (prev_cct == -1)
         {
             if (pkt.containsPayload())
             {
-                CCTs[pid] = curr_cct;
-                DupCnts[pid] = 0;
-                payload.getEncoding().copyRange(0, 188, PktStubs[pid]);
+                states[base + CCT] = curr_cct;
+                states[base + DUP_COUNT] = 0;
+                keepStub(base);
             }
             return;
         }
@@ -211,13 +207,12 @@ public class TR290Tracer1 implements Tracer
         if (!pkt.containsPayload())
         {
             // 没有负载的情况下，CCT不允许变化，所以当前CCT应该等于前一个包的CCT
-            if (CCTs[pid] != curr_cct)
+            if (prev_cct != curr_cct)
             {
-                CECnts[pid] += 1;
-                reportError(TR290ErrorTypes.CONTINUITY_COUNT_ERROR,
-                            String.format("无负载时连续计数器发生变化（期望：%d，实际：%d，pid = %d）",
-                                          CCTs[pid], curr_cct, pid),
-                            payload.getStartPacketCounter(), payload.getStreamPID());
+                states[base + CE_COUNT] += 1;
+                reportError(TR290ErrorTypes.CONTINUITY_COUNT_ERROR, payload.getStartPacketCounter(), pid,
+                            "无负载时连续计数器发生变化（期望：%d，实际：%d，pid = %d）",
+                            prev_cct, curr_cct, pid);
             }
 
             // 没有负载则不算重复包，所以不用留存根。
@@ -225,69 +220,75 @@ public class TR290Tracer1 implements Tracer
         }
 
         // 有负载，应该判断是否重复。
-        int exp_cct = (CCTs[pid] + 1) & 0xF;
+        int exp_cct = (int) ((prev_cct + 1) & 0xF);
         if (exp_cct == curr_cct)
         {
             // CCT正常，保留存根。
-            CCTs[pid] = curr_cct;
-            DupCnts[pid] = 0;
-            payload.getEncoding().copyRange(0, 188, PktStubs[pid]);
+            states[base + CCT] = curr_cct;
+            states[base + DUP_COUNT] = 0;
+            keepStub(base);
+            return;
         }
 
         // CCT没有按规律变化
 
         // 可能是重复的包，要记录重复次数。规范允许相同的包最多重复一次。
-        if (CCTs[pid] == curr_cct && isDuplicatePacket())
+        if (prev_cct == curr_cct && isDuplicatePacket(base))
         {
-            DupCnts[pid] += 1;
+            states[base + DUP_COUNT] += 1;
 
-            if (DupCnts[pid] > 1)
+            if (states[base + DUP_COUNT] > 1)
             {
-                CCTs[pid] = -1;
-                CECnts[pid] += 1;
-                reportError(TR290ErrorTypes.CONTINUITY_COUNT_ERROR,
-                            String.format("重复包连续出现了两次以上（pid = %d）", pid),
-                            payload.getStartPacketCounter(), payload.getStreamPID());
+                states[base + CCT] = -1;
+                states[base + CE_COUNT] += 1;
+                reportError(TR290ErrorTypes.CONTINUITY_COUNT_ERROR, payload.getStartPacketCounter(), pid,
+                            "重复包连续出现了两次以上（pid = %d）", pid, 0, 0);
             }
             return;
         }
 
         // 不是重复的包，则属于CCT错乱。
-        CECnts[pid] += 1;
-        reportError(TR290ErrorTypes.CONTINUITY_COUNT_ERROR,
-                    String.format("连续计数错误（期望：%d，实际：%d，pid = %d）",
-                                  exp_cct, curr_cct, pid),
-                    payload.getStartPacketCounter(), payload.getStreamPID());
+        states[base + CE_COUNT] += 1;
+        reportError(TR290ErrorTypes.CONTINUITY_COUNT_ERROR, payload.getStartPacketCounter(), pid,
+                    "连续计数错误（期望：%d，实际：%d，pid = %d）",
+                    exp_cct, curr_cct, pid);
 
         // 重置计数器，此时需要保留存根
-        CCTs[pid] = -1;
-        DupCnts[pid] = 0;
-        payload.getEncoding().copyRange(0, 188, PktStubs[pid]);
+        states[base + CCT] = -1;
+        states[base + DUP_COUNT] = 0;
+        keepStub(base);
     }
 
-    private boolean isDuplicatePacket()
+    private void keepStub(int base)
     {
-        int pid = pkt.getPID();
+        pkt.getEncoding().copyRange(0, MPEG2.TS_PACKET_SIZE, stubs[base / STATE_SIZE]);
+    }
+
+    private boolean isDuplicatePacket(int base)
+    {
+        // 只在连续计数重复时调用。带有调整字段时屏蔽PCR所在的字节（6~11），重复包的PCR允许与原始包不同。
+        byte[] stub = stubs[base / STATE_SIZE];
+        Encoding encoding = pkt.getEncoding();
         return pkt.containsUsefulAdaptationField()
-               ? pkt.getEncoding().identicalTo(PktStubs[pid], DUPLICATE_PACKET_MASK)
-               : pkt.getEncoding().identicalTo(PktStubs[pid]);
+               ? encoding.identicalTo(stub, DUPLICATE_PACKET_MASK)
+               : encoding.identicalTo(stub);
     }
 
-    private void checkPCRMeasurements(TSDemuxPayload payload)
+    private void checkPCRMeasurements(TSDemuxPayload payload, int base)
     {
         // 注意，传输流错误优先级：同步错误 > 传输错误 > 连续计数错误 > 其他
         // 所以PCR检查要在连续计数检查之后，并根据连续计数检查结果适当调整上下文。
         int pid = payload.getStreamPID();
 
-        if (CCTs[pid] == -1)
+        if (states[base + CCT] == -1)
         {
             // 此时发生连续计数错误，当前包不可靠。
-            PCRs[pid] = -1;
-            PCRPcts[pid] = -1;
+            states[base + PCR_VALUE] = -1;
+            states[base + PCR_POSITION] = -1;
             return;
         }
 
-        long currPcr = readPCR();
+        long currPcr = readPCR(base);
         long currPct = payload.getStartPacketCounter();
         if (currPcr == -1)
             return;
@@ -298,21 +299,23 @@ public class TR290Tracer1 implements Tracer
         pcr.setValue(currPcr);
         databaseService.addPCR(pcr);
 
-        if (PCRs[pid] == -1)
+        long prevPcr = states[base + PCR_VALUE];
+        long prevPct = states[base + PCR_POSITION];
+        if (prevPcr == -1)
         {
             // 受到高优先级错误的影响，PCR计算会被重置。
-            PCRs[pid] = currPcr;
-            PCRPcts[pid] = currPct;
+            states[base + PCR_VALUE] = currPcr;
+            states[base + PCR_POSITION] = currPct;
             return;
         }
 
         // 可以正常计算了。
-        long bitrate = ProgramClockReference.bitrate(PCRs[pid], currPcr, currPct - PCRPcts[pid]);
+        long bitrate = ProgramClockReference.bitrate(prevPcr, currPcr, currPct - prevPct);
         avgBitrate = (avgBitrate == 0) ? bitrate : (avgBitrate + bitrate) / 2;
 
         // 判断PCR是否抖动、是否间断、是否精确
-        long deltaTb = (currPct - PCRPcts[pid]) * 188 * 8 * 1000_000_000 / avgBitrate;
-        long deltaTpcr = ProgramClockReference.deltaNanos(PCRs[pid], currPcr);
+        long deltaTb = (currPct - prevPct) * 188 * 8 * 1000_000_000 / avgBitrate;
+        long deltaTpcr = ProgramClockReference.deltaNanos(prevPcr, currPcr);
         long pcrAccuracy = deltaTb - deltaTpcr;
         boolean repetitionCheckFailed = deltaTb > 40_000_000;
         boolean discontinuityCheckFailed = adpt.getDiscontinuityIndicator() == 0 && deltaTpcr > 100_000_000;
@@ -320,29 +323,26 @@ public class TR290Tracer1 implements Tracer
 
         if (repetitionCheckFailed)
         {
-            reportError(TR290ErrorTypes.PCR_REPETITION_ERROR,
-                        String.format("PCR间隔超过40ms（当前间隔：%dms）", deltaTb / 1000_000),
-                        payload.getStartPacketCounter(), payload.getStreamPID());
+            reportError(TR290ErrorTypes.PCR_REPETITION_ERROR, currPct, pid,
+                        "PCR间隔超过40ms（当前间隔：%dms）", deltaTb / 1000_000, 0, 0);
         }
 
         if (discontinuityCheckFailed)
         {
-            reportError(TR290ErrorTypes.PCR_DISCONTINUITY_INDICATOR_ERROR,
-                        String.format("未设置不连续标志情况下前后PCR差值大于100ms（当前差值：%dms）", deltaTpcr / 1000_000),
-                        payload.getStartPacketCounter(), payload.getStreamPID());
+            reportError(TR290ErrorTypes.PCR_DISCONTINUITY_INDICATOR_ERROR, currPct, pid,
+                        "未设置不连续标志情况下前后PCR差值大于100ms（当前差值：%dms）", deltaTpcr / 1000_000, 0, 0);
         }
 
         if (accuracyCheckFailed)
         {
-            reportError(TR290ErrorTypes.PCR_ACCURACY_ERROR,
-                        String.format("PCR精度误差超过正负500ns（当前误差：%dns）", pcrAccuracy),
-                        payload.getStartPacketCounter(), payload.getStreamPID());
+            reportError(TR290ErrorTypes.PCR_ACCURACY_ERROR, currPct, pid,
+                        "PCR精度误差超过正负500ns（当前误差：%dns）", pcrAccuracy, 0, 0);
         }
 
         PCRCheck check = new PCRCheck();
         check.setPid(pid);
-        check.setPrevValue(PCRs[pid]);
-        check.setPrevPosition(PCRPcts[pid]);
+        check.setPrevValue(prevPcr);
+        check.setPrevPosition(prevPct);
         check.setCurrValue(currPcr);
         check.setCurrPosition(currPct);
         check.setBitrate(bitrate);
@@ -354,11 +354,11 @@ public class TR290Tracer1 implements Tracer
         check.setAccuracyCheckFailed(accuracyCheckFailed);
         databaseService.addPCRCheck(check);
 
-        PCRs[pid] = currPcr;
-        PCRPcts[pid] = currPct;
+        states[base + PCR_VALUE] = currPcr;
+        states[base + PCR_POSITION] = currPct;
     }
 
-    private long readPCR()
+    private long readPCR(int base)
     {
         if (!pkt.containsUsefulAdaptationField())
             return -1;
@@ -371,8 +371,8 @@ public class TR290Tracer1 implements Tracer
 
             if (adpt.getDiscontinuityIndicator() == 1)
             {
-                PCRs[pkt.getPID()] = -1;
-                PCRPcts[pkt.getPID()] = -1;
+                states[base + PCR_VALUE] = -1;
+                states[base + PCR_POSITION] = -1;
                 return -1;
             }
 
@@ -388,16 +388,43 @@ public class TR290Tracer1 implements Tracer
     {
         if (immediately || pktcnt > 2000)
         {
-            for (int pid = 0; pid < 8191; pid++)
+            for (int slot = 0; slot < slotCount; slot++)
             {
-                if (TECnts[pid] > 0 || CECnts[pid] > 0)
+                int base = slot * STATE_SIZE;
+                if (states[base + TE_COUNT] > 0 || states[base + CE_COUNT] > 0)
                 {
-                    databaseService.accumulateElementaryStreamErrors(pid, TECnts[pid], CECnts[pid]);
-                    TECnts[pid] = 0;
-                    CECnts[pid] = 0;
+                    databaseService.accumulateElementaryStreamErrors(pidOfSlot[slot],
+                                                                     (int) states[base + TE_COUNT],
+                                                                     (int) states[base + CE_COUNT]);
+                    states[base + TE_COUNT] = 0;
+                    states[base + CE_COUNT] = 0;
                 }
             }
             pktcnt = 0;
         }
     }
+
+    private int slotOf(int pid)
+    {
+        int slot = slotOfPid[pid] - 1;
+        if (slot >= 0)
+            return slot;
+
+        if (slotCount == pidOfSlot.length)
+        {
+            pidOfSlot = Arrays.copyOf(pidOfSlot, slotCount * 2);
+            states = Arrays.copyOf(states, slotCount * 2 * STATE_SIZE);
+            stubs = Arrays.copyOf(stubs, slotCount * 2);
+        }
+
+        slot = slotCount++;
+        int base = slot * STATE_SIZE;
+        states[base + CCT] = -1;
+        states[base + PCR_VALUE] = -1;
+        states[base + PCR_POSITION] = -1;
+        stubs[slot] = new byte[MPEG2.TS_PACKET_SIZE];
+        pidOfSlot[slot] = pid;
+        slotOfPid[pid] = slot + 1;
+        return slot;
+    }
 }
@@ -17,14 +17,14 @@ package m2tk.assistant.app.kernel.tracer;
 
 import lombok.extern.slf4j.Slf4j;
 import m2tk.assistant.api.M2TKDatabase;
+import m2tk.assistant.api.SectionBus;
+import m2tk.assistant.api.SectionEvent;
 import m2tk.assistant.api.Tracer;
 import m2tk.assistant.api.domain.StreamSource;
-import m2tk.assistant.api.domain.TR290Event;
 import m2tk.assistant.api.presets.TR290ErrorTypes;
 import m2tk.dvb.decoder.section.*;
 import m2tk.mpeg2.ProgramClockReference;
 import m2tk.mpeg2.decoder.DescriptorLoopDecoder;
-import m2tk.mpeg2.decoder.SectionDecoder;
 import m2tk.mpeg2.decoder.TransportPacketDecoder;
 import m2tk.mpeg2.decoder.descriptor.CADescriptorDecoder;
 import m2tk.mpeg2.decoder.element.AdaptationFieldDecoder;
@@ -37,9 +37,9 @@ import m2tk.multiplex.TSDemux;
 import m2tk.multiplex.TSDemuxPayload;
 import org.pf4j.Extension;
 
-import java.time.OffsetDateTime;
-import java.util.*;
-import java.util.stream.IntStream;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Consumer;
 
 @Slf4j
 @Extension
@@ -48,7 +48,6 @@ public class TR290Tracer2 implements Tracer
     private final TransportPacketDecoder pkt;
     private final AdaptationFieldDecoder adpt;
     private final ProgramClockReferenceDecoder pcr;
-    private final SectionDecoder sec;
     private final PATSectionDecoder pat;
     private final CATSectionDecoder cat;
     private final PMTSectionDecoder pmt;
@@ -61,26 +60,33 @@ public class TR290Tracer2 implements Tracer
     private final DescriptorLoopDecoder descloop;
     private final ProgramElementDecoder element;
     private final CADescriptorDecoder cad;
-    private final TSDemux.Channel[] pmtChannels;
+    private final boolean[] pmtStreams;
     private final long[] pmtOccurPositions;
-    private final long[] pmtOccurTimes;
-    private final Map<String, Context> sectionContexts;
+    private final Consumer<SectionEvent> pmtListener;
     private final Set<Integer> programNumbers;
     private final Set<Integer> programPmtPids;
     private final Set<Integer> pmtMappedStreams;
 
-    private final long[] streamOccurTimes;
     private final long[] streamOccurPositions;
 
     private final int[] scrambledFlags;
     private final int[] streamMarks;
     private final int[] streamCounts;
-    private long lastUnreferencedStreamCheckTime;
-    private long lastUnreferencedStreamCheckPosition;
+    private int scrambledStreamCount;
+
+    // 重复周期检查的定时器，以包计数为时钟，在码率确定后启动。
+    private final PacketTimerWheel timerWheel;
+    private final PacketTimerWheel.Timer patTimer;
+    private final PacketTimerWheel.Timer catTimer;
+    private final PacketTimerWheel.Timer nitTimer;
+    private final PacketTimerWheel.Timer sdtTimer;
+    private final PacketTimerWheel.Timer eitTimer;
+    private final PacketTimerWheel.Timer tdtTimer;
+    private final PacketTimerWheel.Timer unreferencedStreamTimer;
+    private final PacketTimerWheel.Timer[] pmtTimers;
+    private final PacketTimerWheel.Timer[] streamTimers;
 
-    private long lastPATOccurTime;
     private long lastPATOccurPosition;
-    private long lastCATOccurTime;
     private long lastCATOccurPosition;
     private long lastNITActOccurTime;
     private long lastNITActOccurPosition;
@@ -88,9 +94,7 @@ public class TR290Tracer2 implements Tracer
     private long lastSDTActOccurPosition;
     private long lastEITActPFOccurTime;
     private long lastEITActPFOccurPosition;
-    private long lastEITActPFS0OccurTime;
     private long lastEITActPFS0OccurPosition;
-    private long lastEITActPFS1OccurTime;
     private long lastEITActPFS1OccurPosition;
     private long lastRSTOccurTime;
     private long lastRSTOccurPosition;
@@ -100,18 +104,9 @@ public class TR290Tracer2 implements Tracer
     private long lastPcrValue;
     private long lastPcrPct;
     private int avgBitrate;
-    private int pktcnt;
 
     private M2TKDatabase databaseService;
-    private long transactionId;
-
-    static class Context
-    {
-        long occurTime;
-        long occurPosition;
-        long checksum;
-        boolean checksumCorrect;
-    }
+    private SectionBus sectionBus;
 
     public TR290Tracer2()
     {
@@ -119,7 +114,6 @@ public class TR290Tracer2 implements Tracer
         adpt = new AdaptationFieldDecoder();
         pcr = new ProgramClockReferenceDecoder();
 
-        sec = new SectionDecoder();
         pat = new PATSectionDecoder();
         cat = new CATSectionDecoder();
         pmt = new PMTSectionDecoder();
@@ -133,27 +127,33 @@ public class TR290Tracer2 implements Tracer
         cad = new CADescriptorDecoder();
         element = new ProgramElementDecoder();
 
-        pmtChannels = new TSDemux.Channel[8192];
-        pmtOccurTimes = new long[8192];
+        pmtStreams = new boolean[8192];
         pmtOccurPositions = new long[8192];
+        pmtListener = this::processPMT;
 
-        sectionContexts = new HashMap<>();
         programNumbers = new HashSet<>();
         programPmtPids = new HashSet<>();
         pmtMappedStreams = new HashSet<>();
 
-        streamOccurTimes = new long[8192];
         streamOccurPositions = new long[8192];
 
         scrambledFlags = new int[8192];
         streamMarks = new int[8192];
         streamCounts = new int[8192];
-        lastUnreferencedStreamCheckTime = -1;
-        lastUnreferencedStreamCheckPosition = -1;
+        scrambledStreamCount = 0;
+
+        timerWheel = new PacketTimerWheel();
+        patTimer = new PacketTimerWheel.Timer(this::checkPATSectionOccurrenceInterval);
+        catTimer = new PacketTimerWheel.Timer(this::checkCATSectionOccurrenceInterval);
+        nitTimer = new PacketTimerWheel.Timer(this::checkNITSectionOccurrenceInterval);
+        sdtTimer = new PacketTimerWheel.Timer(this::checkSDTSectionOccurrenceInterval);
+        eitTimer = new PacketTimerWheel.Timer(this::checkEITSectionOccurrenceInterval);
+        tdtTimer = new PacketTimerWheel.Timer(this::checkTDTSectionOccurrenceInterval);
+        unreferencedStreamTimer = new PacketTimerWheel.Timer(this::checkUnreferencedStream);
+        pmtTimers = new PacketTimerWheel.Timer[8192];
+        streamTimers = new PacketTimerWheel.Timer[8192];
 
-        lastPATOccurTime = -1;
         lastPATOccurPosition = -1;
-        lastCATOccurTime = -1;
         lastCATOccurPosition = -1;
 
         lastNITActOccurTime = -1;
@@ -162,9 +162,7 @@ public class TR290Tracer2 implements Tracer
         lastSDTActOccurPosition = -1;
         lastEITActPFOccurTime = -1;
         lastEITActPFOccurPosition = -1;
-        lastEITActPFS0OccurTime = -1;
         lastEITActPFS0OccurPosition = -1;
-        lastEITActPFS1OccurTime = -1;
         lastEITActPFS1OccurPosition = -1;
         lastRSTOccurTime = -1;
         lastRSTOccurPosition = -1;
@@ -173,32 +171,38 @@ public class TR290Tracer2 implements Tracer
         pcrPid = -1;
         lastPcrValue = -1;
         avgBitrate = 0;
-        pktcnt = 0;
     }
 
     @Override
     public void configure(StreamSource source, TSDemux demux, M2TKDatabase database)
+    {
+        configure(source, demux, SectionBus.create(demux), database);
+    }
+
+    @Override
+    public void configure(StreamSource source, TSDemux demux, SectionBus bus, M2TKDatabase database)
     {
         databaseService = database;
+        sectionBus = bus;
 
         demux.registerRawChannel(this::processTransportPacket);
-        demux.registerSectionChannel(0x0000, this::processSection);
-        demux.registerSectionChannel(0x0001, this::processSection);
-        demux.registerSectionChannel(0x0010, this::processSection);
-        demux.registerSectionChannel(0x0011, this::processSection);
-        demux.registerSectionChannel(0x0012, this::processSection);
-        demux.registerSectionChannel(0x0014, this::processSection);
+        bus.subscribe(0x0000, this::processSection);
+        bus.subscribe(0x0001, this::processSection);
+        bus.subscribe(0x0010, this::processSection);
+        bus.subscribe(0x0011, this::processSection);
+        bus.subscribe(0x0012, this::processSection);
+        bus.subscribe(0x0014, this::processSection);
     }
 
-    private void reportError(String errorType, String errorMessage, long position, int stream)
+    private void reportError(String errorType, long position, int stream, String message)
     {
-        TR290Event event = new TR290Event();
-        event.setTimestamp(OffsetDateTime.now());
-        event.setType(errorType);
-        event.setDescription(errorMessage);
-        event.setPosition(position);
-        event.setStream(stream);
-        databaseService.addTR290Event(event);
+        databaseService.addTR290Error(errorType, stream, position, message, 0, 0, 0);
+    }
+
+    private void reportError(String errorType, long position, int stream, String format, long arg1, long arg2, long arg3)
+    {
+        // 错误描述在查询时才生成，这里只传递格式串和参数（只支持整数，时长按 秒.十分之一秒 拆成两个参数）。
+        databaseService.addTR290Error(errorType, stream, position, format, arg1, arg2, arg3);
     }
 
     private void processTransportPacket(TSDemuxPayload payload)
@@ -207,29 +211,20 @@ public class TR290Tracer2 implements Tracer
         if (pkt.containsTransportError())
             return;
 
-        pktcnt = (pktcnt + 1) % 1000;
-
         int pid = payload.getStreamPID();
-        streamOccurTimes[pid] = System.currentTimeMillis();
-        streamOccurPositions[pid] = payload.getStartPacketCounter();
+        long position = payload.getStartPacketCounter();
+        streamOccurPositions[pid] = position;
 
         streamCounts[pid] += 1;
-        scrambledFlags[pid] = pkt.isScrambled() ? 1 : 0;
+        int scrambled = pkt.isScrambled() ? 1 : 0;
+        scrambledStreamCount += scrambled - scrambledFlags[pid];
+        scrambledFlags[pid] = scrambled;
 
         calculateBitrate(payload);
-        checkPATSectionOccurrenceInterval(payload);
-        checkCATSectionOccurrenceInterval(payload);
-        checkPMTSectionOccurrenceInterval(payload);
-        checkNITSectionOccurrenceInterval(payload);
-        checkSDTSectionOccurrenceInterval(payload);
-        checkEITSectionOccurrenceInterval(payload);
-        checkTDTSectionOccurrenceInterval(payload);
-        checkPMTMappedStreamOccurrenceInterval(payload);
+        timerWheel.advance(position);
 
         checkUnexpectedScrambledPATStream(payload);
         checkUnexpectedScrambledPMTStream(payload);
-
-        checkUnreferencedStream(payload);
     }
 
     private void calculateBitrate(TSDemuxPayload payload)
@@ -253,9 +248,13 @@ public class TR290Tracer2 implements Tracer
             if (pcrPid == payload.getStreamPID())
             {
                 int bitrate = ProgramClockReference.bitrate(lastPcrValue, currPcrValue, currPct - lastPcrPct);
-                avgBitrate = (avgBitrate == 0) ? bitrate : (avgBitrate + bitrate) / 2;
+                boolean firstBitrate = (avgBitrate == 0);
+                avgBitrate = firstBitrate ? bitrate : (avgBitrate + bitrate) / 2;
                 lastPcrValue = currPcrValue;
                 lastPcrPct = currPct;
+
+                if (firstBitrate && avgBitrate > 0)
+                    startTimers(currPct);
             }
         } catch (Exception ex)
         {
@@ -286,196 +285,190 @@ public class TR290Tracer2 implements Tracer
                                    long lastOccurTime, long currOccurTime)
     {
         if (avgBitrate > 0)
-            return (currOccurPosition - lastOccurPosition) * 188 * 8 * 1000 / avgBitrate;
+            return calculateInterval(lastOccurPosition, currOccurPosition);
         return (lastOccurTime > 0) ? currOccurTime - lastOccurTime : 0;
     }
 
-    private void checkPATSectionOccurrenceInterval(TSDemuxPayload payload)
+    private long calculateInterval(long lastOccurPosition, long currOccurPosition)
     {
-        if (pktcnt != 0)
-            return; // pktcnt以固定长度循环（默认设为1000），即这里每1000个包检查一次，避免频率过高影响处理速度。
-
-        long currOccurPosition = payload.getStartPacketCounter();
-        long currOccurTime = System.currentTimeMillis();
+        return (currOccurPosition - lastOccurPosition) * 188 * 8 * 1000 / avgBitrate;
+    }
 
-        long interval = calculateInterval(lastPATOccurPosition, currOccurPosition,
-                                          lastPATOccurTime, currOccurTime);
-        if (interval > 500)
-        {
-            reportError(TR290ErrorTypes.PAT_ERROR_2, "超过0.5s未收到PAT分段",
-                        payload.getStartPacketCounter(), payload.getStreamPID());
+    /**
+     * 设置定时器在上次出现位置之后 {@code millis} 毫秒（按当前码率折算为包数）到期
+     */
+    private void scheduleTimer(PacketTimerWheel.Timer timer, long lastOccurPosition, long millis)
+    {
+        if (avgBitrate > 0)
+            timerWheel.schedule(timer, lastOccurPosition + millis * avgBitrate / (188 * 8 * 1000));
+    }
 
-            // 重置位置以待下一轮检查
-            lastPATOccurPosition = currOccurPosition;
-            lastPATOccurTime = currOccurTime;
-        }
+    /**
+     * 码率确定后启动各项重复周期检查。此前出现的表按其出现位置计时，从未出现的表在下一格即判定超时。
+     */
+    private void startTimers(long position)
+    {
+        scheduleTimer(patTimer, lastPATOccurPosition, 500);
+        scheduleTimer(catTimer, lastCATOccurPosition, 500);
+        scheduleTimer(nitTimer, lastNITActOccurPosition, 10000);
+        scheduleTimer(sdtTimer, lastSDTActOccurPosition, 2000);
+        scheduleTimer(eitTimer, Math.min(lastEITActPFS0OccurPosition, lastEITActPFS1OccurPosition), 2000);
+        scheduleTimer(tdtTimer, lastTDTOccurPosition, 30000);
+        scheduleTimer(unreferencedStreamTimer, position, 500);
+        for (int pmtpid : programPmtPids)
+            startPMTTimer(pmtpid);
+        for (int pid : pmtMappedStreams)
+            startStreamTimer(pid);
     }
 
-    private void checkCATSectionOccurrenceInterval(TSDemuxPayload payload)
+    private void startPMTTimer(int pmtpid)
     {
-        if (pktcnt != 100)
-            return;
+        if (pmtTimers[pmtpid] == null)
+            pmtTimers[pmtpid] = new PacketTimerWheel.Timer(position -> checkPMTSectionOccurrenceInterval(pmtpid, position));
+        if (!pmtTimers[pmtpid].isScheduled())
+            scheduleTimer(pmtTimers[pmtpid], pmtOccurPositions[pmtpid], 500);
+    }
 
-        long currOccurPosition = payload.getStartPacketCounter();
-        long currOccurTime = System.currentTimeMillis();
+    private void startStreamTimer(int pid)
+    {
+        if (streamTimers[pid] == null)
+            streamTimers[pid] = new PacketTimerWheel.Timer(position -> checkPMTMappedStreamOccurrenceInterval(pid, position));
+        if (!streamTimers[pid].isScheduled())
+            scheduleTimer(streamTimers[pid], streamOccurPositions[pid], 5000);
+    }
 
-        long interval = calculateInterval(lastCATOccurPosition, currOccurPosition,
-                                          lastCATOccurTime, currOccurTime);
-        if (interval < 500)
-            return;
+    // 以下检查在定时器到期时执行：按当前码率重新计算间隔，超时则报告并以当前位置重新计时，
+    // 未超时（期间表已出现）则按最后出现的位置重新设置定时器。
 
-        boolean hasScrambledStream = IntStream.of(scrambledFlags).anyMatch(flag -> flag == 1);
-        if (hasScrambledStream)
-            reportError(TR290ErrorTypes.CAT_ERROR, "存在加扰流，但超过0.5s未收到CAT分段",
-                        payload.getStartPacketCounter(), payload.getStreamPID());
+    private void checkPATSectionOccurrenceInterval(long position)
+    {
+        long interval = calculateInterval(lastPATOccurPosition, position);
+        if (interval > 500)
+        {
+            reportError(TR290ErrorTypes.PAT_ERROR_2, position, 0x0000,
+                        "超过0.5s未收到PAT分段");
 
-        // 重置位置以待下一轮检查
-        lastCATOccurPosition = currOccurPosition;
-        lastCATOccurTime = currOccurTime;
+            // 重置位置以待下一轮检查
+            lastPATOccurPosition = position;
+        }
+        scheduleTimer(patTimer, lastPATOccurPosition, 500);
     }
 
-    private void checkPMTSectionOccurrenceInterval(TSDemuxPayload payload)
+    private void checkCATSectionOccurrenceInterval(long position)
     {
-        if (pktcnt != 200)
-            return; // 错开PAT检测
-
-        long currOccurPosition = payload.getStartPacketCounter();
-        long currOccurTime = System.currentTimeMillis();
-
-        for (int pmtpid : programPmtPids)
+        long interval = calculateInterval(lastCATOccurPosition, position);
+        if (interval > 500)
         {
-            long interval = calculateInterval(pmtOccurPositions[pmtpid], currOccurPosition,
-                                              pmtOccurTimes[pmtpid], currOccurTime);
-            if (interval > 500)
-            {
-                reportError(TR290ErrorTypes.PMT_ERROR_2,
-                            String.format("超过0.5s未收到PMT分段（pid = %d）", pmtpid),
-                            payload.getStartPacketCounter(), payload.getStreamPID());
+            if (scrambledStreamCount > 0)
+                reportError(TR290ErrorTypes.CAT_ERROR, position, 0x0001,
+                            "存在加扰流，但超过0.5s未收到CAT分段");
 
-                // 重置位置以待下一轮检查
-                pmtOccurPositions[pmtpid] = currOccurPosition;
-                pmtOccurTimes[pmtpid] = currOccurTime;
-            }
+            // 重置位置以待下一轮检查
+            lastCATOccurPosition = position;
         }
+        scheduleTimer(catTimer, lastCATOccurPosition, 500);
     }
 
-    private void checkNITSectionOccurrenceInterval(TSDemuxPayload payload)
+    private void checkPMTSectionOccurrenceInterval(int pmtpid, long position)
     {
-        if (pktcnt != 400)
+        if (!programPmtPids.contains(pmtpid))
             return;
 
-        long currOccurPosition = payload.getStartPacketCounter();
-        long currOccurTime = System.currentTimeMillis();
-
-        long interval = calculateInterval(lastNITActOccurPosition, currOccurPosition,
-                                          lastNITActOccurTime, currOccurTime);
-        if (interval > 10000)
+        long interval = calculateInterval(pmtOccurPositions[pmtpid], position);
+        if (interval > 500)
         {
-            reportError(TR290ErrorTypes.NIT_ACTUAL_ERROR, "超过10s未收到NIT_actual分段",
-                        payload.getStartPacketCounter(), payload.getStreamPID());
+            reportError(TR290ErrorTypes.PMT_ERROR_2, position, pmtpid,
+                        "超过0.5s未收到PMT分段（pid = %d）", pmtpid, 0, 0);
 
             // 重置位置以待下一轮检查
-            lastNITActOccurPosition = currOccurPosition;
-            lastNITActOccurTime = currOccurTime;
+            pmtOccurPositions[pmtpid] = position;
         }
+        scheduleTimer(pmtTimers[pmtpid], pmtOccurPositions[pmtpid], 500);
     }
 
-    private void checkSDTSectionOccurrenceInterval(TSDemuxPayload payload)
+    private void checkNITSectionOccurrenceInterval(long position)
     {
-        if (pktcnt != 500)
-            return;
+        long interval = calculateInterval(lastNITActOccurPosition, position);
+        if (interval > 10000)
+        {
+            reportError(TR290ErrorTypes.NIT_ACTUAL_ERROR, position, 0x0010,
+                        "超过10s未收到NIT_actual分段");
 
-        long currOccurPosition = payload.getStartPacketCounter();
-        long currOccurTime = System.currentTimeMillis();
+            // 重置位置以待下一轮检查
+            lastNITActOccurPosition = position;
+            lastNITActOccurTime = System.currentTimeMillis();
+        }
+        scheduleTimer(nitTimer, lastNITActOccurPosition, 10000);
+    }
 
-        long interval = calculateInterval(lastSDTActOccurPosition, currOccurPosition,
-                                          lastSDTActOccurTime, currOccurTime);
+    private void checkSDTSectionOccurrenceInterval(long position)
+    {
+        long interval = calculateInterval(lastSDTActOccurPosition, position);
         if (interval > 2000)
         {
-            reportError(TR290ErrorTypes.SDT_ACTUAL_ERROR, "超过2s未收到SDT_actual分段",
-                        payload.getStartPacketCounter(), payload.getStreamPID());
+            reportError(TR290ErrorTypes.SDT_ACTUAL_ERROR, position, 0x0011,
+                        "超过2s未收到SDT_actual分段");
 
             // 重置位置以待下一轮检查
-            lastSDTActOccurPosition = currOccurPosition;
-            lastSDTActOccurTime = currOccurTime;
+            lastSDTActOccurPosition = position;
+            lastSDTActOccurTime = System.currentTimeMillis();
         }
+        scheduleTimer(sdtTimer, lastSDTActOccurPosition, 2000);
     }
 
-    private void checkEITSectionOccurrenceInterval(TSDemuxPayload payload)
+    private void checkEITSectionOccurrenceInterval(long position)
     {
-        if (pktcnt != 600)
-            return;
-
-        long currOccurPosition = payload.getStartPacketCounter();
-        long currOccurTime = System.currentTimeMillis();
-
-        long interval = calculateInterval(lastEITActPFS0OccurPosition, currOccurPosition,
-                                          lastEITActPFS0OccurTime, currOccurTime);
+        long interval = calculateInterval(lastEITActPFS0OccurPosition, position);
         if (interval > 2000)
         {
-            reportError(TR290ErrorTypes.EIT_ACTUAL_ERROR, "超过2s未收到EIT_actual P/F Section[0]分段",
-                        payload.getStartPacketCounter(), payload.getStreamPID());
+            reportError(TR290ErrorTypes.EIT_ACTUAL_ERROR, position, 0x0012,
+                        "超过2s未收到EIT_actual P/F Section[0]分段");
 
             // 重置位置以待下一轮检查
-            lastEITActPFS0OccurPosition = currOccurPosition;
-            lastEITActPFS0OccurTime = currOccurTime;
+            lastEITActPFS0OccurPosition = position;
         }
 
-        interval = calculateInterval(lastEITActPFS1OccurPosition, currOccurPosition,
-                                     lastEITActPFS1OccurTime, currOccurTime);
+        interval = calculateInterval(lastEITActPFS1OccurPosition, position);
         if (interval > 2000)
         {
-            reportError(TR290ErrorTypes.EIT_ACTUAL_ERROR, "超过2s未收到EIT_actual P/F Section[1]分段",
-                        payload.getStartPacketCounter(), payload.getStreamPID());
+            reportError(TR290ErrorTypes.EIT_ACTUAL_ERROR, position, 0x0012,
+                        "超过2s未收到EIT_actual P/F Section[1]分段");
 
             // 重置位置以待下一轮检查
-            lastEITActPFS1OccurPosition = currOccurPosition;
-            lastEITActPFS1OccurTime = currOccurTime;
+            lastEITActPFS1OccurPosition = position;
         }
+        scheduleTimer(eitTimer, Math.min(lastEITActPFS0OccurPosition, lastEITActPFS1OccurPosition), 2000);
     }
 
-    private void checkTDTSectionOccurrenceInterval(TSDemuxPayload payload)
+    private void checkTDTSectionOccurrenceInterval(long position)
     {
-        if (pktcnt != 700)
-            return;
-
-        long currOccurPosition = payload.getStartPacketCounter();
-        long currOccurTime = System.currentTimeMillis();
-
-        long interval = calculateInterval(lastTDTOccurPosition, currOccurPosition,
-                                          lastTDTOccurTime, currOccurTime);
+        long interval = calculateInterval(lastTDTOccurPosition, position);
         if (interval > 30000)
         {
-            reportError(TR290ErrorTypes.SI_REPETITION_ERROR, "超过30s未收到TDT表",
-                        payload.getFinishPacketCounter(), payload.getStreamPID());
-        }
+            reportError(TR290ErrorTypes.SI_REPETITION_ERROR, position, 0x0014,
+                        "超过30s未收到TDT表");
 
-        lastTDTOccurPosition = currOccurPosition;
-        lastTDTOccurTime = currOccurTime;
+            // 重置位置以待下一轮检查
+            lastTDTOccurPosition = position;
+            lastTDTOccurTime = System.currentTimeMillis();
+        }
+        scheduleTimer(tdtTimer, lastTDTOccurPosition, 30000);
     }
 
-    private void checkPMTMappedStreamOccurrenceInterval(TSDemuxPayload payload)
+    private void checkPMTMappedStreamOccurrenceInterval(int pid, long position)
     {
-        if (pktcnt != 900)
+        if (!pmtMappedStreams.contains(pid))
             return;
 
-        long currOccurPosition = payload.getStartPacketCounter();
-        long currOccurTime = System.currentTimeMillis();
-
-        for (int pid : pmtMappedStreams)
+        long interval = calculateInterval(streamOccurPositions[pid], position);
+        if (interval > 5000)
         {
-            long interval = calculateInterval(streamOccurPositions[pid], currOccurPosition,
-                                              streamOccurTimes[pid], currOccurTime);
-            if (interval > 5000)
-            {
-                reportError(TR290ErrorTypes.PID_ERROR,
-                            String.format("超过5s未收到被PMT映射的流（pid = %d）", pid),
-                            payload.getStartPacketCounter(), payload.getStreamPID());
+            reportError(TR290ErrorTypes.PID_ERROR, position, pid,
+                        "超过5s未收到被PMT映射的流（pid = %d）", pid, 0, 0);
 
-                streamOccurPositions[pid] = currOccurPosition;
-                streamOccurTimes[pid] = currOccurTime;
-            }
+            streamOccurPositions[pid] = position;
         }
+        scheduleTimer(streamTimers[pid], streamOccurPositions[pid], 5000);
     }
 
     private void checkUnexpectedScrambledPATStream(TSDemuxPayload payload)
@@ -483,108 +476,85 @@ public class TR290Tracer2 implements Tracer
         // 如果持续出现加扰情况，则会持续报警，显著影响执行效率。有风险。
         if (payload.getStreamPID() == 0x0000 && pkt.isScrambled())
         {
-            reportError(TR290ErrorTypes.PAT_ERROR_2,
-                        String.format("PID=0的TS包加扰指示不等于0（pct = %d）",
-                                      payload.getStartPacketCounter()),
-                        payload.getStartPacketCounter(), payload.getStreamPID());
+            reportError(TR290ErrorTypes.PAT_ERROR_2, payload.getStartPacketCounter(), payload.getStreamPID(),
+                        "PID=0的TS包加扰指示不等于0（pct = %d）", payload.getStartPacketCounter(), 0, 0);
         }
     }
 
     private void checkUnexpectedScrambledPMTStream(TSDemuxPayload payload)
     {
         // 如果持续出现加扰情况，则会持续报警，显著影响执行效率。有风险。
-        if (pmtChannels[payload.getStreamPID()] != null && pkt.isScrambled())
+        if (pmtStreams[payload.getStreamPID()] && pkt.isScrambled())
         {
-            reportError(TR290ErrorTypes.PMT_ERROR_2,
-                        String.format("携带PMT的TS包加扰指示不等于0（pid = %d，pct = %d）",
-                                      payload.getStreamPID(), payload.getStartPacketCounter()),
-                        payload.getStartPacketCounter(), payload.getStreamPID());
+            reportError(TR290ErrorTypes.PMT_ERROR_2, payload.getStartPacketCounter(), payload.getStreamPID(),
+                        "携带PMT的TS包加扰指示不等于0（pid = %d，pct = %d）",
+                        payload.getStreamPID(), payload.getStartPacketCounter(), 0);
         }
     }
 
-    private void checkUnreferencedStream(TSDemuxPayload payload)
+    private void checkUnreferencedStream(long position)
     {
-        if (pktcnt != 800)
-            return;
-
-        long currOccurPosition = payload.getStartPacketCounter();
-        long currOccurTime = System.currentTimeMillis();
-
-        long interval = calculateInterval(lastUnreferencedStreamCheckPosition, currOccurPosition,
-                                          lastUnreferencedStreamCheckTime, currOccurTime);
-        if (interval < 500)
-            return;
-
         for (int i = 0x20; i < 0x1FFF; i++)
         {
             // 非空包，非PMT流，且未被PMT标记（ECM、ES）、未被CAT标记（EMM）的其他出现数据的流
-            if (pmtChannels[i] == null && streamMarks[i] == 0 && streamCounts[i] > 0)
+            if (!pmtStreams[i] && streamMarks[i] == 0 && streamCounts[i] > 0)
             {
-                reportError(TR290ErrorTypes.UNREFERENCED_PID,
-                            String.format("超过0.5s仍然存在未被PMT、CAT关联的流（pid = %d）", i),
-                            payload.getFinishPacketCounter(), i);
+                reportError(TR290ErrorTypes.UNREFERENCED_PID, position, i,
+                            "超过0.5s仍然存在未被PMT、CAT关联的流（pid = %d）", i, 0, 0);
 
                 streamCounts[i] = 0;
             }
         }
-
-        lastUnreferencedStreamCheckPosition = currOccurPosition;
-        lastUnreferencedStreamCheckTime = currOccurTime;
+        scheduleTimer(unreferencedStreamTimer, position, 500);
     }
 
-    private void processSection(TSDemuxPayload payload)
+    private void processSection(SectionEvent event)
     {
-        if (payload.getType() != TSDemuxPayload.Type.SECTION || !sec.isAttachable(payload.getEncoding()))
-            return;
-
-        sec.attach(payload.getEncoding());
-        int tableId = sec.getTableID();
+        TSDemuxPayload payload = event.payload();
+        int tableId = event.tableId();
 
-        int pid = payload.getStreamPID();
+        int pid = event.pid();
         if (pid == 0x0000)
         {
             checkUnexpectedSectionOnPATStream(tableId, payload);
-            processPAT(payload);
+            processPAT(event);
         }
 
         if (pid == 0x0001)
         {
             checkUnexpectedSectionOnCATStream(tableId, payload);
-            processCAT(payload);
+            processCAT(event);
         }
 
-        if (pmtChannels[pid] != null && pmt.isAttachable(payload.getEncoding()))
-            processPMT(payload);
-
         if (pid == 0x0010)
         {
             checkUnexpectedSectionOnNITStream(tableId, payload);
-            processNIT(payload);
+            processNIT(event);
         }
 
         if (pid == 0x0011)
         {
             checkUnexpectedSectionOnSDTStream(tableId, payload);
-            processSDT(payload);
-            processBAT(payload);
+            processSDT(event);
+            processBAT(event);
         }
 
         if (pid == 0x0012)
         {
             checkUnexpectedSectionOnEITStream(tableId, payload);
-            processEIT(payload);
+            processEIT(event);
         }
 
         if (pid == 0x0013)
         {
             checkUnexpectedSectionOnRSTStream(tableId, payload);
-            processRST(payload);
+            processRST(event);
         }
 
         if (pid == 0x0014)
         {
             checkUnexpectedSectionOnTDTStream(tableId, payload);
-            processTDT(payload);
+            processTDT(event);
         }
     }
 
@@ -592,9 +562,8 @@ public class TR290Tracer2 implements Tracer
     {
         if (tableId != 0x00)
         {
-            reportError(TR290ErrorTypes.PAT_ERROR_2,
-                        String.format("TableID不为0的段出现在PID=0的流里（table_id = %02x）", tableId),
-                        payload.getFinishPacketCounter(), payload.getStreamPID());
+            reportError(TR290ErrorTypes.PAT_ERROR_2, payload.getFinishPacketCounter(), payload.getStreamPID(),
+                        "TableID不为0的段出现在PID=0的流里（table_id = %02x）", tableId, 0, 0);
         }
     }
 
@@ -602,9 +571,8 @@ public class TR290Tracer2 implements Tracer
     {
         if (tableId != 0x01)
         {
-            reportError(TR290ErrorTypes.CAT_ERROR,
-                        String.format("TableID不为1的段出现在PID=1的流里（table_id = %02x）", tableId),
-                        payload.getFinishPacketCounter(), payload.getStreamPID());
+            reportError(TR290ErrorTypes.CAT_ERROR, payload.getFinishPacketCounter(), payload.getStreamPID(),
+                        "TableID不为1的段出现在PID=1的流里（table_id = %02x）", tableId, 0, 0);
         }
     }
 
@@ -612,9 +580,8 @@ public class TR290Tracer2 implements Tracer
     {
         if (tableId != 0x40 && tableId != 0x41 && tableId != 0x72)
         {
-            reportError(TR290ErrorTypes.NIT_ACTUAL_ERROR,
-                        String.format("NIT或ST以外的表出现在PID=0x0010的流里（table_id = %02x）", tableId),
-                        payload.getFinishPacketCounter(), payload.getStreamPID());
+            reportError(TR290ErrorTypes.NIT_ACTUAL_ERROR, payload.getFinishPacketCounter(), payload.getStreamPID(),
+                        "NIT或ST以外的表出现在PID=0x0010的流里（table_id = %02x）", tableId, 0, 0);
         }
     }
 
@@ -622,9 +589,8 @@ public class TR290Tracer2 implements Tracer
     {
         if (tableId != 0x42 && tableId != 0x46 && tableId != 0x4A && tableId != 0x72)
         {
-            reportError(TR290ErrorTypes.SDT_ACTUAL_ERROR,
-                        String.format("BAT或SDT或ST以外的表出现在PID=0x0011的流里（table_id = %02x）", tableId),
-                        payload.getFinishPacketCounter(), payload.getStreamPID());
+            reportError(TR290ErrorTypes.SDT_ACTUAL_ERROR, payload.getFinishPacketCounter(), payload.getStreamPID(),
+                        "BAT或SDT或ST以外的表出现在PID=0x0011的流里（table_id = %02x）", tableId, 0, 0);
         }
     }
 
@@ -632,9 +598,8 @@ public class TR290Tracer2 implements Tracer
     {
         if ((tableId < 0x4E || tableId > 0x6F) && tableId != 0x72)
         {
-            reportError(TR290ErrorTypes.EIT_ACTUAL_ERROR,
-                        String.format("EIT或ST以外的表出现在PID=0x0012的流里（table_id = %02x）", tableId),
-                        payload.getFinishPacketCounter(), payload.getStreamPID());
+            reportError(TR290ErrorTypes.EIT_ACTUAL_ERROR, payload.getFinishPacketCounter(), payload.getStreamPID(),
+                        "EIT或ST以外的表出现在PID=0x0012的流里（table_id = %02x）", tableId, 0, 0);
         }
     }
 
@@ -642,9 +607,8 @@ public class TR290Tracer2 implements Tracer
     {
         if (tableId != 0x71 && tableId != 0x72)
         {
-            reportError(TR290ErrorTypes.RST_ERROR,
-                        String.format("RST或ST以外的表出现在PID=0x0013的流里（table_id = %02x）", tableId),
-                        payload.getFinishPacketCounter(), payload.getStreamPID());
+            reportError(TR290ErrorTypes.RST_ERROR, payload.getFinishPacketCounter(), payload.getStreamPID(),
+                        "RST或ST以外的表出现在PID=0x0013的流里（table_id = %02x）", tableId, 0, 0);
         }
     }
 
@@ -652,147 +616,108 @@ public class TR290Tracer2 implements Tracer
     {
         if (tableId != 0x70 && tableId != 0x72 && tableId != 0x73)
         {
-            reportError(TR290ErrorTypes.TDT_ERROR,
-                        String.format("TDT或TOT或ST以外的表出现在PID=0x0014的流里（table_id = %02x）", tableId),
-                        payload.getFinishPacketCounter(), payload.getStreamPID());
+            reportError(TR290ErrorTypes.TDT_ERROR, payload.getFinishPacketCounter(), payload.getStreamPID(),
+                        "TDT或TOT或ST以外的表出现在PID=0x0014的流里（table_id = %02x）", tableId, 0, 0);
         }
     }
 
-    private void processPAT(TSDemuxPayload payload)
+    private void processPAT(SectionEvent event)
     {
+        TSDemuxPayload payload = event.payload();
         if (!pat.isAttachable(payload.getEncoding()))
             return;
 
-        lastPATOccurTime = System.currentTimeMillis();
-        lastPATOccurPosition = payload.getFinishPacketCounter();
+        lastPATOccurPosition = event.position();
 
-        pat.attach(payload.getEncoding());
-        int secnum = pat.getSectionNumber();
-        long checksum = pat.getChecksum();
-
-        String uid = String.format("pat.%d", secnum);
-        Context ctx = sectionContexts.get(uid);
-        if (ctx != null && ctx.checksum == checksum)
+        if (event.kind() == SectionEvent.Kind.CORRUPTED)
         {
-            // 严格的相等。
-            if (!ctx.checksumCorrect)
-                reportError(TR290ErrorTypes.CRC_ERROR, "PAT表CRC32错误",
-                            payload.getFinishPacketCounter(), payload.getStreamPID());
+            reportError(TR290ErrorTypes.CRC_ERROR, payload.getFinishPacketCounter(), payload.getStreamPID(),
+                        "PAT表CRC32错误");
             return;
         }
+        if (!event.isUpdate())
+            return;
 
-        TSDemux demux = payload.getChannel().getHost();
-        if (ctx != null)
+        if (event.kind() == SectionEvent.Kind.CHANGED)
         {
-            // 如果这里ctx不为空，则肯定checksum有变化（因为相同时前面已经处理了），下同。
-            removeTableContexts("pat");
-
             // 任何一个PAT分段变化，都将当前节目清空，重新解析PMT。
             for (int pid = 0; pid < 8192; pid++)
             {
-                TSDemux.Channel channel = pmtChannels[pid];
-                if (channel != null)
+                if (pmtStreams[pid])
                 {
-                    demux.closeChannel(channel);
+                    sectionBus.unsubscribe(pid, pmtListener);
                     streamMarks[pid] = 0;
-                    pmtChannels[pid] = null;
+                    pmtStreams[pid] = false;
                 }
+                if (pmtTimers[pid] != null)
+                    timerWheel.cancel(pmtTimers[pid]);
+                if (streamTimers[pid] != null)
+                    timerWheel.cancel(streamTimers[pid]);
             }
             programNumbers.clear();
             programPmtPids.clear();
             pmtMappedStreams.clear();
         }
 
-        // 更新上下文
-        ctx = updateTableContext(uid, checksum);
-
+        pat.attach(payload.getEncoding());
         pat.forEachProgramAssociation((number, pmtpid) -> {
-            TSDemux.Channel channel = demux.registerSectionChannel(pmtpid, this::processPMT);
-            pmtChannels[pmtpid] = channel;
+            if (!pmtStreams[pmtpid])
+                sectionBus.subscribe(pmtpid, pmtListener); // 已订阅的PMT不再重新订阅，避免重复补发。
+            pmtStreams[pmtpid] = true;
             streamMarks[pmtpid] = 1;
             programNumbers.add(number);
             programPmtPids.add(pmtpid);
+            startPMTTimer(pmtpid);
         });
-
-        if (!pat.isChecksumCorrect())
-        {
-            ctx.checksumCorrect = false;
-            reportError(TR290ErrorTypes.CRC_ERROR, "PAT表CRC32错误",
-                        payload.getFinishPacketCounter(), payload.getStreamPID());
-        }
     }
 
-    private void processCAT(TSDemuxPayload payload)
+    private void processCAT(SectionEvent event)
     {
+        TSDemuxPayload payload = event.payload();
         if (!cat.isAttachable(payload.getEncoding()))
             return;
 
-        cat.attach(payload.getEncoding());
-
-        lastCATOccurTime = System.currentTimeMillis();
-        lastCATOccurPosition = payload.getFinishPacketCounter();
-
-        int secnum = cat.getSectionNumber();
-        long checksum = cat.getChecksum();
+        lastCATOccurPosition = event.position();
 
-        String uid = String.format("cat.%d", secnum);
-        Context ctx = sectionContexts.get(uid);
-        if (ctx != null && ctx.checksum == checksum)
+        if (event.kind() == SectionEvent.Kind.CORRUPTED)
         {
-            // 严格的相等。
-            if (!ctx.checksumCorrect)
-                reportError(TR290ErrorTypes.CRC_ERROR, "CAT表CRC32错误",
-                            payload.getFinishPacketCounter(), payload.getStreamPID());
+            reportError(TR290ErrorTypes.CRC_ERROR, payload.getFinishPacketCounter(), payload.getStreamPID(),
+                        "CAT表CRC32错误");
             return;
         }
+        if (!event.isUpdate())
+            return;
 
-        if (ctx != null)
-            removeTableContexts("cat");
-
-        ctx = updateTableContext(uid, checksum);
-
+        cat.attach(payload.getEncoding());
         descloop.attach(cat.getDescriptorLoop());
         descloop.forEach(cad::isAttachable, descriptor -> {
             cad.attach(descriptor);
             streamMarks[cad.getConditionalAccessStreamPID()] = 1; // 标记EMM
         });
-
-        if (!cat.isChecksumCorrect())
-        {
-            ctx.checksumCorrect = false;
-            reportError(TR290ErrorTypes.CRC_ERROR, "CAT表CRC32错误",
-                        payload.getFinishPacketCounter(), payload.getStreamPID());
-        }
     }
 
-    private void processPMT(TSDemuxPayload payload)
+    private void processPMT(SectionEvent event)
     {
-        pmt.attach(payload.getEncoding());
-        int number = pmt.getProgramNumber();
-        long checksum = pmt.getChecksum();
+        TSDemuxPayload payload = event.payload();
+        if (!pmt.isAttachable(payload.getEncoding()))
+            return;
 
+        int number = event.tableIdExtension();
         if (!programNumbers.contains(number))
             return; // 非注册节目的PMT，不处理。
 
-        String uid = String.format("pmt.%d", number);
-        Context ctx = sectionContexts.get(uid);
-        if (ctx != null && ctx.checksum == checksum)
-        {
-            pmtOccurTimes[payload.getStreamPID()] = System.currentTimeMillis();
-            pmtOccurPositions[payload.getStreamPID()] = payload.getFinishPacketCounter();
+        pmtOccurPositions[payload.getStreamPID()] = event.position();
 
-            // 严格的相等。
-            if (!ctx.checksumCorrect)
-                reportError(TR290ErrorTypes.CRC_ERROR, String.format("PMT表CRC32错误（节目号：%d）", number),
-                            payload.getFinishPacketCounter(), payload.getStreamPID());
+        if (event.kind() == SectionEvent.Kind.CORRUPTED)
+        {
+            reportError(TR290ErrorTypes.CRC_ERROR, payload.getFinishPacketCounter(), payload.getStreamPID(),
+                        "PMT表CRC32错误（节目号：%d）", number, 0, 0);
             return;
         }
+        if (!event.isUpdate())
+            return;
 
-        // 更新上下文
-        ctx = updateTableContext(uid, checksum);
-        pmtOccurTimes[payload.getStreamPID()] = System.currentTimeMillis();
-        pmtOccurPositions[payload.getStreamPID()] = payload.getFinishPacketCounter();
-
+        pmt.attach(payload.getEncoding());
         descloop.attach(pmt.getDescriptorLoop());
         descloop.forEach(cad::isAttachable, descriptor -> {
             cad.attach(descriptor);
@@ -803,7 +728,8 @@ public class TR290Tracer2 implements Tracer
         pmt.forEachProgramElement(encoding -> {
             element.attach(encoding);
             streamMarks[element.getElementaryPID()] = 1; // 标记ES
-            pmtMappedStreams.add(element.getElementaryPID());
+            if (pmtMappedStreams.add(element.getElementaryPID()))
+                startStreamTimer(element.getElementaryPID());
 
             descloop.attach(element.getDescriptorLoop());
             descloop.forEach(cad::isAttachable, descriptor -> {
@@ -811,27 +737,18 @@ public class TR290Tracer2 implements Tracer
                 streamMarks[cad.getConditionalAccessStreamPID()] = 1; // 标记ECM
             });
         });
-
-        if (!pmt.isChecksumCorrect())
-        {
-            ctx.checksumCorrect = false;
-            reportError(TR290ErrorTypes.CRC_ERROR, String.format("PMT表CRC32错误（节目号：%d）", number),
-                        payload.getFinishPacketCounter(), payload.getStreamPID());
-        }
     }
 
-    private void processNIT(TSDemuxPayload payload)
+    private void processNIT(SectionEvent event)
     {
+        TSDemuxPayload payload = event.payload();
         if (!nit.isAttachable(payload.getEncoding()))
             return;
 
-        nit.attach(payload.getEncoding());
-        int tableId = nit.getTableID();
-        int networkId = nit.getNetworkID();
-        int secnum = nit.getSectionNumber();
-        long checksum = nit.getChecksum();
+        int tableId = event.tableId();
+        int networkId = event.tableIdExtension();
 
-        long currOccurPosition = payload.getFinishPacketCounter();
+        long currOccurPosition = event.position();
         long currOccurTime = System.currentTimeMillis();
 
         if (tableId == 0x40)
@@ -840,125 +757,65 @@ public class TR290Tracer2 implements Tracer
                                               lastNITActOccurTime, currOccurTime);
             if (0 < interval && interval < 25)
             {
-                reportError(TR290ErrorTypes.NIT_ACTUAL_ERROR,
-                            String.format("NIT_actual间隔小于25ms（实际：%dms）", interval),
-                            payload.getFinishPacketCounter(), payload.getStreamPID());
+                reportError(TR290ErrorTypes.NIT_ACTUAL_ERROR, payload.getFinishPacketCounter(), payload.getStreamPID(),
+                            "NIT_actual间隔小于25ms（实际：%dms）", interval, 0, 0);
             }
 
             lastNITActOccurPosition = currOccurPosition;
             lastNITActOccurTime = currOccurTime;
         }
 
-        String uid = String.format("nit.%d.%d.%d", tableId, networkId, secnum);
-        Context ctx = sectionContexts.get(uid);
-        if (ctx != null && ctx.checksum == checksum)
+        if (event.kind() == SectionEvent.Kind.CORRUPTED)
         {
-            if (tableId == 0x41)
-            {
-                long interval = calculateInterval(ctx.occurPosition, currOccurPosition,
-                                                  ctx.occurTime, currOccurTime);
-                if (interval > 10000)
-                {
-                    reportError(TR290ErrorTypes.SDT_OTHER_ERROR,
-                                String.format("NIT_other间隔大于10s（实际：%.1fs）", 1.0 * interval / 1000),
-                                payload.getFinishPacketCounter(), payload.getStreamPID());
-                }
-
-                ctx.occurPosition = currOccurPosition;
-                ctx.occurTime = currOccurTime;
-            }
-
-            if (!ctx.checksumCorrect)
-                reportError(TR290ErrorTypes.CRC_ERROR,
-                            String.format("NIT表CRC32错误（nid = %d）", networkId),
-                            payload.getFinishPacketCounter(), payload.getStreamPID());
+            reportError(TR290ErrorTypes.CRC_ERROR, payload.getFinishPacketCounter(), payload.getStreamPID(),
+                        "NIT表CRC32错误（nid = %d）", networkId, 0, 0);
             return;
         }
 
-        if (ctx != null)
-            removeTableContexts(String.format("nit.%d.%d", tableId, networkId));
-
-        // 更新上下文
-        ctx = updateTableContext(uid, checksum);
-        ctx.occurPosition = currOccurPosition;
-        ctx.occurTime = currOccurTime;
-
-        if (!nit.isChecksumCorrect())
+        if (tableId == 0x41)
         {
-            ctx.checksumCorrect = false;
-            reportError(TR290ErrorTypes.CRC_ERROR,
-                        String.format("NIT表CRC32错误（nid = %d）", networkId),
-                        payload.getFinishPacketCounter(), payload.getStreamPID());
+            long interval = calculateRepetitionInterval(event);
+            if (interval > 10000)
+            {
+                reportError(TR290ErrorTypes.SDT_OTHER_ERROR, payload.getFinishPacketCounter(), payload.getStreamPID(),
+                            "NIT_other间隔大于10s（实际：%d.%ds）", interval / 1000, interval % 1000 / 100, 0);
+            }
         }
     }
 
-    private void processBAT(TSDemuxPayload payload)
+    private void processBAT(SectionEvent event)
     {
+        TSDemuxPayload payload = event.payload();
         if (!bat.isAttachable(payload.getEncoding()))
             return;
 
-        bat.attach(payload.getEncoding());
-        int bouquetId = bat.getBouquetID();
-        int secnum = bat.getSectionNumber();
-        long checksum = bat.getChecksum();
-
-        long currOccurPosition = payload.getFinishPacketCounter();
-        long currOccurTime = System.currentTimeMillis();
+        int bouquetId = event.tableIdExtension();
 
-        String uid = String.format("bat.%d.%d", bouquetId, secnum);
-        Context ctx = sectionContexts.get(uid);
-        if (ctx != null && ctx.checksum == checksum)
+        if (event.kind() == SectionEvent.Kind.CORRUPTED)
         {
-            long interval = calculateInterval(ctx.occurPosition, currOccurPosition,
-                                              ctx.occurTime, currOccurTime);
-            if (interval > 10000)
-            {
-                reportError(TR290ErrorTypes.SI_REPETITION_ERROR,
-                            String.format("BAT分段间隔大于10s（实际：%.1fs，bid = %d）",
-                                          1.0 * interval / 1000, bouquetId),
-                            payload.getFinishPacketCounter(), payload.getStreamPID());
-            }
-
-            ctx.occurPosition = currOccurPosition;
-            ctx.occurTime = currOccurTime;
-
-            if (!ctx.checksumCorrect)
-                reportError(TR290ErrorTypes.CRC_ERROR,
-                            String.format("BAT表CRC32错误（bid = %d）", bouquetId),
-                            payload.getFinishPacketCounter(), payload.getStreamPID());
+            reportError(TR290ErrorTypes.CRC_ERROR, payload.getFinishPacketCounter(), payload.getStreamPID(),
+                        "BAT表CRC32错误（bid = %d）", bouquetId, 0, 0);
             return;
         }
 
-        if (ctx != null)
-            removeTableContexts(String.format("bat.%d", bouquetId));
-
-        // 更新上下文
-        ctx = updateTableContext(uid, checksum);
-        ctx.occurPosition = currOccurPosition;
-        ctx.occurTime = currOccurTime;
-
-        if (!bat.isChecksumCorrect())
+        long interval = calculateRepetitionInterval(event);
+        if (interval > 10000)
         {
-            ctx.checksumCorrect = false;
-            reportError(TR290ErrorTypes.CRC_ERROR,
-                        String.format("BAT表CRC32错误（bid = %d）", bouquetId),
-                        payload.getFinishPacketCounter(), payload.getStreamPID());
+            reportError(TR290ErrorTypes.SI_REPETITION_ERROR, payload.getFinishPacketCounter(), payload.getStreamPID(),
+                        "BAT分段间隔大于10s（实际：%d.%ds，bid = %d）",
+                        interval / 1000, interval % 1000 / 100, bouquetId);
         }
     }
 
-    private void processSDT(TSDemuxPayload payload)
+    private void processSDT(SectionEvent event)
     {
+        TSDemuxPayload payload = event.payload();
         if (!sdt.isAttachable(payload.getEncoding()))
             return;
 
-        sdt.attach(payload.getEncoding());
-        int tableId = sdt.getTableID();
-        int tsid = sdt.getTransportStreamID();
-        int onid = sdt.getOriginalNetworkID();
-        int secnum = sdt.getSectionNumber();
-        long checksum = sdt.getChecksum();
+        int tableId = event.tableId();
 
-        long currOccurPosition = payload.getFinishPacketCounter();
+        long currOccurPosition = event.position();
         long currOccurTime = System.currentTimeMillis();
 
         if (tableId == 0x42)
@@ -967,71 +824,44 @@ public class TR290Tracer2 implements Tracer
                                               lastSDTActOccurTime, currOccurTime);
             if (0 < interval && interval < 25)
             {
-                reportError(TR290ErrorTypes.SDT_ACTUAL_ERROR,
-                            String.format("SDT_actual间隔小于25ms（实际：%dms）", interval),
-                            payload.getFinishPacketCounter(), payload.getStreamPID());
+                reportError(TR290ErrorTypes.SDT_ACTUAL_ERROR, payload.getFinishPacketCounter(), payload.getStreamPID(),
+                            "SDT_actual间隔小于25ms（实际：%dms）", interval, 0, 0);
             }
 
             lastSDTActOccurPosition = currOccurPosition;
             lastSDTActOccurTime = currOccurTime;
         }
 
-        String uid = String.format("sdt.%d.%d.%d.%d", tableId, onid, tsid, secnum);
-        Context ctx = sectionContexts.get(uid);
-        if (ctx != null && ctx.checksum == checksum)
+        if (event.kind() == SectionEvent.Kind.CORRUPTED)
         {
-            if (tableId == 0x46)
-            {
-                long interval = calculateInterval(ctx.occurPosition, currOccurPosition,
-                                                  ctx.occurTime, currOccurTime);
-                if (interval > 10000)
-                {
-                    reportError(TR290ErrorTypes.SDT_OTHER_ERROR,
-                                String.format("SDT_other间隔大于10s（实际：%.1fs）", 1.0 * interval / 1000),
-                                payload.getFinishPacketCounter(), payload.getStreamPID());
-                }
-
-                ctx.occurPosition = currOccurPosition;
-                ctx.occurTime = currOccurTime;
-            }
-
-            if (!ctx.checksumCorrect)
-                reportError(TR290ErrorTypes.CRC_ERROR,
-                            String.format("SDT表CRC32错误（onid = %d，tsid = %d）", onid, tsid),
-                            payload.getFinishPacketCounter(), payload.getStreamPID());
+            sdt.attach(payload.getEncoding());
+            reportError(TR290ErrorTypes.CRC_ERROR, payload.getFinishPacketCounter(), payload.getStreamPID(),
+                        "SDT表CRC32错误（onid = %d，tsid = %d）",
+                        sdt.getOriginalNetworkID(), sdt.getTransportStreamID(), 0);
             return;
         }
 
-        if (ctx != null)
-            removeTableContexts(String.format("sdt.%d.%d.%d", tableId, onid, tsid));
-
-        ctx = updateTableContext(uid, checksum);
-        ctx.occurPosition = currOccurPosition;
-        ctx.occurTime = currOccurTime;
-
-        if (!sdt.isChecksumCorrect())
+        if (tableId == 0x46)
         {
-            ctx.checksumCorrect = false;
-            reportError(TR290ErrorTypes.CRC_ERROR,
-                        String.format("SDT表CRC32错误（onid = %d，tsid = %d）", onid, tsid),
-                        payload.getFinishPacketCounter(), payload.getStreamPID());
+            long interval = calculateRepetitionInterval(event);
+            if (interval > 10000)
+            {
+                reportError(TR290ErrorTypes.SDT_OTHER_ERROR, payload.getFinishPacketCounter(), payload.getStreamPID(),
+                            "SDT_other间隔大于10s（实际：%d.%ds）", interval / 1000, interval % 1000 / 100, 0);
+            }
         }
     }
 
-    private void processEIT(TSDemuxPayload payload)
+    private void processEIT(SectionEvent event)
     {
+        TSDemuxPayload payload = event.payload();
         if (!eit.isAttachable(payload.getEncoding()))
             return;
 
-        eit.attach(payload.getEncoding());
-        int tableId = eit.getTableID();
-        int sid = eit.getServiceID();
-        int tsid = eit.getTransportStreamID();
-        int onid = eit.getOriginalNetworkID();
-        int secnum = eit.getSectionNumber();
-        long checksum = eit.getChecksum();
+        int tableId = event.tableId();
+        int secnum = event.sectionNumber();
 
-        long currOccurPosition = payload.getFinishPacketCounter();
+        long currOccurPosition = event.position();
         long currOccurTime = System.currentTimeMillis();
 
         if (tableId == 0x4E)
@@ -1040,135 +870,96 @@ public class TR290Tracer2 implements Tracer
                                               lastEITActPFOccurTime, currOccurTime);
             if (0 < interval && interval < 25)
             {
-                reportError(TR290ErrorTypes.EIT_ACTUAL_ERROR,
-                            String.format("EIT_actual P/F 间隔小于25ms（实际：%dms）", interval),
-                            payload.getFinishPacketCounter(), payload.getStreamPID());
+                reportError(TR290ErrorTypes.EIT_ACTUAL_ERROR, payload.getFinishPacketCounter(), payload.getStreamPID(),
+                            "EIT_actual P/F 间隔小于25ms（实际：%dms）", interval, 0, 0);
             }
 
             lastEITActPFOccurPosition = currOccurPosition;
             lastEITActPFOccurTime = currOccurTime;
 
             if (secnum == 0)
-            {
                 lastEITActPFS0OccurPosition = currOccurPosition;
-                lastEITActPFS0OccurTime = currOccurTime;
-            }
             if (secnum == 1)
-            {
                 lastEITActPFS1OccurPosition = currOccurPosition;
-                lastEITActPFS1OccurTime = currOccurTime;
-            }
         }
 
-        String uid = String.format("eit.%d.%d.%d.%d.%d", tableId, onid, tsid, sid, secnum);
-        Context ctx = sectionContexts.get(uid);
-        if (ctx != null && ctx.checksum == checksum)
+        if (event.kind() == SectionEvent.Kind.CORRUPTED)
         {
-            if (tableId == 0x4F)
-            {
-                long interval = calculateInterval(ctx.occurPosition, currOccurPosition,
-                                                  ctx.occurTime, currOccurTime);
-                if (interval > 10000)
-                {
-                    reportError(TR290ErrorTypes.EIT_OTHER_ERROR,
-                                String.format("EIT_other %s 间隔大于10s（实际：%.1fs）",
-                                              secnum == 0 ? "P" : "F",
-                                              1.0 * interval / 1000),
-                                payload.getFinishPacketCounter(), payload.getStreamPID());
-                }
-
-                ctx.occurPosition = currOccurPosition;
-                ctx.occurTime = currOccurTime;
-            }
-
-            if (!ctx.checksumCorrect)
-                reportError(TR290ErrorTypes.CRC_ERROR,
-                            String.format("EIT表CRC32错误（onid = %d, tsid = %d, sid = %d）", onid, tsid, sid),
-                            payload.getFinishPacketCounter(), payload.getStreamPID());
+            eit.attach(payload.getEncoding());
+            reportError(TR290ErrorTypes.CRC_ERROR, payload.getFinishPacketCounter(), payload.getStreamPID(),
+                        "EIT表CRC32错误（onid = %d, tsid = %d, sid = %d）",
+                        eit.getOriginalNetworkID(), eit.getTransportStreamID(), eit.getServiceID());
             return;
         }
 
-        if (ctx != null)
-            removeTableContexts(String.format("eit.%d.%d.%d.%d", tableId, onid, tsid, sid));
-
-        ctx = updateTableContext(uid, checksum);
-        ctx.occurPosition = currOccurPosition;
-        ctx.occurTime = currOccurTime;
-
-        if (!eit.isChecksumCorrect())
+        if (tableId == 0x4F)
         {
-            ctx.checksumCorrect = false;
-            reportError(TR290ErrorTypes.CRC_ERROR,
-                        String.format("EIT表CRC32错误（onid = %d, tsid = %d, sid = %d）", onid, tsid, sid),
-                        payload.getFinishPacketCounter(), payload.getStreamPID());
+            long interval = calculateRepetitionInterval(event);
+            if (interval > 10000)
+            {
+                reportError(TR290ErrorTypes.EIT_OTHER_ERROR, payload.getFinishPacketCounter(), payload.getStreamPID(),
+                            (secnum == 0) ? "EIT_other P 间隔大于10s（实际：%d.%ds）"
+                                          : "EIT_other F 间隔大于10s（实际：%d.%ds）",
+                            interval / 1000, interval % 1000 / 100, 0);
+            }
         }
     }
 
-    private void processRST(TSDemuxPayload payload)
+    private void processRST(SectionEvent event)
     {
+        TSDemuxPayload payload = event.payload();
         if (!rst.isAttachable(payload.getEncoding()))
             return;
 
-        long currOccurPosition = payload.getFinishPacketCounter();
+        long currOccurPosition = event.position();
         long currOccurTime = System.currentTimeMillis();
 
         long interval = calculateInterval(lastRSTOccurPosition, currOccurPosition,
                                           lastRSTOccurTime, currOccurTime);
         if (0 < interval && interval < 25)
         {
-            reportError(TR290ErrorTypes.RST_ERROR,
-                        String.format("RST间隔小于25ms（实际：%dms）", interval),
-                        payload.getFinishPacketCounter(), payload.getStreamPID());
+            reportError(TR290ErrorTypes.RST_ERROR, payload.getFinishPacketCounter(), payload.getStreamPID(),
+                        "RST间隔小于25ms（实际：%dms）", interval, 0, 0);
         }
 
         lastRSTOccurPosition = currOccurPosition;
         lastRSTOccurTime = currOccurTime;
     }
 
-    private void processTDT(TSDemuxPayload payload)
+    private void processTDT(SectionEvent event)
     {
+        TSDemuxPayload payload = event.payload();
         if (!tdt.isAttachable(payload.getEncoding()))
             return;
 
-        long currOccurPosition = payload.getFinishPacketCounter();
+        long currOccurPosition = event.position();
         long currOccurTime = System.currentTimeMillis();
 
         long interval = calculateInterval(lastTDTOccurPosition, currOccurPosition,
                                           lastTDTOccurTime, currOccurTime);
         if (0 < interval && interval < 25)
         {
-            reportError(TR290ErrorTypes.TDT_ERROR,
-                        String.format("TDT间隔小于25ms（实际：%dms）", interval),
-                        payload.getFinishPacketCounter(), payload.getStreamPID());
+            reportError(TR290ErrorTypes.TDT_ERROR, payload.getFinishPacketCounter(), payload.getStreamPID(),
+                        "TDT间隔小于25ms（实际：%dms）", interval, 0, 0);
         }
 
         if (interval > 30000)
         {
-            reportError(TR290ErrorTypes.SI_REPETITION_ERROR,
-                        String.format("TDT间隔大于30s（实际：%.1fs）", 1.0 * interval / 1000),
-                        payload.getFinishPacketCounter(), payload.getStreamPID());
+            reportError(TR290ErrorTypes.SI_REPETITION_ERROR, payload.getFinishPacketCounter(), payload.getStreamPID(),
+                        "TDT间隔大于30s（实际：%d.%ds）", interval / 1000, interval % 1000 / 100, 0);
         }
 
         lastTDTOccurPosition = currOccurPosition;
         lastTDTOccurTime = currOccurTime;
     }
 
-    private void removeTableContexts(String keyPrefix)
-    {
-        List<String> tableKeys = new ArrayList<>(sectionContexts.keySet());
-        for (String key : tableKeys)
-        {
-            if (key.startsWith(keyPrefix))
-                sectionContexts.remove(key);
-        }
-    }
-
-    private Context updateTableContext(String key, long checksum)
+    /**
+     * 计算重复分段与其上一次出现之间的间隔（毫秒）。分段总线只记录包位置，因此码率未知时不做判断。
+     */
+    private long calculateRepetitionInterval(SectionEvent event)
     {
-        Context ctx = new Context();
-        ctx.checksum = checksum;
-        ctx.checksumCorrect = true;
-        sectionContexts.put(key, ctx);
-        return ctx;
+        if (event.kind() != SectionEvent.Kind.REPEATED || event.previousPosition() < 0 || avgBitrate <= 0)
+            return 0;
+        return calculateInterval(event.previousPosition(), event.position());
     }
 }
@@ -21,34 +21,25 @@ import m2tk.assistant.api.M2TKDatabase;
 import m2tk.assistant.api.Tracer;
 import m2tk.assistant.api.domain.FilteringHook;
 import m2tk.assistant.api.domain.StreamSource;
+import m2tk.encoding.Encoding;
 import m2tk.mpeg2.decoder.SectionDecoder;
 import m2tk.multiplex.TSDemux;
 import m2tk.multiplex.TSDemuxPayload;
 import org.pf4j.Extension;
 
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
-
 @Slf4j
 @Extension
 public class UserPrivateSectionTracer implements Tracer
 {
-    private final List<FilteringHook> hooks;
-    private final Set<Integer> targetStreams;
+    private final SectionFilterBank filters;
     private final SectionDecoder sec;
-    private final int[] secCounts;
-    private int limitPerStream;
 
     private M2TKDatabase databaseService;
 
     public UserPrivateSectionTracer()
     {
-        hooks = new ArrayList<>();
-        targetStreams = new HashSet<>();
+        filters = new SectionFilterBank();
         sec = new SectionDecoder();
-        secCounts = new int[8192];
     }
 
     @Override
@@ -56,60 +47,30 @@ public class UserPrivateSectionTracer implements Tracer
     {
         databaseService = database;
 
-        hooks.clear();
-        targetStreams.clear();
-
-        List<FilteringHook> allHooks = database.listFilteringHooks(source.getUri());
-        for (FilteringHook hook : allHooks)
+        filters.clear();
+        for (FilteringHook hook : database.listFilteringHooks(source.getUri()))
         {
             if (StrUtil.equalsIgnoreCase(hook.getSubjectType(), "section"))
-            {
-                hooks.add(hook);
-                targetStreams.add(hook.getSubjectPid());
-            }
+                filters.add(hook);
         }
-        for (Integer pid : targetStreams)
+        for (int pid : filters.streams())
             demux.registerSectionChannel(pid, this::processSection);
 
-        String limit = database.getPreference("filtering.section.limit-per-stream", "1000");
-        limitPerStream = Math.max(Math.min(Integer.parseInt(limit), 1000), 0);
+        if (!filters.isEmpty())
+            log.info("私有段过滤器：{} 个PID", filters.streams().length);
     }
 
     private void processSection(TSDemuxPayload payload)
     {
+        Encoding encoding = payload.getEncoding();
         if (payload.getType() != TSDemuxPayload.Type.SECTION ||
-            !sec.isAttachable(payload.getEncoding()))
+            !sec.isAttachable(encoding))
             return;
 
-        sec.attach(payload.getEncoding());
-        int pid = payload.getStreamPID();
-        int tableId = sec.getTableID();
-
-        boolean filterable = false;
-        for (FilteringHook hook : hooks)
-        {
-            if ((hook.getSubjectPid() == pid) &&
-                (hook.getSubjectTableId() == tableId || hook.getSubjectTableId() == -1))
-            {
-                filterable = true;
-                break;
-            }
-        }
-
-        if (filterable)
-        {
-            if (secCounts[pid] >= limitPerStream)
-            {
-                databaseService.removePrivateSections("UserPrivate", pid, limitPerStream / 2);
-                secCounts[pid] = 0;
-                log.info("过滤记录达到上限，丢弃位于流 {} 上的私有分段记录：{} 条", pid, limitPerStream / 2);
-            }
-
-            databaseService.addPrivateSection("UserPrivate",
-                                              payload.getStreamPID(),
-                                              payload.getFinishPacketCounter(),
-                                              payload.getEncoding().getBytes());
-            secCounts[pid] += 1;
-        }
+        // 过滤得到的分段保存在定长的环形缓冲区中，超出上限时由存储自行淘汰最早的分段。
+        if (filters.matches(payload.getStreamPID(), encoding))
+            databaseService.addFilteredSection(payload.getStreamPID(),
+                                               payload.getFinishPacketCounter(),
+                                               encoding.getBytes());
     }
 }
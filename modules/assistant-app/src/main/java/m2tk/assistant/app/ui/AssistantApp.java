@@ -23,7 +23,9 @@ import com.google.common.eventbus.EventBus;
 import lombok.extern.slf4j.Slf4j;
 import m2tk.assistant.api.M2TKDatabase;
 import m2tk.assistant.app.kernel.KernelEntry;
+import m2tk.assistant.app.kernel.metrics.PerformanceMetrics;
 import m2tk.assistant.app.kernel.service.MPEGTSPlayer;
+import m2tk.assistant.app.kernel.service.SourceScope;
 import m2tk.assistant.app.kernel.service.StreamAnalyzer;
 import org.jdesktop.application.FrameView;
 import org.jdesktop.application.SingleFrameApplication;
@@ -57,6 +59,7 @@ public final class AssistantApp extends SingleFrameApplication
     private volatile StreamAnalyzer analyzer;
     private volatile MPEGTSPlayer player;
     private volatile EventBus eventBus;
+    private volatile PerformanceMetrics metrics;
     private String[] cmdArgs;
 
     @Override
@@ -102,7 +105,9 @@ public final class AssistantApp extends SingleFrameApplication
                 analyzer = context.getBean(StreamAnalyzer.class);
                 player = context.getBean(MPEGTSPlayer.class);
                 eventBus = context.getBean(EventBus.class);
-                database = context.getBean(M2TKDatabase.class);
+                metrics = context.getBean(PerformanceMetrics.class);
+                // 界面读取的数据始终限定在当前分析会话的数据源内。
+                database = SourceScope.bind(context.getBean(M2TKDatabase.class), analyzer::getCurrentSourceId);
                 controller.ready();
                 log.info("内核已就绪");
             }
@@ -135,6 +140,11 @@ public final class AssistantApp extends SingleFrameApplication
         return analyzer;
     }
 
+    public PerformanceMetrics getPerformanceMetrics()
+    {
+        return metrics;
+    }
+
     public EventBus getEventBus()
     {
         return eventBus;
@@ -26,11 +26,14 @@ import lombok.extern.slf4j.Slf4j;
 import m2tk.assistant.api.*;
 import m2tk.assistant.api.event.RefreshInfoViewEvent;
 import m2tk.assistant.api.event.ShowInfoViewEvent;
+import m2tk.assistant.api.event.SourceStateEvent;
 import m2tk.assistant.api.template.DescriptorDecoder;
 import m2tk.assistant.api.template.SectionDecoder;
 import m2tk.assistant.api.template.SelectorDecoder;
 import m2tk.assistant.api.template.TemplateReader;
 import m2tk.assistant.api.template.definition.M2TKTemplate;
+import m2tk.assistant.app.kernel.service.AnalysisSession;
+import m2tk.assistant.app.kernel.service.SessionArchive;
 import m2tk.assistant.app.kernel.service.StreamAnalyzer;
 import m2tk.assistant.app.ui.dialog.AboutDialog;
 import m2tk.assistant.app.ui.dialog.SourceHistoryDialog;
@@ -83,7 +86,11 @@ public class MainViewController
     private List<InfoView> infoViews;
     private List<InfoView> coreInfoViews;
     private List<InfoView> pluggedInfoViews;
-    private List<Tracer> tracers;
+    private List<Class<? extends Tracer>> tracerClasses;
+    private ExtensionFactory tracerFactory;
+    private JComboBox<AnalysisSession> sessionSelector;
+    private boolean updatingSessions;
+    private boolean refreshPaused;
     private LogsView logsView;
     private JTabbedPane tabbedPane;
     private Path lastOpenDirectory;
@@ -175,7 +182,9 @@ public class MainViewController
         pluginManager.loadPlugins();
         pluginManager.startPlugins();
 
-        tracers = new ArrayList<>();
+        // 每个分析会话都需要独立的分析器实例，因此只记录分析器类型，开始分析时再创建实例。
+        tracerClasses = new ArrayList<>();
+        tracerFactory = new DefaultExtensionFactory();
         infoViews = new ArrayList<>();
         coreInfoViews = new ArrayList<>();
         pluggedInfoViews = new ArrayList<>();
@@ -199,7 +208,7 @@ public class MainViewController
             }
             if (extension instanceof Tracer tracer)
             {
-                tracers.add(tracer);
+                tracerClasses.add(tracer.getClass());
             }
             if (extension instanceof InfoView view)
             {
@@ -223,8 +232,8 @@ public class MainViewController
             List<ProgramObserver> pluginProgramObservers = pluginManager.getExtensions(ProgramObserver.class, pluginId);
             programObservers.addAll(pluginProgramObservers);
 
-            List<Tracer> pluginTracers = pluginManager.getExtensions(Tracer.class, pluginId);
-            tracers.addAll(pluginTracers);
+            List<Class<? extends Tracer>> pluginTracers = pluginManager.getExtensionClasses(Tracer.class, pluginId);
+            tracerClasses.addAll(pluginTracers);
 
             List<InfoView> pluginViews = pluginManager.getExtensions(InfoView.class, pluginId);
             for (InfoView view : pluginViews)
@@ -256,6 +265,11 @@ public class MainViewController
                               .disabledIcon(getFontIcon(FluentUiRegularMZ.VIDEO_CLIP_20, 20, DISABLED))
                               .text("文件")
                               .get());
+        sourceMenu.add(builder.create(actionMap.get("openLocalFileSegmented"))
+                              .icon(getFontIcon(FluentUiRegularAL.GRID_20, 20, MS_ORANGE))
+                              .disabledIcon(getFontIcon(FluentUiRegularAL.GRID_20, 20, DISABLED))
+                              .text("文件（分段并行分析）")
+                              .get());
         sourceMenu.add(builder.create(actionMap.get("openMulticast"))
                               .icon(getFontIcon(FluentUiRegularAL.LIVE_20, 20, MS_GREEN))
                               .disabledIcon(getFontIcon(FluentUiRegularAL.LIVE_20, 20, DISABLED))
@@ -277,6 +291,21 @@ public class MainViewController
                            .disabledIcon(getFontIcon(FluentUiRegularAL.DISMISS_CIRCLE_20, 20, DISABLED))
                            .text("停止分析")
                            .get());
+        menuOps.add(builder.create(actionMap.get("closeSession"))
+                           .icon(getFontIcon(FluentUiRegularAL.DELETE_20, 20, SLACK_LIGHT_BLUE))
+                           .disabledIcon(getFontIcon(FluentUiRegularAL.DELETE_20, 20, DISABLED))
+                           .text("关闭当前会话")
+                           .get());
+        menuOps.add(builder.create(actionMap.get("openArchive"))
+                           .icon(getFontIcon(FluentUiRegularAL.ARCHIVE_20, 20, SLACK_LIGHT_BLUE))
+                           .disabledIcon(getFontIcon(FluentUiRegularAL.ARCHIVE_20, 20, DISABLED))
+                           .text("打开分析存档")
+                           .get());
+        menuOps.add(builder.create(actionMap.get("saveArchive"))
+                           .icon(getFontIcon(FluentUiRegularMZ.SAVE_20, 20, SLACK_LIGHT_BLUE))
+                           .disabledIcon(getFontIcon(FluentUiRegularMZ.SAVE_20, 20, DISABLED))
+                           .text("保存分析存档")
+                           .get());
         menuOps.add(builder.create(actionMap.get("manualRefreshing"))
                            .icon(getFontIcon(FluentUiRegularAL.ARROW_SYNC_20, 20, SLACK_LIGHT_BLUE))
                            .text("手动刷新")
@@ -400,9 +429,10 @@ public class MainViewController
                                public void actionPerformed(ActionEvent e)
                                {
                                    JToggleButton toggle = (JToggleButton) e.getSource();
-                                   if (toggle.isSelected())
+                                   refreshPaused = toggle.isSelected();
+                                   if (refreshPaused)
                                        timer.stop();
-                                   else if (analyzer.isRunning())
+                                   else if (analyzer.isAnyRunning())
                                        timer.start();
                                }
                            })
@@ -416,6 +446,33 @@ public class MainViewController
                            .tooltip("手动刷新")
                            .get());
         toolBar.addSeparator();
+        sessionSelector = new JComboBox<>();
+        sessionSelector.setToolTipText("选择当前显示的分析会话");
+        sessionSelector.setMaximumSize(new Dimension(320, 32));
+        sessionSelector.setRenderer(new DefaultListCellRenderer()
+        {
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+                                                          boolean isSelected, boolean cellHasFocus)
+            {
+                super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
+                if (value instanceof AnalysisSession session)
+                    setText(String.format("[%d] %s%s",
+                                          session.getSourceId(),
+                                          session.getSourceName(),
+                                          session.isArchived() ? "（存档）" :
+                                          session.isRunning() ? "" : "（已停止）"));
+                else
+                    setText("无分析会话");
+                return this;
+            }
+        });
+        sessionSelector.addActionListener(e -> {
+            if (!updatingSessions && sessionSelector.getSelectedItem() instanceof AnalysisSession session)
+                analyzer.switchSession(session.getSourceId());
+        });
+        toolBar.add(sessionSelector);
+        toolBar.addSeparator();
         toolBar.add(builder.create(actionMap.get("openConsole"))
                            .icon(consoleToolbarIcon)
                            .text(null)
@@ -458,12 +515,18 @@ public class MainViewController
     {
         initFileChooserCurrentDirectory();
 
-        timer = new Timer(TIMER_INTERVAL_MILLIS, e -> refreshInfoViews());
+        // 定时器作为刷新帧时钟：每帧最多刷新一次，各视图只在所关注的数据域有变化时才重新查询。
+        timer = new Timer(TIMER_INTERVAL_MILLIS, e -> refreshInfoViews(false));
 
         actionMap.get("openLocalFile").setEnabled(false);
+        actionMap.get("openLocalFileSegmented").setEnabled(false);
         actionMap.get("openMulticast").setEnabled(false);
         actionMap.get("reopenInput").setEnabled(false);
         actionMap.get("stopAnalyzer").setEnabled(false);
+        actionMap.get("closeSession").setEnabled(false);
+        actionMap.get("openArchive").setEnabled(false);
+        actionMap.get("saveArchive").setEnabled(false);
+        sessionSelector.setEnabled(false);
 
         ComponentUtil.setPreferSizeAndLocateToCenter(frameView.getFrame(), 0.5, 0.5);
     }
@@ -479,8 +542,10 @@ public class MainViewController
         bus.register(this);
 
         actionMap.get("openLocalFile").setEnabled(true);
+        actionMap.get("openLocalFileSegmented").setEnabled(true);
         actionMap.get("openMulticast").setEnabled(true);
         actionMap.get("openThirdPartyInputSource").setEnabled(true);
+        actionMap.get("openArchive").setEnabled(true);
 
         this.bus = bus;
         this.database = database;
@@ -570,7 +635,7 @@ public class MainViewController
             boolean started = false;
             try
             {
-                started = analyzer.start(input, tracers, this::onAnalyzerStopped);
+                started = analyzer.start(input, createTracers(), this::onAnalyzerStopped);
             } catch (Exception ex)
             {
                 log.error("启动本地文件分析时异常：{}", ex.getMessage());
@@ -585,12 +650,45 @@ public class MainViewController
             } else
             {
                 saveRecentFile(file);
-                actionMap.get("openLocalFile").setEnabled(false);
-                actionMap.get("openMulticast").setEnabled(false);
-                actionMap.get("openThirdPartyInputSource").setEnabled(false);
-                actionMap.get("reopenInput").setEnabled(false);
-                actionMap.get("stopAnalyzer").setEnabled(true);
-                timer.start();
+                updateSessionStates();
+            }
+        }
+    }
+
+    @Action
+    public void openLocalFileSegmented()
+    {
+        JFileChooser fileChooser = new JFileChooser();
+        fileChooser.setMultiSelectionEnabled(false);
+        fileChooser.setFileSelectionMode(JFileChooser.FILES_ONLY);
+        fileChooser.setCurrentDirectory(lastOpenDirectory.toFile());
+        fileChooser.setFileFilter(new FileNameExtensionFilter("码流文件（ts/m2ts/mpeg）", "ts", "m2ts", "mpeg"));
+
+        if (JFileChooser.APPROVE_OPTION == fileChooser.showOpenDialog(frameView.getFrame()))
+        {
+            File file = fileChooser.getSelectedFile();
+            String input = file.toURI().toString();
+
+            log.info("开始分段分析 {}", file);
+            boolean started = false;
+            try
+            {
+                started = analyzer.startSegmented(input, this::createTracers, this::onAnalyzerStopped);
+            } catch (Exception ex)
+            {
+                log.error("启动本地文件分段分析时异常：{}", ex.getMessage());
+            }
+
+            if (!started)
+            {
+                JOptionPane.showMessageDialog(frameView.getFrame(),
+                                              "无法启动分析器，详情请查看日志",
+                                              "程序异常",
+                                              JOptionPane.ERROR_MESSAGE);
+            } else
+            {
+                saveRecentFile(file);
+                updateSessionStates();
             }
         }
     }
@@ -616,7 +714,7 @@ public class MainViewController
         boolean started = false;
         try
         {
-            started = analyzer.start(input, tracers, this::onAnalyzerStopped);
+            started = analyzer.start(input, createTracers(), this::onAnalyzerStopped);
         } catch (Exception ex)
         {
             log.error("启动组播流分析时异常：{}", ex.getMessage());
@@ -630,12 +728,7 @@ public class MainViewController
                                           JOptionPane.ERROR_MESSAGE);
         } else
         {
-            actionMap.get("openLocalFile").setEnabled(false);
-            actionMap.get("openMulticast").setEnabled(false);
-            actionMap.get("openThirdPartyInputSource").setEnabled(false);
-            actionMap.get("reopenInput").setEnabled(false);
-            actionMap.get("stopAnalyzer").setEnabled(true);
-            timer.start();
+            updateSessionStates();
         }
     }
 
@@ -651,7 +744,7 @@ public class MainViewController
         boolean started = false;
         try
         {
-            started = analyzer.start(input, tracers, this::onAnalyzerStopped);
+            started = analyzer.start(input, createTracers(), this::onAnalyzerStopped);
         } catch (Exception ex)
         {
             log.error("启动外设源分析时异常：{}", ex.getMessage());
@@ -665,12 +758,7 @@ public class MainViewController
                                           JOptionPane.ERROR_MESSAGE);
         } else
         {
-            actionMap.get("openLocalFile").setEnabled(false);
-            actionMap.get("openMulticast").setEnabled(false);
-            actionMap.get("openThirdPartyInputSource").setEnabled(false);
-            actionMap.get("reopenInput").setEnabled(false);
-            actionMap.get("stopAnalyzer").setEnabled(true);
-            timer.start();
+            updateSessionStates();
         }
     }
 
@@ -690,7 +778,7 @@ public class MainViewController
             boolean started = false;
             try
             {
-                started = analyzer.start(source, tracers, this::onAnalyzerStopped);
+                started = analyzer.start(source, createTracers(), this::onAnalyzerStopped);
             } catch (Exception ex)
             {
                 log.error("重启分析时异常：{}", ex.getMessage());
@@ -704,12 +792,7 @@ public class MainViewController
                                               JOptionPane.ERROR_MESSAGE);
             } else
             {
-                actionMap.get("openLocalFile").setEnabled(false);
-                actionMap.get("openMulticast").setEnabled(false);
-                actionMap.get("openThirdPartyInputSource").setEnabled(false);
-                actionMap.get("reopenInput").setEnabled(false);
-                actionMap.get("stopAnalyzer").setEnabled(true);
-                timer.start();
+                updateSessionStates();
             }
         };
         Consumer<Throwable> failed = t -> log.error("exception: {}", t.getMessage(), t);
@@ -724,10 +807,93 @@ public class MainViewController
         analyzer.stop();
     }
 
+    @Action
+    public void closeSession()
+    {
+        AnalysisSession session = analyzer.getCurrentSession();
+        if (session == null)
+            return;
+
+        int option = JOptionPane.showConfirmDialog(frameView.getFrame(),
+                                                   "关闭会话将清除该数据源的分析数据，是否继续？",
+                                                   "请确认",
+                                                   JOptionPane.OK_CANCEL_OPTION);
+        if (option == JOptionPane.OK_OPTION)
+            analyzer.closeSession(session.getSourceId());
+    }
+
+    @Action
+    public void openArchive()
+    {
+        JFileChooser fileChooser = new JFileChooser();
+        fileChooser.setMultiSelectionEnabled(false);
+        fileChooser.setFileSelectionMode(JFileChooser.FILES_ONLY);
+        fileChooser.setCurrentDirectory(lastOpenDirectory.toFile());
+        fileChooser.setFileFilter(new FileNameExtensionFilter("分析存档（" + SessionArchive.FILE_EXTENSION + "）",
+                                                              SessionArchive.FILE_EXTENSION));
+        if (JFileChooser.APPROVE_OPTION != fileChooser.showOpenDialog(frameView.getFrame()))
+            return;
+
+        Path file = fileChooser.getSelectedFile().toPath();
+        Supplier<Boolean> query = () -> analyzer.openArchive(file);
+        Consumer<Boolean> consumer = opened ->
+        {
+            if (!opened)
+            {
+                JOptionPane.showMessageDialog(frameView.getFrame(),
+                                              "无法打开分析存档，详情请查看日志",
+                                              "程序异常",
+                                              JOptionPane.ERROR_MESSAGE);
+            } else
+            {
+                updateSessionStates();
+            }
+        };
+        Consumer<Throwable> failed = t -> log.error("打开分析存档时异常：{}", t.getMessage(), t);
+
+        AsyncQueryTask<Boolean> task = new AsyncQueryTask<>(frameView.getApplication(), query, consumer, failed);
+        task.execute();
+    }
+
+    @Action
+    public void saveArchive()
+    {
+        AnalysisSession session = analyzer.getCurrentSession();
+        if (session == null)
+            return;
+
+        JFileChooser fileChooser = new JFileChooser();
+        fileChooser.setMultiSelectionEnabled(false);
+        fileChooser.setFileSelectionMode(JFileChooser.FILES_ONLY);
+        fileChooser.setCurrentDirectory(lastOpenDirectory.toFile());
+        fileChooser.setFileFilter(new FileNameExtensionFilter("分析存档（" + SessionArchive.FILE_EXTENSION + "）",
+                                                              SessionArchive.FILE_EXTENSION));
+        if (JFileChooser.APPROVE_OPTION != fileChooser.showSaveDialog(frameView.getFrame()))
+            return;
+
+        File selected = fileChooser.getSelectedFile();
+        Path file = StrUtil.endWithIgnoreCase(selected.getName(), "." + SessionArchive.FILE_EXTENSION)
+                    ? selected.toPath()
+                    : Paths.get(selected.getPath() + "." + SessionArchive.FILE_EXTENSION);
+        Supplier<Boolean> query = () -> analyzer.saveArchive(session.getSourceId(), file);
+        Consumer<Boolean> consumer = saved ->
+        {
+            if (!saved)
+                JOptionPane.showMessageDialog(frameView.getFrame(),
+                                              "无法保存分析存档，详情请查看日志",
+                                              "程序异常",
+                                              JOptionPane.ERROR_MESSAGE);
+        };
+        Consumer<Throwable> failed = t -> log.error("保存分析存档时异常：{}", t.getMessage(), t);
+
+        AsyncQueryTask<Boolean> task = new AsyncQueryTask<>(frameView.getApplication(), query, consumer, failed);
+        task.execute();
+    }
+
     @Action
     public void manualRefreshing()
     {
-        bus.post(new RefreshInfoViewEvent());
+        bus.post(new RefreshInfoViewEvent(true));
     }
 
     @Action
@@ -863,14 +1029,56 @@ public class MainViewController
         if (status.isRunning() || willQuit)
             return;
 
+        // 按钮与刷新状态由 SourceStateEvent 统一更新
         JOptionPane.showMessageDialog(frameView.getFrame(), "分析过程结束");
+    }
+
+    @Subscribe
+    public void onSourceStateEvent(SourceStateEvent event)
+    {
+        if (willQuit)
+            return;
+
+        SwingUtilities.invokeLater(() -> {
+            updateSessionStates();
+            if (event.state() == SourceStateEvent.SWITCHED)
+                refreshInfoViews(true);
+        });
+    }
+
+    private List<Tracer> createTracers()
+    {
+        List<Tracer> tracers = new ArrayList<>(tracerClasses.size());
+        for (Class<? extends Tracer> clazz : tracerClasses)
+            tracers.add((Tracer) tracerFactory.create(clazz));
+        return tracers;
+    }
+
+    private void updateSessionStates()
+    {
+        List<AnalysisSession> sessions = analyzer.listSessions();
+        AnalysisSession current = analyzer.getCurrentSession();
+
+        updatingSessions = true;
+        try
+        {
+            sessionSelector.setModel(new DefaultComboBoxModel<>(sessions.toArray(new AnalysisSession[0])));
+            sessionSelector.setSelectedItem(current);
+            sessionSelector.setEnabled(!sessions.isEmpty());
+        } finally
+        {
+            updatingSessions = false;
+        }
 
-        actionMap.get("openLocalFile").setEnabled(true);
-        actionMap.get("openMulticast").setEnabled(true);
-        actionMap.get("openThirdPartyInputSource").setEnabled(true);
         actionMap.get("reopenInput").setEnabled(true);
-        actionMap.get("stopAnalyzer").setEnabled(false);
-        timer.stop();
+        actionMap.get("stopAnalyzer").setEnabled(current != null && current.isRunning());
+        actionMap.get("closeSession").setEnabled(current != null);
+        actionMap.get("saveArchive").setEnabled(current != null && !current.isRunning() && !current.isArchived());
+
+        if (analyzer.isAnyRunning() && !refreshPaused)
+            timer.start();
+        else if (!analyzer.isAnyRunning())
+            timer.stop();
     }
 
     private boolean isCorrectMulticastAddress(String input)
@@ -924,10 +1132,10 @@ public class MainViewController
         }
     }
 
-    private void refreshInfoViews()
+    private void refreshInfoViews(boolean forced)
     {
         if (bus != null)
-            bus.post(new RefreshInfoViewEvent());
+            bus.post(new RefreshInfoViewEvent(forced));
     }
 
     private Icon getFontIcon(Ikon ikon, int size, Color color)
@@ -19,6 +19,7 @@ import lombok.extern.slf4j.Slf4j;
 import m2tk.assistant.api.domain.PESPacket;
 import m2tk.assistant.api.domain.PrivateSection;
 import m2tk.assistant.api.domain.TransportPacket;
+import m2tk.assistant.api.template.LazySyntaxTreeNode;
 import m2tk.assistant.api.template.RichTreeNodeSyntaxPresenter;
 import m2tk.assistant.api.template.RichTreeNodeSyntaxPresenter.NodeContext;
 import m2tk.assistant.api.template.SectionDecoder;
@@ -36,12 +37,19 @@ import org.kordamp.ikonli.fluentui.FluentUiFilledMZ;
 import org.kordamp.ikonli.swing.FontIcon;
 
 import javax.swing.*;
+import javax.swing.event.TreeExpansionEvent;
+import javax.swing.event.TreeExpansionListener;
+import javax.swing.event.TreeWillExpandListener;
 import javax.swing.tree.*;
 import java.awt.*;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+import java.util.stream.IntStream;
 
 @Slf4j
 public class DatagramPanel extends JPanel
@@ -72,9 +80,20 @@ public class DatagramPanel extends JPanel
     private SectionDecoder sectionDecoder;
     private SelectorDecoder selectorDecoder;
     private RichTreeNodeSyntaxPresenter presenter;
+    private Function<byte[], SyntaxField> sectionLoader;
+    private Function<byte[], SyntaxField> transportPacketLoader;
+    private Function<byte[], SyntaxField> pesPacketLoader;
     private Map<TreeNode, PrivateSection> nodeSectionMap;
     private Map<TreeNode, TransportPacket> nodeTSPacketMap;
     private Map<TreeNode, PESPacket> nodeESPacketMap;
+    private Map<String, SectionGroup> sectionGroupMap;
+    private NavigableMap<String, DefaultMutableTreeNode> privateGroups;
+    private DefaultMutableTreeNode privateDefaultGroup;
+    private NavigableMap<Integer, PacketGroup> tsPacketGroups;
+    private NavigableMap<Integer, PacketGroup> esPacketGroups;
+    private Map<Long, SectionSummary> summaryCache;
+
+    private static final int SUMMARY_CACHE_CAPACITY = 4096;
 
     private final DateTimeFormatter timeFormatter = DateTimeFormatter.ofPattern("yyyy/MM/dd HH:mm:ss");
 
@@ -91,9 +110,24 @@ public class DatagramPanel extends JPanel
         sectionDecoder = new SectionDecoder();
         selectorDecoder = new SelectorDecoder();
         presenter = new RichTreeNodeSyntaxPresenter();
+        sectionLoader = this::decodeSection;
+        transportPacketLoader = this::decodeTransportPacket;
+        pesPacketLoader = this::decodePESPacket;
         nodeSectionMap = new HashMap<>();
         nodeTSPacketMap = new HashMap<>();
         nodeESPacketMap = new HashMap<>();
+        sectionGroupMap = new LinkedHashMap<>();
+        privateGroups = new TreeMap<>();
+        tsPacketGroups = new TreeMap<>();
+        esPacketGroups = new TreeMap<>();
+        summaryCache = new LinkedHashMap<>(256, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, SectionSummary> eldest)
+            {
+                return size() > SUMMARY_CACHE_CAPACITY;
+            }
+        };
 
         JSplitPane splitPane = new JSplitPane(JSplitPane.HORIZONTAL_SPLIT);
         splitPane.setOneTouchExpandable(true);
@@ -127,6 +161,10 @@ public class DatagramPanel extends JPanel
             splitPane.setDividerLocation(0.45);
             dataPanel.setVisible(true);
 
+            // 未展开过的节点在选中时加载，以便在HexView中标出字段位置。
+            if (path.getLastPathComponent() instanceof LazySyntaxTreeNode lazyNode)
+                loadLazyNode(lazyNode);
+
             PrivateSection section = null;
             TransportPacket tsPacket = null;
             PESPacket pesPacket = null;
@@ -165,6 +203,36 @@ public class DatagramPanel extends JPanel
             }
         });
 
+        tree.addTreeWillExpandListener(new TreeWillExpandListener()
+        {
+            @Override
+            public void treeWillExpand(TreeExpansionEvent event)
+            {
+                if (event.getPath().getLastPathComponent() instanceof LazySyntaxTreeNode node)
+                    loadLazyNode(node);
+            }
+
+            @Override
+            public void treeWillCollapse(TreeExpansionEvent event)
+            {
+            }
+        });
+        tree.addTreeExpansionListener(new TreeExpansionListener()
+        {
+            @Override
+            public void treeExpanded(TreeExpansionEvent event)
+            {
+            }
+
+            @Override
+            public void treeCollapsed(TreeExpansionEvent event)
+            {
+                // 等折叠引起的选择变化处理完后再卸载。
+                TreePath path = event.getPath();
+                SwingUtilities.invokeLater(() -> unloadLazyNode(tree, path));
+            }
+        });
+
         ToolTipManager.sharedInstance().registerComponent(tree);
 
         splitPane.setLeftComponent(new JScrollPane(tree));
@@ -180,7 +248,7 @@ public class DatagramPanel extends JPanel
     private void updateHexView(NodeContext context, byte[] encoding, CodeArea codeArea, CodeArea fieldArea)
     {
         SyntaxField syntax = context.getSyntax();
-        if (syntax.getBitLength() == 0)
+        if (syntax == null || syntax.getBitLength() == 0)
         {
             codeArea.clearSelection();
         } else
@@ -253,9 +321,28 @@ public class DatagramPanel extends JPanel
         groupSI.add(groupTDT);
         groupSI.add(groupTOT);
 
+        sectionGroupMap.put("PAT", new SectionGroup(groupPAT, this::addPATSectionNodes));
+        sectionGroupMap.put("CAT", new SectionGroup(groupCAT, this::addCATSectionNodes));
+        sectionGroupMap.put("PMT", new SectionGroup(groupPMT, this::addPMTSectionNodes));
+        sectionGroupMap.put("TSDT", new SectionGroup(groupTSDT, this::addTSDTSectionNodes));
+        sectionGroupMap.put("BAT", new SectionGroup(groupBAT, this::addBATSectionNodes));
+        sectionGroupMap.put("NIT_Actual", new SectionGroup(groupNITActual, this::addNITActualSectionNodes));
+        sectionGroupMap.put("NIT_Other", new SectionGroup(groupNITOther, this::addNITOtherSectionNodes));
+        sectionGroupMap.put("SDT_Actual", new SectionGroup(groupSDTActual, this::addSDTActualSectionNodes));
+        sectionGroupMap.put("SDT_Other", new SectionGroup(groupSDTOther, this::addSDTOtherSectionNodes));
+        sectionGroupMap.put("EIT_PF_Actual", new SectionGroup(groupEITPFActual, this::addEITPFActualSectionNodes));
+        sectionGroupMap.put("EIT_PF_Other", new SectionGroup(groupEITPFOther, this::addEITPFOtherSectionNodes));
+        sectionGroupMap.put("EIT_Schedule_Actual", new SectionGroup(groupEITScheduleActual, this::addEITScheduleActualSectionNodes));
+        sectionGroupMap.put("EIT_Schedule_Other", new SectionGroup(groupEITScheduleOther, this::addEITScheduleOtherSectionNodes));
+        sectionGroupMap.put("TDT", new SectionGroup(groupTDT, this::addTDTSectionNodes));
+        sectionGroupMap.put("TOT", new SectionGroup(groupTOT, this::addTOTSectionNodes));
+
         model.reload();
     }
 
+    /**
+     * 全量刷新：清空所有节点后按查询结果重建。
+     */
     public void update(Map<String, List<PrivateSection>> sectionGroups,
                        Map<Integer, List<TransportPacket>> transportPacketGroups,
                        Map<Integer, List<PESPacket>> pesPacketGroups)
@@ -263,45 +350,143 @@ public class DatagramPanel extends JPanel
         nodeSectionMap.clear();
         nodeTSPacketMap.clear();
         nodeESPacketMap.clear();
-        addPATSectionNodes(sectionGroups.getOrDefault("PAT", Collections.emptyList()));
-        addCATSectionNodes(sectionGroups.getOrDefault("CAT", Collections.emptyList()));
-        addPMTSectionNodes(sectionGroups.getOrDefault("PMT", Collections.emptyList()));
-        addTSDTSectionNodes(sectionGroups.getOrDefault("TSDT", Collections.emptyList()));
-        addBATSectionNodes(sectionGroups.getOrDefault("BAT", Collections.emptyList()));
-        addNITActualSectionNodes(sectionGroups.getOrDefault("NIT_Actual", Collections.emptyList()));
-        addNITOtherSectionNodes(sectionGroups.getOrDefault("NIT_Other", Collections.emptyList()));
-        addSDTActualSectionNodes(sectionGroups.getOrDefault("SDT_Actual", Collections.emptyList()));
-        addSDTOtherSectionNodes(sectionGroups.getOrDefault("SDT_Other", Collections.emptyList()));
-        addEITPFActualSectionNodes(sectionGroups.getOrDefault("EIT_PF_Actual", Collections.emptyList()));
-        addEITPFOtherSectionNodes(sectionGroups.getOrDefault("EIT_PF_Other", Collections.emptyList()));
-        addEITScheduleActualSectionNodes(sectionGroups.getOrDefault("EIT_Schedule_Actual", Collections.emptyList()));
-        addEITScheduleOtherSectionNodes(sectionGroups.getOrDefault("EIT_Schedule_Other", Collections.emptyList()));
-        addTDTSectionNodes(sectionGroups.getOrDefault("TDT", Collections.emptyList()));
-        addTOTSectionNodes(sectionGroups.getOrDefault("TOT", Collections.emptyList()));
+        for (SectionGroup group : sectionGroupMap.values())
+            group.node().removeAllChildren();
+        groupPrivate.removeAllChildren();
+        privateGroups.clear();
+        privateDefaultGroup = null;
+        groupTSPacket.removeAllChildren();
+        groupESPacket.removeAllChildren();
+        tsPacketGroups.clear();
+        esPacketGroups.clear();
+        model.reload();
+
+        for (Map.Entry<String, SectionGroup> entry : sectionGroupMap.entrySet())
+            appendSectionNodes(entry.getValue(), sectionGroups.getOrDefault(entry.getKey(), Collections.emptyList()));
         addUserPrivateSectionNodes(sectionGroups.getOrDefault("UserPrivate", Collections.emptyList()));
         addTransportPacketNodes(transportPacketGroups);
         addPESPacketNodes(pesPacketGroups);
-        model.reload();
     }
 
-    private void addPATSectionNodes(List<PrivateSection> sections)
+    /**
+     * 增量刷新：只解码并追加新增的分段，已展开的节点保持不变。
+     * @param appendedSectionGroups 新增的分段（按标签分组）
+     * @param reloadedSectionGroups 需要整组重建的分段（分组中有分段被删除时），其中的标签不会出现在新增分段中
+     * @param transportPacketGroups 最近捕获的TS包
+     * @param pesPacketGroups 最近捕获的PES包
+     */
+    public void append(Map<String, List<PrivateSection>> appendedSectionGroups,
+                       Map<String, List<PrivateSection>> reloadedSectionGroups,
+                       Map<Integer, List<TransportPacket>> transportPacketGroups,
+                       Map<Integer, List<PESPacket>> pesPacketGroups)
+    {
+        for (Map.Entry<String, List<PrivateSection>> entry : reloadedSectionGroups.entrySet())
+        {
+            clearSectionNodes(entry.getKey());
+            appendSectionNodes(entry.getKey(), entry.getValue());
+        }
+        for (Map.Entry<String, List<PrivateSection>> entry : appendedSectionGroups.entrySet())
+            appendSectionNodes(entry.getKey(), entry.getValue());
+
+        addTransportPacketNodes(transportPacketGroups);
+        addPESPacketNodes(pesPacketGroups);
+    }
+
+    private void clearSectionNodes(String tag)
     {
-        groupPAT.removeAllChildren();
+        nodeSectionMap.values().removeIf(section -> tag.equals(section.getTag()));
+
+        if (tag.equals("UserPrivate"))
+        {
+            groupPrivate.removeAllChildren();
+            privateGroups.clear();
+            privateDefaultGroup = null;
+            model.nodeStructureChanged(groupPrivate);
+            return;
+        }
+
+        SectionGroup group = sectionGroupMap.get(tag);
+        if (group != null)
+        {
+            group.node().removeAllChildren();
+            model.nodeStructureChanged(group.node());
+        }
+    }
 
+    private void appendSectionNodes(String tag, List<PrivateSection> sections)
+    {
+        if (tag.equals("UserPrivate"))
+        {
+            addUserPrivateSectionNodes(sections);
+            return;
+        }
+
+        // 其他插件的私有段（如应急广播）不在这里显示。
+        SectionGroup group = sectionGroupMap.get(tag);
+        if (group != null)
+            appendSectionNodes(group, sections);
+    }
+
+    private void appendSectionNodes(SectionGroup group, List<PrivateSection> sections)
+    {
+        DefaultMutableTreeNode node = group.node();
+        int start = node.getChildCount();
+        group.builder().accept(sections);
+        notifyNodesAppended(node, start);
+    }
+
+    private void notifyNodesAppended(DefaultMutableTreeNode parent, int start)
+    {
+        int end = parent.getChildCount();
+        if (end > start)
+            model.nodesWereInserted(parent, IntStream.range(start, end).toArray());
+        model.nodeChanged(parent);
+    }
+
+    /**
+     * 解码分段，供延迟节点展开时使用。不经过缓存，节点折叠卸载后语法树即可回收，再次展开时重新解码。
+     * 界面仍使用逐个解释字段定义的 {@link SectionDecoder#interpret}，解码计划暂不作为界面默认的解码方式。
+     */
+    private SyntaxField decodeSection(byte[] encoding)
+    {
+        return sectionDecoder.interpret(Encoding.wrap(encoding), 0, encoding.length);
+    }
+
+    /**
+     * 获取私有段在列表中显示所需的信息（是否可见、标签和分组）。带CRC的长格式分段按CRC缓存，
+     * 内容相同的重复分段不再重复解码；缓存只保留摘要，不持有语法树。短格式分段没有CRC，直接解码。
+     */
+    private SectionSummary summarizeSection(byte[] encoding)
+    {
+        if (encoding.length < 12 || (encoding[1] & 0x80) == 0)
+            return SectionSummary.of(encoding, decodeSection(encoding), presenter);
+
+        int n = encoding.length;
+        long checksum = ((encoding[n - 4] & 0xFFL) << 24) |
+                        ((encoding[n - 3] & 0xFFL) << 16) |
+                        ((encoding[n - 2] & 0xFFL) << 8) |
+                        (encoding[n - 1] & 0xFFL);
+        long key = ((long) n << 32) | checksum;
+
+        SectionSummary cached = summaryCache.get(key);
+        if (cached != null && Arrays.equals(cached.encoding(), encoding))
+            return cached;
+
+        SectionSummary summary = SectionSummary.of(encoding, decodeSection(encoding), presenter);
+        summaryCache.put(key, summary);
+        return summary;
+    }
+
+    private void addPATSectionNodes(List<PrivateSection> sections)
+    {
         for (PrivateSection section : sections)
         {
             Encoding encoding = Encoding.wrap(section.getEncoding());
-            SyntaxField syntax = sectionDecoder.decode(encoding, 0, encoding.size());
-            DefaultMutableTreeNode node = (DefaultMutableTreeNode) presenter.render(syntax);
-            if (node == null)
-                continue;
-
-            NodeContext context = (NodeContext) node.getUserObject();
-            context.setLabel(String.format("[V:%02X, S:%02X, L:%02X] 传输流号：%d",
-                                           getFieldValue(syntax, "version_number"),
-                                           getFieldValue(syntax, "section_number"),
-                                           getFieldValue(syntax, "last_section_number"),
-                                           getFieldValue(syntax, "transport_stream_id")));
+            LazySyntaxTreeNode node = createSectionNode(section, String.format("[V:%02X, S:%02X, L:%02X] 传输流号：%d",
+                                                                               (encoding.readUINT8(5) >> 1) & 0x1F,
+                                                                               encoding.readUINT8(6),
+                                                                               encoding.readUINT8(7),
+                                                                               encoding.readUINT16(3)));
             groupPAT.add(node);
             nodeSectionMap.put(node, section);
         }
@@ -311,21 +496,13 @@ public class DatagramPanel extends JPanel
 
     private void addCATSectionNodes(List<PrivateSection> sections)
     {
-        groupCAT.removeAllChildren();
-
         for (PrivateSection section : sections)
         {
             Encoding encoding = Encoding.wrap(section.getEncoding());
-            SyntaxField syntax = sectionDecoder.decode(encoding, 0, encoding.size());
-            DefaultMutableTreeNode node = (DefaultMutableTreeNode) presenter.render(syntax);
-            if (node == null)
-                continue;
-
-            NodeContext context = (NodeContext) node.getUserObject();
-            context.setLabel(String.format("[V:%02X, S:%02X, L:%02X]",
-                                           getFieldValue(syntax, "version_number"),
-                                           getFieldValue(syntax, "section_number"),
-                                           getFieldValue(syntax, "last_section_number")));
+            LazySyntaxTreeNode node = createSectionNode(section, String.format("[V:%02X, S:%02X, L:%02X]",
+                                                                               (encoding.readUINT8(5) >> 1) & 0x1F,
+                                                                               encoding.readUINT8(6),
+                                                                               encoding.readUINT8(7)));
             groupCAT.add(node);
             nodeSectionMap.put(node, section);
         }
@@ -335,22 +512,14 @@ public class DatagramPanel extends JPanel
 
     private void addPMTSectionNodes(List<PrivateSection> sections)
     {
-        groupPMT.removeAllChildren();
-
         for (PrivateSection section : sections)
         {
             Encoding encoding = Encoding.wrap(section.getEncoding());
-            SyntaxField syntax = sectionDecoder.decode(encoding, 0, encoding.size());
-            DefaultMutableTreeNode node = (DefaultMutableTreeNode) presenter.render(syntax);
-            if (node == null)
-                continue;
-
-            NodeContext context = (NodeContext) node.getUserObject();
-            context.setLabel(String.format("[V:%02X, S:%02X, L:%02X] 节目号：%d",
-                                           getFieldValue(syntax, "version_number"),
-                                           getFieldValue(syntax, "section_number"),
-                                           getFieldValue(syntax, "last_section_number"),
-                                           getFieldValue(syntax, "program_number")));
+            LazySyntaxTreeNode node = createSectionNode(section, String.format("[V:%02X, S:%02X, L:%02X] 节目号：%d",
+                                                                               (encoding.readUINT8(5) >> 1) & 0x1F,
+                                                                               encoding.readUINT8(6),
+                                                                               encoding.readUINT8(7),
+                                                                               encoding.readUINT16(3)));
             groupPMT.add(node);
             nodeSectionMap.put(node, section);
         }
@@ -360,21 +529,13 @@ public class DatagramPanel extends JPanel
 
     private void addTSDTSectionNodes(List<PrivateSection> sections)
     {
-        groupTSDT.removeAllChildren();
-
         for (PrivateSection section : sections)
         {
             Encoding encoding = Encoding.wrap(section.getEncoding());
-            SyntaxField syntax = sectionDecoder.decode(encoding, 0, encoding.size());
-            DefaultMutableTreeNode node = (DefaultMutableTreeNode) presenter.render(syntax);
-            if (node == null)
-                continue;
-
-            NodeContext context = (NodeContext) node.getUserObject();
-            context.setLabel(String.format("[V:%02X, S:%02X, L:%02X]",
-                                           getFieldValue(syntax, "version_number"),
-                                           getFieldValue(syntax, "section_number"),
-                                           getFieldValue(syntax, "last_section_number")));
+            LazySyntaxTreeNode node = createSectionNode(section, String.format("[V:%02X, S:%02X, L:%02X]",
+                                                                               (encoding.readUINT8(5) >> 1) & 0x1F,
+                                                                               encoding.readUINT8(6),
+                                                                               encoding.readUINT8(7)));
             groupTSDT.add(node);
             nodeSectionMap.put(node, section);
         }
@@ -384,22 +545,14 @@ public class DatagramPanel extends JPanel
 
     private void addBATSectionNodes(List<PrivateSection> sections)
     {
-        groupBAT.removeAllChildren();
-
         for (PrivateSection section : sections)
         {
             Encoding encoding = Encoding.wrap(section.getEncoding());
-            SyntaxField syntax = sectionDecoder.decode(encoding, 0, encoding.size());
-            DefaultMutableTreeNode node = (DefaultMutableTreeNode) presenter.render(syntax);
-            if (node == null)
-                continue;
-
-            NodeContext context = (NodeContext) node.getUserObject();
-            context.setLabel(String.format("[V:%02X, S:%02X, L:%02X] 业务群号：%d",
-                                           getFieldValue(syntax, "version_number"),
-                                           getFieldValue(syntax, "section_number"),
-                                           getFieldValue(syntax, "last_section_number"),
-                                           getFieldValue(syntax, "bouquet_id")));
+            LazySyntaxTreeNode node = createSectionNode(section, String.format("[V:%02X, S:%02X, L:%02X] 业务群号：%d",
+                                                                               (encoding.readUINT8(5) >> 1) & 0x1F,
+                                                                               encoding.readUINT8(6),
+                                                                               encoding.readUINT8(7),
+                                                                               encoding.readUINT16(3)));
             groupBAT.add(node);
             nodeSectionMap.put(node, section);
         }
@@ -409,22 +562,14 @@ public class DatagramPanel extends JPanel
 
     private void addNITActualSectionNodes(List<PrivateSection> sections)
     {
-        groupNITActual.removeAllChildren();
-
         for (PrivateSection section : sections)
         {
             Encoding encoding = Encoding.wrap(section.getEncoding());
-            SyntaxField syntax = sectionDecoder.decode(encoding, 0, encoding.size());
-            DefaultMutableTreeNode node = (DefaultMutableTreeNode) presenter.render(syntax);
-            if (node == null)
-                continue;
-
-            NodeContext context = (NodeContext) node.getUserObject();
-            context.setLabel(String.format("[V:%02X, S:%02X, L:%02X] 网络号：%d",
-                                           getFieldValue(syntax, "version_number"),
-                                           getFieldValue(syntax, "section_number"),
-                                           getFieldValue(syntax, "last_section_number"),
-                                           getFieldValue(syntax, "network_id")));
+            LazySyntaxTreeNode node = createSectionNode(section, String.format("[V:%02X, S:%02X, L:%02X] 网络号：%d",
+                                                                               (encoding.readUINT8(5) >> 1) & 0x1F,
+                                                                               encoding.readUINT8(6),
+                                                                               encoding.readUINT8(7),
+                                                                               encoding.readUINT16(3)));
             groupNITActual.add(node);
             nodeSectionMap.put(node, section);
         }
@@ -434,22 +579,14 @@ public class DatagramPanel extends JPanel
 
     private void addNITOtherSectionNodes(List<PrivateSection> sections)
     {
-        groupNITOther.removeAllChildren();
-
         for (PrivateSection section : sections)
         {
             Encoding encoding = Encoding.wrap(section.getEncoding());
-            SyntaxField syntax = sectionDecoder.decode(encoding, 0, encoding.size());
-            DefaultMutableTreeNode node = (DefaultMutableTreeNode) presenter.render(syntax);
-            if (node == null)
-                continue;
-
-            NodeContext context = (NodeContext) node.getUserObject();
-            context.setLabel(String.format("[V:%02X, S:%02X, L:%02X] 网络号：%d",
-                                           getFieldValue(syntax, "version_number"),
-                                           getFieldValue(syntax, "section_number"),
-                                           getFieldValue(syntax, "last_section_number"),
-                                           getFieldValue(syntax, "network_id")));
+            LazySyntaxTreeNode node = createSectionNode(section, String.format("[V:%02X, S:%02X, L:%02X] 网络号：%d",
+                                                                               (encoding.readUINT8(5) >> 1) & 0x1F,
+                                                                               encoding.readUINT8(6),
+                                                                               encoding.readUINT8(7),
+                                                                               encoding.readUINT16(3)));
             groupNITOther.add(node);
             nodeSectionMap.put(node, section);
         }
@@ -459,23 +596,15 @@ public class DatagramPanel extends JPanel
 
     private void addSDTActualSectionNodes(List<PrivateSection> sections)
     {
-        groupSDTActual.removeAllChildren();
-
         for (PrivateSection section : sections)
         {
             Encoding encoding = Encoding.wrap(section.getEncoding());
-            SyntaxField syntax = sectionDecoder.decode(encoding, 0, encoding.size());
-            DefaultMutableTreeNode node = (DefaultMutableTreeNode) presenter.render(syntax);
-            if (node == null)
-                continue;
-
-            NodeContext context = (NodeContext) node.getUserObject();
-            context.setLabel(String.format("[V:%02X, S:%02X, L:%02X] 传输流号：%d，原始网络号：%d",
-                                           getFieldValue(syntax, "version_number"),
-                                           getFieldValue(syntax, "section_number"),
-                                           getFieldValue(syntax, "last_section_number"),
-                                           getFieldValue(syntax, "transport_stream_id"),
-                                           getFieldValue(syntax, "original_network_id")));
+            LazySyntaxTreeNode node = createSectionNode(section, String.format("[V:%02X, S:%02X, L:%02X] 传输流号：%d，原始网络号：%d",
+                                                                               (encoding.readUINT8(5) >> 1) & 0x1F,
+                                                                               encoding.readUINT8(6),
+                                                                               encoding.readUINT8(7),
+                                                                               encoding.readUINT16(3),
+                                                                               encoding.readUINT16(8)));
             groupSDTActual.add(node);
             nodeSectionMap.put(node, section);
         }
@@ -485,23 +614,15 @@ public class DatagramPanel extends JPanel
 
     private void addSDTOtherSectionNodes(List<PrivateSection> sections)
     {
-        groupSDTOther.removeAllChildren();
-
         for (PrivateSection section : sections)
         {
             Encoding encoding = Encoding.wrap(section.getEncoding());
-            SyntaxField syntax = sectionDecoder.decode(encoding, 0, encoding.size());
-            DefaultMutableTreeNode node = (DefaultMutableTreeNode) presenter.render(syntax);
-            if (node == null)
-                continue;
-
-            NodeContext context = (NodeContext) node.getUserObject();
-            context.setLabel(String.format("[V:%02X, S:%02X, L:%02X] 传输流号：%d，原始网络号：%d",
-                                           getFieldValue(syntax, "version_number"),
-                                           getFieldValue(syntax, "section_number"),
-                                           getFieldValue(syntax, "last_section_number"),
-                                           getFieldValue(syntax, "transport_stream_id"),
-                                           getFieldValue(syntax, "original_network_id")));
+            LazySyntaxTreeNode node = createSectionNode(section, String.format("[V:%02X, S:%02X, L:%02X] 传输流号：%d，原始网络号：%d",
+                                                                               (encoding.readUINT8(5) >> 1) & 0x1F,
+                                                                               encoding.readUINT8(6),
+                                                                               encoding.readUINT8(7),
+                                                                               encoding.readUINT16(3),
+                                                                               encoding.readUINT16(8)));
             groupSDTOther.add(node);
             nodeSectionMap.put(node, section);
         }
@@ -511,22 +632,14 @@ public class DatagramPanel extends JPanel
 
     private void addEITPFActualSectionNodes(List<PrivateSection> sections)
     {
-        groupEITPFActual.removeAllChildren();
-
         for (PrivateSection section : sections)
         {
             Encoding encoding = Encoding.wrap(section.getEncoding());
-            SyntaxField syntax = sectionDecoder.decode(encoding, 0, encoding.size());
-            DefaultMutableTreeNode node = (DefaultMutableTreeNode) presenter.render(syntax);
-            if (node == null)
-                continue;
-
-            NodeContext context = (NodeContext) node.getUserObject();
-            context.setLabel(String.format("[V:%02X, S:%02X, L:%02X] 业务号：%d",
-                                           getFieldValue(syntax, "version_number"),
-                                           getFieldValue(syntax, "section_number"),
-                                           getFieldValue(syntax, "last_section_number"),
-                                           getFieldValue(syntax, "service_id")));
+            LazySyntaxTreeNode node = createSectionNode(section, String.format("[V:%02X, S:%02X, L:%02X] 业务号：%d",
+                                                                               (encoding.readUINT8(5) >> 1) & 0x1F,
+                                                                               encoding.readUINT8(6),
+                                                                               encoding.readUINT8(7),
+                                                                               encoding.readUINT16(3)));
             groupEITPFActual.add(node);
             nodeSectionMap.put(node, section);
         }
@@ -536,22 +649,14 @@ public class DatagramPanel extends JPanel
 
     private void addEITPFOtherSectionNodes(List<PrivateSection> sections)
     {
-        groupEITPFOther.removeAllChildren();
-
         for (PrivateSection section : sections)
         {
             Encoding encoding = Encoding.wrap(section.getEncoding());
-            SyntaxField syntax = sectionDecoder.decode(encoding, 0, encoding.size());
-            DefaultMutableTreeNode node = (DefaultMutableTreeNode) presenter.render(syntax);
-            if (node == null)
-                continue;
-
-            NodeContext context = (NodeContext) node.getUserObject();
-            context.setLabel(String.format("[V:%02X, S:%02X, L:%02X] 业务号：%d",
-                                           getFieldValue(syntax, "version_number"),
-                                           getFieldValue(syntax, "section_number"),
-                                           getFieldValue(syntax, "last_section_number"),
-                                           getFieldValue(syntax, "service_id")));
+            LazySyntaxTreeNode node = createSectionNode(section, String.format("[V:%02X, S:%02X, L:%02X] 业务号：%d",
+                                                                               (encoding.readUINT8(5) >> 1) & 0x1F,
+                                                                               encoding.readUINT8(6),
+                                                                               encoding.readUINT8(7),
+                                                                               encoding.readUINT16(3)));
             groupEITPFOther.add(node);
             nodeSectionMap.put(node, section);
         }
@@ -561,22 +666,14 @@ public class DatagramPanel extends JPanel
 
     private void addEITScheduleActualSectionNodes(List<PrivateSection> sections)
     {
-        groupEITScheduleActual.removeAllChildren();
-
         for (PrivateSection section : sections)
         {
             Encoding encoding = Encoding.wrap(section.getEncoding());
-            SyntaxField syntax = sectionDecoder.decode(encoding, 0, encoding.size());
-            DefaultMutableTreeNode node = (DefaultMutableTreeNode) presenter.render(syntax);
-            if (node == null)
-                continue;
-
-            NodeContext context = (NodeContext) node.getUserObject();
-            context.setLabel(String.format("[V:%02X, S:%02X, L:%02X] 业务号：%d",
-                                           getFieldValue(syntax, "version_number"),
-                                           getFieldValue(syntax, "section_number"),
-                                           getFieldValue(syntax, "last_section_number"),
-                                           getFieldValue(syntax, "service_id")));
+            LazySyntaxTreeNode node = createSectionNode(section, String.format("[V:%02X, S:%02X, L:%02X] 业务号：%d",
+                                                                               (encoding.readUINT8(5) >> 1) & 0x1F,
+                                                                               encoding.readUINT8(6),
+                                                                               encoding.readUINT8(7),
+                                                                               encoding.readUINT16(3)));
             groupEITScheduleActual.add(node);
             nodeSectionMap.put(node, section);
         }
@@ -586,22 +683,14 @@ public class DatagramPanel extends JPanel
 
     private void addEITScheduleOtherSectionNodes(List<PrivateSection> sections)
     {
-        groupEITScheduleOther.removeAllChildren();
-
         for (PrivateSection section : sections)
         {
             Encoding encoding = Encoding.wrap(section.getEncoding());
-            SyntaxField syntax = sectionDecoder.decode(encoding, 0, encoding.size());
-            DefaultMutableTreeNode node = (DefaultMutableTreeNode) presenter.render(syntax);
-            if (node == null)
-                continue;
-
-            NodeContext context = (NodeContext) node.getUserObject();
-            context.setLabel(String.format("[V:%02X, S:%02X, L:%02X] 业务号：%d",
-                                           getFieldValue(syntax, "version_number"),
-                                           getFieldValue(syntax, "section_number"),
-                                           getFieldValue(syntax, "last_section_number"),
-                                           getFieldValue(syntax, "service_id")));
+            LazySyntaxTreeNode node = createSectionNode(section, String.format("[V:%02X, S:%02X, L:%02X] 业务号：%d",
+                                                                               (encoding.readUINT8(5) >> 1) & 0x1F,
+                                                                               encoding.readUINT8(6),
+                                                                               encoding.readUINT8(7),
+                                                                               encoding.readUINT16(3)));
             groupEITScheduleOther.add(node);
             nodeSectionMap.put(node, section);
         }
@@ -611,19 +700,11 @@ public class DatagramPanel extends JPanel
 
     private void addTDTSectionNodes(List<PrivateSection> sections)
     {
-        groupTDT.removeAllChildren();
-
         for (PrivateSection section : sections)
         {
             Encoding encoding = Encoding.wrap(section.getEncoding());
-            SyntaxField syntax = sectionDecoder.decode(encoding, 0, encoding.size());
-            DefaultMutableTreeNode node = (DefaultMutableTreeNode) presenter.render(syntax);
-            if (node == null)
-                continue;
-
-            NodeContext context = (NodeContext) node.getUserObject();
-            context.setLabel(String.format("时间：%s",
-                                           translateTimepoint2Local(getFieldValue(syntax, "UTC_time"))));
+            LazySyntaxTreeNode node = createSectionNode(section, String.format("时间：%s",
+                                                                               translateTimepoint2Local(readUTCTime(encoding))));
             groupTDT.add(node);
             nodeSectionMap.put(node, section);
         }
@@ -633,19 +714,11 @@ public class DatagramPanel extends JPanel
 
     private void addTOTSectionNodes(List<PrivateSection> sections)
     {
-        groupTOT.removeAllChildren();
-
         for (PrivateSection section : sections)
         {
             Encoding encoding = Encoding.wrap(section.getEncoding());
-            SyntaxField syntax = sectionDecoder.decode(encoding, 0, encoding.size());
-            DefaultMutableTreeNode node = (DefaultMutableTreeNode) presenter.render(syntax);
-            if (node == null)
-                continue;
-
-            NodeContext context = (NodeContext) node.getUserObject();
-            context.setLabel(String.format("时间：%s",
-                                           translateTimepoint2Local(getFieldValue(syntax, "UTC_time"))));
+            LazySyntaxTreeNode node = createSectionNode(section, String.format("时间：%s",
+                                                                               translateTimepoint2Local(readUTCTime(encoding))));
             groupTOT.add(node);
             nodeSectionMap.put(node, section);
         }
@@ -655,29 +728,25 @@ public class DatagramPanel extends JPanel
 
     private void addUserPrivateSectionNodes(List<PrivateSection> sections)
     {
-        Map<String, DefaultMutableTreeNode> namedGroups = new HashMap<>();
-        DefaultMutableTreeNode defaultGroup = new DefaultMutableTreeNode();
+        // 记录本次有追加的分组及其原有的子节点数，追加完成后统一通知树模型。
+        Map<DefaultMutableTreeNode, Integer> appendedGroups = new HashMap<>();
 
         for (PrivateSection section : sections)
         {
             try
             {
-                Encoding encoding = Encoding.wrap(section.getEncoding());
-                SyntaxField syntax = sectionDecoder.decode(encoding, 0, encoding.size());
-                DefaultMutableTreeNode node = (DefaultMutableTreeNode) presenter.render(syntax);
-                if (node == null)
+                // 私有段的名称和分组由模板决定，需要先解码（有缓存），子节点仍在展开时生成。
+                SectionSummary summary = summarizeSection(section.getEncoding());
+                if (!summary.visible())
                     continue;
 
-                NodeContext context = (NodeContext) node.getUserObject();
-                context.setLabel(String.format("[PS]%s @ 0x%X:%d",
-                                               node.getUserObject(),
-                                               section.getPid(),
-                                               section.getPosition()));
+                LazySyntaxTreeNode node = createSectionNode(section, String.format("[PS]%s @ 0x%X:%d",
+                                                                                   summary.label(),
+                                                                                   section.getPid(),
+                                                                                   section.getPosition()));
 
-                DefaultMutableTreeNode group = (syntax.getGroup() == null)
-                                               ? defaultGroup
-                                               : namedGroups.computeIfAbsent(syntax.getGroup(),
-                                                                             any -> new DefaultMutableTreeNode(syntax.getGroup()));
+                DefaultMutableTreeNode group = getPrivateGroup(summary.group());
+                appendedGroups.putIfAbsent(group, group.getChildCount());
                 group.add(node);
                 nodeSectionMap.put(node, section);
             } catch (Exception ex)
@@ -686,100 +755,228 @@ public class DatagramPanel extends JPanel
             }
         }
 
-        List<String> groupNames = new ArrayList<>(namedGroups.keySet());
-        groupNames.sort(Comparator.naturalOrder());
+        for (Map.Entry<String, DefaultMutableTreeNode> entry : privateGroups.entrySet())
+        {
+            DefaultMutableTreeNode groupNode = entry.getValue();
+            if (appendedGroups.containsKey(groupNode))
+            {
+                groupNode.setUserObject(String.format("%s（%d）", entry.getKey(), groupNode.getChildCount()));
+                notifyNodesAppended(groupNode, appendedGroups.get(groupNode));
+            }
+        }
 
-        groupPrivate.removeAllChildren();
-        for (String name : groupNames)
+        if (privateDefaultGroup != null && appendedGroups.containsKey(privateDefaultGroup))
         {
-            DefaultMutableTreeNode groupNode = namedGroups.get(name);
-            groupNode.setUserObject(String.format("%s（%d）", name, groupNode.getChildCount()));
-            groupPrivate.add(groupNode);
+            privateDefaultGroup.setUserObject(String.format("未命名分组（%d）", privateDefaultGroup.getChildCount()));
+            notifyNodesAppended(privateDefaultGroup, appendedGroups.get(privateDefaultGroup));
         }
+    }
 
-        if (!defaultGroup.isLeaf())
+    /**
+     * 获取私有段分组，不存在时创建。命名分组按名称排序，未命名分组排在最后。
+     */
+    private DefaultMutableTreeNode getPrivateGroup(String name)
+    {
+        DefaultMutableTreeNode group = (name == null) ? privateDefaultGroup : privateGroups.get(name);
+        if (group != null)
+            return group;
+
+        group = new DefaultMutableTreeNode(name);
+        int index;
+        if (name == null)
         {
-            defaultGroup.setUserObject(String.format("未命名分组（%d）", defaultGroup.getChildCount()));
-            groupPrivate.add(defaultGroup);
+            privateDefaultGroup = group;
+            index = groupPrivate.getChildCount();
+        } else
+        {
+            index = privateGroups.headMap(name).size();
+            privateGroups.put(name, group);
         }
+        groupPrivate.insert(group, index);
+        model.nodesWereInserted(groupPrivate, new int[]{index});
+        return group;
     }
 
     private void addTransportPacketNodes(Map<Integer, List<TransportPacket>> packetGroups)
     {
-        groupTSPacket.removeAllChildren();
+        mergePacketNodes(groupTSPacket, tsPacketGroups, nodeTSPacketMap, packetGroups,
+                         TransportPacket::getPosition, this::renderTransportPacket);
+    }
 
-        List<Integer> pids = new ArrayList<>(packetGroups.keySet());
-        pids.sort(Comparator.naturalOrder());
-        for (Integer pid : pids)
-        {
-            List<TransportPacket> packets = packetGroups.get(pid);
+    private void addPESPacketNodes(Map<Integer, List<PESPacket>> packetGroups)
+    {
+        mergePacketNodes(groupESPacket, esPacketGroups, nodeESPacketMap, packetGroups,
+                         PESPacket::getPosition, this::renderPESPacket);
+    }
 
-            DefaultMutableTreeNode groupNode = new DefaultMutableTreeNode(String.format("PID：0x%04X (%d)，数量：%,d", pid, pid, packets.size()));
-            groupTSPacket.add(groupNode);
+    private DefaultMutableTreeNode renderTransportPacket(TransportPacket packet)
+    {
+        return new LazySyntaxTreeNode(String.format("[TS]位置：%,d", packet.getPosition()),
+                                      packet.getEncoding(), transportPacketLoader, presenter);
+    }
 
-            for (TransportPacket packet : packets)
-            {
-                try
-                {
-                    Encoding encoding = Encoding.wrap(packet.getEncoding());
-                    SyntaxField syntax = selectorDecoder.decode("transport_packet", encoding, 0, encoding.size(), null);
-                    DefaultMutableTreeNode node = (DefaultMutableTreeNode) presenter.render(syntax);
-                    if (node == null)
-                        continue;
-
-                    NodeContext context = (NodeContext) node.getUserObject();
-                    context.setLabel(String.format("[TS]位置：%,d", packet.getPosition()));
-
-                    groupNode.add(node);
-                    nodeTSPacketMap.put(node, packet);
-                } catch (Exception ex)
-                {
-                    log.error("解码传输包时出现异常：{}", ex.getMessage());
-                }
-            }
+    private DefaultMutableTreeNode renderPESPacket(PESPacket packet)
+    {
+        return new LazySyntaxTreeNode(String.format("[ES]位置：%,d，长度：%,d", packet.getPosition(), packet.getEncoding().length),
+                                      packet.getEncoding(), pesPacketLoader, presenter);
+    }
+
+    private LazySyntaxTreeNode createSectionNode(PrivateSection section, String label)
+    {
+        return new LazySyntaxTreeNode(label, section.getEncoding(), sectionLoader, presenter);
+    }
+
+    private SyntaxField decodeTransportPacket(byte[] encoding)
+    {
+        return selectorDecoder.interpret("transport_packet", Encoding.wrap(encoding), 0, encoding.length, null);
+    }
+
+    private SyntaxField decodePESPacket(byte[] encoding)
+    {
+        return selectorDecoder.interpret("pes_packet", Encoding.wrap(encoding), 0, encoding.length, null);
+    }
+
+    /**
+     * 展开或选中未加载的节点时解码并生成子节点。
+     */
+    private void loadLazyNode(LazySyntaxTreeNode node)
+    {
+        try
+        {
+            if (node.load())
+                model.nodesWereInserted(node, IntStream.range(0, node.getChildCount()).toArray());
+        } catch (Exception ex)
+        {
+            log.error("解码数据时出现异常：{}", ex.getMessage());
         }
     }
 
-    private void addPESPacketNodes(Map<Integer, List<PESPacket>> packetGroups)
+    /**
+     * 折叠后卸载节点的子树，释放语法树。选中的节点（或其子节点被选中时）保留，以便继续显示数据。
+     */
+    private void unloadLazyNode(JTree tree, TreePath path)
     {
-        groupESPacket.removeAllChildren();
+        if (!(path.getLastPathComponent() instanceof LazySyntaxTreeNode node) || tree.isExpanded(path))
+            return;
+
+        TreePath selection = tree.getSelectionPath();
+        if (selection != null && path.isDescendant(selection))
+            return;
+
+        if (node.unload())
+            model.nodeStructureChanged(node);
+    }
+
+    /**
+     * 按包位置合并各PID分组（组内新包在前）：淘汰已移出捕获缓冲区的旧包，在分组顶部插入新捕获的包，
+     * 已显示的包不再重新解码。
+     */
+    private <P> void mergePacketNodes(DefaultMutableTreeNode parent,
+                                      NavigableMap<Integer, PacketGroup> pidGroups,
+                                      Map<TreeNode, P> nodePacketMap,
+                                      Map<Integer, List<P>> packetGroups,
+                                      ToLongFunction<P> positionOf,
+                                      Function<P, DefaultMutableTreeNode> renderer)
+    {
+        Iterator<Map.Entry<Integer, PacketGroup>> iterator = pidGroups.entrySet().iterator();
+        while (iterator.hasNext())
+        {
+            Map.Entry<Integer, PacketGroup> entry = iterator.next();
+            List<P> packets = packetGroups.get(entry.getKey());
+            if (packets != null && !packets.isEmpty())
+                continue;
 
-        List<Integer> pids = new ArrayList<>(packetGroups.keySet());
-        pids.sort(Comparator.naturalOrder());
-        for (Integer pid : pids)
+            DefaultMutableTreeNode groupNode = entry.getValue().node;
+            removePacketNodes(groupNode, nodePacketMap, 0);
+            int index = parent.getIndex(groupNode);
+            parent.remove(index);
+            iterator.remove();
+            model.nodesWereRemoved(parent, new int[]{index}, new Object[]{groupNode});
+        }
+
+        for (Map.Entry<Integer, List<P>> entry : packetGroups.entrySet())
         {
-            List<PESPacket> packets = packetGroups.get(pid);
+            int pid = entry.getKey();
+            List<P> packets = entry.getValue();
+            if (packets.isEmpty())
+                continue;
+
+            PacketGroup group = pidGroups.get(pid);
+            if (group == null)
+            {
+                group = new PacketGroup();
+                int index = pidGroups.headMap(pid).size();
+                pidGroups.put(pid, group);
+                parent.insert(group.node, index);
+                model.nodesWereInserted(parent, new int[]{index});
+            }
 
-            DefaultMutableTreeNode groupNode = new DefaultMutableTreeNode(String.format("PID：0x%04X (%d)，数量：%,d", pid, pid, packets.size()));
-            groupESPacket.add(groupNode);
+            DefaultMutableTreeNode groupNode = group.node;
+            long newest = positionOf.applyAsLong(packets.get(0));
+            long oldest = positionOf.applyAsLong(packets.get(packets.size() - 1));
+            if (newest < group.latestPosition)
+            {
+                // 位置回退说明重新开始了分析，整组重建。
+                removePacketNodes(groupNode, nodePacketMap, 0);
+                group.latestPosition = -1;
+            }
 
-            for (PESPacket packet : packets)
+            int keep = groupNode.getChildCount();
+            while (keep > 0)
             {
-                try
-                {
-                    Encoding encoding = Encoding.wrap(packet.getEncoding());
-                    SyntaxField syntax = selectorDecoder.decode("pes_packet", encoding, 0, encoding.size(), null);
-                    DefaultMutableTreeNode node = (DefaultMutableTreeNode) presenter.render(syntax);
-                    if (node == null)
-                        continue;
-
-                    NodeContext context = (NodeContext) node.getUserObject();
-                    context.setLabel(String.format("[ES]位置：%,d，长度：%,d", packet.getPosition(), encoding.size()));
-
-                    groupNode.add(node);
-                    nodeESPacketMap.put(node, packet);
-                } catch (Exception ex)
-                {
-                    log.error("解码PES包时出现异常：{}", ex.getMessage(), ex);
-                }
+                P packet = nodePacketMap.get(groupNode.getChildAt(keep - 1));
+                if (packet != null && positionOf.applyAsLong(packet) >= oldest)
+                    break;
+                keep--;
             }
+            removePacketNodes(groupNode, nodePacketMap, keep);
+
+            int inserted = 0;
+            for (P packet : packets)
+            {
+                if (positionOf.applyAsLong(packet) <= group.latestPosition)
+                    break;
+
+                DefaultMutableTreeNode node = renderer.apply(packet);
+                if (node == null)
+                    continue;
+
+                groupNode.insert(node, inserted++);
+                nodePacketMap.put(node, packet);
+            }
+            group.latestPosition = Math.max(group.latestPosition, newest);
+            if (inserted > 0)
+                model.nodesWereInserted(groupNode, IntStream.range(0, inserted).toArray());
+
+            groupNode.setUserObject(String.format("PID：0x%04X (%d)，数量：%,d", pid, pid, packets.size()));
+            model.nodeChanged(groupNode);
+        }
+    }
+
+    private <P> void removePacketNodes(DefaultMutableTreeNode groupNode, Map<TreeNode, P> nodePacketMap, int from)
+    {
+        int count = groupNode.getChildCount() - from;
+        if (count <= 0)
+            return;
+
+        int[] indices = new int[count];
+        Object[] children = new Object[count];
+        for (int i = 0; i < count; i++)
+        {
+            indices[i] = from + i;
+            children[i] = groupNode.getChildAt(from + i);
+            nodePacketMap.remove((TreeNode) children[i]);
         }
+        for (int i = count - 1; i >= 0; i--)
+            groupNode.remove(indices[i]);
+        model.nodesWereRemoved(groupNode, indices, children);
     }
 
-    private long getFieldValue(SyntaxField syntax, String name)
+    private long readUTCTime(Encoding encoding)
     {
-        SyntaxField field = syntax.findLastChild(name);
-        return (field != null) ? field.getValueAsLong() : 0;
+        return ((long) encoding.readUINT8(3) << 32) |
+               ((long) encoding.readUINT16(4) << 16) |
+               encoding.readUINT16(6);
     }
 
     private String translateTimepoint2Local(long timepoint)
@@ -788,6 +985,26 @@ public class DatagramPanel extends JPanel
                " [" + ZoneId.systemDefault().getId() + ']';
     }
 
+    private record SectionGroup(DefaultMutableTreeNode node, Consumer<List<PrivateSection>> builder)
+    {
+    }
+
+    private record SectionSummary(byte[] encoding, boolean visible, String label, String group)
+    {
+        static SectionSummary of(byte[] encoding, SyntaxField syntax, RichTreeNodeSyntaxPresenter presenter)
+        {
+            return syntax.isVisible()
+                   ? new SectionSummary(encoding, true, presenter.renderLabel(syntax), syntax.getGroup())
+                   : new SectionSummary(encoding, false, null, null);
+        }
+    }
+
+    private static class PacketGroup
+    {
+        private final DefaultMutableTreeNode node = new DefaultMutableTreeNode();
+        private long latestPosition = -1;
+    }
+
     class SectionDatagramTreeCellRenderer extends DefaultTreeCellRenderer
     {
         final Icon GROUP = FontIcon.of(FluentUiFilledAL.GROUP_24, 20, Color.decode("#89D3DF"));
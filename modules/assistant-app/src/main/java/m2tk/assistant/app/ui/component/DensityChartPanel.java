@@ -15,6 +15,7 @@
  */
 package m2tk.assistant.app.ui.component;
 
+import m2tk.assistant.api.domain.StreamDensityBucket;
 import m2tk.assistant.api.domain.StreamDensityBulk;
 import net.miginfocom.swing.MigLayout;
 import org.jfree.chart.ChartPanel;
@@ -23,12 +24,14 @@ import org.jfree.chart.axis.NumberAxis;
 import org.jfree.chart.plot.PlotOrientation;
 import org.jfree.chart.plot.XYPlot;
 import org.jfree.chart.renderer.xy.SamplingXYLineRenderer;
+import org.jfree.data.Range;
 import org.jfree.data.xy.XYSeries;
 import org.jfree.data.xy.XYSeriesCollection;
 
 import javax.swing.*;
 import java.awt.*;
 import java.util.List;
+import java.util.function.BiConsumer;
 
 public class DensityChartPanel extends JPanel
 {
@@ -36,14 +39,39 @@ public class DensityChartPanel extends JPanel
     private final Color background = UIManager.getColor("Panel.background");
     private final Font labelFont = UIManager.getFont("Label.font");
 
+    private JFreeChart overviewChart;
+    private NumberAxis overviewAxis;
+    private XYSeries maxSeries;
+    private XYSeries minSeries;
+    private XYSeries avgSeries;
+    private BiConsumer<Long, Long> rangeConsumer;
+    private boolean zoomed;
+    private long lastFrom;
+    private long lastTo;
+
     public DensityChartPanel()
     {
         setLayout(new MigLayout("", "[grow]"));
     }
 
-    public void update(List<StreamDensityBulk> bulks)
+    /**
+     * 设置概览图显示范围变化时的回调，参数为新的起止包位置。恢复完整显示时，范围为 [0, Long.MAX_VALUE]。
+     */
+    public void setOverviewRangeConsumer(BiConsumer<Long, Long> consumer)
+    {
+        this.rangeConsumer = consumer;
+    }
+
+    public void update(List<StreamDensityBucket> overview, List<StreamDensityBulk> bulks)
     {
         removeAll();
+        zoomed = false;
+        lastFrom = 0;
+        lastTo = Long.MAX_VALUE;
+
+        add(drawOverview(), "gaptop 20, growx, height 360, wrap");
+        updateOverview(overview);
+
         for (StreamDensityBulk bulk : bulks)
         {
             ChartPanel panel = drawBulk(bulk);
@@ -51,6 +79,119 @@ public class DensityChartPanel extends JPanel
         }
     }
 
+    /**
+     * 替换概览图的数据，保留当前的缩放状态。
+     */
+    public void updateOverview(List<StreamDensityBucket> overview)
+    {
+        if (overviewChart == null)
+            return;
+
+        // 批量替换数据时不逐点触发重绘，最后统一通知。
+        maxSeries.setNotify(false);
+        minSeries.setNotify(false);
+        avgSeries.setNotify(false);
+        maxSeries.clear();
+        minSeries.clear();
+        avgSeries.clear();
+        for (StreamDensityBucket bucket : overview)
+        {
+            double x = (bucket.getStartPosition() + bucket.getEndPosition()) / 2.0;
+            maxSeries.add(x, bucket.getMaxDensity(), false);
+            minSeries.add(x, bucket.getMinDensity(), false);
+            avgSeries.add(x, bucket.getAvgDensity(), false);
+        }
+        maxSeries.setNotify(true);
+        minSeries.setNotify(true);
+        avgSeries.setNotify(true);
+
+        if (overview.isEmpty())
+            return;
+
+        StreamDensityBucket first = overview.get(0);
+        StreamDensityBucket last = overview.get(overview.size() - 1);
+        overviewChart.setTitle(String.format("传输包间隔概览，位置范围：%,d - %,d，每点间隔数：%,d",
+                                             first.getStartPosition(), last.getEndPosition(), first.getCount()));
+        overviewChart.getTitle().setPaint(foreground);
+        overviewChart.getTitle().setFont(labelFont);
+    }
+
+    private ChartPanel drawOverview()
+    {
+        maxSeries = new XYSeries("最大间隔");
+        minSeries = new XYSeries("最小间隔");
+        avgSeries = new XYSeries("平均间隔");
+
+        XYSeriesCollection collection = new XYSeriesCollection();
+        collection.addSeries(maxSeries);
+        collection.addSeries(minSeries);
+        collection.addSeries(avgSeries);
+
+        SamplingXYLineRenderer renderer = new SamplingXYLineRenderer();
+        renderer.setSeriesPaint(0, Color.decode("#7FBA00"));
+        renderer.setSeriesPaint(1, Color.decode("#00A4EF"));
+        renderer.setSeriesPaint(2, Color.decode("#F25022"));
+        renderer.setDefaultItemLabelPaint(foreground);
+
+        overviewAxis = createAxis(null);
+        overviewAxis.addChangeListener(event -> onOverviewAxisChanged());
+        NumberAxis yAxis = createAxis("相邻包间距");
+
+        XYPlot plot = new XYPlot(collection, overviewAxis, yAxis, renderer);
+        plot.setOrientation(PlotOrientation.VERTICAL);
+        plot.setBackgroundPaint(background);
+        plot.setRangeGridlinesVisible(false);
+        plot.setDomainGridlinesVisible(false);
+
+        overviewChart = new JFreeChart("传输包间隔概览", labelFont, plot, true);
+        overviewChart.getTitle().setPaint(foreground);
+        overviewChart.getLegend().setItemPaint(foreground);
+        overviewChart.getLegend().setBackgroundPaint(background);
+        return new ChartPanel(overviewChart);
+    }
+
+    private void onOverviewAxisChanged()
+    {
+        if (rangeConsumer == null)
+            return;
+
+        long from;
+        long to;
+        if (overviewAxis.isAutoRange())
+        {
+            // 数据更新引起的自动调整不需要重新查询，只有从缩放状态恢复时才查询完整范围。
+            if (!zoomed)
+                return;
+            zoomed = false;
+            from = 0;
+            to = Long.MAX_VALUE;
+        } else
+        {
+            zoomed = true;
+            Range range = overviewAxis.getRange();
+            from = (long) Math.max(0, Math.floor(range.getLowerBound()));
+            to = (long) Math.ceil(range.getUpperBound());
+        }
+
+        if (from == lastFrom && to == lastTo)
+            return;
+        lastFrom = from;
+        lastTo = to;
+        rangeConsumer.accept(from, to);
+    }
+
+    private NumberAxis createAxis(String label)
+    {
+        NumberAxis axis = new NumberAxis(label);
+        axis.setAutoRange(true);
+        axis.setAutoRangeIncludesZero(false);
+        axis.setLabelFont(labelFont);
+        axis.setLabelPaint(foreground);
+        axis.setAxisLinePaint(foreground);
+        axis.setTickLabelPaint(foreground);
+        return axis;
+    }
+
     private ChartPanel drawBulk(StreamDensityBulk bulk)
     {
         XYSeries series0 = new XYSeries("传输密度");
@@ -72,20 +213,8 @@ public class DensityChartPanel extends JPanel
         renderer.setSeriesPaint(1, Color.decode("#F25022"));
         renderer.setDefaultItemLabelPaint(foreground);
 
-        NumberAxis xAxis = new NumberAxis();
-        xAxis.setAutoRange(true);
-        xAxis.setAutoRangeIncludesZero(false);
-        xAxis.setLabelFont(labelFont);
-        xAxis.setLabelPaint(foreground);
-        xAxis.setAxisLinePaint(foreground);
-        xAxis.setTickLabelPaint(foreground);
-        NumberAxis yAxis = new NumberAxis("相邻包间距");
-        yAxis.setAutoRange(true);
-        yAxis.setAutoRangeIncludesZero(false);
-        yAxis.setLabelFont(labelFont);
-        yAxis.setLabelPaint(foreground);
-        yAxis.setAxisLinePaint(foreground);
-        yAxis.setTickLabelPaint(foreground);
+        NumberAxis xAxis = createAxis(null);
+        NumberAxis yAxis = createAxis("相邻包间距");
 
         XYPlot plot = new XYPlot(collection, xAxis, yAxis, renderer);
         plot.setOrientation(PlotOrientation.VERTICAL);
@@ -16,6 +16,8 @@
 package m2tk.assistant.app.ui.component;
 
 import m2tk.assistant.api.domain.PCRCheck;
+import m2tk.assistant.api.domain.PCRStats;
+import m2tk.assistant.app.kernel.service.PCRStatsEngine;
 import m2tk.mpeg2.ProgramClockReference;
 import net.miginfocom.swing.MigLayout;
 import org.jfree.chart.ChartPanel;
@@ -309,7 +311,12 @@ public class PCRChartPanel extends JPanel
         return chart;
     }
 
-    public void update(List<PCRCheck> checks)
+    /**
+     * 更新图表
+     * @param checks 最近的检测记录（轨迹图）
+     * @param stats 统计结果，含全部检测记录的分布直方图；为空时按最近的检测记录统计分布
+     */
+    public void update(List<PCRCheck> checks, PCRStats stats)
     {
         pcrValues.removeAllSeries();
         bitrateValues.removeAllSeries();
@@ -327,8 +334,11 @@ public class PCRChartPanel extends JPanel
             XYSeries series5 = new XYSeries("PCR精度轨迹");
             XYSeries series6 = new XYSeries("PCR间隔轨迹");
 
-            int[] accuracyGroups = new int[11];
-            int[] intervalGroups = new int[11];
+            boolean histogramPresent = stats != null &&
+                                       stats.getAccuracyHistogram() != null &&
+                                       stats.getIntervalHistogram() != null;
+            long[] accuracyGroups = histogramPresent ? stats.getAccuracyHistogram() : new long[PCRStatsEngine.HISTOGRAM_BUCKETS];
+            long[] intervalGroups = histogramPresent ? stats.getIntervalHistogram() : new long[PCRStatsEngine.HISTOGRAM_BUCKETS];
 
             for (PCRCheck check : checks)
             {
@@ -337,13 +347,14 @@ public class PCRChartPanel extends JPanel
                 // bps -> Mbps
                 series2.add(check.getCurrPosition(), check.getBitrate() / 1000000.0d);
 
-                int groupA = getAccuracyGroup(check.getAccuracyNanos());
-                int groupI = getIntervalGroup(check.getIntervalNanos());
-                accuracyGroups[groupA] += 1;
-                intervalGroups[groupI] += 1;
+                if (!histogramPresent)
+                {
+                    accuracyGroups[PCRStatsEngine.accuracyBucket(check.getAccuracyNanos())] += 1;
+                    intervalGroups[PCRStatsEngine.intervalBucket(check.getIntervalNanos())] += 1;
+                }
             }
 
-            for (int i = 0; i < 11; i++)
+            for (int i = 0; i < PCRStatsEngine.HISTOGRAM_BUCKETS; i++)
             {
                 // 加0.5是为了把柱图画在分格的中间。一个格是1.0个单位（0.5就是中间值）
                 series3.add(i + 0.5, accuracyGroups[i]);
@@ -365,54 +376,4 @@ public class PCRChartPanel extends JPanel
             intervalValues2.addSeries(series6);
         }
     }
-
-    private int getAccuracyGroup(long accuracyNanos)
-    {
-        if (accuracyNanos <= -800)
-            return 0;
-        if (accuracyNanos <= -500)
-            return 1;
-        if (accuracyNanos <= -300)
-            return 2;
-        if (accuracyNanos <= -150)
-            return 3;
-        if (accuracyNanos <= -50)
-            return 4;
-        if (accuracyNanos <= 50)
-            return 5;
-        if (accuracyNanos <= 150)
-            return 6;
-        if (accuracyNanos <= 300)
-            return 7;
-        if (accuracyNanos <= 500)
-            return 8;
-        if (accuracyNanos <= 800)
-            return 9;
-        return 10;
-    }
-
-    private int getIntervalGroup(long intervalNanos)
-    {
-        if (intervalNanos <= 8000000)
-            return 0;
-        if (intervalNanos <= 16000000)
-            return 1;
-        if (intervalNanos <= 24000000)
-            return 2;
-        if (intervalNanos <= 32000000)
-            return 3;
-        if (intervalNanos <= 40000000)
-            return 4;
-        if (intervalNanos <= 48000000)
-            return 5;
-        if (intervalNanos <= 56000000)
-            return 6;
-        if (intervalNanos <= 64000000)
-            return 7;
-        if (intervalNanos <= 72000000)
-            return 8;
-        if (intervalNanos <= 80000000)
-            return 9;
-        return 10;
-    }
 }
@@ -0,0 +1,131 @@
+/*
+ *  Copyright (c) M2TK Project. All rights reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package m2tk.assistant.app.ui.component;
+
+import m2tk.assistant.app.kernel.metrics.SessionMetrics;
+import net.miginfocom.swing.MigLayout;
+import org.jfree.chart.ChartPanel;
+import org.jfree.chart.JFreeChart;
+import org.jfree.chart.axis.NumberAxis;
+import org.jfree.chart.plot.PlotOrientation;
+import org.jfree.chart.plot.XYPlot;
+import org.jfree.chart.renderer.xy.XYLineAndShapeRenderer;
+import org.jfree.data.xy.XYSeries;
+import org.jfree.data.xy.XYSeriesCollection;
+
+import javax.swing.*;
+import java.awt.*;
+import java.util.List;
+import java.util.function.ToDoubleFunction;
+
+public class PerformanceChartPanel extends JPanel
+{
+    private final Color foreground = UIManager.getColor("Label.foreground");
+    private final Color background = UIManager.getColor("Panel.background");
+    private final Font labelFont = UIManager.getFont("Label.font");
+
+    private XYSeries packetRates;
+    private XYSeries sectionRates;
+    private XYSeries queueFills;
+    private XYSeries inputFills;
+    private XYSeries allocationRates;
+    private XYSeries gcTimeRates;
+
+    public PerformanceChartPanel()
+    {
+        initUI();
+    }
+
+    private void initUI()
+    {
+        packetRates = new XYSeries("传输包");
+        sectionRates = new XYSeries("分段");
+        queueFills = new XYSeries("流水线队列");
+        inputFills = new XYSeries("组播输入缓冲");
+        allocationRates = new XYSeries("内存分配");
+        gcTimeRates = new XYSeries("GC耗时");
+
+        setLayout(new MigLayout("fill", "[grow][grow]", "[grow][grow]"));
+        add(new ChartPanel(createChart("传输包速率", "包/秒", packetRates, Color.decode("#00A4EF"))), "grow");
+        add(new ChartPanel(createChart("分段速率", "段/秒", sectionRates, Color.decode("#7FBA00"))), "grow, wrap");
+        add(new ChartPanel(createChart("队列占用", "%", queueFills, Color.decode("#FFB900"), inputFills)), "grow");
+        add(new ChartPanel(createChart("内存分配与GC", "MB/秒 | 毫秒/秒", allocationRates, Color.decode("#F25022"), gcTimeRates)), "grow");
+    }
+
+    public void update(List<SessionMetrics.Sample> samples)
+    {
+        long now = samples.isEmpty() ? 0 : samples.get(samples.size() - 1).time();
+        fill(packetRates, samples, now, SessionMetrics.Sample::packetRate);
+        fill(sectionRates, samples, now, SessionMetrics.Sample::sectionRate);
+        fill(queueFills, samples, now, SessionMetrics.Sample::queueFill);
+        fill(inputFills, samples, now, SessionMetrics.Sample::inputFill);
+        fill(allocationRates, samples, now, SessionMetrics.Sample::allocationRate);
+        fill(gcTimeRates, samples, now, SessionMetrics.Sample::gcTimeRate);
+    }
+
+    private void fill(XYSeries series, List<SessionMetrics.Sample> samples, long now,
+                      ToDoubleFunction<SessionMetrics.Sample> value)
+    {
+        // 批量替换数据时不逐点触发重绘，最后统一通知。
+        series.setNotify(false);
+        series.clear();
+        for (SessionMetrics.Sample sample : samples)
+            series.add((sample.time() - now) / 1000.0, value.applyAsDouble(sample), false);
+        series.setNotify(true);
+    }
+
+    private JFreeChart createChart(String title, String unit, XYSeries series, Color color, XYSeries... others)
+    {
+        XYSeriesCollection dataset = new XYSeriesCollection(series);
+        for (XYSeries other : others)
+            dataset.addSeries(other);
+
+        XYLineAndShapeRenderer renderer = new XYLineAndShapeRenderer(true, false);
+        renderer.setSeriesPaint(0, color);
+        renderer.setSeriesPaint(1, Color.decode("#B4A0FF"));
+        renderer.setDefaultItemLabelPaint(foreground);
+
+        NumberAxis xAxis = new NumberAxis("时间（秒）");
+        xAxis.setAutoRange(true);
+        xAxis.setAutoRangeIncludesZero(false);
+        xAxis.setLabelFont(labelFont);
+        xAxis.setLabelPaint(foreground);
+        xAxis.setAxisLinePaint(foreground);
+        xAxis.setTickLabelPaint(foreground);
+        NumberAxis yAxis = new NumberAxis(unit);
+        yAxis.setAutoRange(true);
+        yAxis.setAutoRangeIncludesZero(true);
+        yAxis.setLabelFont(labelFont);
+        yAxis.setLabelPaint(foreground);
+        yAxis.setAxisLinePaint(foreground);
+        yAxis.setTickLabelPaint(foreground);
+
+        XYPlot plot = new XYPlot(dataset, xAxis, yAxis, renderer);
+        plot.setOrientation(PlotOrientation.VERTICAL);
+        plot.setBackgroundPaint(background);
+        plot.setRangeGridlinesVisible(false);
+        plot.setDomainGridlinesVisible(false);
+
+        JFreeChart chart = new JFreeChart(title, labelFont.deriveFont(16.0f), plot, others.length > 0);
+        chart.getTitle().setPaint(foreground);
+        if (chart.getLegend() != null)
+        {
+            chart.getLegend().setBackgroundPaint(background);
+            chart.getLegend().setItemPaint(foreground);
+        }
+        return chart;
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ *  Copyright (c) M2TK Project. All rights reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package m2tk.assistant.app.ui.model;
+
+import m2tk.assistant.api.domain.TR290StreamStats;
+
+import javax.swing.table.AbstractTableModel;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+
+public class TR290StreamStatsTableModel extends AbstractTableModel
+{
+    private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private static final String[] COLUMNS = {
+        "序号", "PID", "错误数", "首次位置", "最近位置", "最近时间"
+    };
+
+    private static final Class<?>[] COLUMN_CLASSES = {
+        Integer.class, String.class, String.class, String.class, String.class, String.class
+    };
+
+    private final List<TR290StreamStats> data = new ArrayList<>();
+
+    public void update(List<TR290StreamStats> stats)
+    {
+        data.clear();
+        data.addAll(stats);
+        fireTableDataChanged();
+    }
+
+    @Override
+    public int getRowCount()
+    {
+        return data.size();
+    }
+
+    @Override
+    public int getColumnCount()
+    {
+        return COLUMNS.length;
+    }
+
+    @Override
+    public String getColumnName(int column)
+    {
+        return COLUMNS[column];
+    }
+
+    @Override
+    public Class<?> getColumnClass(int columnIndex)
+    {
+        return COLUMN_CLASSES[columnIndex];
+    }
+
+    @Override
+    public Object getValueAt(int rowIndex, int columnIndex)
+    {
+        TR290StreamStats stats = data.get(rowIndex);
+        return switch (columnIndex)
+        {
+            case 0 -> rowIndex + 1;
+            case 1 -> String.format("%d (0x%04X)", stats.getStream(), stats.getStream());
+            case 2 -> String.format("%,d", stats.getCount());
+            case 3 -> String.format("%,d", stats.getFirstPosition());
+            case 4 -> String.format("%,d", stats.getLastPosition());
+            case 5 -> stats.getLastTimestamp()
+                           .atZoneSameInstant(ZoneId.systemDefault())
+                           .format(TIME_FORMATTER);
+            default -> null;
+        };
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ *  Copyright (c) M2TK Project. All rights reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package m2tk.assistant.app.ui.model;
+
+import m2tk.assistant.app.kernel.metrics.LatencyHistogram;
+import m2tk.assistant.app.kernel.metrics.TimerStats;
+
+import javax.swing.table.AbstractTableModel;
+import java.util.Collections;
+import java.util.List;
+
+public class TimerStatsTableModel extends AbstractTableModel
+{
+    private List<Row> data = Collections.emptyList();
+
+    private static final String[] COLUMNS = {
+            "类别", "名称", "调用次数", "频率", "耗时占比", "平均", "P50", "P99", "P99.9", "最大", "总耗时"
+    };
+
+    /**
+     * 计时统计的一次快照（耗时单位：纳秒）
+     */
+    public record Row(String category, String name, long count, double rate, double load,
+                      long mean, long p50, long p99, long p999, long max, long total)
+    {
+        public static Row of(TimerStats timer)
+        {
+            LatencyHistogram.Snapshot snapshot = timer.snapshot();
+            return new Row(timer.getCategory(), timer.getName(), snapshot.getCount(), timer.getRate(), timer.getLoad(),
+                           snapshot.getMeanNanos(),
+                           snapshot.getPercentileNanos(50),
+                           snapshot.getPercentileNanos(99),
+                           snapshot.getPercentileNanos(99.9),
+                           snapshot.getMaxNanos(),
+                           snapshot.getTotalNanos());
+        }
+    }
+
+    public void update(List<Row> rows)
+    {
+        data = rows;
+        fireTableDataChanged();
+    }
+
+    @Override
+    public int getRowCount()
+    {
+        return data.size();
+    }
+
+    @Override
+    public int getColumnCount()
+    {
+        return COLUMNS.length;
+    }
+
+    @Override
+    public String getColumnName(int column)
+    {
+        return COLUMNS[column];
+    }
+
+    @Override
+    public Object getValueAt(int rowIndex, int columnIndex)
+    {
+        Row row = data.get(rowIndex);
+        return switch (columnIndex)
+        {
+            case 0 -> row.category();
+            case 1 -> row.name();
+            case 2 -> String.format("%,d", row.count());
+            case 3 -> String.format("%,.0f /s", row.rate());
+            case 4 -> String.format("%.1f%%", row.load() * 100);
+            case 5 -> formatNanos(row.mean());
+            case 6 -> formatNanos(row.p50());
+            case 7 -> formatNanos(row.p99());
+            case 8 -> formatNanos(row.p999());
+            case 9 -> formatNanos(row.max());
+            case 10 -> String.format("%,.1f ms", row.total() / 1e6);
+            default -> null;
+        };
+    }
+
+    private static String formatNanos(long nanos)
+    {
+        if (nanos < 1000)
+            return nanos + " ns";
+        if (nanos < 1000000)
+            return String.format("%.1f µs", nanos / 1e3);
+        return String.format("%,.2f ms", nanos / 1e6);
+    }
+}
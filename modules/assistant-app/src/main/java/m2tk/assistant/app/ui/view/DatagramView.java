@@ -19,12 +19,15 @@ import cn.hutool.core.util.StrUtil;
 import com.google.common.eventbus.EventBus;
 import com.google.common.eventbus.Subscribe;
 import lombok.extern.slf4j.Slf4j;
+import m2tk.assistant.api.ChangeDomain;
+import m2tk.assistant.api.ChangeWatch;
 import m2tk.assistant.api.InfoView;
 import m2tk.assistant.api.M2TKDatabase;
 import m2tk.assistant.api.StreamObserver;
 import m2tk.assistant.api.domain.*;
 import m2tk.assistant.api.event.RefreshInfoViewEvent;
 import m2tk.assistant.api.event.ShowInfoViewEvent;
+import m2tk.assistant.api.event.SourceStateEvent;
 import m2tk.assistant.api.presets.StreamTypes;
 import m2tk.assistant.app.ui.component.DatagramPanel;
 import m2tk.assistant.app.ui.task.AsyncQueryTask;
@@ -39,8 +42,10 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ComponentAdapter;
 import java.awt.event.ComponentEvent;
+import java.util.*;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
 
@@ -52,13 +57,29 @@ public class DatagramView extends JPanel implements InfoView, StreamObserver
     private DatagramPanel datagramPanel;
     private EventBus bus;
     private M2TKDatabase database;
+    private final ChangeWatch changes = new ChangeWatch(ChangeDomain.DATAGRAM);
 
     private volatile long lastTimestamp;
     private final long MIN_QUERY_INTERVAL_MILLIS = 500;
+    private static final String USER_PRIVATE = "UserPrivate";
+
+    // 增量刷新状态：已加载分段的最大行号、已加载过滤私有段的最大编号，及各分组已加载的分段数。只在查询结果回调中修改，
+    // querying 保证同一时刻只有一个查询在执行，查询线程读取时总能看到上一次回调写入的值。
+    private final AtomicBoolean querying = new AtomicBoolean();
+    private final AtomicInteger sourceGeneration = new AtomicInteger();
+    private int loadedGeneration = -1;
+    private long sectionMark;
+    private long filteredMark;
+    private final Map<String, Integer> sectionCounts = new HashMap<>();
 
     private static class DatagramContext
     {
+        private int generation;
+        private boolean fullUpdate;
+        private long sectionMark;
+        private long filteredMark;
         private Map<String, List<PrivateSection>> sections;
+        private Map<String, List<PrivateSection>> reloadedSections;
         private Map<Integer, List<TransportPacket>> transportPackets;
         private Map<Integer, List<PESPacket>> pesPackets;
     }
@@ -82,7 +103,10 @@ public class DatagramView extends JPanel implements InfoView, StreamObserver
             public void componentShown(ComponentEvent e)
             {
                 if (database != null)
+                {
+                    changes.check(database);
                     queryDatagrams();
+                }
             }
         });
     }
@@ -159,27 +183,153 @@ public class DatagramView extends JPanel implements InfoView, StreamObserver
         long t1 = System.currentTimeMillis();
         if (t1 - lastTimestamp >= MIN_QUERY_INTERVAL_MILLIS && isShowing())
         {
+            if (!changes.check(database) && !event.forced())
+                return;
             queryDatagrams();
             lastTimestamp = System.currentTimeMillis();
         }
     }
 
+    @Subscribe
+    public void onSourceStateEvent(SourceStateEvent event)
+    {
+        // 切换或重新开始分析时，已加载的行号对新的数据源没有意义，下次查询全量刷新。
+        sourceGeneration.incrementAndGet();
+    }
+
     private void queryDatagrams()
     {
+        if (!querying.compareAndSet(false, true))
+        {
+            // 上一次查询尚未完成，本次的变化留到下一帧再查询。
+            changes.reset();
+            return;
+        }
+
         Supplier<DatagramContext> query = () -> {
             DatagramContext context = new DatagramContext();
-            context.sections = database.getPrivateSectionGroups();
+            context.generation = sourceGeneration.get();
+            context.fullUpdate = (context.generation != loadedGeneration);
+            if (context.fullUpdate)
+                querySections(context);
+            else
+                querySectionsIncrementally(context);
             context.transportPackets = database.getTransportPacketGroups();
             context.pesPackets = database.getPESPacketGroups();
             return context;
         };
-        Consumer<DatagramContext> consumer = context ->
-            datagramPanel.update(context.sections, context.transportPackets, context.pesPackets);
+        Consumer<DatagramContext> consumer = context -> {
+            try
+            {
+                if (context.fullUpdate)
+                {
+                    sectionCounts.clear();
+                    datagramPanel.update(context.sections, context.transportPackets, context.pesPackets);
+                } else
+                {
+                    datagramPanel.append(context.sections, context.reloadedSections,
+                                         context.transportPackets, context.pesPackets);
+                }
+                for (Map.Entry<String, List<PrivateSection>> entry : context.reloadedSections.entrySet())
+                    sectionCounts.put(entry.getKey(), entry.getValue().size());
+                for (Map.Entry<String, List<PrivateSection>> entry : context.sections.entrySet())
+                    sectionCounts.merge(entry.getKey(), entry.getValue().size(), Integer::sum);
+                sectionMark = context.sectionMark;
+                filteredMark = context.filteredMark;
+                loadedGeneration = context.generation;
+            } finally
+            {
+                querying.set(false);
+            }
+        };
+        Consumer<Throwable> failure = t -> {
+            log.warn("查询数据结构时出现异常：{}", t.getMessage());
+            changes.reset();
+            querying.set(false);
+        };
 
-        AsyncQueryTask<DatagramContext> task = new AsyncQueryTask<>(application, query, consumer);
+        AsyncQueryTask<DatagramContext> task = new AsyncQueryTask<>(application, query, consumer, failure);
         task.execute();
     }
 
+    private void querySections(DatagramContext context)
+    {
+        context.sections = new HashMap<>(database.getPrivateSectionGroups());
+        context.reloadedSections = Collections.emptyMap();
+        context.sectionMark = maxSectionId(context.sections, 0);
+
+        // 过滤私有段的编号与私有段表的行号无关，单独记录。
+        List<PrivateSection> filtered = database.getFilteredSectionsAfter(0);
+        context.filteredMark = lastFilteredId(filtered, 0);
+        if (!filtered.isEmpty())
+            context.sections.put(USER_PRIVATE, filtered);
+    }
+
+    private void querySectionsIncrementally(DatagramContext context)
+    {
+        context.sections = new HashMap<>(database.getPrivateSectionGroupsAfter(sectionMark));
+        context.sectionMark = maxSectionId(context.sections, sectionMark);
+
+        List<PrivateSection> filtered = database.getFilteredSectionsAfter(filteredMark);
+        context.filteredMark = lastFilteredId(filtered, filteredMark);
+        if (!filtered.isEmpty())
+            context.sections.put(USER_PRIVATE, filtered);
+
+        // 先取新增分段再统计行数：统计前新插入的分段只会使行数偏大，下次再取；
+        // 行数少于已加载的分段数说明有分段被删除（如私有段超限后淘汰旧分段），这些分组整组重新加载。
+        // 过滤私有段存满后每追加一个就淘汰一个，允许界面多显示一半，超出后再整组重新加载，避免每次刷新都重新加载。
+        Map<String, Integer> counts = new HashMap<>(database.countPrivateSectionGroups());
+        counts.put(USER_PRIVATE, database.countFilteredSections());
+        List<String> shrunkTags = new ArrayList<>();
+        for (Map.Entry<String, Integer> entry : sectionCounts.entrySet())
+        {
+            String tag = entry.getKey();
+            int loaded = entry.getValue() + context.sections.getOrDefault(tag, Collections.emptyList()).size();
+            int count = counts.getOrDefault(tag, 0);
+            if (tag.equals(USER_PRIVATE) ? count + count / 2 < loaded : count < loaded)
+                shrunkTags.add(tag);
+        }
+
+        context.reloadedSections = new HashMap<>();
+        if (shrunkTags.isEmpty())
+            return;
+
+        Map<String, List<PrivateSection>> reloaded = new HashMap<>();
+        String[] tableTags = shrunkTags.stream().filter(tag -> !tag.equals(USER_PRIVATE)).toArray(String[]::new);
+        if (tableTags.length > 0)
+            reloaded.putAll(database.getPrivateSectionGroups(tableTags));
+        if (shrunkTags.contains(USER_PRIVATE))
+            reloaded.put(USER_PRIVATE, database.getFilteredSectionsAfter(0));
+        for (String tag : shrunkTags)
+        {
+            // 只保留不超过本次行号上限的分段，之后插入的分段由下次增量查询获取，避免重复或遗漏。
+            long mark = tag.equals(USER_PRIVATE) ? context.filteredMark : context.sectionMark;
+            List<PrivateSection> sections = new ArrayList<>();
+            for (PrivateSection section : reloaded.getOrDefault(tag, Collections.emptyList()))
+            {
+                if (section.getId() <= mark)
+                    sections.add(section);
+            }
+            context.reloadedSections.put(tag, sections);
+            context.sections.remove(tag);
+        }
+    }
+
+    private long lastFilteredId(List<PrivateSection> sections, long mark)
+    {
+        return sections.isEmpty() ? mark : sections.get(sections.size() - 1).getId();
+    }
+
+    private long maxSectionId(Map<String, List<PrivateSection>> sectionGroups, long mark)
+    {
+        for (List<PrivateSection> sections : sectionGroups.values())
+        {
+            for (PrivateSection section : sections)
+                mark = Math.max(mark, section.getId());
+        }
+        return mark;
+    }
+
     private void filterPrivateSection(ElementaryStream stream)
     {
         int pid = stream.getStreamPid();
@@ -191,13 +341,67 @@ public class DatagramView extends JPanel implements InfoView, StreamObserver
             return;
         }
 
-        log.info("添加私有段过滤器：'流{}'，类型：{}", stream.getStreamPid(), stream.getDescription());
+        String pattern = JOptionPane.showInputDialog(null,
+                                                     "过滤条件（十六进制，可留空）：匹配值/掩码/模式\n" +
+                                                     "依次对应 table_id、table_id_extension、version_number、section_number ……，最多16字节；\n" +
+                                                     "省略掩码时比较匹配值的全部位，省略模式时全部为正向匹配。",
+                                                     "过滤私有段",
+                                                     JOptionPane.PLAIN_MESSAGE);
+        if (pattern == null)
+            return;
+
+        byte[][] filter = parseFilterPattern(pattern);
+        if (filter == null)
+        {
+            String text = String.format("无效的过滤条件：%s", pattern);
+            JOptionPane.showMessageDialog(null, text);
+            log.info(text);
+            return;
+        }
+
+        log.info("添加私有段过滤器：'流{}'，类型：{}，条件：{}", stream.getStreamPid(), stream.getDescription(), pattern);
 
         FilteringHook hook = new FilteringHook();
         hook.setSourceUri(database.getCurrentStreamSource().getUri());
         hook.setSubjectType("section");
         hook.setSubjectPid(stream.getStreamPid());
         hook.setSubjectTableId(-1);
+        hook.setFilterMatch(filter[0]);
+        hook.setFilterMask(filter[1]);
+        hook.setFilterMode(filter[2]);
         database.addFilteringHook(hook);
     }
+
+    /**
+     * 解析"匹配值/掩码/模式"形式的过滤条件，各部分为不超过16字节的十六进制串。
+     * @return 匹配值、掩码、模式（留空的部分为 null），格式错误时返回 null
+     */
+    private byte[][] parseFilterPattern(String pattern)
+    {
+        String[] parts = StrUtil.splitToArray(StrUtil.cleanBlank(pattern), '/');
+        if (parts.length > 3)
+            return null;
+
+        byte[][] filter = new byte[3][];
+        for (int i = 0; i < parts.length; i++)
+        {
+            String part = parts[i];
+            if (part.isEmpty())
+                continue;
+            if (part.length() % 2 != 0 || part.length() > 32 || !part.matches("[0-9a-fA-F]+"))
+                return null;
+
+            filter[i] = new byte[part.length() / 2];
+            for (int j = 0; j < filter[i].length; j++)
+                filter[i][j] = (byte) Integer.parseInt(part.substring(j * 2, j * 2 + 2), 16);
+        }
+
+        // 没有给出掩码时，匹配值的每一位都参与比较。
+        if (filter[0] != null && filter[1] == null)
+        {
+            filter[1] = new byte[filter[0].length];
+            Arrays.fill(filter[1], (byte) 0xFF);
+        }
+        return filter;
+    }
 }
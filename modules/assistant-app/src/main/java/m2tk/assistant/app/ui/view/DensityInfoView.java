@@ -17,10 +17,13 @@ package m2tk.assistant.app.ui.view;
 
 import com.google.common.eventbus.EventBus;
 import com.google.common.eventbus.Subscribe;
+import m2tk.assistant.api.ChangeDomain;
+import m2tk.assistant.api.ChangeWatch;
 import m2tk.assistant.api.InfoView;
 import m2tk.assistant.api.M2TKDatabase;
 import m2tk.assistant.api.StreamObserver;
 import m2tk.assistant.api.domain.ElementaryStream;
+import m2tk.assistant.api.domain.StreamDensityBucket;
 import m2tk.assistant.api.domain.StreamDensityBulk;
 import m2tk.assistant.api.domain.StreamDensityStats;
 import m2tk.assistant.api.domain.StreamSource;
@@ -55,10 +58,13 @@ public class DensityInfoView extends JPanel implements InfoView, StreamObserver
     private JSplitPane splitPane;
 
     private M2TKDatabase database;
+    private final ChangeWatch changes = new ChangeWatch(ChangeDomain.DENSITY, ChangeDomain.STREAM);
     private EventBus bus;
 
     private volatile long lastTimestamp;
     private final long MIN_QUERY_INTERVAL_MILLIS = 500;
+    private static final int MAX_OVERVIEW_POINTS = 2000;
+    private volatile int selectedPid = -1;
 
     private static class DensityContext
     {
@@ -66,6 +72,12 @@ public class DensityInfoView extends JPanel implements InfoView, StreamObserver
         private int bitrate;
     }
 
+    private static class ChartContext
+    {
+        private List<StreamDensityBucket> overview;
+        private List<StreamDensityBulk> bulks;
+    }
+
     public DensityInfoView()
     {
         initUI();
@@ -76,12 +88,15 @@ public class DensityInfoView extends JPanel implements InfoView, StreamObserver
         densityStatsPanel = new DensityStatsPanel();
         densityStatsPanel.addDensityStatConsumer(stats -> {
             if (stats == null)
+            {
+                selectedPid = -1;
                 densityChartPanel.setVisible(false);
-            else
+            } else
                 queryDensityBulks(stats.getPid());
         });
 
         densityChartPanel = new DensityChartPanel();
+        densityChartPanel.setOverviewRangeConsumer(this::queryDensityOverview);
 
         splitPane = new JSplitPane(JSplitPane.VERTICAL_SPLIT);
         splitPane.setOneTouchExpandable(true);
@@ -100,7 +115,10 @@ public class DensityInfoView extends JPanel implements InfoView, StreamObserver
             public void componentShown(ComponentEvent e)
             {
                 if (database != null)
+                {
+                    changes.check(database);
                     queryDensityStats();
+                }
             }
         });
     }
@@ -171,6 +189,8 @@ public class DensityInfoView extends JPanel implements InfoView, StreamObserver
         long t1 = System.currentTimeMillis();
         if (t1 - lastTimestamp >= MIN_QUERY_INTERVAL_MILLIS && isShowing())
         {
+            if (!changes.check(database) && !event.forced())
+                return;
             queryDensityStats();
             lastTimestamp = System.currentTimeMillis();
         }
@@ -219,15 +239,39 @@ public class DensityInfoView extends JPanel implements InfoView, StreamObserver
 
     private void queryDensityBulks(int pid)
     {
-        Supplier<List<StreamDensityBulk>> query = () -> database.getRecentStreamDensityBulks(pid, 2);
-        Consumer<List<StreamDensityBulk>> consumer = checks ->
+        selectedPid = pid;
+        Supplier<ChartContext> query = () -> {
+            ChartContext context = new ChartContext();
+            context.overview = database.getStreamDensityOverview(pid, 0, Long.MAX_VALUE, MAX_OVERVIEW_POINTS);
+            context.bulks = database.getRecentStreamDensityBulks(pid, 2);
+            return context;
+        };
+        Consumer<ChartContext> consumer = context ->
         {
-            densityChartPanel.update(checks);
+            densityChartPanel.update(context.overview, context.bulks);
             densityChartPanel.setVisible(true);
             splitPane.setDividerLocation(0.3);
         };
 
-        AsyncQueryTask<List<StreamDensityBulk>> task = new AsyncQueryTask<>(application, query, consumer);
+        AsyncQueryTask<ChartContext> task = new AsyncQueryTask<>(application, query, consumer);
+        task.execute();
+    }
+
+    private void queryDensityOverview(long fromPosition, long toPosition)
+    {
+        int pid = selectedPid;
+        if (pid == -1)
+            return;
+
+        Supplier<List<StreamDensityBucket>> query = () -> database.getStreamDensityOverview(pid, fromPosition, toPosition, MAX_OVERVIEW_POINTS);
+        Consumer<List<StreamDensityBucket>> consumer = overview ->
+        {
+            // 查询期间切换了PID时丢弃结果
+            if (pid == selectedPid)
+                densityChartPanel.updateOverview(overview);
+        };
+
+        AsyncQueryTask<List<StreamDensityBucket>> task = new AsyncQueryTask<>(application, query, consumer);
         task.execute();
     }
 }
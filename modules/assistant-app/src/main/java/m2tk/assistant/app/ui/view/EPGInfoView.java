@@ -17,6 +17,8 @@ package m2tk.assistant.app.ui.view;
 
 import com.google.common.eventbus.EventBus;
 import com.google.common.eventbus.Subscribe;
+import m2tk.assistant.api.ChangeDomain;
+import m2tk.assistant.api.ChangeWatch;
 import m2tk.assistant.api.InfoView;
 import m2tk.assistant.api.M2TKDatabase;
 import m2tk.assistant.api.domain.SIEvent;
@@ -49,6 +51,7 @@ public class EPGInfoView extends JPanel implements InfoView
     private ServiceEventGuidePanel serviceEventGuidePanel;
     private EventBus bus;
     private M2TKDatabase database;
+    private final ChangeWatch changes = new ChangeWatch(ChangeDomain.SI, ChangeDomain.EPG);
 
     private volatile long lastTimestamp;
     private final long MIN_QUERY_INTERVAL_MILLIS = 500;
@@ -72,7 +75,10 @@ public class EPGInfoView extends JPanel implements InfoView
             public void componentShown(ComponentEvent e)
             {
                 if (database != null)
+                {
+                    changes.check(database);
                     queryServiceAndEvents();
+                }
             }
         });
     }
@@ -132,6 +138,8 @@ public class EPGInfoView extends JPanel implements InfoView
         long t1 = System.currentTimeMillis();
         if (t1 - lastTimestamp >= MIN_QUERY_INTERVAL_MILLIS && isShowing())
         {
+            if (!changes.check(database) && !event.forced())
+                return;
             queryServiceAndEvents();
             lastTimestamp = System.currentTimeMillis();
         }
@@ -17,6 +17,8 @@ package m2tk.assistant.app.ui.view;
 
 import com.google.common.eventbus.EventBus;
 import com.google.common.eventbus.Subscribe;
+import m2tk.assistant.api.ChangeDomain;
+import m2tk.assistant.api.ChangeWatch;
 import m2tk.assistant.api.InfoView;
 import m2tk.assistant.api.M2TKDatabase;
 import m2tk.assistant.api.domain.SIEvent;
@@ -47,6 +49,7 @@ public class NVODInfoView extends JPanel implements InfoView
     private NVODServiceEventGuidePanel serviceEventGuidePanel;
     private EventBus bus;
     private M2TKDatabase database;
+    private final ChangeWatch changes = new ChangeWatch(ChangeDomain.SI, ChangeDomain.EPG);
 
     public NVODInfoView()
     {
@@ -114,6 +117,8 @@ public class NVODInfoView extends JPanel implements InfoView
     @Subscribe
     public void onRefreshInfoViewEvent(RefreshInfoViewEvent event)
     {
+        if (!changes.check(database) && !event.forced())
+            return;
         queryServiceAndEvents();
     }
 
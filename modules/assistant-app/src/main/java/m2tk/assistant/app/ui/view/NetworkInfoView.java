@@ -19,6 +19,8 @@ import com.formdev.flatlaf.extras.FlatSVGIcon;
 import com.google.common.eventbus.EventBus;
 import com.google.common.eventbus.Subscribe;
 import lombok.extern.slf4j.Slf4j;
+import m2tk.assistant.api.ChangeDomain;
+import m2tk.assistant.api.ChangeWatch;
 import m2tk.assistant.api.InfoView;
 import m2tk.assistant.api.M2TKDatabase;
 import m2tk.assistant.api.domain.SIMultiplex;
@@ -54,6 +56,7 @@ public class NetworkInfoView extends JPanel implements InfoView
 
     private EventBus bus;
     private M2TKDatabase database;
+    private final ChangeWatch changes = new ChangeWatch(ChangeDomain.SI);
 
     private volatile long lastTimestamp;
     private final long MIN_QUERY_INTERVAL_MILLIS = 500;
@@ -93,7 +96,10 @@ public class NetworkInfoView extends JPanel implements InfoView
             public void componentShown(ComponentEvent e)
             {
                 if (database != null)
+                {
+                    changes.check(database);
                     queryNetworkSnapshot();
+                }
             }
         });
     }
@@ -157,6 +163,8 @@ public class NetworkInfoView extends JPanel implements InfoView
         long t1 = System.currentTimeMillis();
         if (t1 - lastTimestamp >= MIN_QUERY_INTERVAL_MILLIS && isShowing())
         {
+            if (!changes.check(database) && !event.forced())
+                return;
             queryNetworkSnapshot();
             lastTimestamp = System.currentTimeMillis();
         }
@@ -17,6 +17,8 @@ package m2tk.assistant.app.ui.view;
 
 import com.google.common.eventbus.EventBus;
 import com.google.common.eventbus.Subscribe;
+import m2tk.assistant.api.ChangeDomain;
+import m2tk.assistant.api.ChangeWatch;
 import m2tk.assistant.api.InfoView;
 import m2tk.assistant.api.M2TKDatabase;
 import m2tk.assistant.api.domain.PCRCheck;
@@ -51,6 +53,7 @@ public class PCRInfoView extends JPanel implements InfoView
 
     private EventBus bus;
     private M2TKDatabase database;
+    private final ChangeWatch changes = new ChangeWatch(ChangeDomain.PCR);
 
     private volatile long lastTimestamp;
     private final long MIN_QUERY_INTERVAL_MILLIS = 500;
@@ -89,7 +92,10 @@ public class PCRInfoView extends JPanel implements InfoView
             public void componentShown(ComponentEvent e)
             {
                 if (database != null)
+                {
+                    changes.check(database);
                     queryPCRStats();
+                }
             }
         });
     }
@@ -149,6 +155,8 @@ public class PCRInfoView extends JPanel implements InfoView
         long t1 = System.currentTimeMillis();
         if (t1 - lastTimestamp >= MIN_QUERY_INTERVAL_MILLIS && isShowing())
         {
+            if (!changes.check(database) && !event.forced())
+                return;
             queryPCRStats();
             lastTimestamp = System.currentTimeMillis();
         }
@@ -165,15 +173,27 @@ public class PCRInfoView extends JPanel implements InfoView
 
     private void queryPCRRecords(int stream)
     {
-        Supplier<List<PCRCheck>> query = () -> database.getRecentPCRChecks(stream, 1000);
-        Consumer<List<PCRCheck>> consumer = checks ->
+        Supplier<PCRRecords> query = () ->
         {
-            pcrChartPanel.update(checks);
+            PCRStats stats = database.listPCRStats()
+                                     .stream()
+                                     .filter(item -> item.getPid() == stream)
+                                     .findFirst()
+                                     .orElse(null);
+            return new PCRRecords(stats, database.getRecentPCRChecks(stream, 1000));
+        };
+        Consumer<PCRRecords> consumer = records ->
+        {
+            pcrChartPanel.update(records.checks(), records.stats());
             pcrChartPanel.setVisible(true);
             splitPane.setDividerLocation(0.25);
         };
 
-        AsyncQueryTask<List<PCRCheck>> task = new AsyncQueryTask<>(application, query, consumer);
+        AsyncQueryTask<PCRRecords> task = new AsyncQueryTask<>(application, query, consumer);
         task.execute();
     }
+
+    private record PCRRecords(PCRStats stats, List<PCRCheck> checks)
+    {
+    }
 }
@@ -0,0 +1,242 @@
+/*
+ *  Copyright (c) M2TK Project. All rights reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package m2tk.assistant.app.ui.view;
+
+import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
+import m2tk.assistant.api.InfoView;
+import m2tk.assistant.api.M2TKDatabase;
+import m2tk.assistant.api.event.RefreshInfoViewEvent;
+import m2tk.assistant.api.event.ShowInfoViewEvent;
+import m2tk.assistant.app.kernel.metrics.PerformanceMetrics;
+import m2tk.assistant.app.kernel.metrics.SessionMetrics;
+import m2tk.assistant.app.ui.AssistantApp;
+import m2tk.assistant.app.ui.component.PerformanceChartPanel;
+import m2tk.assistant.app.ui.model.TimerStatsTableModel;
+import m2tk.assistant.app.ui.task.AsyncQueryTask;
+import m2tk.assistant.app.ui.util.ComponentUtil;
+import net.miginfocom.swing.MigLayout;
+import org.jdesktop.application.Application;
+import org.kordamp.ikonli.fluentui.FluentUiRegularAL;
+import org.kordamp.ikonli.swing.FontIcon;
+import org.pf4j.Extension;
+
+import javax.swing.*;
+import javax.swing.table.DefaultTableCellRenderer;
+import javax.swing.table.TableColumnModel;
+import java.awt.*;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * 性能视图：显示当前会话中各分析器、回调和数据库方法的耗时分布，以及吞吐量、队列占用和内存分配曲线。
+ * 同样的统计项也以 JMX MBean 的形式提供（域名 {@value PerformanceMetrics#DOMAIN}）。
+ */
+@Extension(ordinal = 9)
+public class PerformanceInfoView extends JPanel implements InfoView
+{
+    private Application application;
+    private TimerStatsTableModel tableModel;
+    private PerformanceChartPanel chartPanel;
+    private JLabel summaryLabel;
+
+    private EventBus bus;
+
+    private volatile long lastTimestamp;
+    private final long MIN_QUERY_INTERVAL_MILLIS = 1000;
+
+    public PerformanceInfoView()
+    {
+        initUI();
+    }
+
+    private void initUI()
+    {
+        tableModel = new TimerStatsTableModel();
+        JTable table = new JTable();
+        table.setModel(tableModel);
+        table.getTableHeader().setReorderingAllowed(false);
+        table.setAutoResizeMode(JTable.AUTO_RESIZE_LAST_COLUMN);
+        table.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+
+        DefaultTableCellRenderer trailingRenderer = new DefaultTableCellRenderer();
+        trailingRenderer.setHorizontalAlignment(SwingConstants.TRAILING);
+
+        TableColumnModel columnModel = table.getColumnModel();
+        ComponentUtil.configTableColumn(columnModel, 0, 60, false);                      // 类别
+        ComponentUtil.configTableColumn(columnModel, 1, 280, true);                      // 名称
+        ComponentUtil.configTableColumn(columnModel, 2, trailingRenderer, 100, false);   // 调用次数
+        ComponentUtil.configTableColumn(columnModel, 3, trailingRenderer, 100, false);   // 频率
+        ComponentUtil.configTableColumn(columnModel, 4, trailingRenderer, 80, false);    // 耗时占比
+        ComponentUtil.configTableColumn(columnModel, 5, trailingRenderer, 90, false);    // 平均
+        ComponentUtil.configTableColumn(columnModel, 6, trailingRenderer, 90, false);    // P50
+        ComponentUtil.configTableColumn(columnModel, 7, trailingRenderer, 90, false);    // P99
+        ComponentUtil.configTableColumn(columnModel, 8, trailingRenderer, 90, false);    // P99.9
+        ComponentUtil.configTableColumn(columnModel, 9, trailingRenderer, 90, false);    // 最大
+        ComponentUtil.configTableColumn(columnModel, 10, trailingRenderer, 100, false);  // 总耗时
+
+        summaryLabel = new JLabel(" ");
+        chartPanel = new PerformanceChartPanel();
+
+        JPanel tablePanel = new JPanel(new BorderLayout());
+        tablePanel.add(summaryLabel, BorderLayout.NORTH);
+        tablePanel.add(new JScrollPane(table), BorderLayout.CENTER);
+
+        JSplitPane splitPane = new JSplitPane(JSplitPane.VERTICAL_SPLIT);
+        splitPane.setOneTouchExpandable(true);
+        splitPane.setTopComponent(tablePanel);
+        splitPane.setBottomComponent(chartPanel);
+        splitPane.setResizeWeight(0.5);
+        ComponentUtil.setTitledBorder(splitPane, getViewTitle());
+
+        setLayout(new MigLayout("fill"));
+        add(splitPane, "center, grow");
+
+        addComponentListener(new ComponentAdapter()
+        {
+            @Override
+            public void componentShown(ComponentEvent e)
+            {
+                queryMetrics();
+            }
+        });
+    }
+
+    @Override
+    public void setupApplication(Application application)
+    {
+        this.application = application;
+    }
+
+    @Override
+    public void setupDataSource(EventBus bus, M2TKDatabase database)
+    {
+        this.bus = bus;
+
+        bus.register(this);
+    }
+
+    @Override
+    public void setupMenu(JMenu menu)
+    {
+        JMenuItem item = new JMenuItem(getViewTitle());
+        item.setIcon(getViewIcon());
+        item.setAccelerator(KeyStroke.getKeyStroke("alt 9"));
+        item.addActionListener(e -> {
+            if (bus != null)
+            {
+                ShowInfoViewEvent event = new ShowInfoViewEvent(this);
+                bus.post(event);
+            }
+        });
+        menu.add(item);
+    }
+
+    @Override
+    public JComponent getViewComponent()
+    {
+        return this;
+    }
+
+    @Override
+    public String getViewTitle()
+    {
+        return "性能";
+    }
+
+    @Override
+    public Icon getViewIcon()
+    {
+        return FontIcon.of(FluentUiRegularAL.GAUGE_20, 20, Color.decode("#00A4EF"));
+    }
+
+    @Subscribe
+    public void onRefreshInfoViewEvent(RefreshInfoViewEvent event)
+    {
+        // 性能统计每秒采样一次，不需要检查数据变化，按采样周期刷新即可。
+        long t1 = System.currentTimeMillis();
+        if (t1 - lastTimestamp >= MIN_QUERY_INTERVAL_MILLIS && isShowing())
+        {
+            queryMetrics();
+            lastTimestamp = System.currentTimeMillis();
+        }
+    }
+
+    private void queryMetrics()
+    {
+        AssistantApp app = AssistantApp.getInstance();
+        PerformanceMetrics metrics = app.getPerformanceMetrics();
+        if (metrics == null || app.getStreamAnalyzer() == null)
+            return;
+
+        int sourceId = app.getStreamAnalyzer().getCurrentSourceId();
+        Supplier<MetricsSnapshot> query = () ->
+        {
+            SessionMetrics session = metrics.getSession(sourceId);
+            if (session == null)
+                return new MetricsSnapshot(null, Collections.emptyList(), Collections.emptyList(), metrics);
+            List<TimerStatsTableModel.Row> rows = session.listTimers()
+                                                         .stream()
+                                                         .map(TimerStatsTableModel.Row::of)
+                                                         .toList();
+            return new MetricsSnapshot(session, rows, session.listHistory(), metrics);
+        };
+        Consumer<MetricsSnapshot> consumer = snapshot ->
+        {
+            tableModel.update(snapshot.rows());
+            chartPanel.update(snapshot.history());
+            summaryLabel.setText(formatSummary(snapshot));
+        };
+
+        AsyncQueryTask<MetricsSnapshot> task = new AsyncQueryTask<>(application, query, consumer);
+        task.execute();
+    }
+
+    private String formatSummary(MetricsSnapshot snapshot)
+    {
+        SessionMetrics session = snapshot.session();
+        PerformanceMetrics metrics = snapshot.metrics();
+        if (session == null)
+            return String.format("当前会话没有性能统计    内存分配：%.1f MB/秒    GC耗时：%.1f 毫秒/秒    堆内存：%,d MB",
+                                 metrics.getAllocationRate(), metrics.getGcTimeRate(), metrics.getHeapUsed() >> 20);
+
+        String summary = String.format("%s传输包：%,.0f 包/秒    分段：%,.0f 段/秒    流水线队列：%d%%    回写队列：%,d    丢弃：%,d    " +
+                                       "内存分配：%.1f MB/秒    GC耗时：%.1f 毫秒/秒    堆内存：%,d MB",
+                                       session.isEnabled() ? "" : "（计时探针未启用）",
+                                       session.getPacketRate(), session.getSectionRate(),
+                                       session.getQueueFill(), session.getWriteQueueDepth(), session.getDroppedMessages(),
+                                       metrics.getAllocationRate(), metrics.getGcTimeRate(), metrics.getHeapUsed() >> 20);
+        if (!session.hasInputStats())
+            return summary;
+
+        // 输入侧丢包（RTP 序号缺口）与分析侧溢出（输入缓冲区满）分开显示。
+        return String.format("<html>%s<br/>输入缓冲：%d%%    输入丢包：%,d    缓冲溢出：%,d    到达抖动：%.1f 微秒</html>",
+                             summary,
+                             session.getInputBufferFill(), session.getInputLost(),
+                             session.getInputOverruns(), session.getInputJitterMicros());
+    }
+
+    private record MetricsSnapshot(SessionMetrics session,
+                                   List<TimerStatsTableModel.Row> rows,
+                                   List<SessionMetrics.Sample> history,
+                                   PerformanceMetrics metrics)
+    {
+    }
+}
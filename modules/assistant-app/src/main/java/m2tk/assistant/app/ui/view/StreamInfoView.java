@@ -19,6 +19,8 @@ import cn.hutool.core.util.StrUtil;
 import com.google.common.eventbus.EventBus;
 import com.google.common.eventbus.Subscribe;
 import lombok.extern.slf4j.Slf4j;
+import m2tk.assistant.api.ChangeDomain;
+import m2tk.assistant.api.ChangeWatch;
 import m2tk.assistant.api.InfoView;
 import m2tk.assistant.api.M2TKDatabase;
 import m2tk.assistant.api.ProgramObserver;
@@ -67,6 +69,7 @@ public class StreamInfoView extends JPanel
     private StreamSource currentSource;
     private EventBus bus;
     private M2TKDatabase database;
+    private final ChangeWatch changes = new ChangeWatch(ChangeDomain.STREAM, ChangeDomain.PROGRAM, ChangeDomain.SI);
 
     private volatile long lastTimestamp;
     private final long MIN_QUERY_INTERVAL_MILLIS = 500;
@@ -115,7 +118,10 @@ public class StreamInfoView extends JPanel
             public void componentShown(ComponentEvent e)
             {
                 if (database != null)
+                {
+                    changes.check(database);
                     queryStreamSnapshot();
+                }
             }
         });
     }
@@ -198,6 +204,8 @@ public class StreamInfoView extends JPanel
         long t1 = System.currentTimeMillis();
         if (t1 - lastTimestamp >= MIN_QUERY_INTERVAL_MILLIS && isShowing())
         {
+            if (!changes.check(database) && !event.forced())
+                return;
             queryStreamSnapshot();
             lastTimestamp = System.currentTimeMillis();
         }
@@ -18,14 +18,18 @@ package m2tk.assistant.app.ui.view;
 import cn.hutool.core.util.StrUtil;
 import com.google.common.eventbus.EventBus;
 import com.google.common.eventbus.Subscribe;
+import m2tk.assistant.api.ChangeDomain;
+import m2tk.assistant.api.ChangeWatch;
 import m2tk.assistant.api.InfoView;
 import m2tk.assistant.api.M2TKDatabase;
 import m2tk.assistant.api.domain.TR290Event;
 import m2tk.assistant.api.domain.TR290Stats;
+import m2tk.assistant.api.domain.TR290StreamStats;
 import m2tk.assistant.api.event.RefreshInfoViewEvent;
 import m2tk.assistant.api.event.ShowInfoViewEvent;
 import m2tk.assistant.app.ui.component.TR290EventPanel;
 import m2tk.assistant.app.ui.component.TR290StatsPanel;
+import m2tk.assistant.app.ui.component.TR290StreamStatsPanel;
 import m2tk.assistant.app.ui.task.AsyncQueryTask;
 import m2tk.assistant.app.ui.util.ComponentUtil;
 import net.miginfocom.swing.MigLayout;
@@ -49,10 +53,12 @@ public class TR290InfoView extends JPanel implements InfoView
     private Application application;
     private TR290StatsPanel tr290StatsPanel;
     private TR290EventPanel tr290EventPanel;
+    private TR290StreamStatsPanel tr290StreamStatsPanel;
     private JSplitPane splitPane;
 
     private EventBus bus;
     private M2TKDatabase database;
+    private final ChangeWatch changes = new ChangeWatch(ChangeDomain.TR290);
 
     private volatile long lastTimestamp;
     private final long MIN_QUERY_INTERVAL_MILLIS = 500;
@@ -66,6 +72,7 @@ public class TR290InfoView extends JPanel implements InfoView
     {
         tr290StatsPanel = new TR290StatsPanel();
         tr290EventPanel = new TR290EventPanel();
+        tr290StreamStatsPanel = new TR290StreamStatsPanel();
 
         tr290StatsPanel.setPopupListener(this::showStatsPopupMenu);
 
@@ -86,7 +93,10 @@ public class TR290InfoView extends JPanel implements InfoView
             public void componentShown(ComponentEvent e)
             {
                 if (database != null)
+                {
+                    changes.check(database);
                     queryTR290Events();
+                }
             }
         });
     }
@@ -146,6 +156,8 @@ public class TR290InfoView extends JPanel implements InfoView
         long t1 = System.currentTimeMillis();
         if (t1 - lastTimestamp >= MIN_QUERY_INTERVAL_MILLIS && isShowing())
         {
+            if (!changes.check(database) && !event.forced())
+                return;
             queryTR290Events();
             lastTimestamp = System.currentTimeMillis();
         }
@@ -165,14 +177,33 @@ public class TR290InfoView extends JPanel implements InfoView
         Supplier<List<TR290Event>> query = () -> database.listTR290Events(type, 100);
         Consumer<List<TR290Event>> consumer = events -> {
             tr290EventPanel.update(events);
-            tr290EventPanel.setVisible(true);
-            splitPane.setDividerLocation(0.6);
+            showDetailPanel(tr290EventPanel);
         };
 
         AsyncQueryTask<List<TR290Event>> task = new AsyncQueryTask<>(application, query, consumer);
         task.execute();
     }
 
+    private void queryTR290StreamStats(String type)
+    {
+        Supplier<List<TR290StreamStats>> query = () -> database.getTR290Stats().getErrorStreamStats(type);
+        Consumer<List<TR290StreamStats>> consumer = stats -> {
+            tr290StreamStatsPanel.update(stats);
+            showDetailPanel(tr290StreamStatsPanel);
+        };
+
+        AsyncQueryTask<List<TR290StreamStats>> task = new AsyncQueryTask<>(application, query, consumer);
+        task.execute();
+    }
+
+    private void showDetailPanel(JComponent panel)
+    {
+        if (splitPane.getBottomComponent() != panel)
+            splitPane.setBottomComponent(panel);
+        panel.setVisible(true);
+        splitPane.setDividerLocation(0.6);
+    }
+
     private void showStatsPopupMenu(MouseEvent event, String type)
     {
         JPopupMenu popupMenu = new JPopupMenu();
@@ -183,6 +214,10 @@ public class TR290InfoView extends JPanel implements InfoView
             item = new JMenuItem("查看最近记录");
             item.addActionListener(e -> queryRecentTR290Events(type));
             popupMenu.add(item);
+
+            item = new JMenuItem("查看各PID统计");
+            item.addActionListener(e -> queryTR290StreamStats(type));
+            popupMenu.add(item);
         }
 
         item = new JMenuItem("清空记录");
@@ -0,0 +1,118 @@
+/*
+ *  Copyright (c) M2TK Project. All rights reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package m2tk.assistant.app.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * 单生产者/单消费者无锁环形队列。
+ * <p>
+ * 仅允许一个线程调用 {@link #offer(Object)}，一个线程调用 {@link #drain(Consumer, int)}，
+ * 容量向上取整为 2 的幂。
+ */
+public final class SpscRingBuffer<E>
+{
+    private final Object[] buffer;
+    private final int mask;
+    private final AtomicLong head; // 下一个待消费位置（消费者写）
+    private final AtomicLong tail; // 下一个待写入位置（生产者写）
+    private long headCache;        // 生产者缓存的消费位置
+    private long tailCache;        // 消费者缓存的写入位置
+
+    public SpscRingBuffer(int capacity)
+    {
+        if (capacity < 2 || capacity > (1 << 30))
+            throw new IllegalArgumentException("无效的队列容量：" + capacity);
+
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        buffer = new Object[size];
+        mask = size - 1;
+        head = new AtomicLong();
+        tail = new AtomicLong();
+    }
+
+    /**
+     * 写入一个元素（仅限生产者线程）
+     * @param element 元素
+     * @return 队列已满时返回 false
+     */
+    public boolean offer(E element)
+    {
+        long t = tail.get();
+        if (t - headCache >= buffer.length)
+        {
+            headCache = head.get();
+            if (t - headCache >= buffer.length)
+                return false;
+        }
+
+        buffer[(int) (t & mask)] = element;
+        tail.lazySet(t + 1);
+        return true;
+    }
+
+    /**
+     * 批量取出元素（仅限消费者线程）
+     * @param consumer 元素处理器
+     * @param limit 单批最大数量
+     * @return 本批取出的元素数量
+     */
+    @SuppressWarnings("unchecked")
+    public int drain(Consumer<? super E> consumer, int limit)
+    {
+        long h = head.get();
+        if (h >= tailCache)
+        {
+            tailCache = tail.get();
+            if (h >= tailCache)
+                return 0;
+        }
+
+        int n = (int) Math.min(limit, tailCache - h);
+        for (int i = 0; i < n; i++)
+        {
+            int index = (int) ((h + i) & mask);
+            E element = (E) buffer[index];
+            buffer[index] = null;
+            try
+            {
+                consumer.accept(element);
+            } finally
+            {
+                head.lazySet(h + i + 1);
+            }
+        }
+        return n;
+    }
+
+    public int size()
+    {
+        long h = head.get();
+        long t = tail.get();
+        return (int) Math.max(0, t - h);
+    }
+
+    public boolean isEmpty()
+    {
+        return size() == 0;
+    }
+
+    public int capacity()
+    {
+        return buffer.length;
+    }
+}
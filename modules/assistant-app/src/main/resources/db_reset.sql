@@ -1,25 +1,15 @@
-TRUNCATE TABLE `PUBLIC`.`t_elementary_stream`;
-TRUNCATE TABLE `PUBLIC`.`t_mpeg_program`;
-TRUNCATE TABLE `PUBLIC`.`t_ca_stream`;
-TRUNCATE TABLE `PUBLIC`.`t_si_bouquet`;
-TRUNCATE TABLE `PUBLIC`.`t_si_network`;
-TRUNCATE TABLE `PUBLIC`.`t_si_multiplex`;
-TRUNCATE TABLE `PUBLIC`.`t_si_service`;
-TRUNCATE TABLE `PUBLIC`.`t_si_event`;
-TRUNCATE TABLE `PUBLIC`.`t_si_datetime`;
-TRUNCATE TABLE `PUBLIC`.`t_table_version`;
-TRUNCATE TABLE `PUBLIC`.`t_pcr`;
-TRUNCATE TABLE `PUBLIC`.`t_pcr_check`;
-TRUNCATE TABLE `PUBLIC`.`t_tr290_event`;
-TRUNCATE TABLE `PUBLIC`.`t_private_section`;
-TRUNCATE TABLE `PUBLIC`.`t_transport_packet`;
-TRUNCATE TABLE `PUBLIC`.`t_pes_packet`;
-TRUNCATE TABLE `PUBLIC`.`t_program_elementary_mapping`;
-TRUNCATE TABLE `PUBLIC`.`t_bouquet_service_mapping`;
-TRUNCATE TABLE `PUBLIC`.`t_multiplex_service_mapping`;
-TRUNCATE TABLE `PUBLIC`.`t_density_bulk`;
-
--- 初始化基本流
-INSERT INTO `PUBLIC`.`t_elementary_stream` (`pid`)
- SELECT X FROM SYSTEM_RANGE(0, 8191);
-
+-- 清空指定数据源的分析数据（参数为数据源编号）
+DELETE FROM `PUBLIC`.`t_elementary_stream` WHERE `source_ref` = ?;
+DELETE FROM `PUBLIC`.`t_mpeg_program` WHERE `source_ref` = ?;
+DELETE FROM `PUBLIC`.`t_ca_stream` WHERE `source_ref` = ?;
+DELETE FROM `PUBLIC`.`t_si_bouquet` WHERE `source_ref` = ?;
+DELETE FROM `PUBLIC`.`t_si_network` WHERE `source_ref` = ?;
+DELETE FROM `PUBLIC`.`t_si_multiplex` WHERE `source_ref` = ?;
+DELETE FROM `PUBLIC`.`t_si_service` WHERE `source_ref` = ?;
+DELETE FROM `PUBLIC`.`t_si_datetime` WHERE `source_ref` = ?;
+DELETE FROM `PUBLIC`.`t_table_version` WHERE `source_ref` = ?;
+DELETE FROM `PUBLIC`.`t_tr290_event` WHERE `source_ref` = ?;
+DELETE FROM `PUBLIC`.`t_private_section` WHERE `source_ref` = ?;
+DELETE FROM `PUBLIC`.`t_program_elementary_mapping` WHERE `source_ref` = ?;
+DELETE FROM `PUBLIC`.`t_bouquet_service_mapping` WHERE `source_ref` = ?;
+DELETE FROM `PUBLIC`.`t_multiplex_service_mapping` WHERE `source_ref` = ?;
@@ -0,0 +1,51 @@
+/*
+ *  Copyright (c) M2TK Project. All rights reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package m2tk.assistant.bench;
+
+import m2tk.assistant.bench.support.StreamData;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * 基准测试入口
+ * <p>
+ * 参数与 JMH 命令行相同（如 {@code TracerBenchmark -p tracer=PSITracer}），未指定 {@code -prof} 时
+ * 默认附加 GC 分析器，报告每包（或每次操作）的内存分配量。
+ * 设置 {@code -Dm2tk.bench.ts=<文件>} 可用录制的码流替代合成码流。
+ */
+public final class BenchLauncher
+{
+    private BenchLauncher()
+    {
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        CommandLineOptions cmdOptions = new CommandLineOptions(args);
+        ChainedOptionsBuilder builder = new OptionsBuilder().parent(cmdOptions);
+        if (cmdOptions.getProfilers().isEmpty())
+            builder.addProfiler(GCProfiler.class);
+
+        String file = System.getProperty(StreamData.FILE_PROPERTY);
+        if (file != null && !file.isBlank())
+            builder.jvmArgsAppend("-D" + StreamData.FILE_PROPERTY + "=" + file);
+
+        new Runner(builder.build()).run();
+    }
+}
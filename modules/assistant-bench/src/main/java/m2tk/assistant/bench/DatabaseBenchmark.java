@@ -0,0 +1,159 @@
+/*
+ *  Copyright (c) M2TK Project. All rights reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package m2tk.assistant.bench;
+
+import m2tk.assistant.api.M2TKDatabase;
+import m2tk.assistant.api.domain.PCRCheck;
+import m2tk.assistant.api.domain.StreamSource;
+import m2tk.assistant.api.domain.TR290Event;
+import m2tk.assistant.api.presets.TR290ErrorTypes;
+import m2tk.assistant.app.kernel.KernelEntry;
+import m2tk.assistant.app.kernel.service.M2TKDatabaseService;
+import m2tk.assistant.app.kernel.service.SourceScope;
+import m2tk.assistant.app.kernel.service.WriteBehindDatabase;
+import m2tk.assistant.bench.support.SyntheticStream;
+import org.noear.solon.Solon;
+import org.noear.solon.core.AppContext;
+import org.openjdk.jmh.annotations.*;
+
+import javax.sql.DataSource;
+import java.time.OffsetDateTime;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 数据库写入基准
+ * <p>
+ * 启动不含界面的内核（内存 H2 数据库），测量分析器常用写入操作的单次开销。
+ * {@code mode=direct} 为逐条同步写入，{@code mode=write-behind} 经 {@link WriteBehindDatabase}
+ * 排队批量写入（测量的是分析线程看到的入队开销）。每轮测量使用新的数据源，结束后清除其分析数据，避免表无限增长。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DatabaseBenchmark
+{
+    @Param({"direct", "write-behind"})
+    public String mode;
+
+    private M2TKDatabaseService service;
+    private DataSource dataSource;
+    private M2TKDatabase scoped;
+    private M2TKDatabase database;
+    private WriteBehindDatabase writeBehind;
+    private int sourceRef;
+
+    private byte[] packet;
+    private byte[] section;
+    private long position;
+
+    @Setup(Level.Trial)
+    public void setupTrial() throws Exception
+    {
+        Solon.start(KernelEntry.class, new String[0]);
+        AppContext context = Solon.context();
+        service = context.getBean(M2TKDatabaseService.class);
+        dataSource = context.getBean("m2tk");
+
+        packet = Arrays.copyOf(SyntheticStream.generate(1), SyntheticStream.PACKET_SIZE);
+        section = SyntheticStream.sdtSection();
+    }
+
+    @Setup(Level.Iteration)
+    public void setupIteration()
+    {
+        // 每轮使用一个新的数据源，各轮的表数据规模相同。
+        StreamSource source = service.beginDiagnosis("bench", "replay://bench");
+        sourceRef = source.getId();
+        scoped = SourceScope.bind(service, sourceRef);
+
+        if ("write-behind".equals(mode))
+        {
+            writeBehind = new WriteBehindDatabase(scoped, dataSource, sourceRef, service.getChangeCounters(), 100000, 200);
+            database = writeBehind;
+        } else
+        {
+            database = scoped;
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDownIteration()
+    {
+        if (writeBehind != null)
+        {
+            writeBehind.close();
+            writeBehind = null;
+        }
+        service.purgeSourceData(sourceRef);
+    }
+
+    @Benchmark
+    public void addTR290Event()
+    {
+        TR290Event event = new TR290Event();
+        event.setTimestamp(OffsetDateTime.now());
+        event.setType(TR290ErrorTypes.CONTINUITY_COUNT_ERROR);
+        event.setDescription("连续计数错误");
+        event.setPosition(position++);
+        event.setStream(SyntheticStream.VIDEO_PID);
+        database.addTR290Event(event);
+    }
+
+    @Benchmark
+    public void addTR290Error()
+    {
+        database.addTR290Error(TR290ErrorTypes.CONTINUITY_COUNT_ERROR, SyntheticStream.VIDEO_PID, position++,
+                               "连续计数错误（期望：%d，实际：%d，pid = %d）", 3, 5, SyntheticStream.VIDEO_PID);
+    }
+
+    @Benchmark
+    public void addPCRCheck()
+    {
+        PCRCheck check = new PCRCheck();
+        check.setPid(SyntheticStream.VIDEO_PID);
+        check.setPrevPosition(position);
+        check.setCurrPosition(position += 20);
+        check.setPrevValue(position * 300);
+        check.setCurrValue(position * 300 + 81000);
+        check.setBitrate(10_000_000);
+        check.setIntervalNanos(3_000_000);
+        database.addPCRCheck(check);
+    }
+
+    @Benchmark
+    public void addPrivateSection()
+    {
+        database.addPrivateSection("SDT_Actual", 0x0011, position++, section);
+    }
+
+    @Benchmark
+    public void addTransportPacket()
+    {
+        database.addTransportPacket(SyntheticStream.VIDEO_PID, position++, packet);
+    }
+
+    @Benchmark
+    public void updateElementaryStreamStats()
+    {
+        position++;
+        database.updateElementaryStreamStats(SyntheticStream.VIDEO_PID, position, position / 20,
+                                             10_000_000, 0.7, false);
+    }
+}
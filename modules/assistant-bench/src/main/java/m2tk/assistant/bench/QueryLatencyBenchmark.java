@@ -0,0 +1,266 @@
+/*
+ *  Copyright (c) M2TK Project. All rights reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package m2tk.assistant.bench;
+
+import m2tk.assistant.api.M2TKDatabase;
+import m2tk.assistant.api.domain.*;
+import m2tk.assistant.app.kernel.KernelEntry;
+import m2tk.assistant.app.kernel.service.M2TKDatabaseService;
+import m2tk.assistant.app.kernel.service.SourceScope;
+import org.noear.solon.Solon;
+import org.noear.solon.core.AppContext;
+import org.openjdk.jmh.annotations.*;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 视图刷新查询延迟基准
+ * <p>
+ * 向各分析数据表填充 {@code rows} 行数据后，测量各视图刷新时执行的查询的延迟。
+ * {@code indexed=false} 时先删除 db_init.sql 中创建的全部二级索引，用于对比索引的效果。
+ * 除一个数据源外，另填充一个同样规模的数据源，模拟多数据源同时分析时表中混有其他数据源数据的情况。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QueryLatencyBenchmark
+{
+    private static final int STREAM_COUNT = 16;
+    private static final int SERVICE_COUNT = 50;
+    private static final int TR290_TYPE_COUNT = 16;
+    private static final int TSID = 1;
+    private static final int ONID = 1;
+    private static final OffsetDateTime EPOCH = OffsetDateTime.of(2024, 9, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+
+    @Param({"1000", "10000", "100000"})
+    public int rows;
+
+    @Param({"true", "false"})
+    public boolean indexed;
+
+    private M2TKDatabase database;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception
+    {
+        Solon.start(KernelEntry.class, new String[0]);
+        AppContext context = Solon.context();
+        M2TKDatabaseService service = context.getBean(M2TKDatabaseService.class);
+        DataSource dataSource = context.getBean("m2tk");
+
+        if (!indexed)
+            dropIndexes(dataSource);
+
+        int other = service.beginDiagnosis("other", "replay://other").getId();
+        int sourceRef = service.beginDiagnosis("bench", "replay://bench").getId();
+        populate(service, other);
+        populate(service, sourceRef);
+        populateMemoryStores(SourceScope.bind(service, other));
+        populateMemoryStores(SourceScope.bind(service, sourceRef));
+
+        database = SourceScope.bind(service, sourceRef);
+    }
+
+    @Benchmark
+    public List<TR290Event> tr290Events()
+    {
+        return database.listTR290Events("T3", 100);
+    }
+
+    @Benchmark
+    public TR290Stats tr290Stats()
+    {
+        return database.getTR290Stats();
+    }
+
+    @Benchmark
+    public List<PCRStats> pcrStats()
+    {
+        return database.listPCRStats();
+    }
+
+    @Benchmark
+    public List<PCRCheck> pcrChecks()
+    {
+        return database.getRecentPCRChecks(0x103, 1000);
+    }
+
+    @Benchmark
+    public List<StreamDensityStats> densityStats()
+    {
+        return database.listStreamDensityStats();
+    }
+
+    @Benchmark
+    public List<StreamDensityBulk> densityBulks()
+    {
+        return database.getRecentStreamDensityBulks(0x103, 2);
+    }
+
+    @Benchmark
+    public List<StreamDensityBucket> densityOverview()
+    {
+        return database.getStreamDensityOverview(0x103, 0, Long.MAX_VALUE, 2000);
+    }
+
+    @Benchmark
+    public Map<String, List<PrivateSection>> sectionGroups()
+    {
+        return database.getPrivateSectionGroups("PAT", "PMT", "SDT_Actual");
+    }
+
+    @Benchmark
+    public List<PrivateSection> sections()
+    {
+        return database.getPrivateSections("EIT_Schedule_Actual", 0x12, 100);
+    }
+
+    @Benchmark
+    public List<TransportPacket> transportPackets()
+    {
+        return database.getTransportPackets(0x103, 100);
+    }
+
+    @Benchmark
+    public List<PESPacket> pesPackets()
+    {
+        return database.getPESPackets(0x103, 10);
+    }
+
+    @Benchmark
+    public List<SIEvent> serviceEvents()
+    {
+        return database.listRegularSIEvents(TSID, ONID, 7, false, false, null, null);
+    }
+
+    @Benchmark
+    public List<SIEvent> serviceEventsOfDay()
+    {
+        OffsetDateTime begin = EPOCH.plusDays(1);
+        return database.listRegularSIEvents(TSID, ONID, 7, false, true, begin, begin.plusDays(1));
+    }
+
+    private void populate(M2TKDatabaseService service, int sourceRef) throws SQLException
+    {
+        String range = " FROM SYSTEM_RANGE(1, " + rows + ")";
+
+        service.update("INSERT INTO `PUBLIC`.`t_tr290_event` (`source_ref`, `type`, `description`, `pid`, `pct`, `timepoint`) " +
+                       "SELECT " + sourceRef + ", CONCAT('T', MOD(X, " + TR290_TYPE_COUNT + ")), 'bench', " +
+                       "256 + MOD(X, " + STREAM_COUNT + "), X * 100, DATEADD('MILLISECOND', X, TIMESTAMP '2024-09-01 00:00:00')" +
+                       range);
+        service.update("INSERT INTO `PUBLIC`.`t_private_section` (`source_ref`, `tag`, `pid`, `pct`, `encoding`) " +
+                       "SELECT " + sourceRef + ", " +
+                       "CASE MOD(X, 16) WHEN 0 THEN 'PAT' WHEN 1 THEN 'PMT' WHEN 2 THEN 'SDT_Actual' ELSE 'EIT_Schedule_Actual' END, " +
+                       "CASE MOD(X, 16) WHEN 0 THEN 0 WHEN 1 THEN 256 WHEN 2 THEN 17 ELSE 18 END, " +
+                       "X * 50, CAST(X'42F0' AS VARBINARY(200))" +
+                       range);
+    }
+
+    private void populateMemoryStores(M2TKDatabase scoped)
+    {
+        // PCR统计、EPG事件、流密度和捕获的包保存在内存中，只能经由接口写入。
+        // 每个业务的事件按 30 分钟间隔排列
+        for (int x = 1; x <= rows; x++)
+        {
+            int seq = x / SERVICE_COUNT;
+            SIEvent event = new SIEvent();
+            event.setTransportStreamId(TSID);
+            event.setOriginalNetworkId(ONID);
+            event.setServiceId(1 + x % SERVICE_COUNT);
+            event.setEventId(seq % 65536);
+            event.setStartTime(EPOCH.plusMinutes(seq * 30L));
+            event.setDuration(1800);
+            event.setTitle("bench");
+            event.setScheduleEvent(true);
+            scoped.updateSIEvent(event);
+        }
+
+        byte[] tsPacket = new byte[188];
+        byte[] pesPacket = new byte[1000];
+        tsPacket[0] = 0x47;
+        pesPacket[2] = 0x01;
+        pesPacket[3] = (byte) 0xE0;
+        for (int x = 1; x <= rows; x++)
+        {
+            int stream = 256 + x % STREAM_COUNT;
+            scoped.addTransportPacket(stream, x, tsPacket);
+            scoped.addPESPacket(stream, x * 10L, pesPacket);
+        }
+
+        for (int x = 1; x <= rows; x++)
+        {
+            int pid = 256 + x % STREAM_COUNT;
+            PCR pcr = new PCR();
+            pcr.setPid(pid);
+            pcr.setPosition(x * 20L);
+            pcr.setValue(x * 810000L);
+            scoped.addPCR(pcr);
+
+            PCRCheck check = new PCRCheck();
+            check.setPid(pid);
+            check.setPrevValue(x * 810000L);
+            check.setPrevPosition(x * 20L);
+            check.setCurrValue((x + 1) * 810000L);
+            check.setCurrPosition((x + 1) * 20L);
+            check.setBitrate(10000000L);
+            check.setIntervalNanos(30000000L);
+            check.setDiffNanos(0);
+            check.setAccuracyNanos(x % 500);
+            check.setRepetitionCheckFailed(x % 97 == 0);
+            scoped.addPCRCheck(check);
+        }
+
+        // 每行对应一批 100 个包间隔，数值在 80~120 之间
+        int[] intervals = new int[100];
+        for (int i = 0; i < intervals.length; i++)
+            intervals[i] = 80 + (i * 7) % 41;
+        for (int x = 1; x <= rows; x++)
+        {
+            int pid = 256 + x % STREAM_COUNT;
+            scoped.addStreamDensities(pid, x * 10000L, intervals, intervals.length);
+        }
+    }
+
+    private static void dropIndexes(DataSource dataSource) throws SQLException
+    {
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement())
+        {
+            List<String> indexes = new ArrayList<>();
+            try (ResultSet rs = statement.executeQuery("SELECT INDEX_NAME FROM INFORMATION_SCHEMA.INDEXES " +
+                                                       "WHERE INDEX_SCHEMA = 'PUBLIC' AND LOWER(INDEX_NAME) LIKE 'idx\\_%'"))
+            {
+                while (rs.next())
+                    indexes.add(rs.getString(1));
+            }
+            for (String index : indexes)
+                statement.execute("DROP INDEX IF EXISTS PUBLIC.\"" + index + "\"");
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ *  Copyright (c) M2TK Project. All rights reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package m2tk.assistant.bench;
+
+import m2tk.assistant.api.template.SectionDecoder;
+import m2tk.assistant.api.template.SyntaxField;
+import m2tk.assistant.bench.support.SyntheticStream;
+import m2tk.encoding.Encoding;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 段解码基准
+ * <p>
+ * 按内置模板解码单个段，即界面展示段结构（{@code DatagramPanel}）时的解码路径。
+ * 每次调用都重新包装编码，与界面每次选中段时的行为一致。
+ * <p>
+ * {@code compiled} 使用注册模板时编译的解码计划，{@code interpreted} 逐个解释字段定义。
+ * 两者结果是否一致由 {@link TemplateConsistencyCheck} 覆盖全部内置模板检查，这里只在准备阶段核对被测段。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SectionDecodeBenchmark
+{
+    @Param({"PAT", "PMT", "NIT", "SDT", "EIT"})
+    public String section;
+
+    @Param({"compiled", "interpreted"})
+    public String mode;
+
+    private byte[] data;
+    private SectionDecoder decoder;
+
+    @Setup(Level.Trial)
+    public void setup()
+    {
+        loadTemplate("/template/PSITemplate.xml");
+        loadTemplate("/template/SITemplate.xml");
+
+        data = switch (section)
+        {
+            case "PAT" -> SyntheticStream.patSection();
+            case "PMT" -> SyntheticStream.pmtSection();
+            case "NIT" -> SyntheticStream.nitSection();
+            case "SDT" -> SyntheticStream.sdtSection();
+            case "EIT" -> SyntheticStream.eitSection(1);
+            default -> throw new IllegalArgumentException("未知的段类型：" + section);
+        };
+        decoder = new SectionDecoder();
+        SyntaxField compiled = decoder.decode(Encoding.wrap(data), 0, data.length);
+        SyntaxField interpreted = decoder.interpret(Encoding.wrap(data), 0, data.length);
+        if (compiled == null || interpreted == null)
+            throw new IllegalStateException("模板无法解码 " + section);
+        String difference = TemplateConsistencyCheck.difference(compiled, interpreted);
+        if (difference != null)
+            throw new IllegalStateException("解码计划与解释执行的结果不一致：" + section + "，" + difference);
+    }
+
+    @Benchmark
+    public SyntaxField decode()
+    {
+        Encoding encoding = Encoding.wrap(data);
+        return mode.equals("compiled")
+               ? decoder.decode(encoding, 0, encoding.size())
+               : decoder.interpret(encoding, 0, encoding.size());
+    }
+
+    private static void loadTemplate(String resource)
+    {
+        TemplateConsistencyCheck.loadTemplate(SectionDecodeBenchmark.class.getResource(resource));
+    }
+}
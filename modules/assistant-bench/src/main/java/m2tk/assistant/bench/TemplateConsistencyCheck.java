@@ -0,0 +1,339 @@
+/*
+ *  Copyright (c) M2TK Project. All rights reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package m2tk.assistant.bench;
+
+import m2tk.assistant.api.template.DescriptorDecoder;
+import m2tk.assistant.api.template.SectionDecoder;
+import m2tk.assistant.api.template.SelectorDecoder;
+import m2tk.assistant.api.template.SyntaxField;
+import m2tk.assistant.api.template.TemplateReader;
+import m2tk.assistant.api.template.definition.*;
+import m2tk.assistant.bench.support.SyntheticStream;
+import m2tk.assistant.bench.support.TemplateSampleGenerator;
+import m2tk.encoding.Encoding;
+
+import java.net.URL;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * 解码计划一致性检查
+ * <p>
+ * 加载全部内置模板（PSI/SI、扩展 PSI/SI 和应急广播模板），对每个段模板的每个表号、每个描述符模板和每个选择器模板，
+ * 分别用 {@code decode}（解码计划）和 {@code interpret}（逐个解释字段定义）解码同一批数据，
+ * 两者必须生成相同的语法树，或者抛出相同的异常。
+ * <p>
+ * 样本包括合成码流中的典型段及其逐字节变异的结果、按模板定义生成的样本（{@link TemplateSampleGenerator}，
+ * 覆盖描述符循环、条件分支和选择器），以及只填写表号、标签和长度的随机数据（覆盖越界等异常路径）。
+ * 种子固定，结果可重复。
+ * <p>
+ * 用法：{@code java -cp benchmarks.jar m2tk.assistant.bench.TemplateConsistencyCheck [每个模板的随机样本数] [种子]}，
+ * 发现不一致时打印差异并以非零状态退出。
+ */
+public final class TemplateConsistencyCheck
+{
+    private static final String[] TEMPLATES = {
+            "/template/PSITemplate.xml",
+            "/template/SITemplate.xml",
+            "/template/PSITemplateEx.xml",
+            "/template/SITemplateEx.xml",
+            "/template/EBSTemplate.xml"
+    };
+
+    private static final int MAX_REPORTED_MISMATCHES = 20;
+
+    private final SectionDecoder sectionDecoder = new SectionDecoder();
+    private final DescriptorDecoder descriptorDecoder = new DescriptorDecoder();
+    private final SelectorDecoder selectorDecoder = new SelectorDecoder();
+    private final Random random;
+    private final int samples;
+    private TemplateSampleGenerator generator;
+
+    private int cases;
+    private int decoded;
+    private int mismatches;
+    private final Set<String> neverDecoded = new TreeSet<>();
+
+    private TemplateConsistencyCheck(int samples, long seed)
+    {
+        this.samples = samples;
+        this.random = new Random(seed);
+    }
+
+    public static void main(String[] args)
+    {
+        int samples = (args.length > 0) ? Integer.parseInt(args[0]) : 2000;
+        long seed = (args.length > 1) ? Long.parseLong(args[1]) : 20261018L;
+
+        List<M2TKTemplate> templates = new ArrayList<>();
+        for (String resource : TEMPLATES)
+        {
+            URL url = TemplateConsistencyCheck.class.getResource(resource);
+            if (url == null)
+                throw new IllegalStateException("找不到内置模板：" + resource);
+            templates.add(loadTemplate(url));
+        }
+
+        TemplateConsistencyCheck check = new TemplateConsistencyCheck(samples, seed);
+        check.run(templates);
+
+        System.out.printf("共检查 %d 个样本，其中 %d 个可完整解码，不一致 %d 个。%n",
+                          check.cases, check.decoded, check.mismatches);
+        if (!check.neverDecoded.isEmpty())
+            System.out.printf("以下模板单独解码时没有样本能完整解码，只比较了异常（引用调用方字段的选择器会出现在这里）：%s%n", check.neverDecoded);
+        if (check.mismatches > 0)
+            System.exit(1);
+    }
+
+    /**
+     * 按应用启动时的顺序注册模板。
+     */
+    static M2TKTemplate loadTemplate(URL url)
+    {
+        M2TKTemplate template = new TemplateReader().parse(url);
+        if (template == null)
+            throw new IllegalStateException("无法加载模板：" + url);
+        template.getTableTemplates().forEach(SectionDecoder::registerTemplate);
+        template.getDescriptorTemplates().forEach(DescriptorDecoder::registerTemplate);
+        template.getSelectorTemplates().forEach(SelectorDecoder::registerTemplate);
+        return template;
+    }
+
+    private void run(List<M2TKTemplate> templates)
+    {
+        generator = new TemplateSampleGenerator(templates, random);
+        for (byte[] section : List.of(SyntheticStream.patSection(),
+                                      SyntheticStream.pmtSection(),
+                                      SyntheticStream.nitSection(),
+                                      SyntheticStream.sdtSection(),
+                                      SyntheticStream.eitSection(1),
+                                      SyntheticStream.tdtSection()))
+        {
+            String label = String.format("合成段 0x%02X", section[0] & 0xFF);
+            checkSection(label, section);
+            for (int i = 0; i < samples; i++)
+                checkSection(label + "（变异）", mutate(section));
+        }
+
+        for (M2TKTemplate template : templates)
+        {
+            for (TableTemplate table : template.getTableTemplates())
+            {
+                for (TableId tableId : table.getTableIds())
+                {
+                    String label = String.format("%s（0x%02X）", table.getName(), tableId.getId());
+                    boolean any = false;
+                    for (int i = 0; i < samples; i++)
+                    {
+                        // 交替使用按模板生成的样本和随机数据。
+                        byte[] data = (i % 2 == 0) ? generator.section(table, tableId.getId()) : null;
+                        any |= checkSection(label, (data != null) ? data : randomSection(tableId.getId()));
+                    }
+                    if (!any)
+                        neverDecoded.add(label);
+                }
+            }
+
+            for (DescriptorTemplate descriptor : template.getDescriptorTemplates())
+            {
+                String label = descriptor.getName();
+                boolean any = false;
+                for (int i = 0; i < samples; i++)
+                {
+                    byte[] data = (i % 2 == 0) ? generator.descriptor(descriptor) : null;
+                    any |= checkDescriptor(label, (data != null) ? data : randomDescriptor(descriptor.getTag(), descriptor.getTagExtension()));
+                }
+                if (!any)
+                    neverDecoded.add(label);
+            }
+
+            for (SelectorTemplate selector : template.getSelectorTemplates())
+            {
+                String label = selector.getName();
+                boolean any = false;
+                for (int i = 0; i < samples; i++)
+                {
+                    byte[] data = (i % 2 == 0) ? generator.selector(selector) : randomBytes(random.nextInt(64));
+                    if (data.length > 0)
+                        any |= checkSelector(label, data);
+                }
+                if (!any)
+                    neverDecoded.add(label);
+            }
+        }
+    }
+
+    private boolean checkSection(String label, byte[] data)
+    {
+        return compare(label, data,
+                       encoding -> sectionDecoder.decode(encoding, 0, data.length),
+                       encoding -> sectionDecoder.interpret(encoding, 0, data.length));
+    }
+
+    private boolean checkDescriptor(String label, byte[] data)
+    {
+        return compare(label, data,
+                       encoding -> descriptorDecoder.decode(encoding, 0, data.length),
+                       encoding -> descriptorDecoder.interpret(encoding, 0, data.length));
+    }
+
+    private boolean checkSelector(String label, byte[] data)
+    {
+        return compare(label, data,
+                       encoding -> selectorDecoder.decode(label, encoding, 0, data.length, null),
+                       encoding -> selectorDecoder.interpret(label, encoding, 0, data.length, null));
+    }
+
+    /**
+     * 比较两种解码方式的结果
+     * @return 两种方式都完整解码时返回 true
+     */
+    private boolean compare(String label, byte[] data,
+                            Function<Encoding, SyntaxField> compiled,
+                            Function<Encoding, SyntaxField> interpreted)
+    {
+        cases++;
+        Object result1 = run(compiled, data);
+        Object result2 = run(interpreted, data);
+
+        String difference;
+        if (result1 instanceof SyntaxField tree1 && result2 instanceof SyntaxField tree2)
+            difference = difference(tree1, tree2);
+        else if (result1 instanceof Throwable ex1 && result2 instanceof Throwable ex2)
+            difference = (ex1.getClass() == ex2.getClass() && Objects.equals(ex1.getMessage(), ex2.getMessage()))
+                         ? null
+                         : "异常不同：" + ex1 + " / " + ex2;
+        else
+            difference = "结果不同：" + describe(result1) + " / " + describe(result2);
+
+        if (difference != null)
+        {
+            mismatches++;
+            if (mismatches <= MAX_REPORTED_MISMATCHES)
+                System.out.printf("[%s] %s%n    数据：%s%n", label, difference, HexFormat.of().formatHex(data));
+            return false;
+        }
+
+        if (result1 instanceof SyntaxField)
+        {
+            decoded++;
+            return true;
+        }
+        return false;
+    }
+
+    private static Object run(Function<Encoding, SyntaxField> decoder, byte[] data)
+    {
+        try
+        {
+            return decoder.apply(Encoding.wrap(data));
+        } catch (Exception ex)
+        {
+            return ex;
+        }
+    }
+
+    private static String describe(Object result)
+    {
+        return (result instanceof SyntaxField field) ? "语法树 " + field.getName() : String.valueOf(result);
+    }
+
+    /**
+     * 比较两棵语法树
+     * @return 相同时返回 null，否则返回第一处差异的说明
+     */
+    static String difference(SyntaxField a, SyntaxField b)
+    {
+        if (a.getType() != b.getType() ||
+            !Objects.equals(a.getName(), b.getName()) ||
+            !Objects.equals(a.getGroup(), b.getGroup()) ||
+            !Objects.deepEquals(a.getRawValue(), b.getRawValue()) ||
+            !Objects.equals(a.getMappedValue(), b.getMappedValue()) ||
+            a.isVisible() != b.isVisible() ||
+            !Objects.equals(a.getPrefixText(), b.getPrefixText()) ||
+            !Objects.equals(a.getPrefixColor(), b.getPrefixColor()) ||
+            !Objects.equals(a.getLabelFormat(), b.getLabelFormat()) ||
+            !Objects.equals(a.getLabelColor(), b.getLabelColor()) ||
+            a.isBold() != b.isBold() ||
+            !Objects.equals(a.toString(), b.toString()) ||
+            a.getPosition() != b.getPosition() ||
+            a.getBitOffset() != b.getBitOffset() ||
+            a.getBitLength() != b.getBitLength())
+            return String.format("字段 %s 不同：{%s @%d:%d/%d} / {%s @%d:%d/%d}", a.getName(),
+                                 a, a.getPosition(), a.getBitOffset(), a.getBitLength(),
+                                 b, b.getPosition(), b.getBitOffset(), b.getBitLength());
+
+        List<SyntaxField> children1 = a.getChildren();
+        List<SyntaxField> children2 = b.getChildren();
+        if (children1.size() != children2.size())
+            return String.format("字段 %s 的子节点数不同：%d / %d", a.getName(), children1.size(), children2.size());
+        for (int i = 0; i < children1.size(); i++)
+        {
+            String difference = difference(children1.get(i), children2.get(i));
+            if (difference != null)
+                return difference;
+        }
+        return null;
+    }
+
+    private byte[] mutate(byte[] section)
+    {
+        byte[] data = section.clone();
+        int count = 1 + random.nextInt(4);
+        for (int i = 0; i < count; i++)
+        {
+            // 保留表号和段长度，其余字节随机改写。
+            int index = 3 + random.nextInt(data.length - 3);
+            data[index] = (byte) random.nextInt(256);
+        }
+        return data;
+    }
+
+    private byte[] randomSection(int tableId)
+    {
+        byte[] body = randomBytes(random.nextInt(256));
+        byte[] data = new byte[3 + body.length];
+        data[0] = (byte) tableId;
+        data[1] = (byte) ((random.nextBoolean() ? 0xB0 : 0x30) | (body.length >> 8));
+        data[2] = (byte) body.length;
+        System.arraycopy(body, 0, data, 3, body.length);
+        return data;
+    }
+
+    private byte[] randomDescriptor(int tag, int tagExtension)
+    {
+        byte[] body = randomBytes(random.nextInt(64));
+        if (tagExtension >= 0 && body.length > 0)
+            body[0] = (byte) tagExtension;
+
+        byte[] data = new byte[2 + body.length];
+        data[0] = (byte) tag;
+        data[1] = (byte) body.length;
+        System.arraycopy(body, 0, data, 2, body.length);
+        return data;
+    }
+
+    private byte[] randomBytes(int length)
+    {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++)
+        {
+            // 一半字节取 0~15，长度字段更容易落在剩余数据之内。
+            data[i] = (byte) (random.nextBoolean() ? random.nextInt(16) : random.nextInt(256));
+        }
+        return data;
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ *  Copyright (c) M2TK Project. All rights reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package m2tk.assistant.bench;
+
+import m2tk.assistant.api.M2TKDatabase;
+import m2tk.assistant.api.SectionBus;
+import m2tk.assistant.api.Tracer;
+import m2tk.assistant.api.domain.StreamSource;
+import m2tk.assistant.bench.support.NullDatabase;
+import m2tk.assistant.bench.support.ReplayChannel;
+import m2tk.assistant.bench.support.StreamData;
+import m2tk.multiplex.DemuxStatus;
+import m2tk.multiplex.TSDemux;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 分析器吞吐量基准
+ * <p>
+ * 分析器的处理方法大多是私有的，这里和界面一样把分析器注册到真实的解复用器上，
+ * 每次调用回放 {@value #PACKETS} 个包并等待解复用器停止。结果按包计：
+ * 吞吐量模式为包/秒，平均时间模式为纳秒/包。{@code tracer=none} 为不挂任何分析器的解复用基线，
+ * 数据库使用 {@link NullDatabase}，不计入数据库写入开销（见 {@link DatabaseBenchmark}）。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OperationsPerInvocation(TracerBenchmark.PACKETS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TracerBenchmark
+{
+    static final int PACKETS = 100_000;
+
+    private static final String TRACER_PACKAGE = "m2tk.assistant.app.kernel.tracer.";
+
+    @Param({"none", "StreamTracer", "DensityTracer", "TR290Tracer1", "TR290Tracer2", "PSITracer", "SITracer"})
+    public String tracer;
+
+    private byte[] stream;
+    private ExecutorService executor;
+    private M2TKDatabase database;
+    private StreamSource source;
+
+    private TSDemux demux;
+    private CountDownLatch stopped;
+
+    @Setup(Level.Trial)
+    public void setupTrial()
+    {
+        stream = StreamData.load(PACKETS);
+        database = NullDatabase.create();
+        source = new StreamSource();
+        source.setName("bench");
+        source.setUri("replay://bench");
+    }
+
+    @Setup(Level.Invocation)
+    public void setupInvocation() throws ReflectiveOperationException
+    {
+        // 解复用器关闭时可能一并关闭执行器，所以每次调用都使用新的执行器。
+        executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "bench-demux");
+            thread.setDaemon(true);
+            return thread;
+        });
+        demux = TSDemux.newDefaultDemux(executor);
+        stopped = new CountDownLatch(1);
+        demux.registerEventListener(event -> {
+            if (event instanceof DemuxStatus status && !status.isRunning())
+                stopped.countDown();
+        });
+
+        if (!"none".equals(tracer))
+        {
+            Tracer instance = (Tracer) Class.forName(TRACER_PACKAGE + tracer)
+                                            .getDeclaredConstructor()
+                                            .newInstance();
+            instance.configure(source, demux, SectionBus.create(demux), database);
+        }
+    }
+
+    @Benchmark
+    public void replay() throws InterruptedException
+    {
+        demux.attach(new ReplayChannel(stream));
+        if (!stopped.await(1, TimeUnit.MINUTES))
+            throw new IllegalStateException("解复用器未在规定时间内停止");
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDownInvocation()
+    {
+        demux.shutdown();
+        executor.shutdownNow();
+    }
+}
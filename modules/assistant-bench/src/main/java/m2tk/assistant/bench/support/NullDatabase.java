@@ -0,0 +1,82 @@
+/*
+ *  Copyright (c) M2TK Project. All rights reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package m2tk.assistant.bench.support;
+
+import m2tk.assistant.api.M2TKDatabase;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 空数据库
+ * <p>
+ * 丢弃所有写入，查询返回空集合或新建的领域对象，用于单独测量分析器自身的处理开销。
+ */
+public final class NullDatabase
+{
+    private static final String DOMAIN_PACKAGE = "m2tk.assistant.api.domain";
+
+    private NullDatabase()
+    {
+    }
+
+    public static M2TKDatabase create()
+    {
+        return (M2TKDatabase) Proxy.newProxyInstance(M2TKDatabase.class.getClassLoader(),
+                                                     new Class<?>[]{M2TKDatabase.class},
+                                                     (proxy, method, args) -> defaultValue(proxy, method, args));
+    }
+
+    private static Object defaultValue(Object proxy, Method method, Object[] args) throws ReflectiveOperationException
+    {
+        if (method.getDeclaringClass() == Object.class)
+        {
+            return switch (method.getName())
+            {
+                case "equals" -> proxy == args[0];
+                case "hashCode" -> System.identityHashCode(proxy);
+                default -> "NullDatabase";
+            };
+        }
+
+        // getPreference(key, defaultValue)
+        if (method.getName().equals("getPreference") && args != null && args.length == 2)
+            return args[1];
+
+        Class<?> type = method.getReturnType();
+        if (type == void.class)
+            return null;
+        if (type == boolean.class)
+            return false;
+        if (type == long.class)
+            return 0L;
+        if (type == int.class)
+            return 0;
+        if (type == double.class)
+            return 0.0;
+        if (List.class.isAssignableFrom(type))
+            return new ArrayList<>();
+        if (Map.class.isAssignableFrom(type))
+            return new HashMap<>();
+        if (type.getPackageName().equals(DOMAIN_PACKAGE))
+            return type.getDeclaredConstructor().newInstance();
+        return null;
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ *  Copyright (c) M2TK Project. All rights reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package m2tk.assistant.bench.support;
+
+import m2tk.io.RxChannel;
+
+/**
+ * 内存回放通道
+ * <p>
+ * 从预先生成（或读入）的字节数组回放码流，排除文件读取对测量的影响。
+ */
+public final class ReplayChannel implements RxChannel
+{
+    private final byte[] data;
+    private int position;
+    private volatile boolean closed;
+
+    public ReplayChannel(byte[] data)
+    {
+        this.data = data;
+        this.position = 0;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length)
+    {
+        if (closed || position >= data.length)
+            return -1;
+
+        int n = Math.min(length, data.length - position);
+        System.arraycopy(data, position, buffer, offset, n);
+        position += n;
+        return n;
+    }
+
+    @Override
+    public Object query(String property)
+    {
+        return switch (property)
+        {
+            case "source name" -> "replay";
+            case "frame size" -> SyntheticStream.PACKET_SIZE;
+            case "file size" -> (long) data.length;
+            default -> null;
+        };
+    }
+
+    @Override
+    public void close()
+    {
+        closed = true;
+    }
+}
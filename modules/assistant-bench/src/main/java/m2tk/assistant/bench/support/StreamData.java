@@ -0,0 +1,59 @@
+/*
+ *  Copyright (c) M2TK Project. All rights reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package m2tk.assistant.bench.support;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * 基准测试码流
+ * <p>
+ * 默认使用 {@link SyntheticStream} 生成的合成码流；设置系统属性 {@code m2tk.bench.ts}
+ * 指向一个 188 字节包长的录制文件时，改用该文件的内容（不足时循环补齐，超出时截断）。
+ */
+public final class StreamData
+{
+    public static final String FILE_PROPERTY = "m2tk.bench.ts";
+
+    private StreamData()
+    {
+    }
+
+    public static byte[] load(int packetCount)
+    {
+        String file = System.getProperty(FILE_PROPERTY);
+        if (file == null || file.isBlank())
+            return SyntheticStream.generate(packetCount);
+
+        try
+        {
+            byte[] recorded = Files.readAllBytes(Path.of(file));
+            int usable = recorded.length - recorded.length % SyntheticStream.PACKET_SIZE;
+            if (usable == 0)
+                throw new IllegalArgumentException("码流文件为空或不足一个包：" + file);
+
+            byte[] data = new byte[packetCount * SyntheticStream.PACKET_SIZE];
+            for (int offset = 0; offset < data.length; offset += usable)
+                System.arraycopy(recorded, 0, data, offset, Math.min(usable, data.length - offset));
+            return data;
+        } catch (IOException ex)
+        {
+            throw new UncheckedIOException("无法读取码流文件：" + file, ex);
+        }
+    }
+}
@@ -0,0 +1,308 @@
+/*
+ *  Copyright (c) M2TK Project. All rights reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package m2tk.assistant.bench.support;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * 合成测试码流
+ * <p>
+ * 生成一个单节目的 188 字节传输流：PAT/PMT/NIT/SDT/EIT(p/f)/TDT 周期出现，
+ * 视频 PID 携带 PCR，另有音频和空包，各 PID 的连续计数器正确递增。
+ */
+public final class SyntheticStream
+{
+    public static final int PACKET_SIZE = 188;
+
+    public static final int PMT_PID = 0x0100;
+    public static final int VIDEO_PID = 0x0101;
+    public static final int AUDIO_PID = 0x0102;
+    public static final int NULL_PID = 0x1FFF;
+
+    public static final int TRANSPORT_STREAM_ID = 1;
+    public static final int ORIGINAL_NETWORK_ID = 1;
+    public static final int NETWORK_ID = 1;
+    public static final int PROGRAM_NUMBER = 101;
+
+    private static final long BITRATE = 10_000_000L;
+    private static final int CYCLE_PACKETS = 400;   // 约 60ms，各 PSI/SI 表在一个周期内各出现一次
+    private static final int PCR_INTERVAL = 20;     // 每 20 个视频包插入一个 PCR
+
+    private final int[] continuityCounters = new int[8192];
+    private int videoPackets;
+
+    private SyntheticStream()
+    {
+    }
+
+    /**
+     * 生成指定包数的码流
+     * @param packetCount 包数
+     * @return 码流数据
+     */
+    public static byte[] generate(int packetCount)
+    {
+        return new SyntheticStream().build(packetCount);
+    }
+
+    public static byte[] patSection()
+    {
+        Section s = new Section(0x00, TRANSPORT_STREAM_ID);
+        s.u16(PROGRAM_NUMBER).u16(0xE000 | PMT_PID);
+        return s.finish();
+    }
+
+    public static byte[] pmtSection()
+    {
+        Section s = new Section(0x02, PROGRAM_NUMBER);
+        s.u16(0xE000 | VIDEO_PID).u16(0xF000);
+        s.u8(0x1B).u16(0xE000 | VIDEO_PID).u16(0xF000);
+        s.u8(0x0F).u16(0xE000 | AUDIO_PID).u16(0xF000);
+        return s.finish();
+    }
+
+    public static byte[] nitSection()
+    {
+        byte[] name = "M2TK Network".getBytes(StandardCharsets.ISO_8859_1);
+        Section s = new Section(0x40, NETWORK_ID);
+        s.u16(0xF000 | (name.length + 2)).u8(0x40).u8(name.length).bytes(name);
+        s.u16(0xF000 | 6).u16(TRANSPORT_STREAM_ID).u16(ORIGINAL_NETWORK_ID).u16(0xF000);
+        return s.finish();
+    }
+
+    public static byte[] sdtSection()
+    {
+        byte[] provider = "M2TK".getBytes(StandardCharsets.ISO_8859_1);
+        byte[] name = "M2TK Service".getBytes(StandardCharsets.ISO_8859_1);
+        int descriptorLength = 2 + 3 + provider.length + name.length;
+
+        Section s = new Section(0x42, TRANSPORT_STREAM_ID);
+        s.u16(ORIGINAL_NETWORK_ID).u8(0xFF);
+        s.u16(PROGRAM_NUMBER).u8(0xFF).u16(0x8000 | descriptorLength);
+        s.u8(0x48).u8(descriptorLength - 2).u8(0x01)
+         .u8(provider.length).bytes(provider)
+         .u8(name.length).bytes(name);
+        return s.finish();
+    }
+
+    public static byte[] eitSection(int eventId)
+    {
+        byte[] title = ("Event " + eventId).getBytes(StandardCharsets.ISO_8859_1);
+        byte[] text = "Synthetic event for benchmarking".getBytes(StandardCharsets.ISO_8859_1);
+        int descriptorLength = 2 + 3 + 1 + title.length + 1 + text.length;
+
+        Section s = new Section(0x4E, PROGRAM_NUMBER);
+        s.u16(TRANSPORT_STREAM_ID).u16(ORIGINAL_NETWORK_ID).u8(0x00).u8(0x4E);
+        s.u16(eventId)
+         .u16(0xEB3C).u8(0x12).u8(0x00).u8(0x00)   // 2024-09-01 12:00:00 UTC
+         .u8(0x01).u8(0x00).u8(0x00)               // 持续 1 小时
+         .u16(0x8000 | descriptorLength);
+        s.u8(0x4D).u8(descriptorLength - 2)
+         .bytes("chi".getBytes(StandardCharsets.ISO_8859_1))
+         .u8(title.length).bytes(title)
+         .u8(text.length).bytes(text);
+        return s.finish();
+    }
+
+    public static byte[] tdtSection()
+    {
+        return new byte[]{0x70, 0x70, 0x05, (byte) 0xEB, 0x3C, 0x12, 0x00, 0x00};
+    }
+
+    private byte[] build(int packetCount)
+    {
+        byte[][] cycle = {patSection(), pmtSection(), nitSection(), sdtSection(), eitSection(1), tdtSection()};
+        int[] cyclePids = {0x0000, PMT_PID, 0x0010, 0x0011, 0x0012, 0x0014};
+
+        byte[] stream = new byte[packetCount * PACKET_SIZE];
+        int index = 0;
+        while (index < packetCount)
+        {
+            int slot = index % CYCLE_PACKETS;
+            if (slot < cycle.length)
+            {
+                for (byte[] packet : packetize(cyclePids[slot], cycle[slot]))
+                {
+                    if (index == packetCount)
+                        break;
+                    System.arraycopy(packet, 0, stream, index * PACKET_SIZE, PACKET_SIZE);
+                    index++;
+                }
+                continue;
+            }
+
+            int kind = index % 20;
+            byte[] packet;
+            if (kind < 14)
+                packet = videoPacket(index);
+            else if (kind < 19)
+                packet = payloadPacket(AUDIO_PID, (index % 40) == 14);
+            else
+                packet = nullPacket();
+            System.arraycopy(packet, 0, stream, index * PACKET_SIZE, PACKET_SIZE);
+            index++;
+        }
+        return stream;
+    }
+
+    private byte[][] packetize(int pid, byte[] section)
+    {
+        int capacity = PACKET_SIZE - 4;
+        int total = section.length + 1; // pointer_field
+        int count = (total + capacity - 1) / capacity;
+        byte[][] packets = new byte[count][];
+
+        int offset = 0;
+        for (int i = 0; i < count; i++)
+        {
+            byte[] packet = header(pid, i == 0, false);
+            int position = 4;
+            if (i == 0)
+                packet[position++] = 0x00;
+            int n = Math.min(PACKET_SIZE - position, section.length - offset);
+            System.arraycopy(section, offset, packet, position, n);
+            Arrays.fill(packet, position + n, PACKET_SIZE, (byte) 0xFF);
+            offset += n;
+            packets[i] = packet;
+        }
+        return packets;
+    }
+
+    private byte[] videoPacket(int index)
+    {
+        boolean withPcr = (videoPackets++ % PCR_INTERVAL) == 0;
+        if (!withPcr)
+            return payloadPacket(VIDEO_PID, (videoPackets % 100) == 1);
+
+        byte[] packet = header(VIDEO_PID, false, true);
+        long pcr = (long) index * PACKET_SIZE * 8 * 27_000_000L / BITRATE;
+        long base = pcr / 300;
+        long ext = pcr % 300;
+        packet[4] = 7;      // adaptation_field_length
+        packet[5] = 0x10;   // PCR_flag
+        packet[6] = (byte) (base >>> 25);
+        packet[7] = (byte) (base >>> 17);
+        packet[8] = (byte) (base >>> 9);
+        packet[9] = (byte) (base >>> 1);
+        packet[10] = (byte) (((base & 1) << 7) | 0x7E | (ext >>> 8));
+        packet[11] = (byte) ext;
+        Arrays.fill(packet, 12, PACKET_SIZE, (byte) 0xA5);
+        return packet;
+    }
+
+    private byte[] payloadPacket(int pid, boolean unitStart)
+    {
+        byte[] packet = header(pid, unitStart, false);
+        int position = 4;
+        if (unitStart)
+        {
+            // 不定长 PES 头
+            byte streamId = (byte) (pid == VIDEO_PID ? 0xE0 : 0xC0);
+            byte[] pes = {0x00, 0x00, 0x01, streamId, 0x00, 0x00, (byte) 0x80, 0x00, 0x00};
+            System.arraycopy(pes, 0, packet, position, pes.length);
+            position += pes.length;
+        }
+        Arrays.fill(packet, position, PACKET_SIZE, (byte) 0x5A);
+        return packet;
+    }
+
+    private byte[] nullPacket()
+    {
+        byte[] packet = header(NULL_PID, false, false);
+        Arrays.fill(packet, 4, PACKET_SIZE, (byte) 0xFF);
+        return packet;
+    }
+
+    private byte[] header(int pid, boolean unitStart, boolean adaptation)
+    {
+        byte[] packet = new byte[PACKET_SIZE];
+        int cc = continuityCounters[pid];
+        if (pid != NULL_PID)
+            continuityCounters[pid] = (cc + 1) & 0xF;
+
+        packet[0] = 0x47;
+        packet[1] = (byte) ((unitStart ? 0x40 : 0x00) | (pid >>> 8));
+        packet[2] = (byte) pid;
+        packet[3] = (byte) ((adaptation ? 0x30 : 0x10) | cc);
+        return packet;
+    }
+
+    /**
+     * 长格式段构造器，自动填写段长度和 CRC32。
+     */
+    private static final class Section
+    {
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        Section(int tableId, int tableIdExtension)
+        {
+            u8(tableId).u16(0xB000);               // section_syntax_indicator = 1，长度稍后回填
+            u16(tableIdExtension).u8(0xC1).u8(0x00).u8(0x00);
+        }
+
+        Section u8(int value)
+        {
+            out.write(value & 0xFF);
+            return this;
+        }
+
+        Section u16(int value)
+        {
+            out.write((value >>> 8) & 0xFF);
+            out.write(value & 0xFF);
+            return this;
+        }
+
+        Section bytes(byte[] data)
+        {
+            out.writeBytes(data);
+            return this;
+        }
+
+        byte[] finish()
+        {
+            byte[] body = out.toByteArray();
+            int sectionLength = body.length - 3 + 4;
+            body[1] = (byte) (0xB0 | (sectionLength >>> 8));
+            body[2] = (byte) sectionLength;
+
+            int crc = crc32(body);
+            byte[] section = Arrays.copyOf(body, body.length + 4);
+            section[body.length] = (byte) (crc >>> 24);
+            section[body.length + 1] = (byte) (crc >>> 16);
+            section[body.length + 2] = (byte) (crc >>> 8);
+            section[body.length + 3] = (byte) crc;
+            return section;
+        }
+    }
+
+    /**
+     * MPEG-2 CRC32（多项式 0x04C11DB7，不反转，初值 0xFFFFFFFF）
+     */
+    public static int crc32(byte[] data)
+    {
+        int crc = 0xFFFFFFFF;
+        for (byte b : data)
+        {
+            crc ^= (b & 0xFF) << 24;
+            for (int i = 0; i < 8; i++)
+                crc = (crc < 0) ? (crc << 1) ^ 0x04C11DB7 : (crc << 1);
+        }
+        return crc;
+    }
+}
@@ -0,0 +1,359 @@
+/*
+ *  Copyright (c) M2TK Project. All rights reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package m2tk.assistant.bench.support;
+
+import m2tk.assistant.api.template.definition.*;
+
+import java.util.*;
+
+/**
+ * 按模板定义生成随机样本
+ * <p>
+ * 按字段定义逐个写入随机取值，长度字段在其引用的字段、循环或选择器生成后回填实际长度，
+ * 条件按已生成的取值选择分支，描述符循环从已加载的描述符模板中随机选取描述符。
+ * 生成结果多数能按模板完整解码，用于覆盖描述符循环、条件分支和选择器等路径。
+ * 长度字段位宽不足或引用关系无法还原时，样本可能解码失败，调用方应把失败样本也视为有效输入。
+ */
+public final class TemplateSampleGenerator
+{
+    private static final int MAX_DEPTH = 4;
+    private static final int MAX_LOOP_ENTRIES = 3;
+    private static final int MAX_ARRAY_LENGTH = 12;
+    private static final int MAX_SECTION_LENGTH = 4093;
+
+    private final Random random;
+    private final List<DescriptorTemplate> descriptors = new ArrayList<>();
+    private final Map<String, SelectorTemplate> selectors = new HashMap<>();
+
+    public TemplateSampleGenerator(List<M2TKTemplate> templates, Random random)
+    {
+        this.random = Objects.requireNonNull(random);
+        for (M2TKTemplate template : templates)
+        {
+            descriptors.addAll(template.getDescriptorTemplates());
+            template.getSelectorTemplates().forEach(selector -> selectors.put(selector.getName(), selector));
+        }
+    }
+
+    /**
+     * 生成指定表号的段，段长度按生成结果回填；超过段长度上限时返回 null。
+     */
+    public byte[] section(TableTemplate template, int tableId)
+    {
+        BitWriter writer = new BitWriter();
+        Scope scope = new Scope(null);
+        scope.fixed.put("table_id", (long) tableId);
+        generate(template.getTableSyntax(), writer, scope, 0);
+
+        byte[] data = writer.toByteArray();
+        if (data.length < 3 || data.length - 3 > MAX_SECTION_LENGTH)
+            return null;
+
+        int sectionLength = data.length - 3;
+        data[0] = (byte) tableId;
+        data[1] = (byte) ((data[1] & 0xF0) | (sectionLength >> 8));
+        data[2] = (byte) sectionLength;
+        return data;
+    }
+
+    /**
+     * 生成单个描述符，标签和描述符长度按生成结果回填；超过描述符长度上限时返回 null。
+     */
+    public byte[] descriptor(DescriptorTemplate template)
+    {
+        BitWriter writer = new BitWriter();
+        return writeDescriptor(template, writer, 0) ? writer.toByteArray() : null;
+    }
+
+    /**
+     * 生成选择器内容。选择器引用调用方字段时，生成的样本可能无法单独解码。
+     */
+    public byte[] selector(SelectorTemplate template)
+    {
+        BitWriter writer = new BitWriter();
+        generate(template.getSelectorSyntax(), writer, new Scope(null), 0);
+        return writer.toByteArray();
+    }
+
+    private boolean writeDescriptor(DescriptorTemplate template, BitWriter writer, int depth)
+    {
+        int start = writer.bytePosition();
+        Scope scope = new Scope(null);
+        scope.fixed.put("descriptor_tag", (long) template.getTag());
+        if (template.getTagExtension() >= 0)
+            scope.fixed.put("descriptor_tag_extension", (long) template.getTagExtension());
+        generate(template.getDescriptorSyntax(), writer, scope, depth);
+        writer.align();
+
+        int length = writer.bytePosition() - start - 2;
+        if (length < 0 || length > 255)
+            return false;
+
+        writer.patch(start * 8, 8, template.getTag());
+        writer.patch(start * 8 + 8, 8, length);
+        if (template.getTagExtension() >= 0 && length > 0)
+            writer.patch(start * 8 + 16, 8, template.getTagExtension());
+        return true;
+    }
+
+    private void generate(List<SyntaxFieldDefinition> definitions, BitWriter writer, Scope scope, int depth)
+    {
+        if (definitions == null)
+            return;
+
+        for (SyntaxFieldDefinition definition : definitions)
+        {
+            switch (definition)
+            {
+                case DataFieldDefinition field -> generateField(field, writer, scope);
+                case ConditionalFieldDefinition field -> generate(matches(field.getCondition(), scope)
+                                                                  ? field.getThenPart()
+                                                                  : field.getElsePart(),
+                                                                  writer, scope, depth);
+                case LoopFieldDefinition field -> generateLoop(field, writer, scope, depth);
+                case SelectorFieldDefinition field -> generateSelector(field, writer, scope, depth);
+                case DescriptorFieldDefinition ignored -> writeRandomDescriptor(writer, depth);
+                default -> throw new IllegalArgumentException("无效的定义类型：type=" + definition.type());
+            }
+        }
+    }
+
+    private void generateField(DataFieldDefinition field, BitWriter writer, Scope scope)
+    {
+        switch (field.getEncoding())
+        {
+            case "bslbf", "uimsbf", "checksum" ->
+            {
+                int bits = field.getLengthValue();
+                Long fixed = scope.fixed.get(field.getName());
+                long value = (fixed != null) ? fixed : random.nextLong() & mask(bits);
+                scope.slots.put(field.getName(), new Slot(writer.bitPosition(), bits, value));
+                writer.write(value, bits);
+            }
+            case "nibbles" ->
+            {
+                int count = arrayLength(field.isIndirectLength(), field.getLengthValue());
+                for (int i = 0; i < count; i++)
+                    writer.write(random.nextInt(16), 4);
+                bindLength(field.isIndirectLength() && !field.isImplicitLength(), field.getLengthField(),
+                           count - field.getLengthCorrectionValue(), scope, writer);
+            }
+            default ->
+            {
+                int count = arrayLength(field.isIndirectLength(), field.getLengthValue());
+                for (int i = 0; i < count; i++)
+                    writer.write(randomByte(), 8);
+                bindLength(field.isIndirectLength() && !field.isImplicitLength(), field.getLengthField(),
+                           count - field.getLengthCorrectionValue(), scope, writer);
+            }
+        }
+    }
+
+    private void generateLoop(LoopFieldDefinition loop, BitWriter writer, Scope scope, int depth)
+    {
+        int start = writer.bytePosition();
+        int count = (depth >= MAX_DEPTH) ? 0 : random.nextInt(MAX_LOOP_ENTRIES + 1);
+        boolean descriptorLoop = !loop.getBody().isEmpty() && loop.getBody().get(0) instanceof DescriptorFieldDefinition;
+        for (int i = 0; i < count; i++)
+        {
+            if (descriptorLoop)
+                writeRandomDescriptor(writer, depth + 1);
+            else
+                generate(loop.getBody(), writer, new Scope(scope), depth + 1);
+        }
+
+        if (loop.isImplicitLength())
+            return;
+        if ("count".equals(loop.getLengthType()))
+            bindLength(true, loop.getLengthField(), count, scope, writer);
+        else
+            bindLength(true, loop.getLengthField(),
+                       writer.bytePosition() - start - loop.getLengthCorrectionValue(), scope, writer);
+    }
+
+    private void generateSelector(SelectorFieldDefinition field, BitWriter writer, Scope scope, int depth)
+    {
+        SelectorTemplate selector = selectors.get(field.getName());
+        int start = writer.bytePosition();
+        if (selector != null && depth < MAX_DEPTH)
+            generate(selector.getSelectorSyntax(), writer, new Scope(scope), depth + 1);
+        writer.align();
+
+        if (!field.isIndirectLength())
+        {
+            while (writer.bytePosition() - start < field.getLengthValue())
+                writer.write(randomByte(), 8);
+            return;
+        }
+        bindLength(!field.isImplicitLength(), field.getLengthField(),
+                   writer.bytePosition() - start - field.getLengthCorrectionValue(), scope, writer);
+    }
+
+    private void writeRandomDescriptor(BitWriter writer, int depth)
+    {
+        if (descriptors.isEmpty())
+            return;
+
+        int start = writer.bitPosition();
+        DescriptorTemplate template = descriptors.get(random.nextInt(descriptors.size()));
+        if (!writeDescriptor(template, writer, depth))
+            writer.truncate(start);
+    }
+
+    private void bindLength(boolean indirect, String name, long value, Scope scope, BitWriter writer)
+    {
+        if (!indirect)
+            return;
+
+        Slot slot = scope.find(name);
+        if (slot == null || value < 0 || value > mask(slot.bits))
+            return;
+        writer.patch(slot.bitPosition, slot.bits, value);
+        slot.value = value;
+    }
+
+    private boolean matches(Condition condition, Scope scope)
+    {
+        Slot slot = scope.find(condition.getField());
+        if (slot == null)
+            return random.nextBoolean();
+
+        long value = slot.value;
+        return switch (condition.getOperation())
+        {
+            case "equals" -> value == condition.getValue();
+            case "not_equal" -> value != condition.getValue();
+            case "larger_than" -> value > condition.getValue();
+            case "smaller_than" -> value < condition.getValue();
+            case "equals_any" -> Arrays.stream(condition.getValues()).anyMatch(c -> c == value);
+            case "not_equal_all" -> Arrays.stream(condition.getValues()).allMatch(c -> c != value);
+            default -> random.nextBoolean();
+        };
+    }
+
+    private int arrayLength(boolean indirect, int length)
+    {
+        return indirect ? random.nextInt(MAX_ARRAY_LENGTH + 1) : length;
+    }
+
+    private int randomByte()
+    {
+        // 一半取可打印字符，文本字段更接近实际内容。
+        return random.nextBoolean() ? 0x20 + random.nextInt(0x5F) : random.nextInt(256);
+    }
+
+    private static long mask(int bits)
+    {
+        return (bits >= 64) ? -1L : (1L << bits) - 1;
+    }
+
+    private static final class Slot
+    {
+        final int bitPosition;
+        final int bits;
+        long value;
+
+        Slot(int bitPosition, int bits, long value)
+        {
+            this.bitPosition = bitPosition;
+            this.bits = bits;
+            this.value = value;
+        }
+    }
+
+    private static final class Scope
+    {
+        final Scope parent;
+        final Map<String, Slot> slots = new HashMap<>();
+        final Map<String, Long> fixed;
+
+        Scope(Scope parent)
+        {
+            this.parent = parent;
+            this.fixed = (parent == null) ? new HashMap<>() : Map.of();
+        }
+
+        Slot find(String name)
+        {
+            for (Scope scope = this; scope != null; scope = scope.parent)
+            {
+                Slot slot = scope.slots.get(name);
+                if (slot != null)
+                    return slot;
+            }
+            return null;
+        }
+    }
+
+    private static final class BitWriter
+    {
+        private byte[] buffer = new byte[256];
+        private int bits;
+
+        int bitPosition()
+        {
+            return bits;
+        }
+
+        int bytePosition()
+        {
+            return (bits + 7) / 8;
+        }
+
+        void write(long value, int length)
+        {
+            ensure(bits + length);
+            for (int i = length - 1; i >= 0; i--)
+                set(bits++, (int) (value >>> i) & 1);
+        }
+
+        void patch(int position, int length, long value)
+        {
+            for (int i = 0; i < length; i++)
+                set(position + i, (int) (value >>> (length - 1 - i)) & 1);
+        }
+
+        void align()
+        {
+            if (bits % 8 != 0)
+                write(0, 8 - bits % 8);
+        }
+
+        void truncate(int position)
+        {
+            for (int i = position; i < bits; i++)
+                set(i, 0);
+            bits = position;
+        }
+
+        byte[] toByteArray()
+        {
+            return Arrays.copyOf(buffer, bytePosition());
+        }
+
+        private void set(int position, int bit)
+        {
+            int shift = 7 - position % 8;
+            buffer[position / 8] = (byte) ((buffer[position / 8] & ~(1 << shift)) | (bit << shift));
+        }
+
+        private void ensure(int length)
+        {
+            if ((length + 7) / 8 > buffer.length)
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, (length + 7) / 8));
+        }
+    }
+}
@@ -189,7 +189,7 @@ public class EBSectionDatagramPanel extends JPanel
         for (PrivateSection section : sections)
         {
             Encoding encoding = Encoding.wrap(section.getEncoding());
-            SyntaxField syntax = decoder.decode(encoding, 0, encoding.size());
+            SyntaxField syntax = decoder.interpret(encoding, 0, encoding.size());
             DefaultMutableTreeNode node = (DefaultMutableTreeNode) presenter.render(syntax);
             if (node == null)
                 continue;
@@ -213,7 +213,7 @@ public class EBSectionDatagramPanel extends JPanel
         for (PrivateSection section : sections)
         {
             Encoding encoding = Encoding.wrap(section.getEncoding());
-            SyntaxField syntax = decoder.decode(encoding, 0, encoding.size());
+            SyntaxField syntax = decoder.interpret(encoding, 0, encoding.size());
             DefaultMutableTreeNode node = (DefaultMutableTreeNode) presenter.render(syntax);
             if (node == null)
                 continue;
@@ -237,7 +237,7 @@ public class EBSectionDatagramPanel extends JPanel
         for (PrivateSection section : sections)
         {
             Encoding encoding = Encoding.wrap(section.getEncoding());
-            SyntaxField syntax = decoder.decode(encoding, 0, encoding.size());
+            SyntaxField syntax = decoder.interpret(encoding, 0, encoding.size());
             DefaultMutableTreeNode node = (DefaultMutableTreeNode) presenter.render(syntax);
             if (node == null)
                 continue;
@@ -261,7 +261,7 @@ public class EBSectionDatagramPanel extends JPanel
         for (PrivateSection section : sections)
         {
             Encoding encoding = Encoding.wrap(section.getEncoding());
-            SyntaxField syntax = decoder.decode(encoding, 0, encoding.size());
+            SyntaxField syntax = decoder.interpret(encoding, 0, encoding.size());
             DefaultMutableTreeNode node = (DefaultMutableTreeNode) presenter.render(syntax);
             if (node == null)
                 continue;
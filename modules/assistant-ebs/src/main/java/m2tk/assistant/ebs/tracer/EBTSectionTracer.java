@@ -17,6 +17,8 @@ package m2tk.assistant.ebs.tracer;
 
 import lombok.extern.slf4j.Slf4j;
 import m2tk.assistant.api.M2TKDatabase;
+import m2tk.assistant.api.SectionBus;
+import m2tk.assistant.api.SectionEvent;
 import m2tk.assistant.api.Tracer;
 import m2tk.assistant.api.domain.StreamSource;
 import m2tk.mpeg2.decoder.ExtendedSectionDecoder;
@@ -50,16 +52,22 @@ public class EBTSectionTracer implements Tracer
 
     @Override
     public void configure(StreamSource source, TSDemux demux, M2TKDatabase database)
+    {
+        configure(source, demux, SectionBus.create(demux), database);
+    }
+
+    @Override
+    public void configure(StreamSource source, TSDemux demux, SectionBus bus, M2TKDatabase database)
     {
         databaseService = database;
-        demux.registerSectionChannel(0x0021, this::processSection);
+        bus.subscribe(0x0021, this::processSection);
     }
 
-    private void processSection(TSDemuxPayload payload)
+    private void processSection(SectionEvent event)
     {
-        if (payload.getStreamPID() != 0x0021 ||
-            payload.getType() != TSDemuxPayload.Type.SECTION ||
-            !decoder.isAttachable(payload.getEncoding()))
+        // 重复的分段已由分段总线过滤，这里只需区分同一分段中携带的不同EBM。
+        TSDemuxPayload payload = event.payload();
+        if (!event.isUpdate() || !decoder.isAttachable(payload.getEncoding()))
             return;
 
         decoder.attach(payload.getEncoding());
@@ -17,6 +17,8 @@ package m2tk.assistant.ebs.view;
 
 import com.google.common.eventbus.EventBus;
 import com.google.common.eventbus.Subscribe;
+import m2tk.assistant.api.ChangeDomain;
+import m2tk.assistant.api.ChangeWatch;
 import m2tk.assistant.api.InfoView;
 import m2tk.assistant.api.M2TKDatabase;
 import m2tk.assistant.api.domain.PrivateSection;
@@ -45,6 +47,7 @@ public class EBInfoView extends JPanel implements InfoView
     private EBSectionDatagramPanel sectionDatagramPanel;
     private EventBus bus;
     private M2TKDatabase database;
+    private final ChangeWatch changes = new ChangeWatch(ChangeDomain.DATAGRAM);
 
     private volatile long lastTimestamp;
     private final long MIN_QUERY_INTERVAL_MILLIS = 500;
@@ -119,6 +122,8 @@ public class EBInfoView extends JPanel implements InfoView
         long t1 = System.currentTimeMillis();
         if (t1 - lastTimestamp >= MIN_QUERY_INTERVAL_MILLIS && isShowing())
         {
+            if (!changes.check(database) && !event.forced())
+                return;
             queryDatagrams();
             lastTimestamp = System.currentTimeMillis();
         }